@@ -0,0 +1,221 @@
+package UI;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Locale;
+
+import core.Connect4Bitboard;
+import core.Connect4Constants;
+
+/**
+ * This class is the headless batch mode of the text console.  It replays
+ * scripted games instead of asking a player for input.
+ * <p>
+ * Every input line is one game written as a sequence of columns 1-7, player
+ * X moving first; spaces and commas between moves are ignored.  Each game is
+ * checked against the engine's bitboard and one result line is written per
+ * input line:
+ * <pre>
+ *     RESULT PLY ILLEGAL
+ * </pre>
+ * where RESULT is X, O, DRAW, NONE (game not finished) or ILLEGAL, PLY is the
+ * number of legal moves played, and ILLEGAL is the 1-based index of the first
+ * illegal move (a full or unknown column, or a move after the game ended), 0
+ * if there is none.  A blank line, with no moves at all, still gets its
+ * <code>NONE 0 0</code> line so the output stays aligned with the input, but
+ * it is left out of the summary totals.
+ * <p>
+ * Input is parsed straight from bytes and results are buffered, so millions
+ * of games can be streamed without the per-move cost of the interactive game.
+ * <p>
+ * Required for Functionality:
+ * <ul>
+ * <li>Connect4TextConsole.java
+ * <li>Connect4Bitboard.java
+ * </ul>
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+class Connect4BatchMode implements Connect4Constants {
+
+    /**
+     * Size of the input buffer in bytes.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Destination of the result lines.
+     */
+    private final Writer out;
+    /**
+     * Board the current game is replayed on.
+     */
+    private final Connect4Bitboard board = new Connect4Bitboard();
+    /**
+     * Reusable buffer for a result line.
+     */
+    private final StringBuilder line = new StringBuilder(32);
+    /**
+     * Reusable array the result line is copied into for writing.
+     */
+    private final char[] lineChars = new char[32];
+
+    /**
+     * Number of moves read on the current line, legal or not.
+     */
+    private int moveIndex;
+    /**
+     * Index of the first illegal move on the current line, 0 for none.
+     */
+    private int illegalAt;
+    /**
+     * Winning token of the current game, null while undecided.
+     */
+    private String winner;
+
+    /**
+     * Number of games read, not counting blank lines.
+     */
+    private long games;
+    /**
+     * Number of legal moves played over all games.
+     */
+    private long moves;
+    /**
+     * Number of games won by X.
+     */
+    private long winsX;
+    /**
+     * Number of games won by O.
+     */
+    private long winsO;
+    /**
+     * Number of drawn games.
+     */
+    private long draws;
+    /**
+     * Number of games containing an illegal move.
+     */
+    private long illegal;
+    /**
+     * Number of games that stopped before a result.
+     */
+    private long unfinished;
+
+    /**
+     * Constructor to make a batch run.
+     * @param pOut destination of the result lines, should be buffered.
+     */
+    Connect4BatchMode(Writer pOut) {
+        this.out = pOut;
+    }
+
+    /**
+     * Reads every game from a stream and writes their results.
+     * @param pIn stream of games, one per line.
+     * @throws IOException if reading or writing fails.
+     */
+    void run(InputStream pIn) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        boolean lineStarted = false;
+        int read;
+
+        while ((read = pIn.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                byte b = buffer[i];
+                if (b == '\n') {
+                    endGame();
+                    lineStarted = false;
+                } else if (b != '\r') {
+                    lineStarted = true;
+                    move(b);
+                }
+            }
+        }
+        if (lineStarted) {
+            endGame();
+        }
+        out.flush();
+    }
+
+    /**
+     * Plays one input character on the current game.
+     * @param pMove character read from the line.
+     */
+    private void move(byte pMove) {
+        if (pMove == ' ' || pMove == '\t' || pMove == ',') {
+            return;
+        }
+        moveIndex++;
+        if (illegalAt != 0) {
+            return;
+        }
+        int col = pMove - '1';
+        if (col < 0 || col >= COL || winner != null || board.isFull()
+                || !board.canPlay(col)) {
+            illegalAt = moveIndex;
+            return;
+        }
+        board.play(col);
+        if (board.lastMoveWon()) {
+            // X moves first, so X made every odd move
+            winner = (board.getMoves() % 2 == 1) ? RED : YELLOW;
+        }
+    }
+
+    /**
+     * Writes the result of the current game and clears the board.
+     * @throws IOException if writing fails.
+     */
+    private void endGame() throws IOException {
+        line.setLength(0);
+        if (illegalAt != 0) {
+            line.append("ILLEGAL");
+            illegal++;
+        } else if (winner != null) {
+            line.append(winner);
+            if (winner.equals(RED)) {
+                winsX++;
+            } else {
+                winsO++;
+            }
+        } else if (board.isFull()) {
+            line.append("DRAW");
+            draws++;
+        } else {
+            line.append("NONE");
+            if (moveIndex > 0) {
+                unfinished++;
+            }
+        }
+        line.append(' ').append(board.getMoves())
+                .append(' ').append(illegalAt).append('\n');
+        line.getChars(0, line.length(), lineChars, 0);
+        out.write(lineChars, 0, line.length());
+
+        if (moveIndex > 0) {
+            games++;
+        }
+        moves += board.getMoves();
+        board.reset();
+        moveIndex = 0;
+        illegalAt = 0;
+        winner = null;
+    }
+
+    /**
+     * Prints a summary of the run and its throughput.
+     * @param pErr stream for the summary, kept apart from the results.
+     * @param pElapsedNanos time the run took.
+     */
+    void report(PrintStream pErr, long pElapsedNanos) {
+        double seconds = Math.max(pElapsedNanos, 1) / 1e9;
+        pErr.printf(Locale.ROOT, "%d games: %d X, %d O, %d draws, %d unfinished, %d illegal%n",
+                games, winsX, winsO, draws, unfinished, illegal);
+        pErr.printf(Locale.ROOT, "%.3f s, %.0f games/s, %.0f moves/s%n",
+                seconds, games / seconds, moves / seconds);
+    }
+}
@@ -3,11 +3,20 @@
  */
 package UI;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.util.InputMismatchException;
 import java.util.Scanner;
 
 import core.Connect4;
 import core.Connect4ComputerPlayer;
+import core.Connect4Difficulty;
+import core.Connect4EngineConfig;
+import core.Connect4Ponder;
 
  /**
   * This class is the user interface and input for the connect4 game.  Handles all
@@ -67,6 +76,7 @@ class Connect4TextConsole {
                 startGame.close();
             }
             if (status.equalsIgnoreCase("C")) {
+                chooseDifficulty();
                 playComputer();
                 startGame.close();
             }
@@ -82,6 +92,43 @@ class Connect4TextConsole {
     }
 
 
+     /**
+      * Runs the headless batch mode: reads one scripted game per line from a
+      * file, or stdin when the file is "-", and writes one result per line to
+      * stdout.  A throughput summary goes to stderr.
+      * @param pFile path of the games file, or "-" for stdin.
+      * @throws IOException if the games cannot be read or written.
+      */
+     static void runBatch(String pFile) throws IOException {
+         InputStream in = pFile.equals("-") ? System.in : new FileInputStream(pFile);
+         BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+         Connect4BatchMode batch = new Connect4BatchMode(out);
+
+         long start = System.nanoTime();
+         try {
+             batch.run(in);
+         } finally {
+             if (in != System.in) {
+                 in.close();
+             }
+         }
+         batch.report(System.err, System.nanoTime() - start);
+     }
+
+     /**
+      * Main method to play in the console, or with "-batch [file]" to check
+      * scripted games without a player.
+      * @param args the command line arguments.
+      * @throws IOException if batch games cannot be read or written.
+      */
+     public static void main(String[] args) throws IOException {
+         if (args.length > 0 && args[0].equals("-batch")) {
+             runBatch(args.length > 1 ? args[1] : "-");
+         } else {
+             new Connect4TextConsole(new Connect4()).startGame();
+         }
+     }
+
      /**
       * Method where the game is played; gets move, validates move,
       * adds token to the game board, and checks for winner.
@@ -95,7 +142,7 @@ class Connect4TextConsole {
 
          game_board.drawBoard();
 
-         while (!game_board.getWinner() && game_board.getTurnCount() <= 42) {
+         while (!game_board.getWinner() && game_board.getTurnCount() <= game_board.getVariant().getCells()) {
              // try/catch handles input mismatch
              try {
                  System.out.println("Player " + token + ", Please choose a "
@@ -145,6 +192,42 @@ class Connect4TextConsole {
      }
 
 
+     /**
+      * Asks the player how strong the computer should be and makes a
+      * computer player of that level.  With the system property
+      * connect4.table the computer's table is warm-started from that
+      * snapshot and saved back on exit.
+      */
+     private void chooseDifficulty() {
+         System.out.println("Choose the computer's level: E (easy), M (medium), H (hard) or X (expert).");
+         Connect4Difficulty level = null;
+         while (level == null) {
+             String choice = sc.next();
+             if (choice.equalsIgnoreCase("E")) {
+                 level = Connect4Difficulty.EASY;
+             } else if (choice.equalsIgnoreCase("M")) {
+                 level = Connect4Difficulty.MEDIUM;
+             } else if (choice.equalsIgnoreCase("H")) {
+                 level = Connect4Difficulty.HARD;
+             } else if (choice.equalsIgnoreCase("X")) {
+                 level = Connect4Difficulty.EXPERT;
+             } else {
+                 System.out.println("Please select E, M, H or X.");
+             }
+         }
+         Connect4EngineConfig config = new Connect4EngineConfig("computer");
+         config.setDifficulty(level);
+         comp = new Connect4ComputerPlayer(config);
+         String tableName = System.getProperty("connect4.table");
+         if (tableName != null) {
+             try {
+                 comp.persistTable(new File(tableName));
+             } catch (IOException e) {
+                 System.out.println("Table snapshot not loaded: " + e.getMessage());
+             }
+         }
+     }
+
      /**
       * Method where the game is played against the computer;
       * gets move, validates move, adds token to the game board, and checks
@@ -156,11 +239,14 @@ class Connect4TextConsole {
          boolean valid;
          int temp;   //temp variable to hold column selected by user
          int move;       // variable to hold adjusted column
+         // think about the computer's answers while the player chooses
+         comp.setPonderMode(Connect4Ponder.Mode.ALL);
          comp.drawBoardComputer();
-         while (!comp.getWinner() && comp.getTurnCount() <= 42) {
+         while (!comp.getWinner() && comp.getTurnCount() <= comp.getVariant().getCells()) {
              // try/catch handles input mismatch
              try {
                  if (comp.getPlayerToken().equals("X")) {
+                     comp.startPondering();
                      System.out.println("Player " + token + ", Please choose a column between 1-7.");
                      temp = sc.nextInt();
                      move = temp - 1;
@@ -200,6 +286,8 @@ class Connect4TextConsole {
              }
          }
 
+         comp.stopPondering();
+
          //output winner
          if (comp.getWinner()) {
              comp.playerTurn(token);
@@ -3,13 +3,14 @@ package UI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import core.Connect4;
 import core.Connect4Client;
+import core.Connect4ComputerPlayer;
 import core.Connect4Constants;
+import core.Connect4Ponder;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
@@ -80,6 +81,15 @@ public class Connect4_GUI extends Application implements Connect4Constants {
      * List to add AI moves with player moves in single player.
      */
     private List<Token> cpList = new ArrayList<>();
+    /**
+     * Computer player choosing the AI moves in single player.
+     */
+    private Connect4ComputerPlayer cpu = new Connect4ComputerPlayer();
+    /**
+     * Boolean set while the computer player chooses its move, clicks are
+     * ignored until it has played.
+     */
+    private boolean thinking = false;
 
     /**
      * Private inner class to initialize token object for game board. Extends
@@ -246,6 +256,7 @@ public class Connect4_GUI extends Application implements Connect4Constants {
         cp.setOnAction(e
                 -> {
             comp = true;
+            cpu.setPonderMode(Connect4Ponder.Mode.ALL);
             local1Player(new Stage());
         });
     }
@@ -388,9 +399,15 @@ public class Connect4_GUI extends Application implements Connect4Constants {
 
             r.setOnMouseClicked(e
                     -> {
+                //the computer has not answered the last move yet
+                if (thinking) {
+                    return;
+                }
+                //a click on a full column is not a move
+                boolean open = !getToken(col, 0).isPresent();
                 placeToken(new Token(redToken), col);
 
-                if (comp) {
+                if (comp && open) {
                     placeCPToken(new Token(true));
                 }
             });
@@ -439,6 +456,9 @@ public class Connect4_GUI extends Application implements Connect4Constants {
         //add token to board
         gridBoard[col][row] = token;
         cpList.add(token);
+        if (comp) {
+            trackComputerMove(col);
+        }
         //visualize token to game board
         tokenRoot.getChildren().add(token);
         token.setTranslateX(col * (TILE_SIZE + 6) + TILE_SIZE / 3);
@@ -463,13 +483,43 @@ public class Connect4_GUI extends Application implements Connect4Constants {
     }
 
     /**
-     * Places opponent token when playing against the computer.
+     * Places opponent token when playing against the computer.  The search
+     * runs on a background thread so the window stays responsive, and the
+     * token is placed on the JavaFX thread once the move is chosen.
      * @param token Passes CP token object to be placed on board.
      */
     private void placeCPToken(Token token) {
+        if (cpu.isGameOver()) {
+            return;
+        }
+        thinking = true;
+        Thread search = new Thread(()
+                -> {
+            int col = -1;
+            try {
+                cpu.computerPlayer();
+                col = cpu.getCompCol();
+            } finally {
+                final int move = col;
+                Platform.runLater(() -> dropCPToken(token, move));
+            }
+        }, "connect4-computer");
+        search.setDaemon(true);
+        search.start();
+    }
+
+    /**
+     * Drops the computer player's token once its move is chosen.  Runs on
+     * the JavaFX thread.
+     * @param token CP token object to be placed on board.
+     * @param col   Column chosen by the computer player, -1 if it failed.
+     */
+    private void dropCPToken(Token token, int col) {
+        thinking = false;
+        if (col < 0 || col >= COL) {
+            return;
+        }
         int row = ROW - 1;
-        Random rand = new Random();
-        int col = rand.nextInt(7);
 
         do {
             if (getToken(col, row).isPresent()) {
@@ -485,6 +535,7 @@ public class Connect4_GUI extends Application implements Connect4Constants {
 
         gridBoard[col][row] = token;
         cpList.add(token);
+        trackComputerMove(col);
         tokenRoot.getChildren().add(token);
         token.setTranslateX(col * (TILE_SIZE + 6) + TILE_SIZE / 3);
         token.setTranslateY(row * (TILE_SIZE + 6) + TILE_SIZE / 3);
@@ -500,6 +551,17 @@ public class Connect4_GUI extends Application implements Connect4Constants {
         redToken = !redToken;
         System.out.println((redToken ? "Computer(YELLOW)" : "Player (RED) turn"));
 
+        //think about the next answer while the player chooses
+        cpu.startPondering();
+    }
+
+    /**
+     * Mirrors a token placed in single player on the computer player's board.
+     * @param col Column the token was dropped in.
+     */
+    private void trackComputerMove(int col) {
+        cpu.dropToken(cpu.getPlayerToken(), col);
+        cpu.playerTurn(cpu.getPlayerToken());
     }
 
     /**
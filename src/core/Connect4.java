@@ -28,20 +28,41 @@ public class Connect4 implements Connect4Constants {
     /** Player Token to designate game piece X or O. */
     private String playerToken = RED;
     /** Game piece counters for player X.*/
-    private int gamePiecesX = 21;
+    private int gamePiecesX;
     /** Game piece counters for player O.*/
-    private int gamePiecesO = 21;
+    private int gamePiecesO;
     /** Game logic variable:   boolean flag to find winner. */
     private boolean winner = false;
     /** Game logic variable:  turn counter to track total number of moves made. */
     private int turnCount = 1;
+    /** Renderer drawing the board in a single write per frame, made on first draw. */
+    private Connect4BoardRenderer renderer;
+    /** Board size and tokens in a row needed to win. */
+    private final Connect4Variant variant;
+    /** Bitboard copy of the game board, used to check for a winner. */
+    private final Connect4NBoard board;
+    /** Token of the player who moved first, PLAYER1 on the bitboard. */
+    private String firstToken;
 
 
     /**
-     * Constructor initializes board and sets all inputs to empty space.
+     * Constructor initializes a standard board and sets all inputs to empty space.
      */
     public Connect4() {
-        gameBoard = new String[ROW][COL];
+        this(Connect4Variant.STANDARD);
+    }
+
+    /**
+     * Constructor initializes a board of any size and sets all inputs to
+     * empty space.
+     * @param pVariant rows, columns and tokens in a row needed to win.
+     */
+    public Connect4(Connect4Variant pVariant) {
+        variant = pVariant;
+        board = pVariant.newBoard();
+        gameBoard = new String[pVariant.getRows()][pVariant.getCols()];
+        gamePiecesX = (pVariant.getCells() + 1) / 2;
+        gamePiecesO = (pVariant.getCells() + 1) / 2;
         reset();
     }
 
@@ -51,6 +72,8 @@ public class Connect4 implements Connect4Constants {
      */
     private void reset() {
         playerToken = randomizeFirst();
+        firstToken = playerToken;
+        board.reset();
 
         for (String[] row : gameBoard) {
             Arrays.fill(row, " ");
@@ -82,6 +105,34 @@ public class Connect4 implements Connect4Constants {
         return winner;
     }
 
+    /**
+     * Accessor returns the board size and tokens in a row needed to win.
+     * @return Connect4Variant variant.
+     */
+    public Connect4Variant getVariant() {
+        return variant;
+    }
+
+    /**
+     * Mutator sets the renderer used to draw the board, e.g. to redraw in
+     * place or to stream boards to a log file.
+     * @param pRenderer Connect4BoardRenderer to draw with.
+     */
+    public void setRenderer(Connect4BoardRenderer pRenderer) {
+        this.renderer = pRenderer;
+    }
+
+    /**
+     * Accessor returns the renderer, drawing to the console by default.
+     * @return Connect4BoardRenderer renderer.
+     */
+    private Connect4BoardRenderer getRenderer() {
+        if (renderer == null) {
+            renderer = Connect4BoardRenderer.console();
+        }
+        return renderer;
+    }
+
     /**
      * Randomizes the first move so that one player will not always go first.
      * @return Red if result = 0.
@@ -100,25 +151,11 @@ public class Connect4 implements Connect4Constants {
      */
     public void drawBoard() {
 
-        System.out.println("----------------------");
-        System.out.println("  1  2  3  4  5  6  7 ");
-        System.out.println("----------------------");
-
-        for (int i = 0; i < ROW; i++) {
-            // System.out.print("|");
-            for (int j = 0; j < COL; j++) {
-                System.out.print("| " + gameBoard[i][j]);
-            }
-
-            System.out.print("|");
-            System.out.println();
-        }
-
         if (playerToken.equals(RED)) {
-            System.out.println("Player X has " + gamePiecesX + " tokens left.");
+            getRenderer().render(gameBoard, "Player X has " + gamePiecesX + " tokens left.");
             gamePiecesX--;
         } else {
-            System.out.println("Player O has " + gamePiecesO + " tokens left.");
+            getRenderer().render(gameBoard, "Player O has " + gamePiecesO + " tokens left.");
             gamePiecesO--;
         }
     }
@@ -132,24 +169,10 @@ public class Connect4 implements Connect4Constants {
      */
     public void drawBoardComputer() {
 
-        System.out.println("----------------------");
-        System.out.println("  1  2  3  4  5  6  7 ");
-        System.out.println("----------------------");
-
-        for (int i = 0; i < ROW; i++) {
-            // System.out.print("|");
-            for (int j = 0; j < COL; j++) {
-                System.out.print("| " + gameBoard[i][j]);
-            }
-
-            System.out.print("|");
-            System.out.println();
-        }
-
         if (playerToken.equals("X")) {
-            System.out.println("Player, it is your turn.");
+            getRenderer().render(gameBoard, "Player, it is your turn.");
         } else {
-            System.out.println("It is the computer's turn. Please select a colum"
+            getRenderer().render(gameBoard, "It is the computer's turn. Please select a colum"
                     + "between 1-7.");
         }
     }
@@ -164,7 +187,7 @@ public class Connect4 implements Connect4Constants {
      */
     public boolean validateMove(int pMove) {
 
-        if (!winner && (turnCount <= 42)) {
+        if (!winner && (turnCount <= variant.getCells())) {
 
             if (pMove > gameBoard[0].length - 1 || pMove < 0) {
                 System.out.println("That column is not on the board. Select again.");
@@ -191,6 +214,7 @@ public class Connect4 implements Connect4Constants {
 
             if (gameBoard[row][pMove].equals(" ")) {
                 gameBoard[row][pMove] = playerToken;
+                board.play(pMove, side(playerToken));
                 break;
             }
         }
@@ -214,76 +238,28 @@ public class Connect4 implements Connect4Constants {
 
     /**
      * Helper method to check is there is a winner in the game by
-     * checking if a player got 4 in a row.
-     * Method will prompt when turnCount greater than or equal to 7.
+     * checking if a player got N in a row (four on a standard board).
+     * Method will prompt when enough tokens were played to win.
      * <p>
-     * @param pPlayerToken  Takes playerToken to check for four in a row
+     * @param pPlayerToken  Takes playerToken to check for N in a row
      *                      against the gameBoard.
      *
      */
     public void checkWinner(String pPlayerToken) {
 
-        if (turnCount >= 7) {
-            //horizontal check
-            for (String[] strings : gameBoard) {
-
-                for (int col = 0; col < gameBoard[0].length - 3; col++) {
-
-                    if (strings[col].equals(pPlayerToken) &&
-                            strings[col + 1].equals(pPlayerToken) &&
-                            strings[col + 2].equals(pPlayerToken) &&
-                            strings[col + 3].equals(pPlayerToken)) {
-
-                        winner = true;
-                        return;
-                    }
-                }
-            }
-            //vertical check
-            for (int row = 0; row < gameBoard.length - 3; row++) {
-
-                for (int col = 0; col < gameBoard[0].length; col++) {
-
-                    if (gameBoard[row][col].equals(pPlayerToken) &&
-                            gameBoard[row + 1][col].equals(pPlayerToken) &&
-                            gameBoard[row + 2][col].equals(pPlayerToken) &&
-                            gameBoard[row + 3][col].equals(pPlayerToken)) {
-
-                        winner = true;
-                        return;
-                    }
-                }
-            }
-            //diagonal-up right check
-            for (int row = 3; row < gameBoard.length; row++) {
-
-                for (int col = 0; col < gameBoard[0].length - 3; col++) {
-
-                    if (gameBoard[row][col].equals(pPlayerToken) &&
-                            gameBoard[row - 1][col + 1].equals(pPlayerToken) &&
-                            gameBoard[row - 2][col + 2].equals(pPlayerToken) &&
-                            gameBoard[row - 3][col + 3].equals(pPlayerToken)) {
-
-                        winner = true;
-                        return;
-                    }
-                }
-            }
-            //diagonal-down right check
-            for (int row = 0; row < gameBoard.length - 3; row++) {
-
-                for (int col = 0; col < gameBoard[0].length - 3; col++) {
-
-                    if (gameBoard[row][col].equals(pPlayerToken) &&
-                            gameBoard[row + 1][col + 1].equals(pPlayerToken) &&
-                            gameBoard[row + 2][col + 2].equals(pPlayerToken) &&
-                            gameBoard[row + 3][col + 3].equals(pPlayerToken)) {
-
-                        winner = true;
-                        return;
-                    }
-                }
+        if (turnCount >= 2 * variant.getConnect() - 1) {
+            if (board.hasLine(side(pPlayerToken))) {
+                winner = true;
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Finds the bitboard player of a token.
+     * @param pPlayerToken RED or YELLOW.
+     * @return int PLAYER1 for the player who moved first; PLAYER2 otherwise.
+     */
+    private int side(String pPlayerToken) {
+        return pPlayerToken.equals(firstToken) ? PLAYER1 : PLAYER2;
+    }
+}
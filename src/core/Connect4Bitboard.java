@@ -0,0 +1,335 @@
+package core;
+
+/**
+ * This is a compact bitboard representation of a Connect Four position used by
+ * the computer player's search.
+ * <p>
+ * Each column takes ROW + 1 bits: one bit per playable cell plus a sentinel
+ * bit on top, so a whole 6 x 7 board fits in a single <code>long</code>.
+ * Two words describe the position: <code>mask</code> holds every stone on the
+ * board and <code>current</code> holds the stones of the player to move.
+ * Moves are made and unmade in place so the search never allocates.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4Bitboard implements Connect4Constants {
+
+    /**
+     * Number of bits used by each column (playable cells plus sentinel).
+     */
+    static final int H1 = ROW + 1;
+    /**
+     * Total number of playable cells on the board.
+     */
+    static final int SIZE = ROW * COL;
+    /**
+     * Mask of the bottom cell of every column.
+     */
+    static final long BOTTOM_MASK = bottomMask();
+    /**
+     * Mask of every playable cell on the board.
+     */
+    static final long BOARD_MASK = BOTTOM_MASK * ((1L << ROW) - 1);
+
+    /**
+     * Stones of the player to move.
+     */
+    private long current;
+    /**
+     * Stones of both players.
+     */
+    private long mask;
+    /**
+     * Number of moves played since the beginning of the game.
+     */
+    private int moves;
+
+    /**
+     * Constructor for an empty board.
+     */
+    public Connect4Bitboard() {
+    }
+
+    /**
+     * Copy constructor.
+     * @param pOther position to copy.
+     */
+    public Connect4Bitboard(Connect4Bitboard pOther) {
+        this.current = pOther.current;
+        this.mask = pOther.mask;
+        this.moves = pOther.moves;
+    }
+
+    /**
+     * Clears the board for a new game.
+     */
+    public void reset() {
+        current = 0;
+        mask = 0;
+        moves = 0;
+    }
+
+    /**
+     * Accessor returns the number of moves played.
+     * @return int moves.
+     */
+    public int getMoves() {
+        return moves;
+    }
+
+    /**
+     * Accessor returns the stones of the player to move.
+     * @return long current.
+     */
+    public long getCurrent() {
+        return current;
+    }
+
+    /**
+     * Accessor returns the stones of both players.
+     * @return long mask.
+     */
+    public long getMask() {
+        return mask;
+    }
+
+    /**
+     * Unique key of the position.  Adding the mask to the current stones sets
+     * the first empty bit of every column, which keeps keys distinct.
+     * @return long key.
+     */
+    public long key() {
+        return current + mask;
+    }
+
+    /**
+     * Key shared by the position and its mirror image, the smaller of the
+     * two keys.  Mirrored positions have the same value, so tables indexed
+     * by this key need to hold only one of them.
+     * @return long canonical key.
+     */
+    public long canonicalKey() {
+        long key = key();
+        long mirrored = 0;
+        for (int col = 0; col < COL; col++) {
+            mirrored |= ((key >>> (col * H1)) & ((1L << H1) - 1)) << ((COL - 1 - col) * H1);
+        }
+        return Math.min(key, mirrored);
+    }
+
+    /**
+     * Boolean to check if a column has room for another token.
+     * @param pCol column between 0 and COL - 1.
+     * @return <code>true</code> if the column is not full;
+     *         <code>false</code> otherwise.
+     */
+    public boolean canPlay(int pCol) {
+        return (mask & topMask(pCol)) == 0;
+    }
+
+    /**
+     * Plays a token for the player to move in the given column.  The column
+     * must be playable.
+     * @param pCol column between 0 and COL - 1.
+     */
+    public void play(int pCol) {
+        current ^= mask;
+        mask |= mask + bottomMask(pCol);
+        moves++;
+    }
+
+    /**
+     * Takes back the last token played in the given column.
+     * @param pCol column the last move was played in.
+     */
+    public void undo(int pCol) {
+        mask ^= Long.highestOneBit(mask & columnMask(pCol));
+        current ^= mask;
+        moves--;
+    }
+
+    /**
+     * Boolean to check if the player who just moved has four in a row.
+     * @return <code>true</code> if the last move won the game;
+     *         <code>false</code> otherwise.
+     */
+    public boolean lastMoveWon() {
+        return alignment(current ^ mask);
+    }
+
+    /**
+     * Boolean to check if the board is full.
+     * @return <code>true</code> if no move is left;
+     *         <code>false</code> otherwise.
+     */
+    public boolean isFull() {
+        return moves >= SIZE;
+    }
+
+    /**
+     * Boolean to check if playing a column wins immediately.
+     * @param pCol playable column between 0 and COL - 1.
+     * @return <code>true</code> if the move wins;
+     *         <code>false</code> otherwise.
+     */
+    public boolean isWinningMove(int pCol) {
+        return (winningPositions() & possible() & columnMask(pCol)) != 0;
+    }
+
+    /**
+     * Boolean to check if the player to move can win with the next move.
+     * @return <code>true</code> if a winning move exists;
+     *         <code>false</code> otherwise.
+     */
+    public boolean canWinNext() {
+        return (winningPositions() & possible()) != 0;
+    }
+
+    /**
+     * Bitmap of the cells that can be played right now.
+     * @return long possible moves.
+     */
+    public long possible() {
+        return (mask + BOTTOM_MASK) & BOARD_MASK;
+    }
+
+    /**
+     * Bitmap of the playable cells that do not hand the opponent an immediate
+     * win.  Assumes the player to move cannot win right away.
+     * @return long non-losing moves, 0 if every move loses.
+     */
+    public long possibleNonLosingMoves() {
+        long possibleMask = possible();
+        long opponentWin = opponentWinningPositions();
+        long forced = possibleMask & opponentWin;
+        if (forced != 0) {
+            if ((forced & (forced - 1)) != 0) {
+                // opponent has two winning moves, cannot block both
+                return 0;
+            }
+            possibleMask = forced;
+        }
+        // avoid playing below an opponent winning cell
+        return possibleMask & ~(opponentWin >> 1);
+    }
+
+    /**
+     * Empty cells that would complete four in a row for the player to move.
+     * @return long winning cells.
+     */
+    public long winningPositions() {
+        return winningPositions(current, mask);
+    }
+
+    /**
+     * Empty cells that would complete four in a row for the opponent.
+     * @return long opponent winning cells.
+     */
+    public long opponentWinningPositions() {
+        return winningPositions(current ^ mask, mask);
+    }
+
+    /**
+     * Computes the empty cells completing an alignment of four for a player.
+     * @param pPosition stones of the player.
+     * @param pMask stones of both players.
+     * @return long winning cells.
+     */
+    static long winningPositions(long pPosition, long pMask) {
+        // vertical
+        long r = (pPosition << 1) & (pPosition << 2) & (pPosition << 3);
+
+        // horizontal
+        long p = (pPosition << H1) & (pPosition << 2 * H1);
+        r |= p & (pPosition << 3 * H1);
+        r |= p & (pPosition >> H1);
+        p = (pPosition >> H1) & (pPosition >> 2 * H1);
+        r |= p & (pPosition << H1);
+        r |= p & (pPosition >> 3 * H1);
+
+        // diagonal 1
+        p = (pPosition << ROW) & (pPosition << 2 * ROW);
+        r |= p & (pPosition << 3 * ROW);
+        r |= p & (pPosition >> ROW);
+        p = (pPosition >> ROW) & (pPosition >> 2 * ROW);
+        r |= p & (pPosition << ROW);
+        r |= p & (pPosition >> 3 * ROW);
+
+        // diagonal 2
+        p = (pPosition << (H1 + 1)) & (pPosition << 2 * (H1 + 1));
+        r |= p & (pPosition << 3 * (H1 + 1));
+        r |= p & (pPosition >> (H1 + 1));
+        p = (pPosition >> (H1 + 1)) & (pPosition >> 2 * (H1 + 1));
+        r |= p & (pPosition << (H1 + 1));
+        r |= p & (pPosition >> 3 * (H1 + 1));
+
+        return r & (BOARD_MASK ^ pMask);
+    }
+
+    /**
+     * Boolean to check if a set of stones contains four in a row.
+     * @param pPosition stones of one player.
+     * @return <code>true</code> if an alignment exists;
+     *         <code>false</code> otherwise.
+     */
+    static boolean alignment(long pPosition) {
+        // horizontal
+        long m = pPosition & (pPosition >> H1);
+        if ((m & (m >> 2 * H1)) != 0) {
+            return true;
+        }
+        // diagonal 1
+        m = pPosition & (pPosition >> ROW);
+        if ((m & (m >> 2 * ROW)) != 0) {
+            return true;
+        }
+        // diagonal 2
+        m = pPosition & (pPosition >> (H1 + 1));
+        if ((m & (m >> 2 * (H1 + 1))) != 0) {
+            return true;
+        }
+        // vertical
+        m = pPosition & (pPosition >> 1);
+        return (m & (m >> 2)) != 0;
+    }
+
+    /**
+     * Mask of the top cell of a column.
+     * @param pCol column between 0 and COL - 1.
+     * @return long top cell.
+     */
+    static long topMask(int pCol) {
+        return (1L << (ROW - 1)) << pCol * H1;
+    }
+
+    /**
+     * Mask of the bottom cell of a column.
+     * @param pCol column between 0 and COL - 1.
+     * @return long bottom cell.
+     */
+    static long bottomMask(int pCol) {
+        return 1L << pCol * H1;
+    }
+
+    /**
+     * Mask of every playable cell of a column.
+     * @param pCol column between 0 and COL - 1.
+     * @return long column cells.
+     */
+    static long columnMask(int pCol) {
+        return ((1L << ROW) - 1) << pCol * H1;
+    }
+
+    /**
+     * Builds the mask of the bottom cell of every column.
+     * @return long bottom row.
+     */
+    private static long bottomMask() {
+        long m = 0;
+        for (int col = 0; col < COL; col++) {
+            m |= bottomMask(col);
+        }
+        return m;
+    }
+}
@@ -0,0 +1,173 @@
+package core;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * This class draws the text game board.
+ * <p>
+ * The whole frame is built in one reusable StringBuilder and handed to the
+ * output in a single write, instead of one print call per cell.  The same
+ * renderer can draw to the console, optionally redrawing the board in place
+ * with ANSI escape codes, or stream boards to a log file or pipe, in which
+ * case frames are only flushed when the caller asks.
+ * <p>
+ * Required for Functionality:
+ * <ul>
+ * <li>Connect4.java
+ * <li>Connect4Constants.java
+ * </ul>
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4BoardRenderer implements Connect4Constants {
+
+    /**
+     * System property turning on ANSI in-place redraw for the console.
+     */
+    public static final String ANSI_PROPERTY = "connect4.ansi";
+
+    /**
+     * ANSI escape codes to move the cursor home and clear the screen.
+     */
+    private static final String ANSI_REDRAW = "\u001B[H\u001B[2J";
+    /**
+     * Separator line drawn above and below the column numbers.
+     */
+    private static final String RULE = "----------------------";
+    /**
+     * Column numbers drawn above the board.
+     */
+    private static final String HEADER = "  1  2  3  4  5  6  7 ";
+
+    /**
+     * Destination of the frames.
+     */
+    private final Writer out;
+    /**
+     * Boolean to redraw the board in place with ANSI escape codes.
+     */
+    private final boolean ansi;
+    /**
+     * Boolean to flush the output after every frame.
+     */
+    private final boolean autoFlush;
+    /**
+     * Line separator of the platform.
+     */
+    private final String newLine = System.lineSeparator();
+    /**
+     * Reusable buffer holding the frame being built.
+     */
+    private final StringBuilder frame = new StringBuilder(256);
+    /**
+     * Reusable array the frame is copied into for writing.
+     */
+    private char[] chars = new char[256];
+    /**
+     * Separator line of the board drawn last; RULE for a standard board.
+     */
+    private String rule = RULE;
+    /**
+     * Column numbers of the board drawn last; HEADER for a standard board.
+     */
+    private String header = HEADER;
+
+    /**
+     * Constructor to make a renderer.
+     * @param pOut destination of the frames, buffer it for files and pipes.
+     * @param pAnsi <code>true</code> to redraw the board in place.
+     * @param pAutoFlush <code>true</code> to flush after every frame.
+     */
+    public Connect4BoardRenderer(Writer pOut, boolean pAnsi, boolean pAutoFlush) {
+        this.out = pOut;
+        this.ansi = pAnsi;
+        this.autoFlush = pAutoFlush;
+    }
+
+    /**
+     * Makes a renderer drawing to System.out, flushing every frame.  ANSI
+     * redraw is on when the connect4.ansi system property is true.
+     * @return Connect4BoardRenderer console renderer.
+     */
+    public static Connect4BoardRenderer console() {
+        return new Connect4BoardRenderer(new OutputStreamWriter(System.out),
+                Boolean.getBoolean(ANSI_PROPERTY), true);
+    }
+
+    /**
+     * Draws a board followed by a status line in a single write.
+     * @param pBoard game board, rows of cells, normally ROW rows of COL cells.
+     * @param pStatus line drawn under the board, or null for none.
+     */
+    public void render(String[][] pBoard, String pStatus) {
+        format(pBoard, pStatus);
+        int length = frame.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        frame.getChars(0, length, chars, 0);
+        try {
+            out.write(chars, 0, length);
+            if (autoFlush) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flushes frames written without auto flush.
+     */
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Builds a frame in the reusable buffer.
+     * @param pBoard game board, rows of cells, normally ROW rows of COL cells.
+     * @param pStatus line drawn under the board, or null for none.
+     * @return StringBuilder the frame, valid until the next call.
+     */
+    StringBuilder format(String[][] pBoard, String pStatus) {
+        frame.setLength(0);
+        if (ansi) {
+            frame.append(ANSI_REDRAW);
+        }
+        int width = pBoard.length > 0 ? pBoard[0].length : COL;
+        if (rule.length() != 3 * width + 1) {
+            // a board of another variant; the labels are rebuilt once per size
+            StringBuilder line = new StringBuilder();
+            StringBuilder numbers = new StringBuilder();
+            for (int col = 1; col <= width; col++) {
+                line.append("---");
+                numbers.append(col < 10 ? "  " : " ").append(col);
+            }
+            rule = line.append('-').toString();
+            header = numbers.append(' ').toString();
+        }
+        frame.append(rule).append(newLine)
+                .append(header).append(newLine)
+                .append(rule).append(newLine);
+
+        for (String[] row : pBoard) {
+            for (String cell : row) {
+                frame.append("| ").append(cell);
+            }
+            frame.append('|').append(newLine);
+        }
+
+        if (pStatus != null) {
+            frame.append(pStatus).append(newLine);
+        }
+        return frame;
+    }
+}
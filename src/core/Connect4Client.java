@@ -62,6 +62,10 @@ public class Connect4Client extends Application implements Connect4Constants {
      * Indicate selected column by the current move.
      */
     private int colSelected;
+    /**
+     * Cell marked by the current move, cleared if the server refuses it.
+     */
+    private Cell cellSelected;
     /**
      * Input stream from/to server.
      */
@@ -73,7 +77,7 @@ public class Connect4Client extends Application implements Connect4Constants {
     /**
      * Flag to continue to play.
      */
-    private boolean proceed = true;
+    private volatile boolean proceed = true;
     /**
      * Wait for the player to mark a cell.
      */
@@ -111,14 +115,16 @@ public class Connect4Client extends Application implements Connect4Constants {
     }
 
     /**
-     * Method to connect to server.
+     * Method to connect to server.  The named parameters --host and --port
+     * choose the server; port 8002 plays against the server's computer.
      */
     private void connectToServer() {
         try {
             // Create a socket to connect to the server
             /**Host name or ip. */
-            String host = "localhost";
-            Socket socket = new Socket(host, 8000);
+            String host = getParameters().getNamed().getOrDefault("host", "localhost");
+            int port = Integer.parseInt(getParameters().getNamed().getOrDefault("port", "8000"));
+            Socket socket = new Socket(host, port);
 
             // Receives data from the server
             dIS = new DataInputStream(socket.getInputStream());
@@ -129,6 +135,8 @@ public class Connect4Client extends Application implements Connect4Constants {
             ex.printStackTrace();
         }
 
+        startHeartbeat();
+
         // Control the game on a separate thread
         new Thread(() -> {
             try {
@@ -198,7 +206,36 @@ public class Connect4Client extends Application implements Connect4Constants {
      * @throws IOException IOException
      */
     private void sendMove() throws IOException {
-        dOS.writeInt(colSelected);
+        synchronized (dOS) {
+            dOS.writeInt(colSelected);
+        }
+    }
+
+    /**
+     * Method to keep the connection alive while the player thinks, so the
+     * server's idle limit only closes connections that are really gone.
+     * The interval is read from the system property
+     * <code>connect4.heartbeat</code> in seconds (default 15, 0 for none).
+     */
+    private void startHeartbeat() {
+        long interval = Long.getLong("connect4.heartbeat", 15) * 1000;
+        if (dOS == null || interval <= 0) {
+            return;
+        }
+        Thread heartbeat = new Thread(() -> {
+            try {
+                while (proceed) {
+                    Thread.sleep(interval);
+                    synchronized (dOS) {
+                        dOS.writeInt(HEARTBEAT);
+                    }
+                }
+            } catch (InterruptedException | IOException ex) {
+                // the game is over or the connection is gone
+            }
+        }, "Connect4-heartbeat");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
     }
 
 
@@ -239,6 +276,14 @@ public class Connect4Client extends Application implements Connect4Constants {
             if (myToken.equals(YELLOW)) {
                 receiveMove();
             }
+        } else if (status == INVALID) {
+            // The server refused the move, take it back and play again
+            Cell refused = cellSelected;
+            Platform.runLater(() -> {
+                refused.setToken(" ");
+                this.status.setText("Invalid move, play again");
+            });
+            myTurn = true;
         } else {
             receiveMove();
             Platform.runLater(() -> this.status.setText("My turn"));
@@ -291,6 +336,7 @@ public class Connect4Client extends Application implements Connect4Constants {
                 setToken(myToken);  // Set player's token in cell
                 myTurn = false;
                 colSelected = column;
+                cellSelected = this;
                 status.setText("Waiting on opponent's move");
                 waiting = false; // Just completed a successful move
             }
@@ -310,6 +356,7 @@ public class Connect4Client extends Application implements Connect4Constants {
          */
         public void setToken(String s) {
             token = s;
+            getChildren().clear();
             repaint();
         }
 
@@ -1,11 +1,19 @@
 package core;
 
-import java.util.Random;
+import java.io.File;
+import java.io.IOException;
 
 /**
  *  This is the implementation of Connect Four computer player.
  *  This class handles the pseudo-AI components of the program when playing against the computer.
  *  <p>
+ *  Every token dropped on the board is mirrored on a Connect4Bitboard, which
+ *  the computer searches with Connect4Search to pick its move.  While the
+ *  human is thinking the computer can ponder on the human's possible replies.
+ *  With the mcts engine, and on any board other than 6x7, tokens are mirrored
+ *  on a Connect4NBoard instead and moves come from Connect4MonteCarlo; there
+ *  is no pondering then.
+ *  <p>
  *  Required for Functionality:
  *  <ul>
  *  <li>Connect4TextConsole.java
@@ -17,18 +25,97 @@ import java.util.Random;
 */
 public class Connect4ComputerPlayer extends Connect4 {
 
+    /**
+     * Default time the computer spends on a move, in milliseconds.
+     */
+    public static final long DEFAULT_MOVE_TIME = 500;
+
     /**
      * Computer move variable to hold the col selected by the computer.
      */
     private int compMove;
 
     /**
-     * Randomly generates a valid move to be played on the game board by computer player.
+     * Bitboard copy of the game board searched by the computer.
+     */
+    private final Connect4Bitboard position = new Connect4Bitboard();
+
+    /**
+     * Search used to choose the computer's moves, null with Monte Carlo.
+     */
+    private final Connect4Search search;
+
+    /**
+     * Pondering on the human's time, off until enabled; null with Monte
+     * Carlo.
+     */
+    private final Connect4Ponder ponder;
+
+    /**
+     * Monte Carlo search used to choose the computer's moves, null with
+     * alpha-beta.
+     */
+    private final Connect4MonteCarlo monteCarlo;
+
+    /**
+     * Copy of the game board searched by the Monte Carlo search, null with
+     * alpha-beta.
+     */
+    private final Connect4NBoard variantPosition;
+
+    /**
+     * Constructor to initialize the board and the computer's search.
+     */
+    public Connect4ComputerPlayer() {
+        this(new Connect4EngineConfig("computer"));
+    }
+
+    /**
+     * Constructor to initialize the board and a search with the given settings.
+     * @param pConfig search limits and table size of the computer.
+     */
+    public Connect4ComputerPlayer(Connect4EngineConfig pConfig) {
+        this(pConfig, Connect4Variant.STANDARD);
+    }
+
+    /**
+     * Constructor to initialize a board of any size and the computer's
+     * search.  Boards other than 6x7 are played with Monte Carlo tree
+     * search.
+     * @param pConfig engine and limits of the computer.
+     * @param pVariant rows, columns and tokens in a row needed to win.
+     */
+    public Connect4ComputerPlayer(Connect4EngineConfig pConfig, Connect4Variant pVariant) {
+        super(pVariant);
+        if (pConfig.isMonteCarlo() || !pVariant.equals(Connect4Variant.STANDARD)) {
+            search = null;
+            ponder = null;
+            monteCarlo = pConfig.newMonteCarlo(Connect4Rules.parse("classic:" + pVariant));
+            variantPosition = pVariant.newBoard();
+        } else {
+            search = pConfig.newSearch();
+            ponder = new Connect4Ponder(search);
+            monteCarlo = null;
+            variantPosition = null;
+        }
+    }
+
+    /**
+     * Chooses the move to be played on the game board by computer player.
+     * Uses the pondered answer when the human played the expected move.
      */
     public void computerPlayer() {
 
-        Random rand = new Random();
-        compMove = rand.nextInt(7);
+        int move;
+        if (monteCarlo != null) {
+            move = monteCarlo.bestMove(variantPosition);
+        } else {
+            move = ponder.take(position);
+            if (move < 0) {
+                move = search.bestMove(position);
+            }
+        }
+        compMove = move;
         System.out.println("Computer played at column " + (compMove + 1) + ".");
     }
 
@@ -41,5 +128,113 @@ public class Connect4ComputerPlayer extends Connect4 {
         return compMove;
     }
 
+    /**
+     * Adds token to the game board and to the computer's bitboard.
+     * <p>
+     * @param pPlayerToken Takes playerToken to add to gameBoard.
+     * @param pMove Takes move to add token to correct column.
+     */
+    @Override
+    public void dropToken(String pPlayerToken, int pMove) {
+        super.dropToken(pPlayerToken, pMove);
+        if (variantPosition != null) {
+            if (variantPosition.canPlay(pMove)) {
+                variantPosition.play(pMove);
+            }
+        } else if (position.canPlay(pMove)) {
+            position.play(pMove);
+        }
+    }
+
+    /**
+     * Boolean to check if the game is over on the computer's board.
+     * @return <code> true </code> if the last move won or the board is full;
+     *         <code> false </code> otherwise.
+     */
+    public boolean isGameOver() {
+        if (variantPosition != null) {
+            return variantPosition.getMoves() > 0 && variantPosition.lastMoveWon() || variantPosition.isFull();
+        }
+        return position.lastMoveWon() || position.isFull();
+    }
+
+    /**
+     * Starts searching the human's possible replies in the background.
+     * Call when it is the human's turn; does nothing if pondering is off.
+     */
+    public void startPondering() {
+        if (ponder != null) {
+            ponder.start(position);
+        }
+    }
+
+    /**
+     * Stops pondering, e.g. when the game ends.
+     */
+    public void stopPondering() {
+        if (ponder != null) {
+            ponder.stop();
+        }
+    }
+
+    /**
+     * Mutator sets the pondering mode.
+     * @param pMode OFF, PREDICTED or ALL.
+     */
+    public void setPonderMode(Connect4Ponder.Mode pMode) {
+        if (ponder != null) {
+            ponder.setMode(pMode);
+        }
+    }
+
+    /**
+     * Accessor returns the ponderer, which tracks hit rate and saved time.
+     * @return Connect4Ponder ponder, null with Monte Carlo.
+     */
+    public Connect4Ponder getPonder() {
+        return ponder;
+    }
+
+    /**
+     * Accessor returns the computer's search, to adjust its limits.
+     * @return Connect4Search search, null with Monte Carlo.
+     */
+    public Connect4Search getSearch() {
+        return search;
+    }
+
+    /**
+     * Warm-starts the computer's transposition table from a snapshot file,
+     * if there is one, and saves the table back to it when the program
+     * exits.  Does nothing with Monte Carlo.
+     * @param pFile snapshot file.
+     * @throws IOException if the file exists but cannot be loaded; the table
+     *         is still saved on exit.
+     */
+    public void persistTable(File pFile) throws IOException {
+        if (search == null) {
+            return;
+        }
+        Connect4TranspositionTable table = search.getTable();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                table.save(pFile);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }));
+        if (pFile.isFile()) {
+            table.load(pFile);
+        }
+    }
+
+    /**
+     * Accessor returns the computer's Monte Carlo search, to adjust its
+     * limits or read its playouts per second.
+     * @return Connect4MonteCarlo search, null with alpha-beta.
+     */
+    public Connect4MonteCarlo getMonteCarlo() {
+        return monteCarlo;
+    }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,264 @@
+package core;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is the server's side of one player's connection.
+ * <p>
+ * Reading a move is bounded in time without a thread or a socket timeout of
+ * its own: while the session waits, a timeout on the shared
+ * Connect4TimerWheel is pending, and if it fires the socket is closed, which
+ * ends the blocked read.  The timeout is the idle limit, restarted by every
+ * HEARTBEAT the client sends, or the player's game clock when that is
+ * shorter; the caller learns which one ran out.
+ * <p>
+ * Input is rate limited with a token bucket: a client sending faster than
+ * the configured rate, after its burst, is simply read later.  The session
+ * thread sleeps instead of spinning on the input, the client's writes back
+ * up into its own socket buffer, and its clock keeps running, so a flooding
+ * client costs no processor time and only delays its own game.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4Connection implements Closeable, Connect4Constants {
+
+    /**
+     * Value returned by readMove() when the player's clock ran out.
+     */
+    public static final int TIME_OUT = Integer.MIN_VALUE;
+    /**
+     * Size of an encoded move: status, row and column.
+     */
+    public static final int MOVE_BYTES = 3 * Integer.BYTES;
+
+    /**
+     * Reason code: the socket is open.
+     */
+    private static final int OPEN = 0;
+    /**
+     * Reason code: closed after the idle limit.
+     */
+    private static final int IDLE = 1;
+    /**
+     * Reason code: closed after the clock ran out.
+     */
+    private static final int CLOCK = 2;
+
+    /**
+     * Socket of the player.
+     */
+    private final Socket socket;
+    /**
+     * Input stream of the player.
+     */
+    private final DataInputStream in;
+    /**
+     * Output stream of the player.
+     */
+    private final DataOutputStream out;
+    /**
+     * Timer of the read timeouts, null for no timeouts.
+     */
+    private final Connect4TimerWheel timer;
+    /**
+     * Idle limit in milliseconds, 0 for none.
+     */
+    private final long idleMillis;
+    /**
+     * Messages allowed per second, 0 for no limit.
+     */
+    private final double rate;
+    /**
+     * Most tokens the bucket holds.
+     */
+    private final int burst;
+    /**
+     * Metrics to count throttled reads in.
+     */
+    private final Connect4ServerMetrics metrics;
+    /**
+     * Tokens in the bucket; a message takes one.
+     */
+    private double tokens;
+    /**
+     * Time the bucket was last refilled.
+     */
+    private long refillTime = System.nanoTime();
+    /**
+     * Why the timer closed the socket.
+     */
+    private volatile int closedBy = OPEN;
+
+    /**
+     * Constructor for a connection.
+     * @param pSocket socket of the player.
+     * @param pTimer timer of the read timeouts, null for no timeouts.
+     * @param pConfig idle limit and input rate of the session.
+     * @param pMetrics metrics to count throttled reads in.
+     * @throws IOException if the streams cannot be opened.
+     */
+    public Connect4Connection(Socket pSocket, Connect4TimerWheel pTimer, Connect4SessionConfig pConfig,
+                              Connect4ServerMetrics pMetrics) throws IOException {
+        this.socket = pSocket;
+        this.in = new DataInputStream(pSocket.getInputStream());
+        this.out = new DataOutputStream(pSocket.getOutputStream());
+        this.timer = pTimer;
+        this.idleMillis = pConfig.getIdleMillis();
+        this.rate = pConfig.getRate();
+        this.burst = pConfig.getBurst();
+        this.tokens = burst;
+        this.metrics = pMetrics;
+    }
+
+    /**
+     * Accessor returns the output stream to the player.
+     * @return DataOutputStream output stream.
+     */
+    public DataOutputStream getOutput() {
+        return out;
+    }
+
+    /**
+     * Accessor returns the address of the player.
+     * @return String host address.
+     */
+    public String getAddress() {
+        return socket.getInetAddress().getHostAddress();
+    }
+
+    /**
+     * Reads the next move, skipping heartbeats.
+     * @param pClockMillis time left on the player's clock, negative for no clock.
+     * @return int value sent, or TIME_OUT if the clock ran out.
+     * @throws SocketTimeoutException if the player sent nothing within the idle limit.
+     * @throws IOException if the connection is lost.
+     */
+    public int readMove(long pClockMillis) throws IOException {
+        long start = System.nanoTime();
+        while (true) {
+            long limit = idleMillis;
+            int reason = IDLE;
+            if (pClockMillis >= 0) {
+                long left = pClockMillis - (System.nanoTime() - start) / 1_000_000L;
+                if (left <= 0) {
+                    close();
+                    return TIME_OUT;
+                }
+                if (limit == 0 || left < limit) {
+                    limit = left;
+                    reason = CLOCK;
+                }
+            }
+
+            Connect4TimerWheel.Timeout timeout = null;
+            if (timer != null && limit > 0) {
+                final int why = reason;
+                timeout = timer.schedule(() -> expire(why), limit);
+            }
+            int value;
+            try {
+                value = in.readInt();
+            } catch (IOException e) {
+                if (closedBy == CLOCK) {
+                    return TIME_OUT;
+                } else if (closedBy == IDLE) {
+                    throw new SocketTimeoutException("No input for " + idleMillis + " ms");
+                }
+                throw e;
+            } finally {
+                if (timeout != null) {
+                    timeout.cancel();
+                }
+            }
+            if (closedBy == CLOCK) {
+                // arrived as the clock ran out
+                return TIME_OUT;
+            } else if (closedBy == IDLE) {
+                throw new SocketTimeoutException("No input for " + idleMillis + " ms");
+            }
+            throttle();
+            if (value != HEARTBEAT) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Takes a token for a message read, waiting for the bucket to refill if
+     * the client is over its rate.
+     * @throws InterruptedIOException if interrupted while waiting.
+     */
+    private void throttle() throws InterruptedIOException {
+        if (rate <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refillTime) * rate / 1e9) - 1;
+        refillTime = now;
+        if (tokens < 0) {
+            metrics.inputThrottled();
+            try {
+                TimeUnit.NANOSECONDS.sleep((long) (-tokens / rate * 1e9));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling input");
+            }
+        }
+    }
+
+    /**
+     * Encodes a move as the opponent and the spectators receive it, so it
+     * goes out in one write instead of three small segments.
+     * @param pStatus status after the move.
+     * @param pRow row of the move, -1 if the game was forfeited.
+     * @param pColumn column of the move, -1 if the game was forfeited.
+     * @return byte[] message.
+     */
+    public static byte[] encodeMove(int pStatus, int pRow, int pColumn) {
+        return ByteBuffer.allocate(MOVE_BYTES).putInt(pStatus).putInt(pRow).putInt(pColumn).array();
+    }
+
+    /**
+     * Timer task: closes the socket to end a blocked read.
+     * @param pReason IDLE or CLOCK.
+     */
+    private void expire(int pReason) {
+        closedBy = pReason;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closing is best effort; the read fails either way
+        }
+    }
+
+    /**
+     * Closes a socket at the end of a session, reporting but not throwing
+     * a failure.
+     * @param pSocket socket to close.
+     */
+    static void closeQuietly(Socket pSocket) {
+        try {
+            pSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes the connection.
+     * @throws IOException if the socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
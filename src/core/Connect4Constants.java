@@ -49,6 +49,10 @@ public interface Connect4Constants {
       * Designate invalid move to send to client
       */
      final static int INVALID = 5;
+     /**
+      * Holds client prompt to keep an idle connection alive; never a column
+      */
+     final static int HEARTBEAT = -1;
      /**
       * Holds color and token association for Red and X
       */
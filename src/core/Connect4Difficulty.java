@@ -0,0 +1,110 @@
+package core;
+
+import java.util.Locale;
+
+/**
+ * This is the set of levels the computer player can play at.
+ * <p>
+ * A level caps the depth and the nodes of every search, and adds move
+ * noise: the chance of playing a random move that does not lose at once
+ * instead of the best one.  The node budget bounds the work of a move, so
+ * an easy move costs a few hundred nodes whatever the position or the
+ * machine, and a server can play many easy games for the price of one
+ * expert game.  Only EXPERT is limited by the move time alone.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public enum Connect4Difficulty {
+
+    /** Looks two plies ahead and often plays a random safe move. */
+    EASY(2, 200, 0.25),
+    /** Looks a few plies ahead and sometimes plays a random safe move. */
+    MEDIUM(5, 5_000, 0.08),
+    /** Searches deep within a fixed budget and always plays its best move. */
+    HARD(12, 200_000, 0),
+    /** Searches until the move time runs out. */
+    EXPERT(Connect4Bitboard.SIZE, 0, 0);
+
+    /**
+     * Maximum search depth in plies.
+     */
+    private final int maxDepth;
+    /**
+     * Nodes allowed for one move, 0 for no limit.
+     */
+    private final long maxNodes;
+    /**
+     * Chance of playing a random safe move.
+     */
+    private final double noise;
+
+    /**
+     * Constructor for a level.
+     * @param pMaxDepth maximum search depth in plies.
+     * @param pMaxNodes nodes allowed for one move, 0 for no limit.
+     * @param pNoise chance of playing a random safe move.
+     */
+    Connect4Difficulty(int pMaxDepth, long pMaxNodes, double pNoise) {
+        this.maxDepth = pMaxDepth;
+        this.maxNodes = pMaxNodes;
+        this.noise = pNoise;
+    }
+
+    /**
+     * Finds a level by name, ignoring case.
+     * @param pName easy, medium, hard or expert.
+     * @return Connect4Difficulty level.
+     * @throws IllegalArgumentException if there is no such level.
+     */
+    public static Connect4Difficulty parse(String pName) {
+        try {
+            return valueOf(pName.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown difficulty: " + pName, e);
+        }
+    }
+
+    /**
+     * Applies the limits of this level to a search.
+     * @param pSearch search to configure.
+     */
+    public void apply(Connect4Search pSearch) {
+        pSearch.setMaxDepth(maxDepth);
+        pSearch.setMaxNodes(maxNodes);
+        pSearch.setNoise(noise);
+    }
+
+    /**
+     * Accessor returns the maximum search depth.
+     * @return int maxDepth.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Accessor returns the nodes allowed for one move.
+     * @return long maxNodes, 0 for no limit.
+     */
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Accessor returns the chance of playing a random safe move.
+     * @return double noise.
+     */
+    public double getNoise() {
+        return noise;
+    }
+
+    /**
+     * Describes the level in the form parse() reads.
+     * @return String lower case name.
+     */
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
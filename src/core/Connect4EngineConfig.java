@@ -0,0 +1,333 @@
+package core;
+
+import java.util.Locale;
+
+/**
+ * This class holds the settings of one computer player configuration: search
+ * limits and transposition table size.
+ * <p>
+ * A configuration can be written as a comma separated list of settings, for
+ * example <code>depth=8,time=0,hash=20</code>, so tools such as the self-play
+ * runner can compare two configurations given on the command line.
+ * <ul>
+ * <li>depth - maximum search depth in plies
+ * <li>time - move time in milliseconds, 0 for no limit
+ * <li>hash - base 2 logarithm of the transposition table entries
+ * <li>engine - alphabeta for Connect4Search (default) or mcts for
+ *     Connect4MonteCarlo; Connect4ComputerPlayer plays mcts on boards other
+ *     than 6x7 either way.  Only Connect4ComputerPlayer plays mcts: the
+ *     engine pool and self-play reject it
+ * <li>threads - workers of the mcts engine (default: one per processor)
+ * <li>nodes - base 2 logarithm of the mcts engine's node pool
+ * <li>budget - nodes the alphabeta engine may search per move, 0 for no limit
+ * <li>noise - chance between 0 and 1 that the alphabeta engine plays a
+ *     random safe move instead of its best one
+ * <li>level - easy, medium, hard or expert: sets depth, budget and noise to
+ *     those of the Connect4Difficulty, which later settings can override
+ * <li>driver - full, bisection or mtdf: how Connect4Search drives the root,
+ *     see Connect4Search.Driver
+ * </ul>
+ * depth, hash, budget, noise and driver only apply to alphabeta, threads and nodes
+ * to mcts.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4EngineConfig {
+
+    /**
+     * Name used when reporting on this configuration.
+     */
+    private String name;
+    /**
+     * Maximum search depth in plies.
+     */
+    private int maxDepth = Connect4Bitboard.SIZE;
+    /**
+     * Time allowed for one move in milliseconds, 0 for no limit.
+     */
+    private long moveTimeMillis = Connect4ComputerPlayer.DEFAULT_MOVE_TIME;
+    /**
+     * Base 2 logarithm of the number of transposition table entries.
+     */
+    private int tableLog2Size = Connect4TranspositionTable.DEFAULT_LOG2_SIZE;
+    /**
+     * Whether the computer plays with Monte Carlo tree search.
+     */
+    private boolean monteCarlo;
+    /**
+     * Workers of the Monte Carlo search.
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+    /**
+     * Base 2 logarithm of the number of nodes of the Monte Carlo search.
+     */
+    private int nodesLog2Size = Connect4MonteCarlo.DEFAULT_LOG2_NODES;
+    /**
+     * Nodes the search may visit for one move, 0 for no limit.
+     */
+    private long maxNodes;
+    /**
+     * Chance of playing a random safe move instead of the best one.
+     */
+    private double noise;
+    /**
+     * How the search drives the root.
+     */
+    private Connect4Search.Driver driver = Connect4Search.Driver.FULL;
+
+    /**
+     * Constructor for the default configuration.
+     * @param pName name used in reports.
+     */
+    public Connect4EngineConfig(String pName) {
+        this.name = pName;
+    }
+
+    /**
+     * Builds a configuration from a comma separated list of settings.
+     * @param pName name used in reports.
+     * @param pSpec settings such as "depth=8,time=0,hash=20"; may be empty.
+     * @return Connect4EngineConfig parsed configuration.
+     * @throws IllegalArgumentException if a setting is unknown or malformed.
+     */
+    public static Connect4EngineConfig parse(String pName, String pSpec) {
+        Connect4EngineConfig config = new Connect4EngineConfig(pName);
+        for (String setting : pSpec.split(",")) {
+            if (setting.trim().isEmpty()) {
+                continue;
+            }
+            String[] pair = setting.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected key=value: " + setting);
+            }
+            config.set(pair[0].trim(), pair[1].trim());
+        }
+        return config;
+    }
+
+    /**
+     * Changes one setting by name.
+     * @param pKey setting name.
+     * @param pValue setting value.
+     * @throws IllegalArgumentException if the setting is unknown or malformed.
+     */
+    public void set(String pKey, String pValue) {
+        try {
+            switch (pKey) {
+                case "depth":
+                    setMaxDepth(Integer.parseInt(pValue));
+                    break;
+                case "time":
+                    setMoveTimeMillis(Long.parseLong(pValue));
+                    break;
+                case "hash":
+                    setTableLog2Size(Integer.parseInt(pValue));
+                    break;
+                case "engine":
+                    if (!pValue.equals("alphabeta") && !pValue.equals("mcts")) {
+                        throw new IllegalArgumentException("Bad value for engine: " + pValue);
+                    }
+                    monteCarlo = pValue.equals("mcts");
+                    break;
+                case "threads":
+                    threads = Math.max(1, Integer.parseInt(pValue));
+                    break;
+                case "nodes":
+                    nodesLog2Size = Integer.parseInt(pValue);
+                    break;
+                case "budget":
+                    setMaxNodes(Long.parseLong(pValue));
+                    break;
+                case "noise":
+                    setNoise(Double.parseDouble(pValue));
+                    break;
+                case "level":
+                    setDifficulty(Connect4Difficulty.parse(pValue));
+                    break;
+                case "driver":
+                    try {
+                        driver = Connect4Search.Driver.valueOf(pValue.toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Bad value for driver: " + pValue, e);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown engine setting: " + pKey);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad value for " + pKey + ": " + pValue, e);
+        }
+    }
+
+    /**
+     * Makes a search with its own transposition table using this configuration.
+     * @return Connect4Search configured search.
+     */
+    public Connect4Search newSearch() {
+        Connect4Search search = new Connect4Search(new Connect4TranspositionTable(tableLog2Size));
+        apply(search);
+        return search;
+    }
+
+    /**
+     * Makes a Monte Carlo search with its own node pool using this
+     * configuration.
+     * @param pRules rules of the game searched.
+     * @return Connect4MonteCarlo configured search.
+     */
+    public Connect4MonteCarlo newMonteCarlo(Connect4Rules pRules) {
+        Connect4MonteCarlo search = new Connect4MonteCarlo(pRules, threads, nodesLog2Size);
+        search.setMoveTimeMillis(moveTimeMillis);
+        return search;
+    }
+
+    /**
+     * Applies the search limits of this configuration to a search.
+     * @param pSearch search to configure.
+     */
+    public void apply(Connect4Search pSearch) {
+        pSearch.setMaxDepth(maxDepth);
+        pSearch.setMoveTimeMillis(moveTimeMillis);
+        pSearch.setMaxNodes(maxNodes);
+        pSearch.setNoise(noise);
+        pSearch.setDriver(driver);
+    }
+
+    /**
+     * Accessor returns the configuration name.
+     * @return String name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Accessor returns the maximum search depth.
+     * @return int maxDepth.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Mutator sets the maximum search depth.
+     * @param pMaxDepth depth in plies, at least 1.
+     */
+    public void setMaxDepth(int pMaxDepth) {
+        this.maxDepth = Math.max(1, pMaxDepth);
+    }
+
+    /**
+     * Accessor returns the move time.
+     * @return long moveTimeMillis.
+     */
+    public long getMoveTimeMillis() {
+        return moveTimeMillis;
+    }
+
+    /**
+     * Mutator sets the move time.
+     * @param pMoveTimeMillis time in milliseconds, 0 for no limit.
+     */
+    public void setMoveTimeMillis(long pMoveTimeMillis) {
+        this.moveTimeMillis = Math.max(0, pMoveTimeMillis);
+    }
+
+    /**
+     * Accessor returns the transposition table size.
+     * @return int tableLog2Size.
+     */
+    public int getTableLog2Size() {
+        return tableLog2Size;
+    }
+
+    /**
+     * Mutator sets the transposition table size.
+     * @param pTableLog2Size base 2 logarithm of the number of entries.
+     */
+    public void setTableLog2Size(int pTableLog2Size) {
+        this.tableLog2Size = pTableLog2Size;
+    }
+
+    /**
+     * Mutator sets the depth, node budget and noise of a level of play.
+     * @param pLevel level whose limits are copied.
+     */
+    public void setDifficulty(Connect4Difficulty pLevel) {
+        setMaxDepth(pLevel.getMaxDepth());
+        setMaxNodes(pLevel.getMaxNodes());
+        setNoise(pLevel.getNoise());
+    }
+
+    /**
+     * Accessor returns the nodes the search may visit for one move.
+     * @return long maxNodes, 0 for no limit.
+     */
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Mutator sets the nodes the search may visit for one move.
+     * @param pMaxNodes nodes, 0 for no limit.
+     */
+    public void setMaxNodes(long pMaxNodes) {
+        this.maxNodes = Math.max(0, pMaxNodes);
+    }
+
+    /**
+     * Accessor returns the move noise.
+     * @return double noise.
+     */
+    public double getNoise() {
+        return noise;
+    }
+
+    /**
+     * Mutator sets the move noise.
+     * @param pNoise chance between 0 and 1 of a random safe move.
+     */
+    public void setNoise(double pNoise) {
+        this.noise = Math.max(0, Math.min(1, pNoise));
+    }
+
+    /**
+     * Accessor returns how the search drives the root.
+     * @return Connect4Search.Driver driver.
+     */
+    public Connect4Search.Driver getDriver() {
+        return driver;
+    }
+
+    /**
+     * Boolean to check if the computer plays with Monte Carlo tree search.
+     * @return <code>true</code> if the engine is mcts;
+     *         <code>false</code> otherwise.
+     */
+    public boolean isMonteCarlo() {
+        return monteCarlo;
+    }
+
+    /**
+     * Accessor returns the workers of the Monte Carlo search.
+     * @return int threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Describes the configuration in the same form parse() reads.
+     * @return String name and settings.
+     */
+    @Override
+    public String toString() {
+        return name + " (depth=" + maxDepth + ",time=" + moveTimeMillis
+                + ",hash=" + tableLog2Size
+                + (maxNodes > 0 ? ",budget=" + maxNodes : "") + (noise > 0 ? ",noise=" + noise : "")
+                + (driver != Connect4Search.Driver.FULL
+                        ? ",driver=" + driver.name().toLowerCase(Locale.ROOT) : "")
+                + (monteCarlo ? ",engine=mcts,threads=" + threads + ",nodes=" + nodesLog2Size : "") + ")";
+    }
+}
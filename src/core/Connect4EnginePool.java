@@ -0,0 +1,285 @@
+package core;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is the pool of engines that plays the server's computer opponents.
+ * <p>
+ * Sessions do not own an engine.  They submit a copy of their position with
+ * a time budget and get the move back as a future.  A fixed number of worker
+ * threads each keep one Connect4Search, and every search shares one
+ * transposition table and one opening book, so a position analysed for one
+ * game speeds up all the others instead of being searched again per game.
+ * The table is safe to share without locks because every entry is a single
+ * <code>long</code> and moves read from it are checked before they are
+ * played.
+ * <p>
+ * The request queue is bounded.  When it is full, or when a request has
+ * waited so long that its budget is spent, the move is chosen at once by a
+ * shallow rule (win if possible, otherwise the most central move that does
+ * not lose at once) so a busy server answers late games weaker but never
+ * later than their budget.
+ * <p>
+ * With a node budget in the configuration (see Connect4Difficulty) every
+ * search costs at most that many nodes, so the work of a move is known in
+ * advance and an easy pool answers many games per worker.  When the
+ * configuration adds move noise the book is neither read nor taught, so
+ * the computer does not play perfect openings at an easy level and noisy
+ * moves never reach the book.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4EnginePool implements Connect4Constants {
+
+    /**
+     * Default number of queued requests.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 256;
+    /**
+     * Shortest time worth starting a search for, in milliseconds.
+     */
+    private static final long MIN_SEARCH_MILLIS = 2;
+
+    /**
+     * Engine settings: depth limit, default time budget and table size.
+     */
+    private final Connect4EngineConfig config;
+    /**
+     * Table shared by every worker.
+     */
+    private final Connect4TranspositionTable table;
+    /**
+     * Book shared by every worker.
+     */
+    private final Connect4OpeningBook book;
+    /**
+     * Worker threads and their bounded queue.
+     */
+    private final ThreadPoolExecutor executor;
+    /**
+     * Search of each worker thread.
+     */
+    private final ThreadLocal<Connect4Search> searches;
+
+    /**
+     * Moves requested.
+     */
+    private final LongAdder requests = new LongAdder();
+    /**
+     * Moves answered from the book.
+     */
+    private final LongAdder bookMoves = new LongAdder();
+    /**
+     * Requests refused because the queue was full.
+     */
+    private final LongAdder rejected = new LongAdder();
+    /**
+     * Requests whose budget ran out in the queue.
+     */
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * Constructor for a pool with one worker per processor.
+     * @param pConfig engine settings.
+     * @param pBook shared opening book.
+     */
+    public Connect4EnginePool(Connect4EngineConfig pConfig, Connect4OpeningBook pBook) {
+        this(pConfig, pBook, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * Constructor for a pool.
+     * @param pConfig engine settings.
+     * @param pBook shared opening book.
+     * @param pThreads number of worker threads.
+     * @param pQueueSize most requests waiting for a worker.
+     * @throws IllegalArgumentException if the configuration uses the mcts
+     *         engine; the pool's workers search with alpha-beta.
+     */
+    public Connect4EnginePool(Connect4EngineConfig pConfig, Connect4OpeningBook pBook, int pThreads,
+                              int pQueueSize) {
+        if (pConfig.isMonteCarlo()) {
+            throw new IllegalArgumentException("The engine pool only runs the alphabeta engine: " + pConfig);
+        }
+        this.config = pConfig;
+        this.book = pBook;
+        this.table = new Connect4TranspositionTable(pConfig.getTableLog2Size());
+        this.searches = ThreadLocal.withInitial(() -> {
+            Connect4Search search = new Connect4Search(table);
+            config.apply(search);
+            return search;
+        });
+        AtomicInteger threadNo = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(pThreads, pThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(pQueueSize), r -> {
+                    Thread t = new Thread(r, "Connect4-engine-" + threadNo.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Requests a move with the configured time budget.
+     * @param pPosition position, copied before the call returns.
+     * @return CompletableFuture column to play.
+     */
+    public CompletableFuture<Integer> submit(Connect4Bitboard pPosition) {
+        return submit(pPosition, config.getMoveTimeMillis());
+    }
+
+    /**
+     * Requests a move.  The budget runs from this call, so time spent waiting
+     * in the queue is taken from the search.
+     * @param pPosition position, copied before the call returns; must not be
+     *                  full or won.
+     * @param pBudgetMillis time allowed for the move, 0 for the depth limit only.
+     * @return CompletableFuture column to play.
+     */
+    public CompletableFuture<Integer> submit(Connect4Bitboard pPosition, long pBudgetMillis) {
+        requests.increment();
+        Connect4Bitboard position = new Connect4Bitboard(pPosition);
+        int col = config.getNoise() > 0 ? -1 : book.lookup(position);
+        if (col >= 0) {
+            bookMoves.increment();
+            return CompletableFuture.completedFuture(col);
+        }
+
+        long deadline = pBudgetMillis > 0 ? System.nanoTime() + pBudgetMillis * 1_000_000L : 0;
+        CompletableFuture<Integer> move = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    move.complete(search(position, deadline));
+                } catch (RuntimeException e) {
+                    move.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            move.complete(quickMove(position));
+        }
+        return move;
+    }
+
+    /**
+     * Searches a position on a worker thread.
+     * @param pPosition position owned by the request.
+     * @param pDeadline System.nanoTime() deadline, 0 for none.
+     * @return int column to play.
+     */
+    private int search(Connect4Bitboard pPosition, long pDeadline) {
+        Connect4Search search = searches.get();
+        if (pDeadline != 0) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(pDeadline - System.nanoTime());
+            if (remaining < MIN_SEARCH_MILLIS) {
+                expired.increment();
+                return quickMove(pPosition);
+            }
+            search.setMoveTimeMillis(remaining);
+        } else {
+            search.setMoveTimeMillis(0);
+        }
+        int col = search.bestMove(pPosition);
+        int score = search.getScore();
+        boolean proven = score >= Connect4Search.WIN_UNIT || score <= -Connect4Search.WIN_UNIT
+                || search.getDepthReached() >= Connect4Bitboard.SIZE - pPosition.getMoves();
+        if (config.getNoise() == 0) {
+            book.learn(pPosition, col, search.getDepthReached(), proven);
+        }
+        return col;
+    }
+
+    /**
+     * Chooses a move without searching: a winning move if there is one,
+     * otherwise the most central move that does not hand the opponent a win.
+     * @param pPosition position, must not be full or won.
+     * @return int column to play.
+     */
+    static int quickMove(Connect4Bitboard pPosition) {
+        long safe = pPosition.possibleNonLosingMoves();
+        int fallback = -1;
+        for (int col : Connect4Search.COLUMN_ORDER) {
+            if (!pPosition.canPlay(col)) {
+                continue;
+            }
+            if (pPosition.isWinningMove(col)) {
+                return col;
+            }
+            if (fallback < 0 || ((safe & Connect4Bitboard.columnMask(col)) != 0
+                    && (safe & Connect4Bitboard.columnMask(fallback)) == 0)) {
+                fallback = col;
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Accessor returns the shared transposition table.
+     * @return Connect4TranspositionTable table.
+     */
+    public Connect4TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Accessor returns the shared opening book.
+     * @return Connect4OpeningBook book.
+     */
+    public Connect4OpeningBook getBook() {
+        return book;
+    }
+
+    /**
+     * Accessor returns the number of requests waiting for a worker.
+     * @return int queued requests.
+     */
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Accessor returns the number of moves requested.
+     * @return long requests.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Accessor returns the number of moves answered from the book.
+     * @return long book moves.
+     */
+    public long getBookMoves() {
+        return bookMoves.sum();
+    }
+
+    /**
+     * Accessor returns the number of requests refused by a full queue.
+     * @return long rejected requests.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Accessor returns the number of requests whose budget ran out queued.
+     * @return long expired requests.
+     */
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    /**
+     * Stops the workers after the queued requests are answered.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,189 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * This is the static evaluation Connect4Search gives a position cut off by
+ * the depth limit.
+ * <p>
+ * Every term is computed on the whole board at once from the two bitboards
+ * of a Connect4Bitboard, with shifts, ANDs and bit counts:
+ * <ul>
+ * <li>window weights - each cell is weighted by the number of windows of
+ *     four through it, 3 in a corner to 13 in the center.  Cells of equal
+ *     weight share a mask made once, so a side's total weight is one bit
+ *     count per distinct weight
+ * <li>threats - empty cells that would complete four for a side
+ * <li>playable wins - threats that can be played right now
+ * <li>parity - threats on the rows that favor their owner when the board
+ *     fills up: odd rows (1, 3, 5 from the bottom) for the player who moved
+ *     first, even rows for the other
+ * <li>open threes - three in a row with an empty threat cell at both ends,
+ *     which cannot both be blocked on the same row
+ * </ul>
+ * Scores are from the point of view of the player to move and stay
+ * strictly between -Connect4Search.WIN_UNIT and WIN_UNIT.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public final class Connect4Evaluator implements Connect4Constants {
+
+    /**
+     * Score of a threat.
+     */
+    static final int THREAT = 24;
+    /**
+     * Score of a threat that can be played now.
+     */
+    static final int PLAYABLE = 96;
+    /**
+     * Score of a threat on a row of its owner's parity.
+     */
+    static final int PARITY = 32;
+    /**
+     * Score of an open three.
+     */
+    static final int OPEN_THREE = 64;
+    /**
+     * Largest absolute score.
+     */
+    static final int MAX_SCORE = Connect4Search.WIN_UNIT - 1;
+
+    /**
+     * Cells of rows 1, 3 and 5 counted from 1 at the bottom.
+     */
+    static final long ODD_ROWS = Connect4Bitboard.BOTTOM_MASK * 0b010101;
+    /**
+     * Cells of rows 2, 4 and 6 counted from 1 at the bottom.
+     */
+    static final long EVEN_ROWS = Connect4Bitboard.BOTTOM_MASK * 0b101010;
+
+    /**
+     * Distinct window weights of the cells.
+     */
+    private static final int[] WEIGHTS;
+    /**
+     * Cells of each weight in WEIGHTS.
+     */
+    private static final long[] WEIGHT_MASKS;
+
+    static {
+        // windows of four through each cell, indexed by bit
+        int[] windows = new int[64];
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+        for (int[] d : directions) {
+            for (int col = 0; col < COL; col++) {
+                for (int row = 0; row < ROW; row++) {
+                    int endCol = col + 3 * d[0];
+                    int endRow = row + 3 * d[1];
+                    if (endCol >= COL || endRow < 0 || endRow >= ROW) {
+                        continue;
+                    }
+                    for (int k = 0; k < 4; k++) {
+                        windows[(col + k * d[0]) * Connect4Bitboard.H1 + row + k * d[1]]++;
+                    }
+                }
+            }
+        }
+        int[] weights = new int[64];
+        long[] masks = new long[64];
+        int distinct = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (windows[bit] == 0) {
+                continue;
+            }
+            int w = 0;
+            while (w < distinct && weights[w] != windows[bit]) {
+                w++;
+            }
+            if (w == distinct) {
+                weights[distinct++] = windows[bit];
+            }
+            masks[w] |= 1L << bit;
+        }
+        WEIGHTS = Arrays.copyOf(weights, distinct);
+        WEIGHT_MASKS = Arrays.copyOf(masks, distinct);
+    }
+
+    /**
+     * Constructor is private: the evaluator has no state.
+     */
+    private Connect4Evaluator() {
+    }
+
+    /**
+     * Evaluates a position for the player to move.
+     * @param pPosition position, not over.
+     * @return int score strictly between -WIN_UNIT and WIN_UNIT.
+     */
+    public static int evaluate(Connect4Bitboard pPosition) {
+        return evaluate(pPosition.getCurrent(), pPosition.getMask(), pPosition.getMoves());
+    }
+
+    /**
+     * Evaluates a position for the player to move.
+     * @param pCurrent stones of the player to move.
+     * @param pMask stones of both players.
+     * @param pMoves moves played, whose parity tells who moved first.
+     * @return int score strictly between -WIN_UNIT and WIN_UNIT.
+     */
+    public static int evaluate(long pCurrent, long pMask, int pMoves) {
+        long mine = pCurrent;
+        long theirs = pCurrent ^ pMask;
+        long myThreats = Connect4Bitboard.winningPositions(mine, pMask);
+        long theirThreats = Connect4Bitboard.winningPositions(theirs, pMask);
+        long possible = (pMask + Connect4Bitboard.BOTTOM_MASK) & Connect4Bitboard.BOARD_MASK;
+
+        int score = weight(mine) - weight(theirs);
+        score += THREAT * (Long.bitCount(myThreats) - Long.bitCount(theirThreats));
+        score += PLAYABLE * (Long.bitCount(myThreats & possible) - Long.bitCount(theirThreats & possible));
+
+        // the player to move moved first when an even number of moves is played
+        long myRows = (pMoves & 1) == 0 ? ODD_ROWS : EVEN_ROWS;
+        score += PARITY * (Long.bitCount(myThreats & ~possible & myRows)
+                - Long.bitCount(theirThreats & ~possible & (myRows ^ Connect4Bitboard.BOARD_MASK)));
+
+        score += OPEN_THREE * (openThrees(mine, myThreats) - openThrees(theirs, theirThreats));
+        return Math.max(-MAX_SCORE, Math.min(MAX_SCORE, score));
+    }
+
+    /**
+     * Total window weight of a side's stones.
+     * @param pStones stones of one player.
+     * @return int weight.
+     */
+    static int weight(long pStones) {
+        int total = 0;
+        for (int w = 0; w < WEIGHTS.length; w++) {
+            total += WEIGHTS[w] * Long.bitCount(pStones & WEIGHT_MASKS[w]);
+        }
+        return total;
+    }
+
+    /**
+     * Counts a side's open threes: a threat, three stones and a threat in a
+     * row, horizontally or diagonally.  A run cannot pass the empty
+     * sentinel row, so no pattern wraps from one column to the next.
+     * @param pStones stones of the player.
+     * @param pThreats threats of the player.
+     * @return int open threes.
+     */
+    static int openThrees(long pStones, long pThreats) {
+        return openThrees(pStones, pThreats, Connect4Bitboard.H1)
+                + openThrees(pStones, pThreats, ROW)
+                + openThrees(pStones, pThreats, Connect4Bitboard.H1 + 1);
+    }
+
+    /**
+     * Counts a side's open threes in one direction.
+     * @param pStones stones of the player.
+     * @param pThreats threats of the player.
+     * @param pShift shift from a cell to the next one in the direction.
+     * @return int open threes.
+     */
+    private static int openThrees(long pStones, long pThreats, int pShift) {
+        long three = (pStones >>> pShift) & (pStones >>> 2 * pShift) & (pStones >>> 3 * pShift);
+        return Long.bitCount(pThreats & three & (pThreats >>> 4 * pShift));
+    }
+}
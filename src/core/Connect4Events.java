@@ -0,0 +1,377 @@
+package core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * This class emits the Java Flight Recorder events of the server and the
+ * computer player.
+ * <p>
+ * Sessions emit Connect4.SessionStart and Connect4.SessionEnd, and for every
+ * move a Connect4.MoveReceived with the time spent waiting for the player and
+ * a Connect4.ResultSent with the time spent validating, playing and replying.
+ * Every search emits a Connect4.Search with its depth, nodes, table hits and
+ * time.  All events belong to the "Connect4" category and are recorded with
+ * a plain <code>-XX:StartFlightRecording</code> or from JDK Mission Control.
+ * <p>
+ * Emitting an event that is not being recorded costs a branch: the event
+ * object is never published, so the JIT removes its allocation.  On a runtime
+ * without the jdk.jfr module (Java 8 before update 262) the events are
+ * skipped and the event classes are never loaded.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public final class Connect4Events {
+
+    /**
+     * Boolean flag set when the runtime supports JFR events.
+     */
+    private static final boolean AVAILABLE = isAvailable();
+
+    /**
+     * Not instantiated; the methods are static.
+     */
+    private Connect4Events() {
+    }
+
+    /**
+     * Checks whether the JFR event API is present.
+     * @return <code>true</code> if jdk.jfr.Event can be loaded;
+     * <code>false</code> otherwise.
+     */
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, Connect4Events.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Emits the start of a session.
+     * @param pSession session id.
+     * @param pPlayer1 address of player 1.
+     * @param pPlayer2 address of player 2.
+     */
+    public static void sessionStart(long pSession, String pPlayer1, String pPlayer2) {
+        if (AVAILABLE) {
+            SessionStartEvent.emit(pSession, pPlayer1, pPlayer2);
+        }
+    }
+
+    /**
+     * Emits the end of a session.
+     * @param pSession session id.
+     * @param pMoves moves played.
+     * @param pResult last status sent, P1_WIN, P2_WIN or DRAW, 0 if none.
+     * @param pDisconnected <code>true</code> if a connection was lost.
+     * @param pNanos length of the session.
+     */
+    public static void sessionEnd(long pSession, int pMoves, int pResult, boolean pDisconnected,
+                                  long pNanos) {
+        if (AVAILABLE) {
+            SessionEndEvent.emit(pSession, pMoves, pResult, pDisconnected, pNanos);
+        }
+    }
+
+    /**
+     * Emits a move read from a player.
+     * @param pSession session id.
+     * @param pPlayer PLAYER1 or PLAYER2.
+     * @param pColumn column received.
+     * @param pValid <code>true</code> if the move was legal.
+     * @param pWaitNanos time spent waiting for the move.
+     */
+    public static void moveReceived(long pSession, int pPlayer, int pColumn, boolean pValid,
+                                    long pWaitNanos) {
+        if (AVAILABLE) {
+            MoveReceivedEvent.emit(pSession, pPlayer, pColumn, pValid, pWaitNanos);
+        }
+    }
+
+    /**
+     * Emits the reply to a move.
+     * @param pSession session id.
+     * @param pPlayer player who moved.
+     * @param pStatus status sent, PROCEED, P1_WIN, P2_WIN or DRAW.
+     * @param pRow row of the move.
+     * @param pColumn column of the move.
+     * @param pNanos time from reading the move to writing the reply.
+     */
+    public static void resultSent(long pSession, int pPlayer, int pStatus, int pRow, int pColumn,
+                                  long pNanos) {
+        if (AVAILABLE) {
+            ResultSentEvent.emit(pSession, pPlayer, pStatus, pRow, pColumn, pNanos);
+        }
+    }
+
+    /**
+     * Emits a finished search.
+     * @param pSolve <code>true</code> for a solve, <code>false</code> for a move search.
+     * @param pPly moves played in the searched position.
+     * @param pDepth depth completed.
+     * @param pNodes nodes visited.
+     * @param pTableHits transposition table cutoffs.
+     * @param pScore score found.
+     * @param pMove move chosen, -1 for a solve.
+     * @param pNanos time taken.
+     */
+    public static void search(boolean pSolve, int pPly, int pDepth, long pNodes, long pTableHits,
+                              int pScore, int pMove, long pNanos) {
+        if (AVAILABLE) {
+            SearchEvent.emit(pSolve, pPly, pDepth, pNodes, pTableHits, pScore, pMove, pNanos);
+        }
+    }
+
+    /**
+     * Event for the start of a session.
+     */
+    @Name("Connect4.SessionStart")
+    @Label("Session Start")
+    @Category("Connect4")
+    @Description("Two players were paired in a new game session")
+    @StackTrace(false)
+    static final class SessionStartEvent extends Event {
+        /** Session id. */
+        @Label("Session")
+        long session;
+        /** Address of player 1. */
+        @Label("Player 1")
+        String player1;
+        /** Address of player 2. */
+        @Label("Player 2")
+        String player2;
+
+        /**
+         * Commits an event if recording.
+         * @param pSession session id.
+         * @param pPlayer1 address of player 1.
+         * @param pPlayer2 address of player 2.
+         */
+        static void emit(long pSession, String pPlayer1, String pPlayer2) {
+            SessionStartEvent e = new SessionStartEvent();
+            if (e.isEnabled()) {
+                e.session = pSession;
+                e.player1 = pPlayer1;
+                e.player2 = pPlayer2;
+                e.commit();
+            }
+        }
+    }
+
+    /**
+     * Event for the end of a session.
+     */
+    @Name("Connect4.SessionEnd")
+    @Label("Session End")
+    @Category("Connect4")
+    @Description("A game session ended")
+    @StackTrace(false)
+    static final class SessionEndEvent extends Event {
+        /** Session id. */
+        @Label("Session")
+        long session;
+        /** Moves played. */
+        @Label("Moves")
+        int moves;
+        /** Last status sent. */
+        @Label("Result")
+        int result;
+        /** Whether a connection was lost. */
+        @Label("Disconnected")
+        boolean disconnected;
+        /** Length of the session. */
+        @Label("Session Time")
+        @Timespan
+        long sessionTime;
+
+        /**
+         * Commits an event if recording.
+         * @param pSession session id.
+         * @param pMoves moves played.
+         * @param pResult last status sent.
+         * @param pDisconnected whether a connection was lost.
+         * @param pNanos length of the session.
+         */
+        static void emit(long pSession, int pMoves, int pResult, boolean pDisconnected, long pNanos) {
+            SessionEndEvent e = new SessionEndEvent();
+            if (e.isEnabled()) {
+                e.session = pSession;
+                e.moves = pMoves;
+                e.result = pResult;
+                e.disconnected = pDisconnected;
+                e.sessionTime = pNanos;
+                e.commit();
+            }
+        }
+    }
+
+    /**
+     * Event for a move read from a player.
+     */
+    @Name("Connect4.MoveReceived")
+    @Label("Move Received")
+    @Category("Connect4")
+    @Description("The server read a column from a player")
+    @StackTrace(false)
+    static final class MoveReceivedEvent extends Event {
+        /** Session id. */
+        @Label("Session")
+        long session;
+        /** Player who moved. */
+        @Label("Player")
+        int player;
+        /** Column received. */
+        @Label("Column")
+        int column;
+        /** Whether the move was legal. */
+        @Label("Valid")
+        boolean valid;
+        /** Time spent waiting for the move. */
+        @Label("Wait Time")
+        @Timespan
+        long waitTime;
+
+        /**
+         * Commits an event if recording.
+         * @param pSession session id.
+         * @param pPlayer player who moved.
+         * @param pColumn column received.
+         * @param pValid whether the move was legal.
+         * @param pWaitNanos time spent waiting.
+         */
+        static void emit(long pSession, int pPlayer, int pColumn, boolean pValid, long pWaitNanos) {
+            MoveReceivedEvent e = new MoveReceivedEvent();
+            if (e.isEnabled()) {
+                e.session = pSession;
+                e.player = pPlayer;
+                e.column = pColumn;
+                e.valid = pValid;
+                e.waitTime = pWaitNanos;
+                e.commit();
+            }
+        }
+    }
+
+    /**
+     * Event for the reply to a move.
+     */
+    @Name("Connect4.ResultSent")
+    @Label("Result Sent")
+    @Category("Connect4")
+    @Description("The server played a move and sent the status to the players")
+    @StackTrace(false)
+    static final class ResultSentEvent extends Event {
+        /** Session id. */
+        @Label("Session")
+        long session;
+        /** Player who moved. */
+        @Label("Player")
+        int player;
+        /** Status sent. */
+        @Label("Status")
+        int status;
+        /** Row of the move. */
+        @Label("Row")
+        int row;
+        /** Column of the move. */
+        @Label("Column")
+        int column;
+        /** Time from reading the move to writing the reply. */
+        @Label("Processing Time")
+        @Timespan
+        long processingTime;
+
+        /**
+         * Commits an event if recording.
+         * @param pSession session id.
+         * @param pPlayer player who moved.
+         * @param pStatus status sent.
+         * @param pRow row of the move.
+         * @param pColumn column of the move.
+         * @param pNanos processing time.
+         */
+        static void emit(long pSession, int pPlayer, int pStatus, int pRow, int pColumn, long pNanos) {
+            ResultSentEvent e = new ResultSentEvent();
+            if (e.isEnabled()) {
+                e.session = pSession;
+                e.player = pPlayer;
+                e.status = pStatus;
+                e.row = pRow;
+                e.column = pColumn;
+                e.processingTime = pNanos;
+                e.commit();
+            }
+        }
+    }
+
+    /**
+     * Event for a finished search of the computer player.
+     */
+    @Name("Connect4.Search")
+    @Label("Search")
+    @Category("Connect4")
+    @Description("The engine searched a position")
+    @StackTrace(false)
+    static final class SearchEvent extends Event {
+        /** Whether the search was a solve. */
+        @Label("Solve")
+        boolean solve;
+        /** Moves played in the position. */
+        @Label("Ply")
+        int ply;
+        /** Depth completed. */
+        @Label("Depth")
+        int depth;
+        /** Nodes visited. */
+        @Label("Nodes")
+        long nodes;
+        /** Transposition table cutoffs. */
+        @Label("Table Hits")
+        long tableHits;
+        /** Score found. */
+        @Label("Score")
+        int score;
+        /** Move chosen. */
+        @Label("Move")
+        int move;
+        /** Time taken. */
+        @Label("Search Time")
+        @Timespan
+        long searchTime;
+
+        /**
+         * Commits an event if recording.
+         * @param pSolve whether the search was a solve.
+         * @param pPly moves played in the position.
+         * @param pDepth depth completed.
+         * @param pNodes nodes visited.
+         * @param pTableHits table cutoffs.
+         * @param pScore score found.
+         * @param pMove move chosen.
+         * @param pNanos time taken.
+         */
+        static void emit(boolean pSolve, int pPly, int pDepth, long pNodes, long pTableHits,
+                         int pScore, int pMove, long pNanos) {
+            SearchEvent e = new SearchEvent();
+            if (e.isEnabled()) {
+                e.solve = pSolve;
+                e.ply = pPly;
+                e.depth = pDepth;
+                e.nodes = pNodes;
+                e.tableHits = pTableHits;
+                e.score = pScore;
+                e.move = pMove;
+                e.searchTime = pNanos;
+                e.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package core;
+
+/**
+ * This class keeps the Fischer game clocks of the two players of a session.
+ * <p>
+ * Each player starts with the same time.  The time a player takes for a move
+ * is charged to their clock and, if the clock has not run out, the increment
+ * is added back.  A player whose clock runs out loses the game.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4GameClock implements Connect4Constants {
+
+    /**
+     * Time left for player 1 and player 2, in nanoseconds.
+     */
+    private final long[] remaining = new long[2];
+    /**
+     * Time added after each move, in nanoseconds.
+     */
+    private final long incrementNanos;
+
+    /**
+     * Constructor for a pair of clocks.
+     * @param pBaseMillis starting time of each player.
+     * @param pIncrementMillis time added after each move.
+     */
+    public Connect4GameClock(long pBaseMillis, long pIncrementMillis) {
+        remaining[0] = pBaseMillis * 1_000_000L;
+        remaining[1] = pBaseMillis * 1_000_000L;
+        incrementNanos = pIncrementMillis * 1_000_000L;
+    }
+
+    /**
+     * Accessor returns the time a player has left.
+     * @param pPlayer PLAYER1 or PLAYER2.
+     * @return long milliseconds, 0 if the clock ran out.
+     */
+    public long getRemainingMillis(int pPlayer) {
+        return Math.max(0, remaining[pPlayer - PLAYER1] / 1_000_000L);
+    }
+
+    /**
+     * Charges the time of a move to a player's clock.
+     * @param pPlayer PLAYER1 or PLAYER2.
+     * @param pNanos time the move took.
+     * @return <code>true</code> if the move was made in time;
+     * <code>false</code> if the clock ran out.
+     */
+    public boolean charge(int pPlayer, long pNanos) {
+        int i = pPlayer - PLAYER1;
+        remaining[i] -= pNanos;
+        if (remaining[i] < 0) {
+            return false;
+        }
+        remaining[i] += incrementNanos;
+        return true;
+    }
+}
@@ -0,0 +1,766 @@
+package core;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * This is a read-only database of finished games, memory-mapped from a
+ * single file, with an index from positions to the games that reached them.
+ * <p>
+ * A move takes 3 bits.  Games are stored in blocks of a fixed number of
+ * games, each block laid out by column: the results of its games, their
+ * lengths, the bit offset of each game's moves and the packed moves
+ * themselves.  A game is found from its number alone, and scanning one
+ * column (say, every result) touches only that column's pages.
+ * <p>
+ * The index covers the positions of the first plies of every game (12 by
+ * default).  Positions are keyed by Connect4Bitboard.canonicalKey(), so a
+ * position and its mirror image share one entry.  It is stored as three
+ * sorted arrays: the distinct keys, the start of each key's games and the
+ * game numbers, so a lookup is a binary search in the mapped keys and
+ * costs microseconds without reading the index into the heap.  The index
+ * is built with parallel sorts when the file is written.
+ * <p>
+ * File layout, big-endian, every section aligned to 8 bytes: a 64-byte
+ * header (magic, version, games, block size, blocks, index plies, keys,
+ * postings), the offset of every block and the end of the last, the
+ * blocks, then the keys (<code>long</code>), the key starts and the game
+ * numbers (<code>int</code>).
+ * <p>
+ * Usage: <code>Connect4GameDatabase build in=FILE out=FILE [block=4096]
+ * [plies=12]</code> reads games written as columns 1 to 7, one game per
+ * line as in the solver test positions;
+ * <code>Connect4GameDatabase query db=FILE moves=MOVES [repeat=100000]</code>
+ * reports the games through a position and the time of a lookup.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4GameDatabase implements Closeable, Connect4Constants {
+
+    /**
+     * First word of the file, "C4DB".
+     */
+    private static final int MAGIC = 0x43344442;
+    /**
+     * Version of the file layout.
+     */
+    public static final int VERSION = 1;
+    /**
+     * Default number of games per block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+    /**
+     * Default number of plies whose positions are indexed.
+     */
+    public static final int DEFAULT_INDEX_PLIES = 12;
+    /**
+     * Size of the header in bytes.
+     */
+    private static final int HEADER_BYTES = 64;
+    /**
+     * Bits per move.
+     */
+    private static final int MOVE_BITS = 3;
+    /**
+     * Result of a game that ended without a winner or a full board.
+     */
+    public static final int UNFINISHED = 0;
+
+    /**
+     * This collects games in memory and writes them as a database.
+     */
+    public static final class Builder {
+        /** Packed moves of every game, back to back. */
+        private long[] moveWords = new long[1024];
+        /** Bits used in moveWords. */
+        private long moveBits;
+        /** Bit offset of each game's moves. */
+        private long[] starts = new long[1024];
+        /** Number of moves of each game. */
+        private byte[] lengths = new byte[1024];
+        /** Result of each game. */
+        private byte[] results = new byte[1024];
+        /** Number of games. */
+        private int games;
+        /** Board used to check the games added. */
+        private final Connect4Bitboard board = new Connect4Bitboard();
+
+        /**
+         * Adds a game written as columns 1 to 7.
+         * @param pMoves moves of the game.
+         * @return int number of the game.
+         * @throws IllegalArgumentException if a move is not a column, does
+         * not fit or follows the end of the game.
+         */
+        public int add(CharSequence pMoves) {
+            int[] columns = new int[pMoves.length()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = pMoves.charAt(i) - '1';
+            }
+            return add(columns, columns.length);
+        }
+
+        /**
+         * Adds a game.
+         * @param pColumns columns played, 0 to COL - 1.
+         * @param pLength number of moves.
+         * @return int number of the game.
+         * @throws IllegalArgumentException if a move is not a column, does
+         * not fit or follows the end of the game.
+         */
+        public int add(int[] pColumns, int pLength) {
+            board.reset();
+            int result = UNFINISHED;
+            for (int i = 0; i < pLength; i++) {
+                int col = pColumns[i];
+                if (result != UNFINISHED || col < 0 || col >= COL || !board.canPlay(col)) {
+                    throw new IllegalArgumentException("Bad move " + (i + 1) + " in game " + games);
+                }
+                board.play(col);
+                if (board.lastMoveWon()) {
+                    result = i % 2 == 0 ? P1_WIN : P2_WIN;
+                } else if (board.isFull()) {
+                    result = DRAW;
+                }
+            }
+
+            if (games == lengths.length) {
+                starts = Arrays.copyOf(starts, games * 2);
+                lengths = Arrays.copyOf(lengths, games * 2);
+                results = Arrays.copyOf(results, games * 2);
+            }
+            long words = (moveBits + (long) pLength * MOVE_BITS + 63) >>> 6;
+            if (words > moveWords.length) {
+                moveWords = Arrays.copyOf(moveWords, (int) Math.max(words, moveWords.length * 2L));
+            }
+            starts[games] = moveBits;
+            lengths[games] = (byte) pLength;
+            results[games] = (byte) result;
+            for (int i = 0; i < pLength; i++) {
+                putMove(moveWords, moveBits, pColumns[i]);
+                moveBits += MOVE_BITS;
+            }
+            return games++;
+        }
+
+        /**
+         * Accessor returns the number of games added.
+         * @return int games.
+         */
+        public int getGameCount() {
+            return games;
+        }
+
+        /**
+         * Writes the games and their index.
+         * @param pFile destination file.
+         * @param pBlockSize games per block.
+         * @param pIndexPlies plies whose positions are indexed.
+         * @throws IOException if the file cannot be written.
+         */
+        public void write(File pFile, int pBlockSize, int pIndexPlies) throws IOException {
+            if (pBlockSize <= 0 || pIndexPlies < 0 || pIndexPlies > ROW * COL) {
+                throw new IllegalArgumentException("Bad block size or index plies");
+            }
+            Index index = buildIndex(pIndexPlies);
+            int blocks = (games + pBlockSize - 1) / pBlockSize;
+
+            long[] blockOffsets = new long[blocks + 1];
+            long offset = align(HEADER_BYTES + 8L * (blocks + 1));
+            for (int b = 0; b < blocks; b++) {
+                blockOffsets[b] = offset;
+                int first = b * pBlockSize;
+                int count = Math.min(pBlockSize, games - first);
+                offset += blockBytes(count, blockBits(first, count));
+            }
+            blockOffsets[blocks] = offset;
+
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(pFile), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(games);
+                out.writeInt(pBlockSize);
+                out.writeInt(blocks);
+                out.writeInt(pIndexPlies);
+                out.writeInt(index.keys.length);
+                out.writeInt(index.games.length);
+                pad(out, HEADER_BYTES - 32);
+                for (long blockOffset : blockOffsets) {
+                    out.writeLong(blockOffset);
+                }
+                pad(out, (int) (blockOffsets[0] - HEADER_BYTES - 8L * (blocks + 1)));
+                for (int b = 0; b < blocks; b++) {
+                    int first = b * pBlockSize;
+                    writeBlock(out, first, Math.min(pBlockSize, games - first));
+                }
+                for (long key : index.keys) {
+                    out.writeLong(key);
+                }
+                for (int start : index.starts) {
+                    out.writeInt(start);
+                }
+                for (int game : index.games) {
+                    out.writeInt(game);
+                }
+            }
+        }
+
+        /**
+         * Bits of moves in a run of games.
+         * @param pFirst first game.
+         * @param pCount number of games.
+         * @return long bits.
+         */
+        private long blockBits(int pFirst, int pCount) {
+            long end = pFirst + pCount < games ? starts[pFirst + pCount] : moveBits;
+            return end - starts[pFirst];
+        }
+
+        /**
+         * Writes one block: results, lengths, bit offsets, packed moves.
+         * @param pOut destination.
+         * @param pFirst first game of the block.
+         * @param pCount games in the block.
+         * @throws IOException if the block cannot be written.
+         */
+        private void writeBlock(DataOutputStream pOut, int pFirst, int pCount) throws IOException {
+            pOut.write(results, pFirst, pCount);
+            pOut.write(lengths, pFirst, pCount);
+            pad(pOut, (int) (align4(2L * pCount) - 2L * pCount));
+            long base = starts[pFirst];
+            for (int g = pFirst; g < pFirst + pCount; g++) {
+                pOut.writeInt((int) (starts[g] - base));
+            }
+            long written = align4(2L * pCount) + 4L * pCount;
+            pad(pOut, (int) (align(written) - written));
+            // moves are copied bit by bit into fresh words starting at bit 0
+            long bits = blockBits(pFirst, pCount);
+            long word = 0;
+            for (long bit = 0; bit < bits; bit += MOVE_BITS) {
+                int shift = (int) (bit & 63);
+                long move = getMove(moveWords, base + bit);
+                word |= move << shift;
+                if (shift + MOVE_BITS >= 64) {
+                    pOut.writeLong(word);
+                    word = shift + MOVE_BITS > 64 ? move >>> (64 - shift) : 0;
+                }
+            }
+            if ((bits & 63) != 0) {
+                pOut.writeLong(word);
+            }
+        }
+
+        /**
+         * Builds the index of the positions of the first plies.
+         * @param pPlies plies indexed.
+         * @return Index sorted keys, key starts and game numbers.
+         */
+        private Index buildIndex(int pPlies) {
+            int[] first = new int[games + 1];
+            for (int g = 0; g < games; g++) {
+                long next = (long) first[g] + Math.min(lengths[g], pPlies);
+                if (next > Integer.MAX_VALUE - 8) {
+                    throw new IllegalArgumentException("Too many positions to index; index fewer plies");
+                }
+                first[g + 1] = (int) next;
+            }
+            int total = first[games];
+
+            // the position after every indexed ply of every game
+            long[] keys = new long[total];
+            IntStream.range(0, games).parallel().forEach(g -> {
+                Connect4Bitboard position = new Connect4Bitboard();
+                for (int i = first[g]; i < first[g + 1]; i++) {
+                    position.play((int) getMove(moveWords, starts[g] + (long) (i - first[g]) * MOVE_BITS));
+                    keys[i] = position.canonicalKey();
+                }
+            });
+
+            long[] distinct = keys.clone();
+            Arrays.parallelSort(distinct);
+            int count = 0;
+            for (int i = 0; i < total; i++) {
+                if (i == 0 || distinct[i] != distinct[count - 1]) {
+                    distinct[count++] = distinct[i];
+                }
+            }
+            long[] sortedKeys = Arrays.copyOf(distinct, count);
+
+            // key number and game number, sorted, group the games by key
+            long[] pairs = new long[total];
+            IntStream.range(0, games).parallel().forEach(g -> {
+                for (int i = first[g]; i < first[g + 1]; i++) {
+                    pairs[i] = (long) Arrays.binarySearch(sortedKeys, keys[i]) << 32 | g;
+                }
+            });
+            Arrays.parallelSort(pairs);
+
+            Index index = new Index();
+            index.keys = sortedKeys;
+            index.starts = new int[count + 1];
+            index.games = new int[total];
+            for (int i = 0; i < total; i++) {
+                index.games[i] = (int) pairs[i];
+                index.starts[(int) (pairs[i] >>> 32) + 1]++;
+            }
+            for (int k = 0; k < count; k++) {
+                index.starts[k + 1] += index.starts[k];
+            }
+            return index;
+        }
+    }
+
+    /**
+     * The position index as three arrays.
+     */
+    private static final class Index {
+        /** Distinct canonical keys, sorted. */
+        private long[] keys;
+        /** Start of each key's games; one more entry than keys. */
+        private int[] starts;
+        /** Game numbers, grouped by key and sorted within a key. */
+        private int[] games;
+    }
+
+    /**
+     * File the database was opened from.
+     */
+    private final RandomAccessFile file;
+    /**
+     * Header, block offsets and blocks.
+     */
+    private final MappedByteBuffer blocks;
+    /**
+     * Index keys.
+     */
+    private final MappedByteBuffer keys;
+    /**
+     * Index key starts and game numbers.
+     */
+    private final MappedByteBuffer postings;
+    /**
+     * Offset of every block in the file, and the end of the last.
+     */
+    private final long[] blockOffsets;
+    /**
+     * Number of games.
+     */
+    private final int gameCount;
+    /**
+     * Games per block.
+     */
+    private final int blockSize;
+    /**
+     * Plies indexed.
+     */
+    private final int indexPlies;
+    /**
+     * Number of distinct keys in the index.
+     */
+    private final int keyCount;
+
+    /**
+     * Opens a database by mapping its file.
+     * @param pFile database file.
+     * @throws IOException if the file cannot be read or is not a database.
+     */
+    public Connect4GameDatabase(File pFile) throws IOException {
+        file = new RandomAccessFile(pFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() < HEADER_BYTES || file.readInt() != MAGIC) {
+                throw new IOException("Not a game database: " + pFile);
+            }
+            int version = file.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported database version " + version + ": " + pFile);
+            }
+            gameCount = file.readInt();
+            blockSize = file.readInt();
+            int blockCount = file.readInt();
+            indexPlies = file.readInt();
+            keyCount = file.readInt();
+            int postingCount = file.readInt();
+
+            blockOffsets = new long[blockCount + 1];
+            file.seek(HEADER_BYTES);
+            for (int b = 0; b <= blockCount; b++) {
+                blockOffsets[b] = file.readLong();
+            }
+            long keysStart = blockOffsets[blockCount];
+            long postingsStart = keysStart + 8L * keyCount;
+            long end = postingsStart + 4L * (keyCount + 1) + 4L * postingCount;
+            if (end != channel.size()) {
+                throw new IOException("Truncated game database: " + pFile);
+            }
+            blocks = map(channel, 0, keysStart);
+            keys = map(channel, keysStart, postingsStart - keysStart);
+            postings = map(channel, postingsStart, end - postingsStart);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps a section of the file.
+     * @param pChannel channel of the file.
+     * @param pStart offset of the section.
+     * @param pSize size of the section.
+     * @return MappedByteBuffer read-only mapping.
+     * @throws IOException if the section is too large or cannot be mapped.
+     */
+    private static MappedByteBuffer map(FileChannel pChannel, long pStart, long pSize) throws IOException {
+        if (pSize > Integer.MAX_VALUE) {
+            throw new IOException("Database section over 2 GB; split the games over several files");
+        }
+        return pChannel.map(FileChannel.MapMode.READ_ONLY, pStart, pSize);
+    }
+
+    /**
+     * Accessor returns the number of games.
+     * @return int games.
+     */
+    public int getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * Accessor returns the number of plies indexed.
+     * @return int plies.
+     */
+    public int getIndexPlies() {
+        return indexPlies;
+    }
+
+    /**
+     * Accessor returns the number of distinct positions indexed.
+     * @return int positions.
+     */
+    public int getPositionCount() {
+        return keyCount;
+    }
+
+    /**
+     * Result of a game.
+     * @param pGame game number.
+     * @return int P1_WIN, P2_WIN, DRAW or UNFINISHED.
+     */
+    public int getResult(int pGame) {
+        return blocks.get(checkedBlockOffset(pGame) + pGame % blockSize);
+    }
+
+    /**
+     * Number of moves of a game.
+     * @param pGame game number.
+     * @return int moves.
+     */
+    public int getLength(int pGame) {
+        int base = checkedBlockOffset(pGame);
+        return blocks.get(base + blockCount(pGame) + pGame % blockSize);
+    }
+
+    /**
+     * A move of a game.
+     * @param pGame game number.
+     * @param pPly move number from 0.
+     * @return int column, 0 to COL - 1.
+     */
+    public int getMove(int pGame, int pPly) {
+        if (pPly < 0 || pPly >= getLength(pGame)) {
+            throw new IndexOutOfBoundsException("Ply " + pPly + " of game " + pGame);
+        }
+        int base = checkedBlockOffset(pGame);
+        int count = blockCount(pGame);
+        int offsets = (int) align4(base + 2L * count);
+        int words = (int) align(offsets + 4L * count);
+        long bit = blocks.getInt(offsets + 4 * (pGame % blockSize)) + (long) pPly * MOVE_BITS;
+        int shift = (int) (bit & 63);
+        long move = blocks.getLong(words + (int) (bit >>> 6) * 8) >>> shift;
+        if (shift > 64 - MOVE_BITS) {
+            move |= blocks.getLong(words + (int) (bit >>> 6) * 8 + 8) << (64 - shift);
+        }
+        return (int) (move & 7);
+    }
+
+    /**
+     * Moves of a game written as columns 1 to 7.
+     * @param pGame game number.
+     * @return String moves.
+     */
+    public String getMoves(int pGame) {
+        int length = getLength(pGame);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('1' + getMove(pGame, i)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Games that reached a position or its mirror image.
+     * @param pPosition position, at most getIndexPlies() moves deep.
+     * @return int[] game numbers in increasing order, empty if none.
+     * @throws IllegalArgumentException if the position is deeper than the index.
+     */
+    public int[] gamesThrough(Connect4Bitboard pPosition) {
+        long range = find(pPosition);
+        int from = (int) (range >>> 32);
+        int to = (int) range;
+        int[] games = new int[to - from];
+        for (int i = from; i < to; i++) {
+            games[i - from] = postings.getInt(4 * (keyCount + 1 + i));
+        }
+        return games;
+    }
+
+    /**
+     * Counts the results of the games that reached a position or its
+     * mirror image.
+     * @param pPosition position, at most getIndexPlies() moves deep.
+     * @return int[] games indexed by result: UNFINISHED, P1_WIN, P2_WIN, DRAW.
+     * @throws IllegalArgumentException if the position is deeper than the index.
+     */
+    public int[] resultsThrough(Connect4Bitboard pPosition) {
+        long range = find(pPosition);
+        int[] counts = new int[DRAW + 1];
+        for (int i = (int) (range >>> 32); i < (int) range; i++) {
+            counts[getResult(postings.getInt(4 * (keyCount + 1 + i)))]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Finds the games of a position in the index.
+     * @param pPosition position.
+     * @return long first posting in the high word, end in the low word.
+     */
+    private long find(Connect4Bitboard pPosition) {
+        if (pPosition.getMoves() > indexPlies) {
+            throw new IllegalArgumentException("Positions past ply " + indexPlies + " are not indexed");
+        }
+        if (pPosition.getMoves() == 0) {
+            // the empty board is not indexed; every game goes through it
+            throw new IllegalArgumentException("Every game starts from the empty board");
+        }
+        long key = pPosition.canonicalKey();
+        int low = 0;
+        int high = keyCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = keys.getLong(8 * mid);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return (long) postings.getInt(4 * mid) << 32 | postings.getInt(4 * (mid + 1));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Offset of the block holding a game.
+     * @param pGame game number.
+     * @return int offset in the mapping.
+     */
+    private int checkedBlockOffset(int pGame) {
+        if (pGame < 0 || pGame >= gameCount) {
+            throw new IndexOutOfBoundsException("Game " + pGame + " of " + gameCount);
+        }
+        return (int) blockOffsets[pGame / blockSize];
+    }
+
+    /**
+     * Number of games in the block holding a game.
+     * @param pGame game number.
+     * @return int games in the block.
+     */
+    private int blockCount(int pGame) {
+        return Math.min(blockSize, gameCount - pGame / blockSize * blockSize);
+    }
+
+    /**
+     * Closes the file.  The mappings stay valid until collected.
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Size of a block.
+     * @param pCount games in the block.
+     * @param pBits bits of their moves.
+     * @return long bytes.
+     */
+    private static long blockBytes(int pCount, long pBits) {
+        return align(align4(2L * pCount) + 4L * pCount) + 8 * ((pBits + 63) >>> 6);
+    }
+
+    /**
+     * Rounds up to a multiple of 8.
+     * @param pValue offset.
+     * @return long aligned offset.
+     */
+    private static long align(long pValue) {
+        return (pValue + 7) & ~7L;
+    }
+
+    /**
+     * Rounds up to a multiple of 4.
+     * @param pValue offset.
+     * @return long aligned offset.
+     */
+    private static long align4(long pValue) {
+        return (pValue + 3) & ~3L;
+    }
+
+    /**
+     * Writes zero bytes.
+     * @param pOut destination.
+     * @param pCount bytes to write.
+     * @throws IOException if they cannot be written.
+     */
+    private static void pad(DataOutputStream pOut, int pCount) throws IOException {
+        for (int i = 0; i < pCount; i++) {
+            pOut.write(0);
+        }
+    }
+
+    /**
+     * Stores a move in a packed array.
+     * @param pWords packed moves.
+     * @param pBit bit offset of the move.
+     * @param pMove column.
+     */
+    private static void putMove(long[] pWords, long pBit, long pMove) {
+        int word = (int) (pBit >>> 6);
+        int shift = (int) (pBit & 63);
+        pWords[word] |= pMove << shift;
+        if (shift > 64 - MOVE_BITS) {
+            pWords[word + 1] |= pMove >>> (64 - shift);
+        }
+    }
+
+    /**
+     * Reads a move from a packed array.
+     * @param pWords packed moves.
+     * @param pBit bit offset of the move.
+     * @return long column.
+     */
+    private static long getMove(long[] pWords, long pBit) {
+        int word = (int) (pBit >>> 6);
+        int shift = (int) (pBit & 63);
+        long move = pWords[word] >>> shift;
+        if (shift > 64 - MOVE_BITS) {
+            move |= pWords[word + 1] << (64 - shift);
+        }
+        return move & 7;
+    }
+
+    /**
+     * Reads games written as columns 1 to 7, one per line, into a builder.
+     * @param pFile text file of games.
+     * @param pBuilder builder receiving the games.
+     * @throws IOException if the file cannot be read or a game is invalid.
+     */
+    private static void readGames(File pFile, Builder pBuilder) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(pFile))) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    // solver test positions carry a score after the moves
+                    pBuilder.add(line.split("\\s+")[0]);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(pFile + ":" + lineNo + ": " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Main method to build or query a database.
+     * @param args command, build or query, then options as key=value pairs;
+     *             see the class description.
+     * @throws IOException if a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || !(args[0].equals("build") || args[0].equals("query"))) {
+            System.err.println("Usage: Connect4GameDatabase build in=FILE out=FILE [block=4096] [plies=12]");
+            System.err.println("       Connect4GameDatabase query db=FILE moves=MOVES [repeat=100000]");
+            return;
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            String[] pair = args[i].split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "");
+        }
+
+        if (args[0].equals("build")) {
+            Builder builder = new Builder();
+            long start = System.nanoTime();
+            readGames(new File(options.get("in")), builder);
+            long read = System.nanoTime();
+            File out = new File(options.get("out"));
+            builder.write(out, Integer.parseInt(options.getOrDefault("block", "" + DEFAULT_BLOCK_SIZE)),
+                    Integer.parseInt(options.getOrDefault("plies", "" + DEFAULT_INDEX_PLIES)));
+            long written = System.nanoTime();
+            try (Connect4GameDatabase db = new Connect4GameDatabase(out)) {
+                System.out.printf(Locale.ROOT, "%d games, %d positions indexed, %d bytes (%.1f per game)%n",
+                        db.getGameCount(), db.getPositionCount(), out.length(),
+                        out.length() / (double) Math.max(1, db.getGameCount()));
+            }
+            System.out.printf(Locale.ROOT, "Read in %.0f ms, indexed and written in %.0f ms on %d threads%n",
+                    (read - start) / 1e6, (written - read) / 1e6, Runtime.getRuntime().availableProcessors());
+            return;
+        }
+
+        try (Connect4GameDatabase db = new Connect4GameDatabase(new File(options.get("db")))) {
+            Connect4Bitboard position = new Connect4Bitboard();
+            String moves = options.getOrDefault("moves", "");
+            for (int i = 0; i < moves.length(); i++) {
+                position.play(moves.charAt(i) - '1');
+            }
+            int repeat = Integer.parseInt(options.getOrDefault("repeat", "100000"));
+            int[] games = db.gamesThrough(position);
+            int[] results = db.resultsThrough(position);
+            long start = System.nanoTime();
+            long sink = 0;
+            for (int i = 0; i < repeat; i++) {
+                sink += db.gamesThrough(position).length;
+            }
+            double micros = (System.nanoTime() - start) / 1e3 / Math.max(1, repeat);
+            System.out.printf(Locale.ROOT, "%d games through %s: %d red wins, %d yellow wins, %d draws, %d unfinished%n",
+                    games.length, moves, results[P1_WIN], results[P2_WIN], results[DRAW], results[UNFINISHED]);
+            for (int i = 0; i < Math.min(3, games.length); i++) {
+                System.out.println("  game " + games[i] + ": " + db.getMoves(games[i]));
+            }
+            System.out.printf(Locale.ROOT, "%-45s%.2f us (%d)%n", "Lookup time:", micros, sink);
+        }
+    }
+}
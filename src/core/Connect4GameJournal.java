@@ -0,0 +1,191 @@
+package core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is the journal of the games Connect4Server checkpointed instead of
+ * finishing, when it had to shut down before they ended.
+ * <p>
+ * The journal is a text file with one game per line: the game id, the kind
+ * of session ("players" or "computer"), the columns played so far as digits
+ * ("-" before the first move; past column 9 the characters after '9', as
+ * '0' + column, and PopOut pops as '0' + columns + column) and the
+ * milliseconds left on each player's clock at the start of the current turn,
+ * or -1 if the game is not timed.
+ * Lines starting with # are comments.  Checkpoints are appended, so the
+ * file collects the games of every shutdown until it is removed.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4GameJournal implements Connect4Constants {
+
+    /**
+     * One unfinished game.
+     */
+    public static final class Checkpoint {
+        /** Id of the game. */
+        private final long id;
+        /** "players" or "computer". */
+        private final String kind;
+        /** Columns played, as digits. */
+        private final String moves;
+        /** Time left on each clock in milliseconds, -1 if not timed. */
+        private final long[] clockMillis;
+
+        /**
+         * Constructor for a checkpoint.
+         * @param pId id of the game.
+         * @param pKind "players" or "computer".
+         * @param pMoves columns played, as digits.
+         * @param pClock1Millis time left on player 1's clock, -1 if not timed.
+         * @param pClock2Millis time left on player 2's clock, -1 if not timed.
+         */
+        public Checkpoint(long pId, String pKind, CharSequence pMoves, long pClock1Millis, long pClock2Millis) {
+            this.id = pId;
+            this.kind = pKind;
+            this.moves = pMoves.toString();
+            this.clockMillis = new long[] {pClock1Millis, pClock2Millis};
+        }
+
+        /**
+         * Reads a checkpoint from a journal line.
+         * @param pLine line of the journal.
+         * @return Checkpoint game.
+         * @throws IllegalArgumentException if the line is malformed.
+         */
+        public static Checkpoint parse(String pLine) {
+            String[] fields = pLine.trim().split("\\s+");
+            if (fields.length != 5) {
+                throw new IllegalArgumentException("Expected 5 fields: " + pLine);
+            }
+            String moves = fields[2].equals("-") ? "" : fields[2];
+            for (int i = 0; i < moves.length(); i++) {
+                if (moves.charAt(i) < '0' || moves.charAt(i) >= '0' + 2 * Connect4Variant.MAX_SIZE) {
+                    throw new IllegalArgumentException("Bad moves: " + pLine);
+                }
+            }
+            try {
+                return new Checkpoint(Long.parseLong(fields[0]), fields[1], moves,
+                        Long.parseLong(fields[3]), Long.parseLong(fields[4]));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad number: " + pLine, e);
+            }
+        }
+
+        /**
+         * Accessor returns the id of the game.
+         * @return long id.
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * Accessor returns the kind of session.
+         * @return String "players" or "computer".
+         */
+        public String getKind() {
+            return kind;
+        }
+
+        /**
+         * Accessor returns the columns played.
+         * @return String digits, one per move.
+         */
+        public String getMoves() {
+            return moves;
+        }
+
+        /**
+         * Accessor returns the time left on a player's clock.
+         * @param pPlayer PLAYER1 or PLAYER2.
+         * @return long milliseconds, -1 if not timed.
+         */
+        public long getClockMillis(int pPlayer) {
+            return clockMillis[pPlayer - 1];
+        }
+
+        /**
+         * Formats the checkpoint as a journal line.
+         * @return String line.
+         */
+        @Override
+        public String toString() {
+            return id + " " + kind + " " + (moves.isEmpty() ? "-" : moves) + " "
+                    + clockMillis[0] + " " + clockMillis[1];
+        }
+    }
+
+    /**
+     * File of the journal.
+     */
+    private final File file;
+
+    /**
+     * Constructor for a journal.
+     * @param pFile file of the journal, created by the first checkpoint.
+     */
+    public Connect4GameJournal(File pFile) {
+        this.file = pFile;
+    }
+
+    /**
+     * Appends a game to the journal.
+     * @param pCheckpoint game to save.
+     * @throws IOException if the file cannot be written.
+     */
+    public synchronized void append(Checkpoint pCheckpoint) throws IOException {
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(file, true), StandardCharsets.UTF_8))) {
+            out.println(pCheckpoint);
+            if (out.checkError()) {
+                throw new IOException("Cannot write " + file);
+            }
+        }
+    }
+
+    /**
+     * Reads every game in the journal.
+     * @return List of the games, oldest first; empty if there is no journal.
+     * @throws IOException if the file cannot be read or is malformed.
+     */
+    public synchronized List<Checkpoint> read() throws IOException {
+        List<Checkpoint> games = new ArrayList<>();
+        if (!file.isFile()) {
+            return games;
+        }
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    games.add(Checkpoint.parse(line));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Bad line in " + file + ": " + line, e);
+                }
+            }
+        }
+        return games;
+    }
+
+    /**
+     * Accessor returns the file of the journal.
+     * @return File journal.
+     */
+    public File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,235 @@
+package core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This is a concurrent latency histogram in the style of HdrHistogram.
+ * <p>
+ * Values are counted in log-linear buckets: exact below 128, then 64 buckets
+ * for every power of two, which keeps the relative error under 1.6% over the
+ * whole <code>long</code> range in a fixed 3712 counters.  Recording is one
+ * atomic increment on a stripe picked by the recording thread, so threads
+ * rarely touch the same cache line; reads sum the stripes.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4Histogram {
+
+    /**
+     * Bits of precision kept within each power of two.
+     */
+    private static final int SUB_BITS = 6;
+    /**
+     * Number of buckets per power of two.
+     */
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    /**
+     * Number of buckets covering every non-negative long.
+     */
+    private static final int BUCKETS = ((63 - SUB_BITS) << SUB_BITS) + SUB_COUNT;
+
+    /**
+     * Bucket counts, one array per stripe.
+     */
+    private final AtomicLongArray[] stripes;
+    /**
+     * Mask selecting a stripe from a thread id.
+     */
+    private final int stripeMask;
+
+    /**
+     * Constructor for a histogram with one stripe per processor.
+     */
+    public Connect4Histogram() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor for a histogram with the given number of stripes.
+     * @param pStripes stripes, rounded up to a power of two.
+     */
+    public Connect4Histogram(int pStripes) {
+        int n = 1;
+        while (n < pStripes) {
+            n <<= 1;
+        }
+        stripes = new AtomicLongArray[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+        stripeMask = n - 1;
+    }
+
+    /**
+     * Records one value.
+     * @param pValue value, negative values count as 0.
+     */
+    public void record(long pValue) {
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        stripes[stripe].incrementAndGet(index(Math.max(0, pValue)));
+    }
+
+    /**
+     * Clears every count.
+     */
+    public void reset() {
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                stripe.set(i, 0);
+            }
+        }
+    }
+
+    /**
+     * Takes a consistent-enough copy of the counts for reporting.
+     * @return long[] count per bucket.
+     */
+    public long[] snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Takes a copy of the counts and clears them, for per-interval reports.
+     * @return long[] count per bucket since the last call.
+     */
+    public long[] snapshotAndReset() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.getAndSet(i, 0);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Accessor returns the number of recorded values.
+     * @return long count.
+     */
+    public long getTotalCount() {
+        return total(snapshot());
+    }
+
+    /**
+     * Value at a percentile of the recorded values.
+     * @param pPercentile percentile between 0 and 100.
+     * @return long highest value of the bucket holding the percentile, 0 if
+     *         nothing was recorded.
+     */
+    public long getValueAtPercentile(double pPercentile) {
+        return valueAtPercentile(snapshot(), pPercentile);
+    }
+
+    /**
+     * Total of a snapshot.
+     * @param pCounts snapshot.
+     * @return long count.
+     */
+    public static long total(long[] pCounts) {
+        long total = 0;
+        for (long c : pCounts) {
+            total += c;
+        }
+        return total;
+    }
+
+    /**
+     * Value at a percentile of a snapshot.
+     * @param pCounts snapshot.
+     * @param pPercentile percentile between 0 and 100.
+     * @return long highest value of the bucket holding the percentile, 0 if
+     *         the snapshot is empty.
+     */
+    public static long valueAtPercentile(long[] pCounts, double pPercentile) {
+        long total = total(pCounts);
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(pPercentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < pCounts.length; i++) {
+            seen += pCounts[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(pCounts.length - 1);
+    }
+
+    /**
+     * Highest recorded value of a snapshot, to bucket precision.
+     * @param pCounts snapshot.
+     * @return long maximum, 0 if the snapshot is empty.
+     */
+    public static long max(long[] pCounts) {
+        for (int i = pCounts.length - 1; i >= 0; i--) {
+            if (pCounts[i] != 0) {
+                return highestValue(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Mean of a snapshot, using the middle of each bucket.
+     * @param pCounts snapshot.
+     * @return double mean, 0 if the snapshot is empty.
+     */
+    public static double mean(long[] pCounts) {
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < pCounts.length; i++) {
+            if (pCounts[i] != 0) {
+                total += pCounts[i];
+                sum += pCounts[i] * ((lowestValue(i) + (double) highestValue(i)) / 2);
+            }
+        }
+        return total == 0 ? 0 : sum / total;
+    }
+
+    /**
+     * Bucket of a value.
+     * @param pValue non-negative value.
+     * @return int bucket index.
+     */
+    static int index(long pValue) {
+        if (pValue < 2 * SUB_COUNT) {
+            return (int) pValue;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(pValue) - SUB_BITS;
+        return (shift << SUB_BITS) + (int) (pValue >>> shift);
+    }
+
+    /**
+     * Lowest value counted in a bucket.
+     * @param pIndex bucket index.
+     * @return long lowest value.
+     */
+    static long lowestValue(int pIndex) {
+        if (pIndex < 2 * SUB_COUNT) {
+            return pIndex;
+        }
+        int shift = (pIndex >> SUB_BITS) - 1;
+        return (long) (pIndex - (shift << SUB_BITS)) << shift;
+    }
+
+    /**
+     * Highest value counted in a bucket.
+     * @param pIndex bucket index.
+     * @return long highest value.
+     */
+    static long highestValue(int pIndex) {
+        if (pIndex < 2 * SUB_COUNT) {
+            return pIndex;
+        }
+        int shift = (pIndex >> SUB_BITS) - 1;
+        return ((long) (pIndex - (shift << SUB_BITS) + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,404 @@
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is a headless load generator for Connect4Server.
+ * <p>
+ * It holds a target number of game sessions open against a server.  Each
+ * session is one thread playing both sides of a game over two sockets with
+ * the same protocol as Connect4Client: PLAYER1/PLAYER2 on connect, then
+ * columns from the players and PROCEED, P1_WIN, P2_WIN or DRAW plus the
+ * opponent's move from the server.  When a game ends the session connects
+ * again and starts a new one, so the load holds until the run ends.
+ * Sessions start evenly spread over the ramp-up time.
+ * <p>
+ * The server pairs connections in the order it accepts them, so sessions
+ * connect their two players under a shared lock, which keeps every pair in
+ * the same game.  Because both players of a game live in the same thread,
+ * the latency of a move is measured exactly: from the moment the mover sends
+ * its column to the moment the opponent receives it.
+ * <p>
+ * Every second a line reports active sessions, moves/s, games/s, errors and
+ * the p50, p99, p99.9 and maximum move latency of that second; a summary over
+ * the whole run is printed at the end.
+ * <p>
+ * Usage: <code>Connect4LoadGenerator [host=localhost] [port=8000]
+ * [sessions=100] [ramp=10] [duration=60] [think=200] [moves=random|engine]
+ * [depth=4]</code> with times in seconds, except think time in milliseconds.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4LoadGenerator implements Connect4Constants {
+
+    /**
+     * Lock held while a session connects its two players.
+     */
+    private static final Object CONNECT_LOCK = new Object();
+
+    /**
+     * Server host name.
+     */
+    private String host = "localhost";
+    /**
+     * Server port.
+     */
+    private int port = 8000;
+    /**
+     * Number of sessions to hold.
+     */
+    private int sessions = 100;
+    /**
+     * Time to start all sessions, in milliseconds.
+     */
+    private long rampMillis = 10_000;
+    /**
+     * Length of the run, ramp-up included, in milliseconds.
+     */
+    private long durationMillis = 60_000;
+    /**
+     * Mean think time before each move, in milliseconds.
+     */
+    private long thinkMillis = 200;
+    /**
+     * Boolean to choose moves with the engine instead of at random.
+     */
+    private boolean engineMoves;
+    /**
+     * Search depth of engine moves.
+     */
+    private int depth = 4;
+
+    /**
+     * Flag telling sessions to finish.
+     */
+    private volatile boolean running = true;
+    /**
+     * Sessions currently connected.
+     */
+    private final AtomicInteger active = new AtomicInteger();
+    /**
+     * Moves played.
+     */
+    private final LongAdder moves = new LongAdder();
+    /**
+     * Games finished.
+     */
+    private final LongAdder games = new LongAdder();
+    /**
+     * Connection and protocol errors.
+     */
+    private final LongAdder errors = new LongAdder();
+    /**
+     * Move latency in nanoseconds, per reporting interval.
+     */
+    private final Connect4Histogram interval = new Connect4Histogram();
+    /**
+     * Move latency in nanoseconds, over the whole run.
+     */
+    private final Connect4Histogram overall = new Connect4Histogram();
+
+    /**
+     * Sets one option by name.
+     * @param pKey option name.
+     * @param pValue option value.
+     * @throws IllegalArgumentException if the option is unknown.
+     */
+    void set(String pKey, String pValue) {
+        switch (pKey) {
+            case "host":
+                host = pValue;
+                break;
+            case "port":
+                port = Integer.parseInt(pValue);
+                break;
+            case "sessions":
+                sessions = Integer.parseInt(pValue);
+                break;
+            case "ramp":
+                rampMillis = (long) (Double.parseDouble(pValue) * 1000);
+                break;
+            case "duration":
+                durationMillis = (long) (Double.parseDouble(pValue) * 1000);
+                break;
+            case "think":
+                thinkMillis = Long.parseLong(pValue);
+                break;
+            case "moves":
+                engineMoves = pValue.equals("engine");
+                break;
+            case "depth":
+                depth = Integer.parseInt(pValue);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + pKey);
+        }
+    }
+
+    /**
+     * Runs the load for the configured duration and prints the reports.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void run() throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < sessions; i++) {
+            final long seed = i;
+            Thread t = new Thread(() -> session(new Random(seed)), "Connect4-load-" + i);
+            t.setDaemon(true);
+            threads.add(t);
+        }
+
+        int started = 0;
+        long lastReport = start;
+        long lastMoves = 0;
+        long lastGames = 0;
+        System.out.println("  time  active    moves/s    games/s  errors     p50 us     p99 us"
+                + "   p99.9 us     max us");
+        while (System.nanoTime() < end) {
+            long now = System.nanoTime();
+            // start the sessions due by now, spread over the ramp-up
+            long due = rampMillis == 0 ? sessions
+                    : Math.min(sessions, sessions * TimeUnit.NANOSECONDS.toMillis(now - start) / rampMillis + 1);
+            while (started < due) {
+                threads.get(started++).start();
+            }
+            Thread.sleep(Math.min(50, Math.max(1, TimeUnit.NANOSECONDS.toMillis(end - now))));
+
+            now = System.nanoTime();
+            if (now - lastReport >= TimeUnit.SECONDS.toNanos(1)) {
+                double seconds = (now - lastReport) / 1e9;
+                long m = moves.sum();
+                long g = games.sum();
+                long[] counts = interval.snapshotAndReset();
+                System.out.printf(Locale.ROOT, "%6.0f %7d %10.0f %10.1f %7d %s%n",
+                        (now - start) / 1e9, active.get(), (m - lastMoves) / seconds,
+                        (g - lastGames) / seconds, errors.sum(), latencies(counts));
+                lastReport = now;
+                lastMoves = m;
+                lastGames = g;
+            }
+        }
+
+        running = false;
+        for (Thread t : threads) {
+            t.join(TimeUnit.SECONDS.toMillis(5) + thinkMillis * 2);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long[] counts = overall.snapshot();
+        System.out.printf(Locale.ROOT, "Total: %d moves, %d games, %d errors in %.1f s, %.0f moves/s%n",
+                moves.sum(), games.sum(), errors.sum(), seconds, moves.sum() / seconds);
+        System.out.printf(Locale.ROOT, "%-45s%s%n", "Move latency:", latencies(counts));
+    }
+
+    /**
+     * Formats the latency percentiles of a snapshot in microseconds.
+     * @param pCounts latency snapshot in nanoseconds.
+     * @return String p50, p99, p99.9 and max columns.
+     */
+    private static String latencies(long[] pCounts) {
+        return String.format(Locale.ROOT, "%10.1f %10.1f %10.1f %10.1f",
+                Connect4Histogram.valueAtPercentile(pCounts, 50) / 1e3,
+                Connect4Histogram.valueAtPercentile(pCounts, 99) / 1e3,
+                Connect4Histogram.valueAtPercentile(pCounts, 99.9) / 1e3,
+                Connect4Histogram.max(pCounts) / 1e3);
+    }
+
+    /**
+     * Session thread body: plays games back to back until the run ends.
+     * @param pRandom source of think times and random moves.
+     */
+    private void session(Random pRandom) {
+        Connect4Search search = null;
+        if (engineMoves) {
+            search = new Connect4Search(new Connect4TranspositionTable(16));
+            search.setMaxDepth(depth);
+        }
+        while (running) {
+            try {
+                if (playGame(pRandom, search)) {
+                    games.increment();
+                }
+            } catch (IOException | RuntimeException e) {
+                errors.increment();
+                pause(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Connects two players and plays one game between them.
+     * @param pRandom source of think times and random moves.
+     * @param pSearch engine for moves, null for random moves.
+     * @return <code>true</code> if the game reached a result;
+     * <code>false</code> if the run ended first.
+     * @throws IOException if a connection fails.
+     * @throws InterruptedException if interrupted while thinking.
+     */
+    private boolean playGame(Random pRandom, Connect4Search pSearch)
+            throws IOException, InterruptedException {
+        Socket[] sockets = new Socket[2];
+        try {
+            DataInputStream[] in = new DataInputStream[2];
+            DataOutputStream[] out = new DataOutputStream[2];
+            synchronized (CONNECT_LOCK) {
+                for (int p = 0; p < 2; p++) {
+                    sockets[p] = new Socket(host, port);
+                    sockets[p].setTcpNoDelay(true);
+                    in[p] = new DataInputStream(new BufferedInputStream(sockets[p].getInputStream()));
+                    out[p] = new DataOutputStream(sockets[p].getOutputStream());
+                    expect(in[p].readInt(), p == 0 ? PLAYER1 : PLAYER2);
+                }
+            }
+            active.incrementAndGet();
+            try {
+                // startup notification to player 1
+                in[0].readInt();
+                return play(in, out, pRandom, pSearch);
+            } finally {
+                active.decrementAndGet();
+            }
+        } finally {
+            for (Socket s : sockets) {
+                if (s != null) {
+                    s.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays the moves of a game until the server reports its end.
+     * @param pIn streams from players 1 and 2.
+     * @param pOut streams to players 1 and 2.
+     * @param pRandom source of think times and random moves.
+     * @param pSearch engine for moves, null for random moves.
+     * @return <code>true</code> if the game reached a result;
+     * <code>false</code> if the run ended first.
+     * @throws IOException if a connection fails or the server misbehaves.
+     * @throws InterruptedException if interrupted while thinking.
+     */
+    private boolean play(DataInputStream[] pIn, DataOutputStream[] pOut, Random pRandom,
+                      Connect4Search pSearch) throws IOException, InterruptedException {
+        Connect4Bitboard board = new Connect4Bitboard();
+        int mover = 0;
+        while (running) {
+            think(pRandom);
+            int col = chooseMove(board, pRandom, pSearch);
+            long sent = System.nanoTime();
+            pOut[mover].writeInt(col);
+            board.play(col);
+            moves.increment();
+
+            int other = 1 - mover;
+            boolean won = board.lastMoveWon();
+            int status = pIn[other].readInt();
+            pIn[other].readInt(); // row
+            int column = pIn[other].readInt();
+            long latency = System.nanoTime() - sent;
+            interval.record(latency);
+            overall.record(latency);
+            expect(column, col);
+
+            if (won) {
+                int result = mover == 0 ? P1_WIN : P2_WIN;
+                expect(status, result);
+                expect(pIn[mover].readInt(), result);
+                return true;
+            }
+            if (board.isFull()) {
+                // the server checks for a draw after either player's move
+                // and sends it to both players
+                expect(status, DRAW);
+                expect(pIn[mover].readInt(), DRAW);
+                return true;
+            }
+            expect(status, PROCEED);
+            mover = other;
+        }
+        return false;
+    }
+
+    /**
+     * Chooses a legal column.
+     * @param pBoard current game.
+     * @param pRandom source of random moves.
+     * @param pSearch engine, or null for a random move.
+     * @return int column.
+     */
+    private static int chooseMove(Connect4Bitboard pBoard, Random pRandom, Connect4Search pSearch) {
+        if (pSearch != null) {
+            return pSearch.bestMove(pBoard);
+        }
+        int col;
+        do {
+            col = pRandom.nextInt(COL);
+        } while (!pBoard.canPlay(col));
+        return col;
+    }
+
+    /**
+     * Waits for a think time of half to one and a half times the mean.
+     * @param pRandom source of the jitter.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void think(Random pRandom) throws InterruptedException {
+        if (thinkMillis > 0) {
+            Thread.sleep(thinkMillis / 2 + (long) (pRandom.nextDouble() * thinkMillis));
+        }
+    }
+
+    /**
+     * Sleeps without throwing, used to back off after an error.
+     * @param pMillis time to wait.
+     */
+    private static void pause(long pMillis) {
+        try {
+            Thread.sleep(pMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks a value received from the server.
+     * @param pActual value received.
+     * @param pExpected value expected.
+     * @throws IOException if they differ.
+     */
+    private static void expect(int pActual, int pExpected) throws IOException {
+        if (pActual != pExpected) {
+            throw new IOException("Protocol error: expected " + pExpected + ", got " + pActual);
+        }
+    }
+
+    /**
+     * Main method to run the load generator.
+     * @param args options as key=value pairs, see the class description.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Connect4LoadGenerator generator = new Connect4LoadGenerator();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            generator.set(pair[0], pair.length > 1 ? pair[1] : "");
+        }
+        generator.run();
+    }
+}
@@ -0,0 +1,574 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This is a Monte Carlo tree search player for any Connect4Rules rule set,
+ * meant for the boards too large for Connect4Search to solve.
+ * <p>
+ * Each iteration walks down the tree choosing children by UCT, expands the
+ * leaf it reaches once it has been visited before, finishes the game with
+ * random moves on the worker's Connect4NBoard, and adds the result to every
+ * node on the way back up.  Moves are played and taken back on the
+ * worker's board, so an iteration allocates nothing.
+ * <p>
+ * Nodes are not objects: the tree lives in a pool of parallel arrays made
+ * with the search, with the children of a node in consecutive slots.  A
+ * search starts a new tree in the same pool; when the pool is full, leaves
+ * are no longer expanded and iterations go on with playouts from them.
+ * <p>
+ * Several workers grow one shared tree.  Visits and scores are updated
+ * atomically, and a worker counts its visit on the way down, before the
+ * result is known, so the path it is exploring looks lost to the other
+ * workers until the result is added (virtual loss) and they spread over
+ * other moves.  A node is expanded by the one worker that marks it first.
+ * <p>
+ * Usage: <code>Connect4MonteCarlo [rules=classic:8x8x4] [threads=1,2,4]
+ * [time=1000] [moves=MOVES]</code> searches a position once per thread
+ * count for the given time and reports playouts per second and the speedup
+ * over the first thread count.  MOVES are the moves played from the empty
+ * board as characters '1' + move.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4MonteCarlo implements Connect4Constants {
+
+    /**
+     * Default base 2 logarithm of the number of nodes in the pool.
+     */
+    public static final int DEFAULT_LOG2_NODES = 20;
+    /**
+     * Default weight of the exploration term of UCT.
+     */
+    public static final double DEFAULT_EXPLORATION = 1.0;
+    /**
+     * Visits a leaf needs before it is expanded.
+     */
+    private static final int EXPAND_VISITS = 2;
+    /**
+     * Iterations between two checks of the clock.
+     */
+    private static final int CHECK_INTERVAL = 64;
+    /**
+     * Index of the root node.
+     */
+    private static final int ROOT = 0;
+    /**
+     * First child of a node some worker is expanding.
+     */
+    private static final int EXPANDING = -1;
+
+    /**
+     * Rules of the game searched.
+     */
+    private final Connect4Rules rules;
+    /**
+     * Number of nodes in the pool.
+     */
+    private final int capacity;
+    /**
+     * Move leading to each node.
+     */
+    private final int[] moveOf;
+    /**
+     * Number of children of each expanded node.
+     */
+    private final int[] childCount;
+    /**
+     * First child of each node; 0 for a leaf, as the root is no one's
+     * child, or EXPANDING.
+     */
+    private final AtomicIntegerArray firstChild;
+    /**
+     * Visits of each node, counting iterations still on their way down.
+     */
+    private final AtomicIntegerArray visits;
+    /**
+     * Results of each node for the player who moved into it, in half
+     * points: 2 per win, 1 per draw.
+     */
+    private final AtomicIntegerArray halfPoints;
+    /**
+     * Nodes of the pool in use.
+     */
+    private final AtomicInteger used = new AtomicInteger();
+    /**
+     * Set when the pool has no room for more children.
+     */
+    private volatile boolean full;
+    /**
+     * Workers growing the tree; the first runs on the caller's thread.
+     */
+    private final Worker[] workers;
+    /**
+     * Threads of the other workers, null with one worker.
+     */
+    private final ExecutorService executor;
+    /**
+     * Weight of the exploration term of UCT.
+     */
+    private double exploration = DEFAULT_EXPLORATION;
+    /**
+     * Time allowed for one search in milliseconds, 0 for no limit.
+     */
+    private long moveTimeMillis = Connect4ComputerPlayer.DEFAULT_MOVE_TIME;
+    /**
+     * Playouts allowed for one search, 0 for no limit.
+     */
+    private long maxPlayouts;
+    /**
+     * Flag set from any thread to end the current search.
+     */
+    private volatile boolean stopped;
+    /**
+     * System time after which the current search ends, 0 for none.
+     */
+    private long deadline;
+    /**
+     * Playouts of the last search.
+     */
+    private long playouts;
+    /**
+     * Duration of the last search in nanoseconds.
+     */
+    private long elapsedNanos;
+    /**
+     * Share of the best move's playouts won by the player to move, in the
+     * last search.
+     */
+    private double winRate;
+
+    /**
+     * Constructor for a search with a pool of the default size.
+     * @param pRules rules of the game.
+     * @param pThreads number of workers, at least 1.
+     */
+    public Connect4MonteCarlo(Connect4Rules pRules, int pThreads) {
+        this(pRules, pThreads, DEFAULT_LOG2_NODES);
+    }
+
+    /**
+     * Constructor for a search.
+     * @param pRules rules of the game.
+     * @param pThreads number of workers, at least 1.
+     * @param pLog2Nodes base 2 logarithm of the number of nodes in the pool.
+     * @throws IllegalArgumentException if the pool size is out of range.
+     */
+    public Connect4MonteCarlo(Connect4Rules pRules, int pThreads, int pLog2Nodes) {
+        if (pLog2Nodes < 4 || pLog2Nodes > 28) {
+            throw new IllegalArgumentException("Node pool must be 2^4 to 2^28 nodes: " + pLog2Nodes);
+        }
+        this.rules = pRules;
+        this.capacity = 1 << pLog2Nodes;
+        this.moveOf = new int[capacity];
+        this.childCount = new int[capacity];
+        this.firstChild = new AtomicIntegerArray(capacity);
+        this.visits = new AtomicIntegerArray(capacity);
+        this.halfPoints = new AtomicIntegerArray(capacity);
+        int threads = Math.max(1, pThreads);
+        this.workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(0x9E3779B97F4A7C15L * (i + 1));
+        }
+        if (threads > 1) {
+            AtomicInteger threadNo = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads - 1, threads - 1, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "Connect4-mcts-" + threadNo.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Mutator sets the time allowed for one search.
+     * @param pMoveTimeMillis milliseconds, 0 for no limit.
+     */
+    public void setMoveTimeMillis(long pMoveTimeMillis) {
+        this.moveTimeMillis = Math.max(0, pMoveTimeMillis);
+    }
+
+    /**
+     * Mutator sets the playouts allowed for one search, shared evenly by
+     * the workers.  With neither a time nor a playout limit a search runs
+     * until stop() is called.
+     * @param pMaxPlayouts playouts, 0 for no limit.
+     */
+    public void setMaxPlayouts(long pMaxPlayouts) {
+        this.maxPlayouts = Math.max(0, pMaxPlayouts);
+    }
+
+    /**
+     * Mutator sets the weight of the exploration term of UCT.
+     * @param pExploration weight; larger values try more moves.
+     */
+    public void setExploration(double pExploration) {
+        this.exploration = pExploration;
+    }
+
+    /**
+     * Accessor returns the rules searched.
+     * @return Connect4Rules rules.
+     */
+    public Connect4Rules getRules() {
+        return rules;
+    }
+
+    /**
+     * Accessor returns the number of workers.
+     * @return int threads.
+     */
+    public int getThreads() {
+        return workers.length;
+    }
+
+    /**
+     * Accessor returns the playouts of the last search.
+     * @return long playouts.
+     */
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * Accessor returns the playouts per second of the last search, all
+     * workers together.
+     * @return double playouts per second.
+     */
+    public double getPlayoutsPerSecond() {
+        return elapsedNanos > 0 ? playouts * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * Accessor returns the nodes the last search put in the pool.
+     * @return int nodes.
+     */
+    public int getNodesUsed() {
+        return Math.min(used.get(), capacity);
+    }
+
+    /**
+     * Accessor returns how often the player to move won the playouts of
+     * the move chosen by the last search, draws counting half.
+     * @return double win rate from 0 to 1.
+     */
+    public double getWinRate() {
+        return winRate;
+    }
+
+    /**
+     * Ends the current search from any thread; bestMove() returns the best
+     * move found so far.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Stops the worker threads.  The search cannot be used afterwards.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Searches a position and returns the move played most often from it.
+     * The position is left unchanged.
+     * @param pBoard position, of the rules' variant and not over.
+     * @return int best move, or -1 if there is no legal move.
+     */
+    public int bestMove(Connect4NBoard pBoard) {
+        playouts = 0;
+        elapsedNanos = 0;
+        winRate = 0;
+        int[] legal = workers[0].legal;
+        int count = rules.moves(pBoard, legal);
+        if (count <= 1) {
+            return count == 0 ? -1 : legal[0];
+        }
+        // worker 0 reuses the array for its playouts, so the answer for a
+        // root that is never expanded is kept now
+        int fallback = legal[0];
+
+        // a new tree: the root alone, as a leaf
+        used.set(ROOT + 1);
+        full = false;
+        firstChild.set(ROOT, 0);
+        visits.set(ROOT, 0);
+        halfPoints.set(ROOT, 0);
+        stopped = false;
+        long start = System.nanoTime();
+        deadline = moveTimeMillis > 0 ? start + moveTimeMillis * 1_000_000L : 0;
+        long share = maxPlayouts > 0 ? (maxPlayouts + workers.length - 1) / workers.length : Long.MAX_VALUE;
+        for (Worker worker : workers) {
+            worker.board.copyFrom(pBoard);
+            worker.limit = share;
+        }
+
+        List<Future<Long>> others = new ArrayList<>(workers.length - 1);
+        for (int i = 1; i < workers.length; i++) {
+            others.add(executor.submit(workers[i]));
+        }
+        long total = workers[0].call();
+        for (Future<Long> other : others) {
+            try {
+                total += other.get();
+            } catch (InterruptedException e) {
+                stopped = true;
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Search worker failed", e.getCause());
+            }
+        }
+        elapsedNanos = System.nanoTime() - start;
+        playouts = total;
+
+        // the most visited move is the most trusted
+        int first = firstChild.get(ROOT);
+        if (first <= 0) {
+            return fallback;
+        }
+        int best = first;
+        for (int c = first + 1; c < first + childCount[ROOT]; c++) {
+            if (visits.get(c) > visits.get(best)) {
+                best = c;
+            }
+        }
+        int bestVisits = visits.get(best);
+        winRate = bestVisits > 0 ? halfPoints.get(best) / (2.0 * bestVisits) : 0;
+        return moveOf[best];
+    }
+
+    /**
+     * Chooses the child of a node with the best UCT value; a child never
+     * visited comes first.
+     * @param pNode expanded node.
+     * @param pFirst first child of the node.
+     * @return int child.
+     */
+    private int select(int pNode, int pFirst) {
+        double logVisits = Math.log(Math.max(1, visits.get(pNode)));
+        int best = pFirst;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int c = pFirst; c < pFirst + childCount[pNode]; c++) {
+            int v = visits.get(c);
+            if (v == 0) {
+                return c;
+            }
+            double value = halfPoints.get(c) / (2.0 * v) + exploration * Math.sqrt(logVisits / v);
+            if (value > bestValue) {
+                bestValue = value;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Adds the children of a node the calling worker has marked EXPANDING,
+     * then publishes them.
+     * @param pNode node.
+     * @param pBoard position of the node.
+     * @param pLegal array for the legal moves.
+     * @return int first child, or 0 if the pool is full.
+     */
+    private int expand(int pNode, Connect4NBoard pBoard, int[] pLegal) {
+        int count = rules.moves(pBoard, pLegal);
+        int first = full ? capacity : used.getAndAdd(count);
+        if (count == 0 || first + count > capacity) {
+            full = count > 0;
+            firstChild.set(pNode, 0);
+            return 0;
+        }
+        for (int i = 0; i < count; i++) {
+            int c = first + i;
+            moveOf[c] = pLegal[i];
+            childCount[c] = 0;
+            visits.set(c, 0);
+            halfPoints.set(c, 0);
+            firstChild.set(c, 0);
+        }
+        childCount[pNode] = count;
+        // the volatile write makes the children visible to the other workers
+        firstChild.set(pNode, first);
+        return first;
+    }
+
+    /**
+     * A worker: its own board and buffers, and a random generator for its
+     * playouts.
+     */
+    private final class Worker implements Callable<Long> {
+        /** Position of the root, with the moves of the current iteration. */
+        final Connect4NBoard board;
+        /** Legal moves of a position. */
+        final int[] legal;
+        /** Nodes from the root to the current one. */
+        final int[] path;
+        /** Moves played since the root in the current iteration. */
+        final int[] played;
+        /** State of the xorshift generator. */
+        long seed;
+        /** Playouts left for this worker in the current search. */
+        long limit;
+
+        /**
+         * Constructor for a worker.
+         * @param pSeed seed of the playouts, not 0.
+         */
+        Worker(long pSeed) {
+            this.board = rules.getVariant().newBoard();
+            this.legal = new int[rules.maxMoves()];
+            this.path = new int[rules.maxPlies() + 1];
+            this.played = new int[rules.maxPlies()];
+            this.seed = pSeed;
+        }
+
+        @Override
+        public Long call() {
+            long done = 0;
+            while (done < limit && !stopped) {
+                iterate();
+                if (++done % CHECK_INTERVAL == 0 && deadline != 0 && System.nanoTime() - deadline > 0) {
+                    stopped = true;
+                }
+            }
+            return done;
+        }
+
+        /**
+         * One iteration: select, expand, play out and back up the result.
+         */
+        private void iterate() {
+            int rootPlayer = board.getPlayerToMove();
+            int depth = 0;
+            int plies = 0;
+            int node = ROOT;
+            int result = 0;
+            path[0] = ROOT;
+            visits.incrementAndGet(ROOT);
+            while (true) {
+                int first = firstChild.get(node);
+                if (first == 0 && (node == ROOT || visits.get(node) >= EXPAND_VISITS)
+                        && firstChild.compareAndSet(node, 0, EXPANDING)) {
+                    first = expand(node, board, legal);
+                }
+                if (first <= 0) {
+                    break;
+                }
+                int child = select(node, first);
+                // counted now, scored later: a virtual loss until then
+                visits.incrementAndGet(child);
+                int move = moveOf[child];
+                rules.play(board, move);
+                played[plies++] = move;
+                path[++depth] = child;
+                node = child;
+                result = rules.result(board, move);
+                if (result != 0) {
+                    break;
+                }
+            }
+
+            // random playout from the leaf
+            while (result == 0) {
+                int count = rules.moves(board, legal);
+                if (count == 0) {
+                    result = DRAW;
+                    break;
+                }
+                int move = legal[random(count)];
+                rules.play(board, move);
+                played[plies++] = move;
+                result = rules.result(board, move);
+            }
+
+            // the node at an odd depth was moved into by the root player
+            for (int i = 1; i <= depth; i++) {
+                int mover = (i & 1) == 1 ? rootPlayer : PLAYER1 + PLAYER2 - rootPlayer;
+                if (result == DRAW) {
+                    halfPoints.incrementAndGet(path[i]);
+                } else if (result == mover) {
+                    halfPoints.addAndGet(path[i], 2);
+                }
+            }
+            while (plies > 0) {
+                rules.undo(board, played[--plies]);
+            }
+        }
+
+        /**
+         * Draws a random index with a xorshift generator.
+         * @param pBound number of choices.
+         * @return int index from 0 to pBound - 1.
+         */
+        private int random(int pBound) {
+            long x = seed;
+            x ^= x >>> 12;
+            x ^= x << 25;
+            x ^= x >>> 27;
+            seed = x;
+            return (int) (((x * 0x2545F4914F6CDD1DL >>> 32) * pBound) >>> 32);
+        }
+    }
+
+    /**
+     * Searches a position with several thread counts and prints playouts
+     * per second.
+     * @param args rules=, threads=, time= and moves= settings.
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "");
+        }
+        Connect4Rules rules = Connect4Rules.parse(options.getOrDefault("rules", "classic:8x8x4"));
+        long time = Long.parseLong(options.getOrDefault("time", "1000"));
+        String moves = options.getOrDefault("moves", "");
+        Connect4NBoard position = rules.getVariant().newBoard();
+        for (int i = 0; i < moves.length(); i++) {
+            int move = moves.charAt(i) - '1';
+            if (!rules.isLegal(position, move)) {
+                throw new IllegalArgumentException("Illegal move " + (move + 1) + " at ply " + (i + 1));
+            }
+            rules.play(position, move);
+        }
+
+        System.out.println(rules + ", " + time + " ms per search");
+        double base = 0;
+        for (String threads : options.getOrDefault("threads", "1").split(",")) {
+            Connect4MonteCarlo search = new Connect4MonteCarlo(rules, Integer.parseInt(threads.trim()));
+            search.setMoveTimeMillis(time);
+            int move = search.bestMove(position);
+            double rate = search.getPlayoutsPerSecond();
+            if (base == 0) {
+                base = rate;
+            }
+            System.out.printf(Locale.ROOT,
+                    "threads %2d  move %2d  win %.3f  playouts %9d  %,12.0f playouts/s  x%.2f  nodes %d%n",
+                    search.getThreads(), move + 1, search.getWinRate(), search.getPlayouts(), rate,
+                    base > 0 ? rate / base : 0, search.getNodesUsed());
+            search.shutdown();
+        }
+    }
+}
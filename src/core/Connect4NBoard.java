@@ -0,0 +1,696 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * This is a bitboard for a Connect4Variant: any board size and any number of
+ * tokens in a row to win.
+ * <p>
+ * Boards are made by Connect4Variant.newBoard().  A board that fits in 64
+ * bits is a Single, which keeps the stones of the player to move and of
+ * both players in two <code>long</code>s like Connect4Bitboard and finds
+ * alignments with shifts, so the standard game costs the same as on
+ * Connect4Bitboard.  A larger board is a Multi, which keeps each player's
+ * stones in a <code>long[]</code> and checks only the precomputed lines
+ * through the last token played.  Moves are made and unmade in place, and
+ * neither board allocates after it is made.
+ * <p>
+ * Besides dropping a token, a player may pop out their own token at the
+ * bottom of a column, as in PopOut; the rules allowing it and deciding who
+ * won after a pop are in Connect4Rules.
+ * <p>
+ * Rows are counted from the bottom.  PLAYER1 is the player who moved first.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public abstract class Connect4NBoard implements Connect4Constants {
+
+    /**
+     * Variant played on the board.
+     */
+    protected final Connect4Variant variant;
+    /**
+     * Number of moves played since the beginning of the game.
+     */
+    protected int moves;
+    /**
+     * Number of tokens on the board; fewer than moves once tokens are
+     * popped out.
+     */
+    protected int tokens;
+
+    /**
+     * Constructor for an empty board.
+     * @param pVariant variant played.
+     */
+    protected Connect4NBoard(Connect4Variant pVariant) {
+        this.variant = pVariant;
+    }
+
+    /**
+     * Accessor returns the variant played on the board.
+     * @return Connect4Variant variant.
+     */
+    public Connect4Variant getVariant() {
+        return variant;
+    }
+
+    /**
+     * Accessor returns the number of moves played.
+     * @return int moves.
+     */
+    public int getMoves() {
+        return moves;
+    }
+
+    /**
+     * Accessor returns the number of tokens on the board.
+     * @return int tokens.
+     */
+    public int getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Accessor returns the player to move.
+     * @return int PLAYER1 or PLAYER2.
+     */
+    public int getPlayerToMove() {
+        return (moves & 1) == 0 ? PLAYER1 : PLAYER2;
+    }
+
+    /**
+     * Boolean to check if the board is full.
+     * @return <code>true</code> if no move is left;
+     *         <code>false</code> otherwise.
+     */
+    public boolean isFull() {
+        return tokens >= variant.getCells();
+    }
+
+    /**
+     * Boolean to check if a column is on the board and has room for another
+     * token.
+     * @param pCol column.
+     * @return <code>true</code> if the column can be played;
+     *         <code>false</code> otherwise.
+     */
+    public boolean isValid(int pCol) {
+        return pCol >= 0 && pCol < variant.getCols() && canPlay(pCol);
+    }
+
+    /**
+     * Clears the board for a new game.
+     */
+    public abstract void reset();
+
+    /**
+     * Boolean to check if a column has room for another token.
+     * @param pCol column between 0 and getCols() - 1.
+     * @return <code>true</code> if the column is not full;
+     *         <code>false</code> otherwise.
+     */
+    public abstract boolean canPlay(int pCol);
+
+    /**
+     * Plays a token for the player to move.  The column must be playable.
+     * @param pCol column between 0 and getCols() - 1.
+     * @return int row the token landed on, 0 at the bottom.
+     */
+    public abstract int play(int pCol);
+
+    /**
+     * Plays a token for a given player, whoever is to move.  The move count
+     * still advances, so getPlayerToMove(), lastMoveWon() and undo() only
+     * follow games where the players alternate; hasLine(), get() and
+     * height() hold either way.  The column must be playable.
+     * @param pCol column between 0 and getCols() - 1.
+     * @param pPlayer PLAYER1 or PLAYER2.
+     * @return int row the token landed on, 0 at the bottom.
+     */
+    public abstract int play(int pCol, int pPlayer);
+
+    /**
+     * Takes back the last token played in a column.
+     * @param pCol column the last move was played in.
+     */
+    public abstract void undo(int pCol);
+
+    /**
+     * Boolean to check if the player to move owns the bottom token of a
+     * column and so may pop it out.
+     * @param pCol column between 0 and getCols() - 1.
+     * @return <code>true</code> if the token can be popped;
+     *         <code>false</code> otherwise.
+     */
+    public abstract boolean canPop(int pCol);
+
+    /**
+     * Pops out the bottom token of a column, owned by the player to move;
+     * the tokens above fall one row.
+     * @param pCol column between 0 and getCols() - 1.
+     */
+    public abstract void pop(int pCol);
+
+    /**
+     * Takes back a pop: the tokens of the column rise one row and the
+     * player who popped gets their bottom token back.
+     * @param pCol column the last move popped.
+     */
+    public abstract void unpop(int pCol);
+
+    /**
+     * Hash of the position and the player to move, for transposition
+     * tables; Single boards return their exact key.
+     * @return long hash.
+     */
+    public abstract long hash();
+
+    /**
+     * Sets this board to the position of another board of the same
+     * variant, without allocating.
+     * @param pOther board to copy.
+     */
+    public abstract void copyFrom(Connect4NBoard pOther);
+
+    /**
+     * Boolean to check if the player who just dropped a token has N in a
+     * row through it.  After a pop, check both players with hasLine().
+     * @return <code>true</code> if the last move won the game;
+     *         <code>false</code> otherwise.
+     */
+    public abstract boolean lastMoveWon();
+
+    /**
+     * Boolean to check if a player has N in a row anywhere on the board.
+     * @param pPlayer PLAYER1 or PLAYER2.
+     * @return <code>true</code> if the player has an alignment;
+     *         <code>false</code> otherwise.
+     */
+    public abstract boolean hasLine(int pPlayer);
+
+    /**
+     * Number of tokens in a column.
+     * @param pCol column.
+     * @return int tokens.
+     */
+    public abstract int height(int pCol);
+
+    /**
+     * Owner of a cell.
+     * @param pCol column.
+     * @param pRow row, 0 at the bottom.
+     * @return int PLAYER1, PLAYER2, or 0 if the cell is empty.
+     */
+    public abstract int get(int pCol, int pRow);
+
+    /**
+     * A board that fits in one <code>long</code>.
+     */
+    public static final class Single extends Connect4NBoard {
+        /** Shift from a cell to the next one up. */
+        private static final int VERTICAL = 1;
+        /** Shift from a cell to the next one right. */
+        private final int horizontal;
+        /** Shift from a cell to the next one down and to the right. */
+        private final int diagonal1;
+        /** Shift from a cell to the next one up and to the right. */
+        private final int diagonal2;
+        /** Tokens in a row needed to win. */
+        private final int connect;
+        /** Whether the board is the standard one, checked as Connect4Bitboard does. */
+        private final boolean standard;
+        /** Rows of the board. */
+        private final int rows;
+        /** Bottom cell of every column. */
+        private final long bottom;
+        /** Every playable cell. */
+        private final long board;
+        /** Bottom cell of each column. */
+        private final long[] bottoms;
+        /** Top cell of each column. */
+        private final long[] tops;
+        /** Every playable cell of each column. */
+        private final long[] columns;
+        /** Stones of the player to move. */
+        private long current;
+        /** Stones of both players. */
+        private long mask;
+
+        /**
+         * Constructor for an empty board.
+         * @param pVariant variant played, at most 64 bits.
+         */
+        Single(Connect4Variant pVariant) {
+            super(pVariant);
+            int height = pVariant.getHeight();
+            this.horizontal = height;
+            this.diagonal1 = height - 1;
+            this.diagonal2 = height + 1;
+            this.connect = pVariant.getConnect();
+            this.standard = pVariant.equals(Connect4Variant.STANDARD);
+            this.rows = pVariant.getRows();
+            int cols = pVariant.getCols();
+            this.bottoms = new long[cols];
+            this.tops = new long[cols];
+            this.columns = new long[cols];
+            long b = 0;
+            for (int col = 0; col < cols; col++) {
+                bottoms[col] = pVariant.bit(col, 0);
+                tops[col] = pVariant.bit(col, rows - 1);
+                columns[col] = bottoms[col] * ((1L << rows) - 1);
+                b |= bottoms[col];
+            }
+            this.bottom = b;
+            this.board = b * ((1L << rows) - 1);
+        }
+
+        @Override
+        public void reset() {
+            current = 0;
+            mask = 0;
+            moves = 0;
+            tokens = 0;
+        }
+
+        @Override
+        public boolean canPlay(int pCol) {
+            return (mask & tops[pCol]) == 0;
+        }
+
+        @Override
+        public int play(int pCol) {
+            int row = Long.bitCount(mask & columns[pCol]);
+            current ^= mask;
+            mask |= mask + bottoms[pCol];
+            moves++;
+            tokens++;
+            return row;
+        }
+
+        @Override
+        public int play(int pCol, int pPlayer) {
+            int row = Long.bitCount(mask & columns[pCol]);
+            long own = pPlayer == getPlayerToMove() ? current : current ^ mask;
+            long cell = bottoms[pCol] << row;
+            own |= cell;
+            mask |= cell;
+            moves++;
+            tokens++;
+            current = pPlayer == getPlayerToMove() ? own : own ^ mask;
+            return row;
+        }
+
+        @Override
+        public void undo(int pCol) {
+            mask ^= Long.highestOneBit(mask & columns[pCol]);
+            current ^= mask;
+            moves--;
+            tokens--;
+        }
+
+        @Override
+        public boolean canPop(int pCol) {
+            return (current & bottoms[pCol]) != 0;
+        }
+
+        @Override
+        public void pop(int pCol) {
+            long column = columns[pCol];
+            long own = (current & ~column) | ((current & column) >>> 1 & column);
+            mask = (mask & ~column) | ((mask & column) >>> 1 & column);
+            current = mask ^ own;
+            moves++;
+            tokens--;
+        }
+
+        @Override
+        public void unpop(int pCol) {
+            long column = columns[pCol];
+            long own = current ^ mask;
+            own = (own & ~column) | ((own & column) << 1 & column) | bottoms[pCol];
+            mask = (mask & ~column) | ((mask & column) << 1 & column) | bottoms[pCol];
+            current = own;
+            moves--;
+            tokens++;
+        }
+
+        @Override
+        public long hash() {
+            return current + mask;
+        }
+
+        @Override
+        public void copyFrom(Connect4NBoard pOther) {
+            Single other = (Single) pOther;
+            current = other.current;
+            mask = other.mask;
+            moves = other.moves;
+            tokens = other.tokens;
+        }
+
+        @Override
+        public boolean lastMoveWon() {
+            return alignment(current ^ mask);
+        }
+
+        @Override
+        public boolean hasLine(int pPlayer) {
+            return alignment(pPlayer == getPlayerToMove() ? current : current ^ mask);
+        }
+
+        @Override
+        public int height(int pCol) {
+            return Long.bitCount(mask & columns[pCol]);
+        }
+
+        @Override
+        public int get(int pCol, int pRow) {
+            long bit = variant.bit(pCol, pRow);
+            if ((mask & bit) == 0) {
+                return 0;
+            }
+            int toMove = getPlayerToMove();
+            return (current & bit) != 0 ? toMove : PLAYER1 + PLAYER2 - toMove;
+        }
+
+        /**
+         * Accessor returns the stones of the player to move.
+         * @return long current.
+         */
+        public long getCurrent() {
+            return current;
+        }
+
+        /**
+         * Accessor returns the stones of both players.
+         * @return long mask.
+         */
+        public long getMask() {
+            return mask;
+        }
+
+        /**
+         * Unique key of the position, as Connect4Bitboard.key().
+         * @return long key.
+         */
+        public long key() {
+            return current + mask;
+        }
+
+        /**
+         * Accessor returns every playable cell.
+         * @return long cells.
+         */
+        public long getBoardMask() {
+            return board;
+        }
+
+        /**
+         * Accessor returns the bottom cell of every column.
+         * @return long cells.
+         */
+        public long getBottomMask() {
+            return bottom;
+        }
+
+        /**
+         * Mask of every playable cell of a column.
+         * @param pCol column.
+         * @return long column cells.
+         */
+        public long columnMask(int pCol) {
+            return columns[pCol];
+        }
+
+        /**
+         * Boolean to check if a set of stones contains N in a row.
+         * @param pPosition stones of one player.
+         * @return <code>true</code> if an alignment exists;
+         *         <code>false</code> otherwise.
+         */
+        boolean alignment(long pPosition) {
+            if (standard) {
+                return Connect4Bitboard.alignment(pPosition);
+            }
+            return run(pPosition, horizontal) || run(pPosition, diagonal1)
+                    || run(pPosition, diagonal2) || run(pPosition, VERTICAL);
+        }
+
+        /**
+         * Boolean to check for N stones in a row in one direction.  Runs
+         * are doubled in length with each shift, so N = 4 takes two shifts
+         * as on Connect4Bitboard and N = 5 takes three.
+         * @param pPosition stones of one player.
+         * @param pShift shift from a cell to the next one in the direction.
+         * @return <code>true</code> if a run of N exists;
+         *         <code>false</code> otherwise.
+         */
+        private boolean run(long pPosition, int pShift) {
+            long m = pPosition;
+            int length = 1;
+            while (2 * length <= connect) {
+                m &= m >>> length * pShift;
+                length *= 2;
+            }
+            if (length < connect) {
+                m &= m >>> (connect - length) * pShift;
+            }
+            return m != 0;
+        }
+    }
+
+    /**
+     * A board over several <code>long</code>s.
+     */
+    public static final class Multi extends Connect4NBoard {
+        /** Hash of the empty board with PLAYER2 to move. */
+        private static final long SIDE = 0x9E3779B97F4A7C15L;
+        /** Stones of each player, PLAYER1 first. */
+        private final long[][] stones;
+        /** Tokens in each column. */
+        private final int[] heights;
+        /** Column of the token dropped last among those on the board, by token count. */
+        private final int[] history;
+        /** Words per bitboard. */
+        private final int words;
+        /** Word holding each column. */
+        private final int[] colWords;
+        /** Bottom cell of each column within its word. */
+        private final long[] bottoms;
+        /** Every playable cell of each column within its word. */
+        private final long[] columns;
+        /** Rows of the board. */
+        private final int rows;
+        /** Line masks of the variant. */
+        private final long[] lineMasks;
+        /** First word of each line. */
+        private final int[] lineFirstWord;
+        /** Last word of each line. */
+        private final int[] lineLastWord;
+        /** Start of the lines through each cell. */
+        private final int[] cellLineStart;
+        /** Lines through each cell. */
+        private final int[] cellLines;
+
+        /**
+         * Constructor for an empty board.
+         * @param pVariant variant played.
+         */
+        Multi(Connect4Variant pVariant) {
+            super(pVariant);
+            this.words = pVariant.getWords();
+            this.rows = pVariant.getRows();
+            this.stones = new long[2][words];
+            this.heights = new int[pVariant.getCols()];
+            this.history = new int[pVariant.getCells()];
+            this.colWords = new int[pVariant.getCols()];
+            this.bottoms = new long[pVariant.getCols()];
+            this.columns = new long[pVariant.getCols()];
+            for (int col = 0; col < colWords.length; col++) {
+                colWords[col] = pVariant.word(col);
+                bottoms[col] = pVariant.bit(col, 0);
+                columns[col] = bottoms[col] * ((1L << rows) - 1);
+            }
+            this.lineMasks = pVariant.lineMasks();
+            this.lineFirstWord = pVariant.lineFirstWord();
+            this.lineLastWord = pVariant.lineLastWord();
+            this.cellLineStart = pVariant.cellLineStart();
+            this.cellLines = pVariant.cellLines();
+        }
+
+        @Override
+        public void reset() {
+            Arrays.fill(stones[0], 0);
+            Arrays.fill(stones[1], 0);
+            Arrays.fill(heights, 0);
+            moves = 0;
+            tokens = 0;
+        }
+
+        @Override
+        public boolean canPlay(int pCol) {
+            return heights[pCol] < rows;
+        }
+
+        @Override
+        public int play(int pCol) {
+            int row = heights[pCol]++;
+            stones[moves & 1][colWords[pCol]] |= bottoms[pCol] << row;
+            moves++;
+            history[tokens++] = pCol;
+            return row;
+        }
+
+        @Override
+        public int play(int pCol, int pPlayer) {
+            int row = heights[pCol]++;
+            stones[pPlayer - PLAYER1][colWords[pCol]] |= bottoms[pCol] << row;
+            moves++;
+            history[tokens++] = pCol;
+            return row;
+        }
+
+        @Override
+        public void undo(int pCol) {
+            int row = --heights[pCol];
+            stones[--moves & 1][colWords[pCol]] &= ~(bottoms[pCol] << row);
+            tokens--;
+        }
+
+        @Override
+        public boolean canPop(int pCol) {
+            return (stones[moves & 1][colWords[pCol]] & bottoms[pCol]) != 0;
+        }
+
+        @Override
+        public void pop(int pCol) {
+            int w = colWords[pCol];
+            long column = columns[pCol];
+            for (long[] own : stones) {
+                own[w] = (own[w] & ~column) | ((own[w] & column) >>> 1 & column);
+            }
+            heights[pCol]--;
+            moves++;
+            tokens--;
+        }
+
+        @Override
+        public void unpop(int pCol) {
+            int w = colWords[pCol];
+            long column = columns[pCol];
+            for (long[] own : stones) {
+                own[w] = (own[w] & ~column) | ((own[w] & column) << 1 & column);
+            }
+            moves--;
+            stones[moves & 1][w] |= bottoms[pCol];
+            heights[pCol]++;
+            tokens++;
+        }
+
+        @Override
+        public void copyFrom(Connect4NBoard pOther) {
+            Multi other = (Multi) pOther;
+            System.arraycopy(other.stones[0], 0, stones[0], 0, words);
+            System.arraycopy(other.stones[1], 0, stones[1], 0, words);
+            System.arraycopy(other.heights, 0, heights, 0, heights.length);
+            System.arraycopy(other.history, 0, history, 0, other.tokens);
+            moves = other.moves;
+            tokens = other.tokens;
+        }
+
+        @Override
+        public long hash() {
+            // a plain 0 or 1 would collide with a stone in the first cell
+            long h = (moves & 1) == 0 ? 0 : SIDE;
+            for (int w = 0; w < words; w++) {
+                h = mix(h + stones[0][w]);
+                h = mix(h ^ stones[1][w]);
+            }
+            return h;
+        }
+
+        /**
+         * Scrambles the bits of a word (the finalizer of SplitMix64).
+         * @param pValue value.
+         * @return long mixed value.
+         */
+        private static long mix(long pValue) {
+            long z = pValue;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+
+        @Override
+        public boolean lastMoveWon() {
+            if (tokens == 0) {
+                return false;
+            }
+            int col = history[tokens - 1];
+            int cell = col * rows + heights[col] - 1;
+            long[] own = stones[(moves - 1) & 1];
+            for (int i = cellLineStart[cell]; i < cellLineStart[cell + 1]; i++) {
+                if (complete(own, cellLines[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean hasLine(int pPlayer) {
+            long[] own = stones[pPlayer - PLAYER1];
+            int lines = lineFirstWord.length;
+            for (int line = 0; line < lines; line++) {
+                if (complete(own, line)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Boolean to check if stones cover every cell of a line.
+         * @param pOwn stones of one player.
+         * @param pLine line.
+         * @return <code>true</code> if the line is complete;
+         *         <code>false</code> otherwise.
+         */
+        private boolean complete(long[] pOwn, int pLine) {
+            int base = pLine * words;
+            for (int w = lineFirstWord[pLine]; w <= lineLastWord[pLine]; w++) {
+                long m = lineMasks[base + w];
+                if ((pOwn[w] & m) != m) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int height(int pCol) {
+            return heights[pCol];
+        }
+
+        @Override
+        public int get(int pCol, int pRow) {
+            int w = variant.word(pCol);
+            long bit = variant.bit(pCol, pRow);
+            if ((stones[0][w] & bit) != 0) {
+                return PLAYER1;
+            }
+            return (stones[1][w] & bit) != 0 ? PLAYER2 : 0;
+        }
+
+        /**
+         * Accessor returns a player's stones.  Shared, not to be changed.
+         * @param pPlayer PLAYER1 or PLAYER2.
+         * @return long[] stones, one word per group of columns.
+         */
+        public long[] getStones(int pPlayer) {
+            return stones[pPlayer - PLAYER1];
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This is the opening book shared by the server's computer opponents.
+ * <p>
+ * The book maps the key of an opening position to the column to play and the
+ * depth that column was searched to.  It is filled from a file and learns
+ * from the engine pool: a search of an opening position that reaches the
+ * book's minimum depth, or proves the result, is remembered, so that every
+ * later game through that position answers at once.  A deeper search
+ * replaces a shallower one.  Lookups and updates are lock-free and safe from
+ * any thread.
+ * <p>
+ * Each line of a book file holds a position key in hexadecimal, the column
+ * (0-6) and the depth.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4OpeningBook implements Connect4Constants {
+
+    /**
+     * Default number of moves covered by the book.
+     */
+    public static final int DEFAULT_MAX_PLY = 10;
+    /**
+     * Default search depth needed to add a position.
+     */
+    public static final int DEFAULT_MIN_DEPTH = 14;
+
+    /**
+     * Column and depth per position key, packed as depth * 16 + column.
+     */
+    private final ConcurrentHashMap<Long, Integer> entries = new ConcurrentHashMap<>();
+    /**
+     * Positions with more moves played are not kept.
+     */
+    private final int maxPly;
+    /**
+     * Search depth needed to add a position.
+     */
+    private final int minDepth;
+
+    /**
+     * Constructor for an empty book with the default limits.
+     */
+    public Connect4OpeningBook() {
+        this(DEFAULT_MAX_PLY, DEFAULT_MIN_DEPTH);
+    }
+
+    /**
+     * Constructor for an empty book.
+     * @param pMaxPly most moves played in a book position.
+     * @param pMinDepth search depth needed to add a position.
+     */
+    public Connect4OpeningBook(int pMaxPly, int pMinDepth) {
+        this.maxPly = pMaxPly;
+        this.minDepth = pMinDepth;
+    }
+
+    /**
+     * Accessor returns the number of positions in the book.
+     * @return int positions.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Looks up the move to play in a position.
+     * @param pPosition position, left unchanged.
+     * @return int column, or -1 if the position is not in the book.
+     */
+    public int lookup(Connect4Bitboard pPosition) {
+        if (pPosition.getMoves() > maxPly) {
+            return -1;
+        }
+        Integer entry = entries.get(pPosition.key());
+        if (entry == null) {
+            return -1;
+        }
+        int col = entry & 0xF;
+        return pPosition.canPlay(col) ? col : -1;
+    }
+
+    /**
+     * Offers the result of a search for the book.
+     * @param pPosition position searched.
+     * @param pColumn column found.
+     * @param pDepth depth completed.
+     * @param pProven <code>true</code> if the search proved the result.
+     */
+    public void learn(Connect4Bitboard pPosition, int pColumn, int pDepth, boolean pProven) {
+        if (pPosition.getMoves() > maxPly || (pDepth < minDepth && !pProven)) {
+            return;
+        }
+        int depth = pProven ? Connect4Bitboard.SIZE : pDepth;
+        put(pPosition.key(), pColumn, depth);
+    }
+
+    /**
+     * Stores an entry unless a deeper one is already there.
+     * @param pKey position key.
+     * @param pColumn column to play.
+     * @param pDepth depth searched.
+     */
+    private void put(long pKey, int pColumn, int pDepth) {
+        int entry = pDepth << 4 | pColumn;
+        entries.merge(pKey, entry, (old, add) -> (add >>> 4) >= (old >>> 4) ? add : old);
+    }
+
+    /**
+     * Adds the entries of a book file.
+     * @param pFile book file.
+     * @throws IOException if the file cannot be read or is malformed.
+     */
+    public void load(File pFile) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(pFile))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                try {
+                    int col = Integer.parseInt(fields[1]);
+                    if (col < 0 || col >= COL) {
+                        throw new IOException("Bad column in " + pFile + ": " + line);
+                    }
+                    put(Long.parseUnsignedLong(fields[0], 16), col, Integer.parseInt(fields[2]));
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("Bad line in " + pFile + ": " + line, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the book to a file.
+     * @param pFile destination file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save(File pFile) throws IOException {
+        try (PrintWriter out = new PrintWriter(pFile, "UTF-8")) {
+            for (Map.Entry<Long, Integer> e : entries.entrySet()) {
+                out.println(Long.toHexString(e.getKey()) + " " + (e.getValue() & 0xF)
+                        + " " + (e.getValue() >>> 4));
+            }
+        }
+    }
+}
@@ -0,0 +1,548 @@
+package core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class keeps running win, draw and loss counts for the opening
+ * positions of the games it is fed, so the most successful replies in a
+ * position can be looked up at any time without going through the games
+ * again.
+ * <p>
+ * Every finished game adds one to the count of its result in each position
+ * of its first plies (12 by default).  Positions are keyed by
+ * Connect4Bitboard.canonicalKey(), so a position and its mirror image are
+ * counted together.  The counts live in an open-addressing table of
+ * primitive arrays, a key array probed linearly and three counts per slot,
+ * so adding a game is a dozen probes and allocates nothing until the table
+ * has to grow.  Unfinished games are skipped, since they have no result.
+ * <p>
+ * Games are written as columns 1 to 7, one game per line, as in the files
+ * read by Connect4GameDatabase.  A file can be read once or followed as it
+ * grows, the way <code>tail -f</code> does, for a process still appending
+ * games to it.
+ * <p>
+ * Usage: <code>Connect4OpeningStats in=FILE [moves=MOVES] [plies=12]
+ * [min=1] [follow=false] [every=1000]</code> prints the replies to the
+ * position reached by <code>moves</code> after reading the file, or every
+ * <code>every</code> milliseconds while following it.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4OpeningStats implements Connect4Constants {
+
+    /**
+     * Default number of plies counted per game.
+     */
+    public static final int DEFAULT_PLIES = 12;
+    /**
+     * Initial number of slots; a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    /**
+     * Time to wait for a followed file to grow, in milliseconds.
+     */
+    private static final long FOLLOW_POLL_MILLIS = 200;
+
+    /**
+     * The counts of one reply to a position.
+     */
+    public static final class Reply implements Comparable<Reply> {
+        /** Column of the reply, 0 to COL - 1. */
+        private final int column;
+        /** Games won by the player making the reply. */
+        private final int wins;
+        /** Games drawn. */
+        private final int draws;
+        /** Games lost by the player making the reply. */
+        private final int losses;
+
+        /**
+         * Constructor for a reply.
+         * @param pColumn column of the reply.
+         * @param pWins games won by the player making the reply.
+         * @param pDraws games drawn.
+         * @param pLosses games lost by the player making the reply.
+         */
+        private Reply(int pColumn, int pWins, int pDraws, int pLosses) {
+            this.column = pColumn;
+            this.wins = pWins;
+            this.draws = pDraws;
+            this.losses = pLosses;
+        }
+
+        /**
+         * Accessor returns the column of the reply.
+         * @return int column, 0 to COL - 1.
+         */
+        public int getColumn() {
+            return column;
+        }
+
+        /**
+         * Accessor returns the games won by the player making the reply.
+         * @return int wins.
+         */
+        public int getWins() {
+            return wins;
+        }
+
+        /**
+         * Accessor returns the games drawn.
+         * @return int draws.
+         */
+        public int getDraws() {
+            return draws;
+        }
+
+        /**
+         * Accessor returns the games lost by the player making the reply.
+         * @return int losses.
+         */
+        public int getLosses() {
+            return losses;
+        }
+
+        /**
+         * Accessor returns the games through the reply.
+         * @return int games.
+         */
+        public int getGames() {
+            return wins + draws + losses;
+        }
+
+        /**
+         * Accessor returns the score of the reply for the player making it,
+         * a win counting 1 and a draw 1/2.
+         * @return double score from 0 to 1.
+         */
+        public double getScore() {
+            return (wins + draws / 2.0) / getGames();
+        }
+
+        /**
+         * Orders replies from the best score down, then by games played.
+         * @param pOther reply to compare with.
+         * @return int negative if this reply comes first.
+         */
+        @Override
+        public int compareTo(Reply pOther) {
+            int byScore = Double.compare(pOther.getScore(), getScore());
+            return byScore != 0 ? byScore : Integer.compare(pOther.getGames(), getGames());
+        }
+
+        /**
+         * Formats the reply as its column (1 to 7), score and counts.
+         * @return String reply.
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d: %.1f%% of %d (+%d =%d -%d)",
+                    column + 1, 100 * getScore(), getGames(), wins, draws, losses);
+        }
+    }
+
+    /**
+     * Position key per slot, 0 for an empty slot.
+     */
+    private long[] keys = new long[INITIAL_CAPACITY];
+    /**
+     * Red wins, yellow wins and draws per slot, three ints each.
+     */
+    private int[] counts = new int[3 * INITIAL_CAPACITY];
+    /**
+     * Number of slots used.
+     */
+    private int size;
+    /**
+     * Number of plies counted per game.
+     */
+    private final int plies;
+    /**
+     * Games counted.
+     */
+    private long games;
+    /**
+     * Games skipped because they were unfinished or invalid.
+     */
+    private long skipped;
+    /**
+     * Board used to replay the games added.
+     */
+    private final Connect4Bitboard board = new Connect4Bitboard();
+    /**
+     * Keys of the positions of the game being added.
+     */
+    private final long[] path;
+
+    /**
+     * Constructor for empty statistics of the default number of plies.
+     */
+    public Connect4OpeningStats() {
+        this(DEFAULT_PLIES);
+    }
+
+    /**
+     * Constructor for empty statistics.
+     * @param pPlies number of plies counted per game.
+     */
+    public Connect4OpeningStats(int pPlies) {
+        if (pPlies <= 0 || pPlies > ROW * COL) {
+            throw new IllegalArgumentException("Plies must be from 1 to " + ROW * COL);
+        }
+        this.plies = pPlies;
+        this.path = new long[pPlies];
+    }
+
+    /**
+     * Adds a game written as columns 1 to 7.
+     * @param pMoves moves of the game.
+     * @return <code>true</code> if the game was counted;
+     * <code>false</code> if it is unfinished or not a valid game.
+     */
+    public synchronized boolean add(CharSequence pMoves) {
+        board.reset();
+        int counted = 0;
+        int result = 0;
+        for (int i = 0; i < pMoves.length(); i++) {
+            int col = pMoves.charAt(i) - '1';
+            if (result != 0 || col < 0 || col >= COL || !board.canPlay(col)) {
+                skipped++;
+                return false;
+            }
+            board.play(col);
+            if (counted < plies) {
+                path[counted++] = board.canonicalKey();
+            }
+            if (board.lastMoveWon()) {
+                result = i % 2 == 0 ? P1_WIN : P2_WIN;
+            } else if (board.isFull()) {
+                result = DRAW;
+            }
+        }
+        if (result == 0) {
+            skipped++;
+            return false;
+        }
+
+        for (int i = 0; i < counted; i++) {
+            // slot() may grow the table, so the counts are read after it
+            int slot = slot(path[i]);
+            counts[3 * slot + result - 1]++;
+        }
+        games++;
+        return true;
+    }
+
+    /**
+     * Finds the slot of a key, taking an empty one if it is new.
+     * @param pKey position key, never 0.
+     * @return int slot.
+     */
+    private int slot(long pKey) {
+        int mask = keys.length - 1;
+        int i = (int) mix(pKey) & mask;
+        while (keys[i] != pKey) {
+            if (keys[i] == 0) {
+                if (2 * (size + 1) > keys.length) {
+                    grow();
+                    return slot(pKey);
+                }
+                keys[i] = pKey;
+                size++;
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Finds the slot of a key.
+     * @param pKey position key.
+     * @return int slot, or -1 if the position was never reached.
+     */
+    private int find(long pKey) {
+        int mask = keys.length - 1;
+        int i = (int) mix(pKey) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == pKey) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Doubles the table, keeping it at most half full.
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldCounts.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = (int) mix(oldKeys[j]) & mask;
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                System.arraycopy(oldCounts, 3 * j, counts, 3 * i, 3);
+            }
+        }
+    }
+
+    /**
+     * Counts the results of the games through a position or its mirror image.
+     * @param pPosition position, left unchanged.
+     * @return int[] games indexed by result: P1_WIN, P2_WIN and DRAW; all
+     * zero if no game reached the position or it is deeper than counted.
+     */
+    public synchronized int[] results(Connect4Bitboard pPosition) {
+        int[] results = new int[DRAW + 1];
+        int i = find(pPosition.canonicalKey());
+        if (pPosition.getMoves() > 0 && i >= 0) {
+            System.arraycopy(counts, 3 * i, results, P1_WIN, 3);
+        }
+        return results;
+    }
+
+    /**
+     * Lists the replies played in a position, the most successful first.
+     * Only the positions of the first plies are counted, so a position
+     * deeper than getPlies() - 1 has no replies.  On a symmetric position
+     * a reply and its mirror image share their games, so only the lower
+     * column is listed.
+     * @param pPosition position, left unchanged.
+     * @param pMinGames games a reply needs to be listed.
+     * @return List of the replies, best score first.
+     */
+    public synchronized List<Reply> replies(Connect4Bitboard pPosition, int pMinGames) {
+        List<Reply> replies = new ArrayList<>(COL);
+        Connect4Bitboard child = new Connect4Bitboard(pPosition);
+        int mover = pPosition.getMoves() % 2 == 0 ? P1_WIN : P2_WIN;
+        long[] listed = new long[COL];
+        int count = 0;
+        for (int col = 0; col < COL; col++) {
+            if (!child.canPlay(col)) {
+                continue;
+            }
+            child.play(col);
+            long key = child.canonicalKey();
+            child.undo(col);
+            if (contains(listed, count, key)) {
+                continue;
+            }
+            listed[count++] = key;
+            int i = find(key);
+            if (i < 0) {
+                continue;
+            }
+            int wins = counts[3 * i + mover - 1];
+            int losses = counts[3 * i + (P1_WIN + P2_WIN - mover) - 1];
+            int draws = counts[3 * i + DRAW - 1];
+            if (wins + draws + losses >= Math.max(1, pMinGames)) {
+                replies.add(new Reply(col, wins, draws, losses));
+            }
+        }
+        Collections.sort(replies);
+        return replies;
+    }
+
+    /**
+     * Boolean to check if a key is among the first keys of an array.
+     * @param pKeys keys.
+     * @param pCount keys in use.
+     * @param pKey key to look for.
+     * @return <code>true</code> if the key is in use;
+     * <code>false</code> otherwise.
+     */
+    private static boolean contains(long[] pKeys, int pCount, long pKey) {
+        for (int i = 0; i < pCount; i++) {
+            if (pKeys[i] == pKey) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds every game read from a file, one per line.
+     * @param pFile file of games.
+     * @param pFollow <code>true</code> to keep reading as the file grows
+     *                until the thread is interrupted; <code>false</code> to
+     *                stop at the end of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public void read(File pFile, boolean pFollow) throws IOException {
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(pFile), StandardCharsets.UTF_8), 1 << 16)) {
+            StringBuilder line = new StringBuilder(ROW * COL + 1);
+            while (true) {
+                int c = in.read();
+                if (c == '\n') {
+                    addLine(line);
+                    line.setLength(0);
+                } else if (c >= 0) {
+                    line.append((char) c);
+                } else if (!pFollow) {
+                    addLine(line);
+                    return;
+                } else {
+                    // a line is only taken once its end is written
+                    try {
+                        Thread.sleep(FOLLOW_POLL_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the game on a line, ignoring comments, blank lines and anything
+     * after the moves.
+     * @param pLine line read.
+     */
+    private void addLine(StringBuilder pLine) {
+        int end = 0;
+        while (end < pLine.length() && !Character.isWhitespace(pLine.charAt(end))) {
+            end++;
+        }
+        if (end > 0 && pLine.charAt(0) != '#') {
+            add(pLine.subSequence(0, end));
+        }
+    }
+
+    /**
+     * Accessor returns the number of plies counted per game.
+     * @return int plies.
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    /**
+     * Accessor returns the number of games counted.
+     * @return long games.
+     */
+    public synchronized long getGames() {
+        return games;
+    }
+
+    /**
+     * Accessor returns the number of games skipped as unfinished or invalid.
+     * @return long games.
+     */
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Accessor returns the number of distinct positions counted.
+     * @return int positions.
+     */
+    public synchronized int getPositions() {
+        return size;
+    }
+
+    /**
+     * Scrambles the bits of a key (the finalizer of SplitMix64).
+     * @param pKey position key.
+     * @return long mixed key.
+     */
+    private static long mix(long pKey) {
+        long z = pKey;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Prints the replies to a position.
+     * @param pStats statistics.
+     * @param pMoves moves reaching the position, as columns 1 to 7.
+     * @param pPosition position.
+     * @param pMinGames games a reply needs to be listed.
+     */
+    private static void print(Connect4OpeningStats pStats, String pMoves, Connect4Bitboard pPosition,
+                              int pMinGames) {
+        System.out.println(pStats.getGames() + " games, " + pStats.getSkipped() + " skipped, "
+                + pStats.getPositions() + " positions; replies after \"" + pMoves + "\":");
+        for (Reply reply : pStats.replies(pPosition, pMinGames)) {
+            System.out.println("  " + reply);
+        }
+    }
+
+    /**
+     * Main method to count the openings of a file of games.
+     * @param args options as key=value pairs; see the class description.
+     * @throws IOException if the file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "");
+        }
+        if (!options.containsKey("in")) {
+            System.err.println("Usage: Connect4OpeningStats in=FILE [moves=MOVES] [plies=12] [min=1]"
+                    + " [follow=false] [every=1000]");
+            return;
+        }
+        File in = new File(options.get("in"));
+        Connect4OpeningStats stats = new Connect4OpeningStats(
+                Integer.parseInt(options.getOrDefault("plies", "" + DEFAULT_PLIES)));
+        String moves = options.getOrDefault("moves", "");
+        Connect4Bitboard position = new Connect4Bitboard();
+        for (int i = 0; i < moves.length(); i++) {
+            position.play(moves.charAt(i) - '1');
+        }
+        int minGames = Integer.parseInt(options.getOrDefault("min", "1"));
+
+        if (Boolean.parseBoolean(options.getOrDefault("follow", "false"))) {
+            Thread reader = new Thread(() -> {
+                try {
+                    stats.read(in, true);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "Connect4-stats-reader");
+            reader.setDaemon(true);
+            reader.start();
+            long every = Long.parseLong(options.getOrDefault("every", "1000"));
+            while (reader.isAlive()) {
+                try {
+                    Thread.sleep(every);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                print(stats, moves, position, minGames);
+            }
+            return;
+        }
+
+        long start = System.nanoTime();
+        stats.read(in, false);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        print(stats, moves, position, minGames);
+        System.out.printf(Locale.ROOT, "%-45s%.0f games/s%n", "Aggregation rate:",
+                (stats.getGames() + stats.getSkipped()) / seconds);
+    }
+}
@@ -0,0 +1,278 @@
+package core;
+
+/**
+ * This class lets the computer player think on the opponent's time.
+ * <p>
+ * While the human player is choosing a column, a background thread searches
+ * the positions that can follow the human's move: only the reply the engine
+ * predicts, or every legal reply.  When the human then plays a move that was
+ * searched to completion (a ponder hit) the answer is returned at once.
+ * Otherwise (a ponder miss) the search runs as usual, still helped by the
+ * positions pondering left in the transposition table.
+ * <p>
+ * The ponder thread and the player never search at the same time: take()
+ * stops and joins the thread before the shared search is used again.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4Ponder implements Connect4Constants {
+
+    /**
+     * Which of the opponent's replies are searched while pondering.
+     */
+    public enum Mode {
+        /** No pondering. */
+        OFF,
+        /** Search only the reply the engine expects. */
+        PREDICTED,
+        /** Search every legal reply, predicted one first. */
+        ALL
+    }
+
+    /**
+     * Search shared with the computer player.
+     */
+    private final Connect4Search search;
+    /**
+     * Current pondering mode.
+     */
+    private Mode mode = Mode.OFF;
+    /**
+     * Background thread searching the replies, null when idle.
+     */
+    private Thread worker;
+    /**
+     * Key of the position the worker is pondering on.
+     */
+    private long ponderKey = -1;
+    /**
+     * Flag telling the worker to give up before its next search.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Keys of the positions searched to completion.
+     */
+    private final long[] resultKeys = new long[COL];
+    /**
+     * Best column found for each completed position.
+     */
+    private final int[] resultMoves = new int[COL];
+    /**
+     * Search time spent on each completed position, in nanoseconds.
+     */
+    private final long[] resultNanos = new long[COL];
+    /**
+     * Number of completed positions.
+     */
+    private int resultCount;
+
+    /**
+     * Number of moves answered from a ponder result.
+     */
+    private long hits;
+    /**
+     * Number of moves pondered on without a usable result.
+     */
+    private long misses;
+    /**
+     * Search time saved by ponder hits, in nanoseconds.
+     */
+    private long savedNanos;
+
+    /**
+     * Constructor to ponder with the computer player's search.
+     * @param pSearch search shared with the computer player.
+     */
+    public Connect4Ponder(Connect4Search pSearch) {
+        this.search = pSearch;
+    }
+
+    /**
+     * Mutator sets the pondering mode.  Takes effect the next time pondering
+     * starts.
+     * @param pMode OFF, PREDICTED or ALL.
+     */
+    public void setMode(Mode pMode) {
+        this.mode = pMode;
+    }
+
+    /**
+     * Accessor returns the pondering mode.
+     * @return Mode mode.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Accessor returns the number of ponder hits.
+     * @return long hits.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Accessor returns the number of ponder misses.
+     * @return long misses.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Fraction of pondered moves that were answered from a ponder result.
+     * @return double hit rate between 0 and 1.
+     */
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Accessor returns the search time saved by ponder hits.
+     * @return long saved time in milliseconds.
+     */
+    public long getSavedMillis() {
+        return savedNanos / 1_000_000L;
+    }
+
+    /**
+     * Starts pondering on a position where the opponent is to move.  Does
+     * nothing if pondering is off, the game is over, or the same position is
+     * already being pondered.
+     * @param pPosition position with the opponent to move.
+     */
+    public synchronized void start(Connect4Bitboard pPosition) {
+        if (mode == Mode.OFF || pPosition.isFull() || pPosition.lastMoveWon()) {
+            return;
+        }
+        if (worker != null && ponderKey == pPosition.key()) {
+            return;
+        }
+        halt();
+
+        final Connect4Bitboard root = new Connect4Bitboard(pPosition);
+        final Mode ponderMode = mode;
+        ponderKey = root.key();
+        resultCount = 0;
+        cancelled = false;
+        worker = new Thread(() -> ponder(root, ponderMode), "Connect4-ponder");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stops pondering and looks for a completed result for a position.
+     * Counts a hit or a miss if pondering was running.
+     * @param pPosition position with the computer to move.
+     * @return int best column on a ponder hit; -1 otherwise.
+     */
+    public synchronized int take(Connect4Bitboard pPosition) {
+        if (worker == null) {
+            return -1;
+        }
+        halt();
+
+        long key = pPosition.key();
+        for (int i = 0; i < resultCount; i++) {
+            if (resultKeys[i] == key) {
+                hits++;
+                savedNanos += resultNanos[i];
+                return resultMoves[i];
+            }
+        }
+        misses++;
+        return -1;
+    }
+
+    /**
+     * Stops pondering without using the results.
+     */
+    public synchronized void stop() {
+        halt();
+        resultCount = 0;
+    }
+
+    /**
+     * Stops the worker and waits for it to exit.
+     */
+    private void halt() {
+        if (worker == null) {
+            return;
+        }
+        cancelled = true;
+        try {
+            // stop again in case the worker started a new search in between
+            while (worker.isAlive()) {
+                search.stop();
+                worker.join(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker = null;
+        ponderKey = -1;
+    }
+
+    /**
+     * Worker body: searches the opponent's replies one at a time and records
+     * every search that ran to completion.
+     * @param pRoot position with the opponent to move, owned by the worker.
+     * @param pMode PREDICTED or ALL.
+     */
+    private void ponder(Connect4Bitboard pRoot, Mode pMode) {
+        int predicted = predictReply(pRoot);
+
+        for (int i = -1; i < COL; i++) {
+            int col = i < 0 ? predicted : Connect4Search.COLUMN_ORDER[i];
+            if (i >= 0 && (pMode != Mode.ALL || col == predicted)) {
+                continue;
+            }
+            if (cancelled) {
+                return;
+            }
+            if (!pRoot.canPlay(col) || pRoot.isWinningMove(col)) {
+                continue;
+            }
+            pRoot.play(col);
+            if (!pRoot.isFull()) {
+                long start = System.nanoTime();
+                int move = search.bestMove(pRoot);
+                long elapsed = System.nanoTime() - start;
+                if (cancelled) {
+                    return;
+                }
+                resultKeys[resultCount] = pRoot.key();
+                resultMoves[resultCount] = move;
+                resultNanos[resultCount] = elapsed;
+                resultCount++;
+            }
+            pRoot.undo(col);
+        }
+    }
+
+    /**
+     * Guesses the opponent's reply from the transposition table, falling
+     * back to the first playable column in search order.
+     * @param pRoot position with the opponent to move.
+     * @return int predicted column.
+     */
+    private int predictReply(Connect4Bitboard pRoot) {
+        int data = search.getTable().probe(pRoot.key());
+        if (data != Connect4TranspositionTable.MISS) {
+            int move = Connect4TranspositionTable.move(data);
+            if (move != Connect4TranspositionTable.NO_MOVE && pRoot.canPlay(move)) {
+                return move;
+            }
+        }
+        for (int col : Connect4Search.COLUMN_ORDER) {
+            if (pRoot.canPlay(col)) {
+                return col;
+            }
+        }
+        return 0;
+    }
+}
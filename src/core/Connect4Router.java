@@ -0,0 +1,549 @@
+package core;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is a router that spreads the games of one public port over several
+ * Connect4Server processes, its shards.
+ * <p>
+ * Players connect to the router exactly as they would to a server.  A shard
+ * pairs connections in the order it accepts them, so the router does the
+ * pairing itself: a player arriving with no partner waiting starts a new
+ * match on a shard chosen by the routing policy, and the next player joins
+ * the same shard.  Backend connections are opened one at a time on the
+ * accept thread, so each shard sees the two players of a match back to back.
+ * Players of the computer port get a shard each.  The router then copies
+ * bytes both ways until either side closes.
+ * <p>
+ * Two policies choose the shard of a new match:
+ * <ul>
+ * <li>hash - consistent hashing of the match number on a ring holding
+ *     several points per shard, so matches spread evenly and a shard that
+ *     joins or leaves moves only its own share of them
+ * <li>least - the shard with the fewest open connections through the router
+ * </ul>
+ * A shard that refuses a connection is skipped for a few seconds.
+ * <p>
+ * A spectator connecting to the router is forwarded to the shard that owns
+ * the game it asks for.  Shard n must be started with the system property
+ * <code>connect4.shard=n</code>, numbered from 0 in the order of the shards
+ * option; its game ids then carry the shard number, so a spectator
+ * reconnecting to a game is always sent back to the shard playing it.
+ * <p>
+ * Each shard listens on its own players' port P; its computer and spectator
+ * ports are P + 2 and P + 3, the defaults of Connect4Server.  Every shard
+ * can run on one machine, for example:
+ * <pre>
+ * java -Dconnect4.port=9000 -Dconnect4.shard=0 core.Connect4Server
+ * java -Dconnect4.port=9010 -Dconnect4.shard=1 core.Connect4Server
+ * java core.Connect4Router shards=localhost:9000,localhost:9010
+ * </pre>
+ * <p>
+ * Usage: <code>Connect4Router shards=host:port,... [port=8000]
+ * [computer=8002] [spectators=8003] [policy=hash|least] [replicas=64]
+ * [status=10]</code>; a negative port disables it and status is the report
+ * interval in seconds, 0 for none.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4Router implements Connect4Constants {
+
+    /**
+     * Default number of points per shard on the hash ring.
+     */
+    public static final int DEFAULT_REPLICAS = 64;
+    /**
+     * Offset of a shard's computer port from its players' port.
+     */
+    private static final int COMPUTER_OFFSET = 2;
+    /**
+     * Offset of a shard's spectator port from its players' port.
+     */
+    private static final int SPECTATOR_OFFSET = 3;
+    /**
+     * Time to connect to a shard, in milliseconds.
+     */
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    /**
+     * Time a refusing shard is skipped, in nanoseconds.
+     */
+    private static final long DOWN_NANOS = TimeUnit.SECONDS.toNanos(5);
+    /**
+     * Size of the copy buffers; the messages are a few ints.
+     */
+    private static final int BUFFER_SIZE = 512;
+
+    /**
+     * A server process behind the router.
+     */
+    static final class Shard {
+        /** Position in the shards option, the shard's connect4.shard. */
+        private final int index;
+        /** Host of the shard. */
+        private final String host;
+        /** Players' port of the shard. */
+        private final int port;
+        /** Connections open through the router. */
+        private final AtomicInteger active = new AtomicInteger();
+        /** Matches and computer games routed to the shard. */
+        private final LongAdder matches = new LongAdder();
+        /** System.nanoTime() until which the shard is skipped. */
+        private volatile long downUntil = System.nanoTime();
+
+        /**
+         * Constructor for a shard.
+         * @param pIndex position in the shards option.
+         * @param pHost host of the shard.
+         * @param pPort players' port of the shard.
+         */
+        Shard(int pIndex, String pHost, int pPort) {
+            this.index = pIndex;
+            this.host = pHost;
+            this.port = pPort;
+        }
+
+        /**
+         * Tells whether the shard may be chosen.
+         * @param pNow System.nanoTime().
+         * @return <code>true</code> if the shard did not refuse a connection
+         * lately; <code>false</code> otherwise.
+         */
+        boolean isUp(long pNow) {
+            return pNow - downUntil >= 0;
+        }
+
+        /**
+         * Describes the shard.
+         * @return String host:port.
+         */
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    /**
+     * Shards, in the order of the shards option.
+     */
+    private final List<Shard> shards = new ArrayList<>();
+    /**
+     * Hashes of the ring points, sorted.
+     */
+    private long[] ringHashes = new long[0];
+    /**
+     * Shard of each ring point.
+     */
+    private Shard[] ringShards = new Shard[0];
+    /**
+     * Players' port of the router.
+     */
+    private int port = 8000;
+    /**
+     * Computer port of the router, negative for none.
+     */
+    private int computerPort = 8002;
+    /**
+     * Spectator port of the router, negative for none.
+     */
+    private int spectatorPort = 8003;
+    /**
+     * Boolean to route to the least loaded shard instead of by hash.
+     */
+    private boolean leastLoad;
+    /**
+     * Points per shard on the ring.
+     */
+    private int replicas = DEFAULT_REPLICAS;
+    /**
+     * Report interval in seconds, 0 for none.
+     */
+    private int statusSeconds = 10;
+    /**
+     * Number of the last match routed.
+     */
+    private final AtomicLong matchNo = new AtomicLong();
+    /**
+     * Shard of the last two-player match, for spectators asking for game 0.
+     */
+    private volatile Shard latest;
+
+    /**
+     * Sets one option by name.
+     * @param pKey option name.
+     * @param pValue option value.
+     * @throws IllegalArgumentException if the option is unknown or malformed.
+     */
+    void set(String pKey, String pValue) {
+        try {
+            switch (pKey) {
+                case "shards":
+                    shards.clear();
+                    for (String spec : pValue.split(",")) {
+                        int colon = spec.lastIndexOf(':');
+                        if (colon < 0) {
+                            throw new IllegalArgumentException("Expected host:port: " + spec);
+                        }
+                        shards.add(new Shard(shards.size(), spec.substring(0, colon),
+                                Integer.parseInt(spec.substring(colon + 1))));
+                    }
+                    break;
+                case "port":
+                    port = Integer.parseInt(pValue);
+                    break;
+                case "computer":
+                    computerPort = Integer.parseInt(pValue);
+                    break;
+                case "spectators":
+                    spectatorPort = Integer.parseInt(pValue);
+                    break;
+                case "policy":
+                    if (!pValue.equals("hash") && !pValue.equals("least")) {
+                        throw new IllegalArgumentException("Unknown policy: " + pValue);
+                    }
+                    leastLoad = pValue.equals("least");
+                    break;
+                case "replicas":
+                    replicas = Math.max(1, Integer.parseInt(pValue));
+                    break;
+                case "status":
+                    statusSeconds = Math.max(0, Integer.parseInt(pValue));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + pKey);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad value for " + pKey + ": " + pValue, e);
+        }
+    }
+
+    /**
+     * Builds the hash ring from the shards.
+     */
+    private void buildRing() {
+        int points = shards.size() * replicas;
+        if (points > 0x10000) {
+            throw new IllegalArgumentException("Too many ring points: " + points);
+        }
+        long[] hashes = new long[points];
+        for (int i = 0; i < points; i++) {
+            // the point number in the low bits finds the owner after sorting
+            long key = ((long) shards.get(i / replicas).toString().hashCode() << 32) | (i % replicas);
+            hashes[i] = (mix(key) & ~0xFFFFL) | i;
+        }
+        Arrays.sort(hashes);
+        Shard[] owners = new Shard[points];
+        for (int i = 0; i < points; i++) {
+            owners[i] = shards.get((int) (hashes[i] & 0xFFFF) / replicas);
+        }
+        ringHashes = hashes;
+        ringShards = owners;
+    }
+
+    /**
+     * Scrambles the bits of a key (the finalizer of SplitMix64).
+     * @param pKey key.
+     * @return long hash.
+     */
+    private static long mix(long pKey) {
+        long z = pKey;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Chooses the shard of a new match.
+     * @param pMatch match number.
+     * @return Shard chosen, or null if every shard is down.
+     */
+    private Shard choose(long pMatch) {
+        long now = System.nanoTime();
+        if (leastLoad) {
+            Shard best = null;
+            for (Shard shard : shards) {
+                if (shard.isUp(now) && (best == null || shard.active.get() < best.active.get())) {
+                    best = shard;
+                }
+            }
+            return best;
+        }
+        // first point clockwise from the key, skipping shards that are down
+        int i = Arrays.binarySearch(ringHashes, mix(pMatch));
+        i = i < 0 ? -i - 1 : i;
+        for (int n = 0; n < ringShards.length; n++) {
+            Shard shard = ringShards[(i + n) % ringShards.length];
+            if (shard.isUp(now)) {
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Opens a connection to a shard, marking it down if it refuses.
+     * @param pShard shard to connect to.
+     * @param pOffset offset of the port from the shard's players' port.
+     * @return Socket connection.
+     * @throws IOException if the shard cannot be reached.
+     */
+    private static Socket connect(Shard pShard, int pOffset) throws IOException {
+        Socket backend = new Socket();
+        try {
+            backend.connect(new InetSocketAddress(pShard.host, pShard.port + pOffset), CONNECT_TIMEOUT_MILLIS);
+            backend.setTcpNoDelay(true);
+            return backend;
+        } catch (IOException e) {
+            pShard.downUntil = System.nanoTime() + DOWN_NANOS;
+            Connect4Connection.closeQuietly(backend);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a connection for a new match, trying another shard if the one
+     * chosen is down.
+     * @param pOffset offset of the port from the shard's players' port.
+     * @param pChosen receives the shard connected to.
+     * @return Socket connection.
+     * @throws IOException if no shard can be reached.
+     */
+    private Socket connectNewMatch(int pOffset, Shard[] pChosen) throws IOException {
+        long match = matchNo.incrementAndGet();
+        IOException failure = new IOException("No shard available");
+        for (int attempt = 0; attempt < shards.size(); attempt++) {
+            Shard shard = choose(match);
+            if (shard == null) {
+                break;
+            }
+            try {
+                Socket backend = connect(shard, pOffset);
+                shard.matches.increment();
+                pChosen[0] = shard;
+                return backend;
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Accept thread of the players' port: pairs the players into matches.
+     * @param pServer socket of the players' port.
+     */
+    private void routePlayers(ServerSocket pServer) {
+        Shard pending = null;
+        Shard[] chosen = new Shard[1];
+        while (true) {
+            Socket client;
+            try {
+                client = pServer.accept();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            Socket backend;
+            Shard shard;
+            try {
+                client.setTcpNoDelay(true);
+                if (pending == null) {
+                    backend = connectNewMatch(0, chosen);
+                    shard = chosen[0];
+                    pending = shard;
+                    latest = shard;
+                } else {
+                    shard = pending;
+                    pending = null;
+                    backend = connect(shard, 0);
+                }
+            } catch (IOException e) {
+                // the client would wait forever for PLAYER1 or PLAYER2
+                Connect4Connection.closeQuietly(client);
+                continue;
+            }
+            pipe(client, backend, shard);
+        }
+    }
+
+    /**
+     * Accept thread of the computer port: one shard per game.
+     * @param pServer socket of the computer port.
+     */
+    private void routeComputerGames(ServerSocket pServer) {
+        Shard[] chosen = new Shard[1];
+        while (true) {
+            Socket client;
+            try {
+                client = pServer.accept();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            try {
+                client.setTcpNoDelay(true);
+                Socket backend = connectNewMatch(COMPUTER_OFFSET, chosen);
+                pipe(client, backend, chosen[0]);
+            } catch (IOException e) {
+                Connect4Connection.closeQuietly(client);
+            }
+        }
+    }
+
+    /**
+     * Accept thread of the spectator port.
+     * @param pServer socket of the spectator port.
+     */
+    private void routeSpectators(ServerSocket pServer) {
+        while (true) {
+            Socket client;
+            try {
+                client = pServer.accept();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            // the game id is read on a thread of its own so a silent client does not block the port
+            Thread thread = new Thread(() -> forwardSpectator(client), "Connect4-router-spectator");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Reads the game a spectator asks for and forwards the spectator to the
+     * shard that owns it.
+     * @param pClient connection of the spectator.
+     */
+    private void forwardSpectator(Socket pClient) {
+        try {
+            pClient.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+            long id = new DataInputStream(pClient.getInputStream()).readLong();
+            pClient.setSoTimeout(0);
+            int index = Connect4SessionIds.shardOf(id);
+            Shard shard = id == 0 ? latest : index < shards.size() ? shards.get(index) : null;
+            if (shard == null) {
+                // as a shard answers an unknown game
+                pClient.getOutputStream().write(new byte[Long.BYTES]);
+                Connect4Connection.closeQuietly(pClient);
+                return;
+            }
+            Socket backend = connect(shard, SPECTATOR_OFFSET);
+            backend.getOutputStream().write(ByteBuffer.allocate(Long.BYTES).putLong(id).array());
+            pipe(pClient, backend, shard);
+        } catch (IOException e) {
+            Connect4Connection.closeQuietly(pClient);
+        }
+    }
+
+    /**
+     * Copies bytes both ways between a client and a shard until either
+     * side closes, then closes both.
+     * @param pClient connection of the client.
+     * @param pBackend connection to the shard.
+     * @param pShard shard connected to.
+     */
+    private static void pipe(Socket pClient, Socket pBackend, Shard pShard) {
+        pShard.active.incrementAndGet();
+        AtomicInteger open = new AtomicInteger(2);
+        Runnable closed = () -> {
+            Connect4Connection.closeQuietly(pClient);
+            Connect4Connection.closeQuietly(pBackend);
+            if (open.decrementAndGet() == 0) {
+                pShard.active.decrementAndGet();
+            }
+        };
+        copy(pClient, pBackend, closed);
+        copy(pBackend, pClient, closed);
+    }
+
+    /**
+     * Starts a thread copying the bytes of one direction.
+     * @param pFrom socket read.
+     * @param pTo socket written.
+     * @param pClosed task run when the copy ends.
+     */
+    private static void copy(Socket pFrom, Socket pTo, Runnable pClosed) {
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try {
+                InputStream in = pFrom.getInputStream();
+                OutputStream out = pTo.getOutputStream();
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, n);
+                }
+            } catch (IOException e) {
+                // either side closed
+            } finally {
+                pClosed.run();
+            }
+        }, "Connect4-router-pipe");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts the ports and reports the shards' load until the process ends.
+     * @throws IOException if a port cannot be bound.
+     * @throws InterruptedException if interrupted while reporting.
+     */
+    public void run() throws IOException, InterruptedException {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("No shards: use shards=host:port,...");
+        }
+        buildRing();
+        ServerSocket players = new ServerSocket(port);
+        new Thread(() -> routePlayers(players), "Connect4-router-players").start();
+        if (computerPort >= 0) {
+            ServerSocket computer = new ServerSocket(computerPort);
+            new Thread(() -> routeComputerGames(computer), "Connect4-router-computer").start();
+        }
+        if (spectatorPort >= 0) {
+            ServerSocket spectators = new ServerSocket(spectatorPort);
+            new Thread(() -> routeSpectators(spectators), "Connect4-router-spectators").start();
+        }
+        System.out.println("Routing port " + port + " to " + shards + " by "
+                + (leastLoad ? "least load" : "consistent hash"));
+
+        while (statusSeconds > 0) {
+            TimeUnit.SECONDS.sleep(statusSeconds);
+            StringBuilder sb = new StringBuilder();
+            for (Shard shard : shards) {
+                sb.append(String.format("%s#%d %s matches=%d active=%d%s", sb.length() > 0 ? "  " : "",
+                        shard.index, shard, shard.matches.sum(), shard.active.get(),
+                        shard.isUp(System.nanoTime()) ? "" : " (down)"));
+            }
+            System.out.println(sb);
+        }
+    }
+
+    /**
+     * Main method to run the router.
+     * @param args options as key=value pairs, see the class description.
+     * @throws IOException if a port cannot be bound.
+     * @throws InterruptedException if interrupted while reporting.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Connect4Router router = new Connect4Router();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            router.set(pair[0], pair.length > 1 ? pair[1] : "");
+        }
+        router.run();
+    }
+}
@@ -0,0 +1,378 @@
+package core;
+
+import java.util.Locale;
+
+/**
+ * This interface is a rule set played on a Connect4NBoard: which moves are
+ * legal and when the game is over.  The board only knows how to drop and
+ * pop tokens and find alignments; a rule set puts them together, so the
+ * search, the server and the benchmarks play any rule set the same way.
+ * <p>
+ * A move is an <code>int</code>: a column from 0 to cols - 1 drops a token
+ * there, and cols + column pops the player's own token out of the bottom
+ * of that column.  Moves are listed into an array the caller owns, so
+ * nothing is allocated per move.
+ * <p>
+ * The rule sets are
+ * <ul>
+ * <li>classic - drop tokens until one player has N in a row or the board
+ *     is full, on any Connect4Variant
+ * <li>five - Five-in-a-Row: classic rules on a board of 6 rows and 9
+ *     columns where five in a row are needed
+ * <li>popout - a player may also pop out one of their own tokens from the
+ *     bottom of a column instead of dropping one.  A pop can give both
+ *     players a line; the player who popped then wins.  A full board is not
+ *     a draw while the player to move can pop; the game is drawn when they
+ *     cannot, or after maxPlies moves, which stands in for the repetition
+ *     rule
+ * </ul>
+ * Rule sets are written "NAME" or "NAME:ROWSxCOLSxN", e.g. "popout" or
+ * "classic:8x8x4".
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public interface Connect4Rules extends Connect4Constants {
+
+    /**
+     * Classic rules on the standard board.
+     */
+    Connect4Rules CLASSIC = new Classic(Connect4Variant.STANDARD);
+    /**
+     * Five-in-a-Row on 6 rows and 9 columns.
+     */
+    Connect4Rules FIVE_IN_A_ROW = new Classic("five", new Connect4Variant(6, 9, 5));
+    /**
+     * PopOut on the standard board.
+     */
+    Connect4Rules POPOUT = new PopOut(Connect4Variant.STANDARD);
+
+    /**
+     * Accessor returns the name of the rule set.
+     * @return String name.
+     */
+    String getName();
+
+    /**
+     * Accessor returns the board size and N of the rule set.
+     * @return Connect4Variant variant.
+     */
+    Connect4Variant getVariant();
+
+    /**
+     * Largest number of legal moves in a position, the size of the array
+     * given to moves().
+     * @return int moves.
+     */
+    int maxMoves();
+
+    /**
+     * Longest game, in moves.
+     * @return int moves.
+     */
+    int maxPlies();
+
+    /**
+     * Lists the legal moves, central columns first.
+     * @param pBoard position, left unchanged.
+     * @param pMoves array of at least maxMoves() entries to fill.
+     * @return int number of moves, 0 if the game is over.
+     */
+    int moves(Connect4NBoard pBoard, int[] pMoves);
+
+    /**
+     * Boolean to check if a move is legal.
+     * @param pBoard position.
+     * @param pMove move, as sent by a player.
+     * @return <code>true</code> if the move may be played;
+     *         <code>false</code> otherwise.
+     */
+    boolean isLegal(Connect4NBoard pBoard, int pMove);
+
+    /**
+     * Plays a legal move for the player to move.
+     * @param pBoard position.
+     * @param pMove move.
+     * @return int row of the token dropped, 0 at the bottom; 0 for a pop.
+     */
+    int play(Connect4NBoard pBoard, int pMove);
+
+    /**
+     * Takes back the last move.
+     * @param pBoard position.
+     * @param pMove move played last.
+     */
+    void undo(Connect4NBoard pBoard, int pMove);
+
+    /**
+     * Result of the game after a move.
+     * @param pBoard position after the move.
+     * @param pMove move played last.
+     * @return int P1_WIN, P2_WIN or DRAW if the game is over; 0 otherwise.
+     */
+    int result(Connect4NBoard pBoard, int pMove);
+
+    /**
+     * Makes a rule set from its name and board.
+     * @param pSpec "NAME" or "NAME:ROWSxCOLSxN"; NAME is classic, five or popout.
+     * @return Connect4Rules rule set.
+     * @throws IllegalArgumentException if the name or board is unknown.
+     */
+    static Connect4Rules parse(String pSpec) {
+        String[] parts = pSpec.trim().toLowerCase(Locale.ROOT).split(":", 2);
+        Connect4Variant variant = parts.length > 1 ? Connect4Variant.parse(parts[1]) : null;
+        switch (parts[0]) {
+            case "classic":
+                return variant == null || variant == Connect4Variant.STANDARD ? CLASSIC : new Classic(variant);
+            case "five":
+                return variant == null ? FIVE_IN_A_ROW : new Classic("five", variant);
+            case "popout":
+                return variant == null || variant == Connect4Variant.STANDARD ? POPOUT : new PopOut(variant);
+            default:
+                throw new IllegalArgumentException("Unknown rules: " + pSpec);
+        }
+    }
+
+    /**
+     * Player who made the last move.
+     * @param pBoard position after the move.
+     * @return int P1_WIN if PLAYER1 moved last, P2_WIN otherwise.
+     */
+    static int lastMover(Connect4NBoard pBoard) {
+        return pBoard.getPlayerToMove() == PLAYER1 ? P2_WIN : P1_WIN;
+    }
+
+    /**
+     * Classic rules: drops only, N in a row wins, a full board draws.
+     */
+    final class Classic implements Connect4Rules {
+        /** Name of the rule set. */
+        private final String name;
+        /** Board and N. */
+        private final Connect4Variant variant;
+        /** Columns from the center outwards. */
+        private final int[] order;
+
+        /**
+         * Constructor for classic rules.
+         * @param pVariant board and N.
+         */
+        public Classic(Connect4Variant pVariant) {
+            this("classic", pVariant);
+        }
+
+        /**
+         * Constructor for classic rules under another name.
+         * @param pName name of the rule set.
+         * @param pVariant board and N.
+         */
+        Classic(String pName, Connect4Variant pVariant) {
+            this.name = pName;
+            this.variant = pVariant;
+            this.order = centerOrder(pVariant.getCols());
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Connect4Variant getVariant() {
+            return variant;
+        }
+
+        @Override
+        public int maxMoves() {
+            return variant.getCols();
+        }
+
+        @Override
+        public int maxPlies() {
+            return variant.getCells();
+        }
+
+        @Override
+        public int moves(Connect4NBoard pBoard, int[] pMoves) {
+            int n = 0;
+            for (int col : order) {
+                if (pBoard.canPlay(col)) {
+                    pMoves[n++] = col;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isLegal(Connect4NBoard pBoard, int pMove) {
+            return pBoard.isValid(pMove);
+        }
+
+        @Override
+        public int play(Connect4NBoard pBoard, int pMove) {
+            return pBoard.play(pMove);
+        }
+
+        @Override
+        public void undo(Connect4NBoard pBoard, int pMove) {
+            pBoard.undo(pMove);
+        }
+
+        @Override
+        public int result(Connect4NBoard pBoard, int pMove) {
+            if (pBoard.lastMoveWon()) {
+                return lastMover(pBoard);
+            }
+            return pBoard.isFull() ? DRAW : 0;
+        }
+
+        @Override
+        public String toString() {
+            return name + ":" + variant;
+        }
+    }
+
+    /**
+     * PopOut: a player may drop a token or pop out their own bottom token.
+     */
+    final class PopOut implements Connect4Rules {
+        /** Default number of moves after which the game is drawn, per cell. */
+        public static final int DEFAULT_PLIES_PER_CELL = 4;
+        /** Board and N. */
+        private final Connect4Variant variant;
+        /** Columns from the center outwards. */
+        private final int[] order;
+        /** Moves after which the game is drawn. */
+        private final int maxPlies;
+
+        /**
+         * Constructor for PopOut drawn after four moves per cell.
+         * @param pVariant board and N.
+         */
+        public PopOut(Connect4Variant pVariant) {
+            this(pVariant, DEFAULT_PLIES_PER_CELL * pVariant.getCells());
+        }
+
+        /**
+         * Constructor for PopOut.
+         * @param pVariant board and N.
+         * @param pMaxPlies moves after which the game is drawn.
+         */
+        public PopOut(Connect4Variant pVariant, int pMaxPlies) {
+            this.variant = pVariant;
+            this.order = centerOrder(pVariant.getCols());
+            this.maxPlies = pMaxPlies;
+        }
+
+        @Override
+        public String getName() {
+            return "popout";
+        }
+
+        @Override
+        public Connect4Variant getVariant() {
+            return variant;
+        }
+
+        @Override
+        public int maxMoves() {
+            return 2 * variant.getCols();
+        }
+
+        @Override
+        public int maxPlies() {
+            return maxPlies;
+        }
+
+        @Override
+        public int moves(Connect4NBoard pBoard, int[] pMoves) {
+            int n = 0;
+            for (int col : order) {
+                if (pBoard.canPlay(col)) {
+                    pMoves[n++] = col;
+                }
+            }
+            int cols = variant.getCols();
+            for (int col : order) {
+                if (pBoard.canPop(col)) {
+                    pMoves[n++] = cols + col;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isLegal(Connect4NBoard pBoard, int pMove) {
+            int cols = variant.getCols();
+            if (pMove >= cols && pMove < 2 * cols) {
+                return pBoard.canPop(pMove - cols);
+            }
+            return pBoard.isValid(pMove);
+        }
+
+        @Override
+        public int play(Connect4NBoard pBoard, int pMove) {
+            int cols = variant.getCols();
+            if (pMove >= cols) {
+                pBoard.pop(pMove - cols);
+                return 0;
+            }
+            return pBoard.play(pMove);
+        }
+
+        @Override
+        public void undo(Connect4NBoard pBoard, int pMove) {
+            int cols = variant.getCols();
+            if (pMove >= cols) {
+                pBoard.unpop(pMove - cols);
+            } else {
+                pBoard.undo(pMove);
+            }
+        }
+
+        @Override
+        public int result(Connect4NBoard pBoard, int pMove) {
+            int mover = lastMover(pBoard);
+            if (pMove < variant.getCols()) {
+                // a drop can only complete a line of the player dropping
+                if (pBoard.lastMoveWon()) {
+                    return mover;
+                }
+            } else if (pBoard.hasLine(mover)) {
+                return mover;
+            } else if (pBoard.hasLine(P1_WIN + P2_WIN - mover)) {
+                return P1_WIN + P2_WIN - mover;
+            }
+            if (pBoard.getMoves() >= maxPlies) {
+                return DRAW;
+            }
+            if (pBoard.isFull()) {
+                for (int col = 0; col < variant.getCols(); col++) {
+                    if (pBoard.canPop(col)) {
+                        return 0;
+                    }
+                }
+                return DRAW;
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "popout:" + variant;
+        }
+    }
+
+    /**
+     * Orders columns from the center outwards.
+     * @param pCols number of columns.
+     * @return int[] columns.
+     */
+    static int[] centerOrder(int pCols) {
+        int[] order = new int[pCols];
+        for (int i = 0; i < pCols; i++) {
+            order[i] = pCols / 2 + (1 - 2 * (i % 2)) * (i + 1) / 2;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,349 @@
+package core;
+
+/**
+ * This is a search that plays any Connect4Rules rule set, on any board
+ * size, where Connect4Search only plays classic rules on the standard
+ * board.
+ * <p>
+ * It is an iterative-deepening negamax with alpha-beta pruning and the same
+ * transposition table as Connect4Search, keyed by Connect4NBoard.hash().
+ * The moves of every ply are listed into arrays made with the search, and
+ * the board is played and taken back in place, so a search allocates
+ * nothing per node.  Positions cut off by the depth limit score 0; wins
+ * score WIN minus the plies it takes to reach them, so quicker wins are
+ * preferred.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4RulesSearch implements Connect4Constants {
+
+    /**
+     * Score of a win on the next move.
+     */
+    public static final int WIN = 30000;
+    /**
+     * Deepest search, in plies.
+     */
+    public static final int MAX_DEPTH = 64;
+    /**
+     * Scores closer than this to WIN are wins at a known distance.
+     */
+    private static final int WIN_BOUND = WIN - 2 * MAX_DEPTH - 2;
+    /**
+     * Score larger than any reachable score.
+     */
+    private static final int INFINITY = 32000;
+    /**
+     * Number of nodes between two checks of the clock.
+     */
+    private static final int CHECK_INTERVAL = 1024;
+
+    /**
+     * Rules of the game searched.
+     */
+    private final Connect4Rules rules;
+    /**
+     * Table of positions already searched.
+     */
+    private final Connect4TranspositionTable table;
+    /**
+     * Moves of each ply.
+     */
+    private final int[][] moveLists;
+    /**
+     * Maximum depth searched, in plies.
+     */
+    private int maxDepth = MAX_DEPTH;
+    /**
+     * Time allowed for one search in milliseconds, 0 for no limit.
+     */
+    private long moveTimeMillis;
+    /**
+     * Flag set from any thread to abort the current search.
+     */
+    private volatile boolean stopped;
+    /**
+     * System time after which the current search aborts, 0 for none.
+     */
+    private long deadline;
+    /**
+     * Nodes visited by the last search.
+     */
+    private long nodes;
+    /**
+     * Depth completed by the last search.
+     */
+    private int depthReached;
+    /**
+     * Score of the best move found by the last search.
+     */
+    private int score;
+
+    /**
+     * Constructor for a search of a rule set.
+     * @param pRules rules of the game.
+     * @param pTable transposition table, may be shared with nothing else
+     *               searching at the same time.
+     */
+    public Connect4RulesSearch(Connect4Rules pRules, Connect4TranspositionTable pTable) {
+        this.rules = pRules;
+        this.table = pTable;
+        this.moveLists = new int[MAX_DEPTH + 1][pRules.maxMoves()];
+    }
+
+    /**
+     * Mutator sets the maximum search depth.
+     * @param pMaxDepth depth in plies, at most MAX_DEPTH.
+     */
+    public void setMaxDepth(int pMaxDepth) {
+        this.maxDepth = Math.max(1, Math.min(pMaxDepth, MAX_DEPTH));
+    }
+
+    /**
+     * Mutator sets the time allowed for one search.
+     * @param pMoveTimeMillis milliseconds, 0 for no limit.
+     */
+    public void setMoveTimeMillis(long pMoveTimeMillis) {
+        this.moveTimeMillis = pMoveTimeMillis;
+    }
+
+    /**
+     * Accessor returns the rules searched.
+     * @return Connect4Rules rules.
+     */
+    public Connect4Rules getRules() {
+        return rules;
+    }
+
+    /**
+     * Accessor returns the transposition table.
+     * @return Connect4TranspositionTable table.
+     */
+    public Connect4TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Accessor returns the nodes visited by the last search.
+     * @return long nodes.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Accessor returns the depth completed by the last search.
+     * @return int plies.
+     */
+    public int getDepthReached() {
+        return depthReached;
+    }
+
+    /**
+     * Accessor returns the score of the last search for the player to move.
+     * @return int score, above WIN - MAX_DEPTH for a win.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Stops the current search from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Searches a position and returns the best move for the player to move.
+     * The position is left unchanged.
+     * @param pBoard position, of the rules' variant and not over.
+     * @return int best move, or -1 if there is no legal move.
+     */
+    public int bestMove(Connect4NBoard pBoard) {
+        nodes = 0;
+        depthReached = 0;
+        stopped = false;
+        deadline = moveTimeMillis > 0 ? System.nanoTime() + moveTimeMillis * 1_000_000L : 0;
+        int[] moves = moveLists[0];
+        int count = rules.moves(pBoard, moves);
+        if (count == 0) {
+            return -1;
+        }
+        int best = moves[0];
+        score = 0;
+
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            int alpha = -INFINITY;
+            int bestAtDepth = best;
+            // the best move so far goes first
+            for (int i = -1; i < count; i++) {
+                int move = i < 0 ? best : moves[i];
+                if (i >= 0 && move == best) {
+                    continue;
+                }
+                int value = child(pBoard, move, depth, 0, -INFINITY, -alpha);
+                if (stopped) {
+                    break;
+                }
+                if (value > alpha) {
+                    alpha = value;
+                    bestAtDepth = move;
+                }
+            }
+            if (stopped) {
+                break;
+            }
+            best = bestAtDepth;
+            score = alpha;
+            depthReached = depth;
+            // a proven result will not change with more depth
+            if (Math.abs(score) > WIN_BOUND) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Plays a move, scores the position after it and takes it back.
+     * @param pBoard position.
+     * @param pMove move to play.
+     * @param pDepth remaining depth including this move.
+     * @param pPly plies from the root before this move.
+     * @param pAlpha lower bound of the window, for the player moving.
+     * @param pBeta upper bound of the window, for the player moving.
+     * @return int score of the move for the player making it.
+     */
+    private int child(Connect4NBoard pBoard, int pMove, int pDepth, int pPly, int pAlpha, int pBeta) {
+        int mover = pBoard.getPlayerToMove();
+        rules.play(pBoard, pMove);
+        int result = rules.result(pBoard, pMove);
+        int value;
+        if (result == DRAW) {
+            value = 0;
+        } else if (result != 0) {
+            value = result == mover ? WIN - pPly : -(WIN - pPly);
+        } else {
+            value = -negamax(pBoard, pDepth - 1, pPly + 1, -pBeta, -pAlpha);
+        }
+        rules.undo(pBoard, pMove);
+        return value;
+    }
+
+    /**
+     * Negamax search with alpha-beta pruning.
+     * @param pBoard position, not over.
+     * @param pDepth remaining depth in plies.
+     * @param pPly plies from the root.
+     * @param pAlpha lower bound of the search window.
+     * @param pBeta upper bound of the search window.
+     * @return int score of the position for the player to move.
+     */
+    private int negamax(Connect4NBoard pBoard, int pDepth, int pPly, int pAlpha, int pBeta) {
+        if (++nodes % CHECK_INTERVAL == 0 && deadline != 0 && System.nanoTime() - deadline > 0) {
+            stopped = true;
+        }
+        if (stopped || pDepth <= 0) {
+            return 0;
+        }
+
+        long key = pBoard.hash();
+        int ttMove = Connect4TranspositionTable.NO_MOVE;
+        int alpha = pAlpha;
+        int beta = pBeta;
+        int data = table.probe(key);
+        if (data != Connect4TranspositionTable.MISS) {
+            ttMove = Connect4TranspositionTable.move(data);
+            if (Connect4TranspositionTable.depth(data) >= pDepth) {
+                int ttScore = fromTable(Connect4TranspositionTable.score(data), pPly);
+                int flag = Connect4TranspositionTable.flag(data);
+                if (flag == Connect4TranspositionTable.EXACT) {
+                    return ttScore;
+                } else if (flag == Connect4TranspositionTable.LOWER) {
+                    alpha = Math.max(alpha, ttScore);
+                } else {
+                    beta = Math.min(beta, ttScore);
+                }
+                if (alpha >= beta) {
+                    return ttScore;
+                }
+            }
+        }
+
+        int[] moves = moveLists[pPly];
+        int count = rules.moves(pBoard, moves);
+        if (count == 0) {
+            return 0;
+        }
+        // the table's move goes first
+        for (int i = 1; i < count; i++) {
+            if (moves[i] == ttMove) {
+                moves[i] = moves[0];
+                moves[0] = ttMove;
+                break;
+            }
+        }
+
+        int alphaOrig = alpha;
+        int bestValue = -INFINITY;
+        int bestMove = Connect4TranspositionTable.NO_MOVE;
+        for (int i = 0; i < count; i++) {
+            int value = child(pBoard, moves[i], pDepth, pPly + 1, alpha, beta);
+            if (stopped) {
+                return 0;
+            }
+            if (value > bestValue) {
+                bestValue = value;
+                bestMove = moves[i];
+            }
+            if (value > alpha) {
+                alpha = value;
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+
+        int flag;
+        if (bestValue <= alphaOrig) {
+            flag = Connect4TranspositionTable.UPPER;
+        } else if (bestValue >= beta) {
+            flag = Connect4TranspositionTable.LOWER;
+        } else {
+            flag = Connect4TranspositionTable.EXACT;
+        }
+        // the table holds four bits of move; larger moves are stored without one
+        table.store(key, toTable(bestValue, pPly), pDepth, flag,
+                bestMove < Connect4TranspositionTable.NO_MOVE ? bestMove : Connect4TranspositionTable.NO_MOVE);
+        return bestValue;
+    }
+
+    /**
+     * Converts a score to the table, counting wins from the position
+     * rather than from the root so they stay valid in other searches.
+     * @param pScore score at the position.
+     * @param pPly plies from the root.
+     * @return int score to store.
+     */
+    private static int toTable(int pScore, int pPly) {
+        if (pScore > WIN_BOUND) {
+            return pScore + pPly;
+        }
+        return pScore < -WIN_BOUND ? pScore - pPly : pScore;
+    }
+
+    /**
+     * Converts a score from the table back to the current search.
+     * @param pScore score stored.
+     * @param pPly plies from the root.
+     * @return int score at the position.
+     */
+    private static int fromTable(int pScore, int pPly) {
+        if (pScore > WIN_BOUND) {
+            return pScore - pPly;
+        }
+        return pScore < -WIN_BOUND ? pScore + pPly : pScore;
+    }
+}
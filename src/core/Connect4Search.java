@@ -0,0 +1,791 @@
+package core;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This is the alpha-beta search used by the computer player to choose its
+ * moves.
+ * <p>
+ * The search is a negamax with alpha-beta pruning over a Connect4Bitboard,
+ * driven by iterative deepening until the depth limit or the move time runs
+ * out.  Scores are from the point of view of the player to move.  A won
+ * position is worth WIN_UNIT for every move the winner has left when the game
+ * ends, so faster wins score higher; positions cut off by the depth limit get
+ * a heuristic score strictly between -WIN_UNIT and WIN_UNIT.
+ * <p>
+ * Moves that hand the opponent a win are never searched, and a win on the
+ * next move ends the search of a node at once.  The others are searched
+ * with the table's move first, then ordered on the bitboards by the
+ * threats they leave the player to move, with killer moves and a history
+ * table, kept in arrays made with the search, breaking ties in
+ * depth-limited searches.
+ * <p>
+ * A search can be stopped from another thread with stop(), which is how
+ * pondering is interrupted when the opponent moves.
+ * <p>
+ * Besides depth and time, a search can be capped by a node budget, which
+ * bounds the work of a move independently of the machine's speed, and can
+ * be given move noise: the chance of replacing the best move by a random
+ * move that does not lose at once.  Connect4Difficulty combines the three
+ * limits into levels of play.
+ * <p>
+ * The Driver chooses how the root is searched.  FULL searches it once with
+ * the widest window.  BISECTION and MTDF find the exact value of solve()
+ * with a series of null-window searches, each only answering whether the
+ * value reaches a test score, by bisecting the range of possible scores or
+ * by stepping from a first guess (MTD(f)); a null window cuts off far more
+ * and the table carries the bounds from one search to the next.  With
+ * either of them bestMove() also scouts the moves after the first with a
+ * null window and only searches a move in full if it proves better.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4Search implements Connect4Constants {
+
+    /**
+     * Score of a win with one move left; every exact score is a multiple of it.
+     */
+    public static final int WIN_UNIT = 1000;
+    /**
+     * Score larger than any reachable score.
+     */
+    static final int INFINITY = 32000;
+    /**
+     * Columns searched from the center outwards, since central tokens take
+     * part in more alignments.
+     */
+    static final int[] COLUMN_ORDER = centerOrder();
+
+    /**
+     * Number of nodes between two checks of the stop flag and clock.
+     */
+    private static final int CHECK_INTERVAL = 1024;
+    /**
+     * Shallowest remaining depth at which moves are ordered by threats,
+     * history and killers; closer to the leaves a cutoff saves too little to
+     * pay for the ordering, and moves are searched center first.
+     */
+    private static final int ORDER_DEPTH = 3;
+    /**
+     * Ordering score of each threat a move leaves its player; it outweighs
+     * the history and killer scores.
+     */
+    private static final int THREAT_ORDER = 1 << 23;
+    /**
+     * History score at which every history score is halved; four times it
+     * stays below THREAT_ORDER.
+     */
+    private static final int HISTORY_LIMIT = 1 << 20;
+    /**
+     * Bits of a board, the cells indexing the history of one side.
+     */
+    private static final int CELLS = 64;
+
+    /**
+     * How the root of a search is driven.
+     */
+    public enum Driver {
+        /** One search with the full window. */
+        FULL,
+        /** Null-window searches bisecting the range of possible scores. */
+        BISECTION,
+        /** Null-window searches stepping from a first guess, MTD(f). */
+        MTDF
+    }
+
+    /**
+     * Table of positions already searched.
+     */
+    private final Connect4TranspositionTable table;
+    /**
+     * How the root is searched.
+     */
+    private Driver driver = Driver.FULL;
+    /**
+     * Maximum depth searched, in plies.
+     */
+    private int maxDepth = Connect4Bitboard.SIZE;
+    /**
+     * Time allowed for one search in milliseconds, 0 for no limit.
+     */
+    private long moveTimeMillis;
+    /**
+     * Nodes allowed for one search, 0 for no limit.
+     */
+    private long maxNodes;
+    /**
+     * Nodes allowed for the current search, Long.MAX_VALUE for no limit.
+     */
+    private long nodeLimit;
+    /**
+     * Node count at which the limits are checked next.
+     */
+    private long nextCheck;
+    /**
+     * Chance of playing a random safe move instead of the best one.
+     */
+    private double noise;
+    /**
+     * Source of the random moves played by noise.
+     */
+    private final Random random = new Random();
+    /**
+     * Flag set from any thread to abort the current search.
+     */
+    private volatile boolean stopped;
+    /**
+     * System time after which the current search aborts.
+     */
+    private long deadline;
+    /**
+     * Columns of every node in the order they are searched, COL per ply.
+     */
+    private final int[] moveOrder = new int[(Connect4Bitboard.SIZE + 1) * COL];
+    /**
+     * Ordering scores of the columns in moveOrder.
+     */
+    private final int[] orderScores = new int[(Connect4Bitboard.SIZE + 1) * COL];
+    /**
+     * Two killer columns per ply: the last two moves that caused a cutoff
+     * at that ply, in any branch.
+     */
+    private final int[] killers = new int[2 * (Connect4Bitboard.SIZE + 1)];
+    /**
+     * History of each side's moves by cell, raised by the square of the
+     * remaining depth whenever the move causes a cutoff.
+     */
+    private final int[] history = new int[2 * CELLS];
+    /**
+     * Whether killers and history order the moves; only in depth-limited
+     * searches, since solving orders best by threats and columns alone.
+     */
+    private boolean historyOrder;
+    /**
+     * Nodes visited by the last search.
+     */
+    private long nodes;
+    /**
+     * Transposition table hits during the last search.
+     */
+    private long tableHits;
+    /**
+     * Depth completed by the last search.
+     */
+    private int depthReached;
+    /**
+     * Score of the best move found by the last search.
+     */
+    private int score;
+
+    /**
+     * Constructor for a search with its own default-sized table.
+     */
+    public Connect4Search() {
+        this(new Connect4TranspositionTable());
+    }
+
+    /**
+     * Constructor for a search using the given table.
+     * @param pTable transposition table.
+     */
+    public Connect4Search(Connect4TranspositionTable pTable) {
+        this.table = pTable;
+    }
+
+    /**
+     * Accessor returns the transposition table.
+     * @return Connect4TranspositionTable table.
+     */
+    public Connect4TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Mutator sets the maximum search depth.
+     * @param pMaxDepth depth in plies, at least 1.
+     */
+    public void setMaxDepth(int pMaxDepth) {
+        this.maxDepth = Math.max(1, pMaxDepth);
+    }
+
+    /**
+     * Accessor returns the maximum search depth.
+     * @return int maxDepth.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Mutator sets the time allowed for one search.
+     * @param pMoveTimeMillis time in milliseconds, 0 for no limit.
+     */
+    public void setMoveTimeMillis(long pMoveTimeMillis) {
+        this.moveTimeMillis = Math.max(0, pMoveTimeMillis);
+    }
+
+    /**
+     * Accessor returns the time allowed for one search.
+     * @return long moveTimeMillis.
+     */
+    public long getMoveTimeMillis() {
+        return moveTimeMillis;
+    }
+
+    /**
+     * Mutator sets the nodes allowed for one search.  The search stops at the
+     * budget and plays the best move of the last completed iteration.
+     * @param pMaxNodes nodes, 0 for no limit.
+     */
+    public void setMaxNodes(long pMaxNodes) {
+        this.maxNodes = Math.max(0, pMaxNodes);
+    }
+
+    /**
+     * Accessor returns the nodes allowed for one search.
+     * @return long maxNodes, 0 for no limit.
+     */
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Mutator sets the move noise.  A winning move is always played, and a
+     * random move is only chosen among moves that do not lose at once.
+     * @param pNoise chance between 0 and 1 of a random move.
+     */
+    public void setNoise(double pNoise) {
+        this.noise = Math.max(0, Math.min(1, pNoise));
+    }
+
+    /**
+     * Accessor returns the move noise.
+     * @return double noise.
+     */
+    public double getNoise() {
+        return noise;
+    }
+
+    /**
+     * Mutator seeds the random moves played by noise, to replay games.
+     * @param pSeed seed.
+     */
+    public void setSeed(long pSeed) {
+        random.setSeed(pSeed);
+    }
+
+    /**
+     * Mutator sets how the root is searched.
+     * @param pDriver FULL, BISECTION or MTDF.
+     */
+    public void setDriver(Driver pDriver) {
+        this.driver = pDriver;
+    }
+
+    /**
+     * Accessor returns how the root is searched.
+     * @return Driver driver.
+     */
+    public Driver getDriver() {
+        return driver;
+    }
+
+    /**
+     * Accessor returns the nodes visited by the last search.
+     * @return long nodes.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Accessor returns the transposition table hits of the last search.
+     * @return long tableHits.
+     */
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    /**
+     * Accessor returns the depth completed by the last search.
+     * @return int depthReached.
+     */
+    public int getDepthReached() {
+        return depthReached;
+    }
+
+    /**
+     * Accessor returns the score of the move chosen by the last search.
+     * @return int score.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Aborts the search running on another thread.  The search returns the
+     * best move of the last completed iteration.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Boolean to check if the last search was aborted.
+     * @return <code>true</code> if stop() was called or time ran out;
+     *         <code>false</code> otherwise.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Searches a position and returns the best column for the player to move.
+     * The position is left unchanged.
+     * @param pPosition position to search, must not be full or won.
+     * @return int best column between 0 and COL - 1.
+     */
+    public int bestMove(Connect4Bitboard pPosition) {
+        nodes = 0;
+        tableHits = 0;
+        depthReached = 0;
+        stopped = false;
+        long start = System.nanoTime();
+        deadline = moveTimeMillis > 0 ? start + moveTimeMillis * 1_000_000L : 0;
+        nodeLimit = maxNodes > 0 ? maxNodes : Long.MAX_VALUE;
+        nextCheck = Math.min(nodeLimit, CHECK_INTERVAL);
+        clearOrdering();
+        historyOrder = true;
+
+        int best = firstPlayable(pPosition);
+        score = 0;
+        int remaining = Connect4Bitboard.SIZE - pPosition.getMoves();
+
+        for (int depth = 1; depth <= Math.min(maxDepth, remaining); depth++) {
+            int move = searchRoot(pPosition, depth, best);
+            if (stopped) {
+                break;
+            }
+            best = move;
+            depthReached = depth;
+            // a proven result will not change with more depth
+            if (score >= WIN_UNIT || score <= -WIN_UNIT) {
+                break;
+            }
+        }
+        if (noise > 0 && random.nextDouble() < noise && !pPosition.canWinNext()) {
+            best = randomSafeMove(pPosition, best);
+        }
+        Connect4Events.search(false, pPosition.getMoves(), depthReached, nodes, tableHits, score, best,
+                System.nanoTime() - start);
+        return best;
+    }
+
+    /**
+     * Solves a position: searches it to the end of the game, ignoring the
+     * depth and time limits, and returns its exact game-theoretic value.
+     * @param pPosition position to solve, must not be full or won.
+     * @return int value for the player to move: positive for a win, negative
+     *         for a loss, 0 for a draw; a larger value means a faster win,
+     *         one point per move left when the game ends.
+     */
+    public int solve(Connect4Bitboard pPosition) {
+        nodes = 0;
+        tableHits = 0;
+        stopped = false;
+        deadline = 0;
+        nodeLimit = Long.MAX_VALUE;
+        nextCheck = CHECK_INTERVAL;
+        clearOrdering();
+        historyOrder = false;
+        long start = System.nanoTime();
+        if (pPosition.canWinNext()) {
+            score = winScore(pPosition.getMoves());
+        } else if (driver == Driver.FULL) {
+            score = negamax(pPosition, Connect4Bitboard.SIZE, -INFINITY, INFINITY);
+        } else {
+            score = nullWindowSolve(pPosition);
+        }
+        depthReached = Connect4Bitboard.SIZE - pPosition.getMoves();
+        Connect4Events.search(true, pPosition.getMoves(), depthReached, nodes, tableHits, score, -1,
+                System.nanoTime() - start);
+        return score / WIN_UNIT;
+    }
+
+    /**
+     * Finds the exact value of a position with null-window searches.  Exact
+     * values are whole multiples of WIN_UNIT, so the searches test whole
+     * units, and each one narrows the range of possible values until a
+     * single value is left.  MTD(f) first asks whether the position is at
+     * least a draw, the most common value, and then steps from each answer.
+     * @param pPosition position to solve, the player to move cannot win at
+     *                  once.
+     * @return int exact score of the position.
+     */
+    private int nullWindowSolve(Connect4Bitboard pPosition) {
+        int moves = pPosition.getMoves();
+        // the opponent wins at best on their next move, the player to move on the one after
+        int lower = -winScore(moves + 1) / WIN_UNIT;
+        int upper = winScore(moves + 2) / WIN_UNIT;
+        int guess = 0;
+        while (lower < upper && !stopped) {
+            // ask whether the value is at least test, with lower < test <= upper
+            int test;
+            if (driver == Driver.BISECTION) {
+                test = lower + (upper - lower + 1) / 2;
+            } else {
+                test = Math.max(lower + 1, Math.min(upper, guess));
+            }
+            int beta = test * WIN_UNIT;
+            int value = negamax(pPosition, Connect4Bitboard.SIZE, beta - 1, beta);
+            if (value >= beta) {
+                lower = Math.floorDiv(value + WIN_UNIT - 1, WIN_UNIT);
+                guess = lower + 1;
+            } else {
+                upper = Math.floorDiv(value, WIN_UNIT);
+                guess = upper;
+            }
+        }
+        return lower * WIN_UNIT;
+    }
+
+    /**
+     * Searches every move at the root to a fixed depth.
+     * @param pPosition position to search.
+     * @param pDepth depth in plies.
+     * @param pFirst column to try first.
+     * @return int best column, valid only if the search was not stopped.
+     */
+    private int searchRoot(Connect4Bitboard pPosition, int pDepth, int pFirst) {
+        int alpha = -INFINITY;
+        int best = pFirst;
+
+        for (int i = -1; i < COL; i++) {
+            int col = i < 0 ? pFirst : COLUMN_ORDER[i];
+            if ((i >= 0 && col == pFirst) || !pPosition.canPlay(col)) {
+                continue;
+            }
+            int value;
+            if (pPosition.isWinningMove(col)) {
+                value = winScore(pPosition.getMoves());
+            } else {
+                pPosition.play(col);
+                if (driver != Driver.FULL && alpha > -INFINITY) {
+                    // a null window proves most moves no better than the best cheaply
+                    value = -negamax(pPosition, pDepth - 1, -alpha - 1, -alpha);
+                    if (value > alpha && !stopped) {
+                        value = -negamax(pPosition, pDepth - 1, -INFINITY, -alpha);
+                    }
+                } else {
+                    value = -negamax(pPosition, pDepth - 1, -INFINITY, -alpha);
+                }
+                pPosition.undo(col);
+            }
+            if (stopped) {
+                return best;
+            }
+            if (value > alpha) {
+                alpha = value;
+                best = col;
+            }
+        }
+        score = alpha;
+        return best;
+    }
+
+    /**
+     * Negamax search with alpha-beta pruning.
+     * @param pPosition position to search.
+     * @param pDepth remaining depth in plies.
+     * @param pAlpha lower bound of the search window.
+     * @param pBeta upper bound of the search window.
+     * @return int score of the position for the player to move.
+     */
+    int negamax(Connect4Bitboard pPosition, int pDepth, int pAlpha, int pBeta) {
+        if (++nodes >= nextCheck) {
+            checkLimits();
+        }
+        if (stopped) {
+            return 0;
+        }
+
+        int moves = pPosition.getMoves();
+        if (moves >= Connect4Bitboard.SIZE) {
+            return 0;
+        }
+        if (pPosition.canWinNext()) {
+            return winScore(moves);
+        }
+        long next = pPosition.possibleNonLosingMoves();
+        if (next == 0) {
+            // every move lets the opponent win next turn
+            return -winScore(moves + 1);
+        }
+        if (moves >= Connect4Bitboard.SIZE - 2) {
+            return 0;
+        }
+        if (pDepth <= 0) {
+            return evaluate(pPosition);
+        }
+
+        // neither side can win sooner than two moves from here
+        int max = Math.max(winScore(moves + 2), WIN_UNIT - 1);
+        int min = Math.min(-winScore(moves + 3), -(WIN_UNIT - 1));
+        int alpha = Math.max(pAlpha, min);
+        int beta = Math.min(pBeta, max);
+        if (alpha >= beta) {
+            return alpha;
+        }
+
+        long key = pPosition.key();
+        int ttMove = Connect4TranspositionTable.NO_MOVE;
+        int data = table.probe(key);
+        if (data != Connect4TranspositionTable.MISS) {
+            tableHits++;
+            ttMove = Connect4TranspositionTable.move(data);
+            if (Connect4TranspositionTable.depth(data) >= pDepth) {
+                int ttScore = Connect4TranspositionTable.score(data);
+                int flag = Connect4TranspositionTable.flag(data);
+                if (flag == Connect4TranspositionTable.EXACT) {
+                    return ttScore;
+                } else if (flag == Connect4TranspositionTable.LOWER) {
+                    alpha = Math.max(alpha, ttScore);
+                } else {
+                    beta = Math.min(beta, ttScore);
+                }
+                if (alpha >= beta) {
+                    return ttScore;
+                }
+            }
+        }
+
+        int alphaOrig = alpha;
+        int bestValue = -INFINITY;
+        int bestMove = Connect4TranspositionTable.NO_MOVE;
+
+        // the table's move is searched before the others are ordered, since
+        // it often cuts off at once
+        int base = moves * COL;
+        int count = 0;
+        long rest = next;
+        if (ttMove != Connect4TranspositionTable.NO_MOVE && (next & Connect4Bitboard.columnMask(ttMove)) != 0) {
+            moveOrder[base + count++] = ttMove;
+            rest &= ~Connect4Bitboard.columnMask(ttMove);
+        }
+        for (int i = 0; i < count || rest != 0; i++) {
+            if (i == count) {
+                count = pDepth < ORDER_DEPTH ? listMoves(moves, rest, count) : orderMoves(pPosition, rest, count);
+                rest = 0;
+            }
+            int col = moveOrder[base + i];
+            pPosition.play(col);
+            int value = -negamax(pPosition, pDepth - 1, -beta, -alpha);
+            pPosition.undo(col);
+            if (stopped) {
+                return 0;
+            }
+            if (value > bestValue) {
+                bestValue = value;
+                bestMove = col;
+            }
+            if (value > alpha) {
+                alpha = value;
+            }
+            if (alpha >= beta) {
+                recordCutoff(moves, col, next, pDepth);
+                break;
+            }
+        }
+
+        int flag;
+        if (bestValue <= alphaOrig) {
+            flag = Connect4TranspositionTable.UPPER;
+        } else if (bestValue >= beta) {
+            flag = Connect4TranspositionTable.LOWER;
+        } else {
+            flag = Connect4TranspositionTable.EXACT;
+        }
+        table.store(key, bestValue, pDepth, flag, bestMove);
+        return bestValue;
+    }
+
+    /**
+     * Lists moves of a node into moveOrder at the node's ply, best first,
+     * after the moves already listed.  Moves are ordered by the threats they
+     * leave the player, computed on the bitboards, so moves that make
+     * threats come early and a move under the player's own threat, which
+     * lets the opponent block it, comes last.  In depth-limited searches
+     * ties are broken by the history, then by the killers; finally by the
+     * center-first column order.
+     * @param pPosition position of the node.
+     * @param pMoves playable cells to list.
+     * @param pListed moves already listed at this ply.
+     * @return int number of moves listed at this ply.
+     */
+    private int orderMoves(Connect4Bitboard pPosition, long pMoves, int pListed) {
+        int ply = pPosition.getMoves();
+        int base = ply * COL;
+        long current = pPosition.getCurrent();
+        long mask = pPosition.getMask();
+        long ownThreats = Connect4Bitboard.winningPositions(current, mask);
+        int count = pListed;
+        for (int col : COLUMN_ORDER) {
+            long move = pMoves & Connect4Bitboard.columnMask(col);
+            if (move == 0) {
+                continue;
+            }
+            long threats = Connect4Bitboard.winningPositions(current | move, mask | move);
+            int order = THREAT_ORDER * Long.bitCount(threats);
+            if (((move << 1) & ownThreats) != 0) {
+                order -= THREAT_ORDER;
+            }
+            if (historyOrder) {
+                order += 4 * history[(ply & 1) * CELLS + Long.numberOfTrailingZeros(move)];
+                if (col == killers[2 * ply]) {
+                    order += 2;
+                } else if (col == killers[2 * ply + 1]) {
+                    order += 1;
+                }
+            }
+            // insertion sort; equal scores keep the center-first order
+            int i = base + count++;
+            while (i > base + pListed && orderScores[i - 1] < order) {
+                moveOrder[i] = moveOrder[i - 1];
+                orderScores[i] = orderScores[i - 1];
+                i--;
+            }
+            moveOrder[i] = col;
+            orderScores[i] = order;
+        }
+        return count;
+    }
+
+    /**
+     * Lists moves of a node into moveOrder at the node's ply in center-first
+     * order, after the moves already listed.
+     * @param pPly moves played before the node.
+     * @param pMoves playable cells to list.
+     * @param pListed moves already listed at this ply.
+     * @return int number of moves listed at this ply.
+     */
+    private int listMoves(int pPly, long pMoves, int pListed) {
+        int base = pPly * COL;
+        int count = pListed;
+        for (int col : COLUMN_ORDER) {
+            if ((pMoves & Connect4Bitboard.columnMask(col)) != 0) {
+                moveOrder[base + count++] = col;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Remembers a move that caused a cutoff as a killer of its ply and in
+     * the history of its side.
+     * @param pPly moves played before the move.
+     * @param pCol column of the move.
+     * @param pNext playable cells of the node, to find the move's cell.
+     * @param pDepth remaining depth of the node.
+     */
+    private void recordCutoff(int pPly, int pCol, long pNext, int pDepth) {
+        if (!historyOrder) {
+            return;
+        }
+        if (killers[2 * pPly] != pCol) {
+            killers[2 * pPly + 1] = killers[2 * pPly];
+            killers[2 * pPly] = pCol;
+        }
+        int cell = (pPly & 1) * CELLS + Long.numberOfTrailingZeros(pNext & Connect4Bitboard.columnMask(pCol));
+        history[cell] += pDepth * pDepth;
+        if (history[cell] >= HISTORY_LIMIT) {
+            for (int i = 0; i < history.length; i++) {
+                history[i] >>= 1;
+            }
+        }
+    }
+
+    /**
+     * Forgets the killers and history of the last search.
+     */
+    private void clearOrdering() {
+        Arrays.fill(killers, Connect4TranspositionTable.NO_MOVE);
+        Arrays.fill(history, 0);
+    }
+
+    /**
+     * Heuristic score of a position cut off by the depth limit, from
+     * Connect4Evaluator: threats, their parity, open threes and the window
+     * weights of the stones.
+     * @param pPosition position to evaluate.
+     * @return int score strictly between -WIN_UNIT and WIN_UNIT.
+     */
+    int evaluate(Connect4Bitboard pPosition) {
+        return Connect4Evaluator.evaluate(pPosition);
+    }
+
+    /**
+     * Score of winning with the move after pMoves moves have been played.
+     * @param pMoves moves played before the winning move.
+     * @return int positive win score.
+     */
+    static int winScore(int pMoves) {
+        return (Connect4Bitboard.SIZE + 1 - pMoves) / 2 * WIN_UNIT;
+    }
+
+    /**
+     * Stops the search when the move time or the node budget has run out,
+     * and sets the node count of the next check.
+     */
+    private void checkLimits() {
+        if ((deadline != 0 && System.nanoTime() - deadline > 0) || nodes >= nodeLimit) {
+            stopped = true;
+        }
+        nextCheck = Math.min(nodes + CHECK_INTERVAL, nodeLimit);
+    }
+
+    /**
+     * Picks a random move that does not hand the opponent a win.
+     * @param pPosition position searched.
+     * @param pBest best move found, kept when no move is safe.
+     * @return int column to play.
+     */
+    private int randomSafeMove(Connect4Bitboard pPosition, int pBest) {
+        long safe = pPosition.possibleNonLosingMoves();
+        int count = 0;
+        int[] columns = new int[COL];
+        for (int col = 0; col < COL; col++) {
+            if ((safe & Connect4Bitboard.columnMask(col)) != 0) {
+                columns[count++] = col;
+            }
+        }
+        return count == 0 ? pBest : columns[random.nextInt(count)];
+    }
+
+    /**
+     * Finds a column to fall back on when no iteration completes.
+     * @param pPosition position to search.
+     * @return int first playable column in search order.
+     */
+    private static int firstPlayable(Connect4Bitboard pPosition) {
+        for (int col : COLUMN_ORDER) {
+            if (pPosition.canPlay(col)) {
+                return col;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Builds the center-first column order.
+     * @return int[] column order.
+     */
+    private static int[] centerOrder() {
+        int[] order = new int[COL];
+        for (int i = 0; i < COL; i++) {
+            order[i] = COL / 2 + (1 - 2 * (i % 2)) * (i + 1) / 2;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,318 @@
+package core;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is the self-play runner used to compare two computer player
+ * configurations before a change to the engine is deployed.
+ * <p>
+ * Games are played in pairs: both games of a pair start from the same random
+ * opening, with each configuration moving first once, so neither side is
+ * favored by the opening or by moving first.  Games run in parallel on a
+ * work-stealing pool; every worker thread keeps one search per configuration
+ * and clears its table between games.  Games are played directly on the
+ * bitboard, without drawing boards or printing moves.
+ * <p>
+ * The report gives games per second, the win, draw and loss rates of
+ * configuration A with 95% confidence intervals, and the average move time of
+ * each configuration.
+ * <p>
+ * Usage: <code>Connect4SelfPlay [games=N] [threads=N] [openings=N] [seed=N]
+ * [a=SETTINGS] [b=SETTINGS]</code>, where SETTINGS is read by
+ * Connect4EngineConfig.parse(), e.g. <code>a=depth=10,time=0</code>.
+ * Both configurations must use the alphabeta engine.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4SelfPlay implements Connect4Constants {
+
+    /**
+     * Normal quantile for a 95% confidence interval.
+     */
+    private static final double Z95 = 1.96;
+    /**
+     * Openings started before giving up on finding one that does not end
+     * the game.
+     */
+    private static final int OPENING_TRIES = 1000;
+
+    /**
+     * Configuration A, whose results are reported.
+     */
+    private final Connect4EngineConfig configA;
+    /**
+     * Configuration B, the opponent.
+     */
+    private final Connect4EngineConfig configB;
+    /**
+     * Number of random moves played before the engines take over.
+     */
+    private int openingPlies = 4;
+    /**
+     * Seed of the random openings.
+     */
+    private long seed = 1;
+
+    /**
+     * Per-thread searches, index 0 for A and 1 for B.
+     */
+    private final ThreadLocal<Connect4Search[]> searches;
+
+    /**
+     * Games won by A.
+     */
+    private final LongAdder winsA = new LongAdder();
+    /**
+     * Games won by B.
+     */
+    private final LongAdder winsB = new LongAdder();
+    /**
+     * Drawn games.
+     */
+    private final LongAdder draws = new LongAdder();
+    /**
+     * Moves played by A and B.
+     */
+    private final LongAdder[] moves = {new LongAdder(), new LongAdder()};
+    /**
+     * Search time spent by A and B, in nanoseconds.
+     */
+    private final LongAdder[] moveNanos = {new LongAdder(), new LongAdder()};
+
+    /**
+     * Constructor to compare two configurations.
+     * @param pConfigA configuration whose results are reported.
+     * @param pConfigB opponent configuration.
+     * @throws IllegalArgumentException if a configuration uses the mcts
+     *         engine, which self-play does not run.
+     */
+    public Connect4SelfPlay(Connect4EngineConfig pConfigA, Connect4EngineConfig pConfigB) {
+        if (pConfigA.isMonteCarlo() || pConfigB.isMonteCarlo()) {
+            throw new IllegalArgumentException("Self-play only runs the alphabeta engine: "
+                    + (pConfigA.isMonteCarlo() ? pConfigA : pConfigB));
+        }
+        this.configA = pConfigA;
+        this.configB = pConfigB;
+        this.searches = ThreadLocal.withInitial(()
+                -> new Connect4Search[] {configA.newSearch(), configB.newSearch()});
+    }
+
+    /**
+     * Mutator sets the number of random opening moves.
+     * @param pOpeningPlies moves played at random before the engines start.
+     * @throws IllegalArgumentException if the opening would fill the board.
+     */
+    public void setOpeningPlies(int pOpeningPlies) {
+        if (pOpeningPlies >= Connect4Bitboard.SIZE) {
+            throw new IllegalArgumentException("Openings must be shorter than "
+                    + Connect4Bitboard.SIZE + " plies: " + pOpeningPlies);
+        }
+        this.openingPlies = Math.max(0, pOpeningPlies);
+    }
+
+    /**
+     * Mutator sets the seed of the random openings.
+     * @param pSeed seed; the same seed replays the same openings.
+     */
+    public void setSeed(long pSeed) {
+        this.seed = pSeed;
+    }
+
+    /**
+     * Plays a number of games in parallel and waits for them to finish.
+     * @param pGames number of games, rounded up to an even number.
+     * @param pThreads number of worker threads.
+     * @return long elapsed time in nanoseconds.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public long run(int pGames, int pThreads) throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(pThreads);
+        long start = System.nanoTime();
+        for (int i = 0; i < (pGames + 1) / 2 * 2; i++) {
+            final int game = i;
+            pool.execute(() -> playGame(game));
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Plays one game.  Games 2k and 2k + 1 share their opening; A moves first
+     * in the even game and B in the odd one.
+     * @param pGame game number.
+     */
+    private void playGame(int pGame) {
+        Connect4Search[] engines = searches.get();
+        engines[0].getTable().clear();
+        engines[1].getTable().clear();
+
+        Connect4Bitboard board = new Connect4Bitboard();
+        playOpening(board, new Random(seed * 1_000_003L + pGame / 2));
+
+        // side 0 is A; the first engine to move depends on the game
+        int side = (pGame + board.getMoves()) % 2;
+        while (!board.lastMoveWon() && !board.isFull()) {
+            long start = System.nanoTime();
+            int col = engines[side].bestMove(board);
+            moveNanos[side].add(System.nanoTime() - start);
+            moves[side].increment();
+            board.play(col);
+            side ^= 1;
+        }
+
+        if (!board.lastMoveWon()) {
+            draws.increment();
+        } else if (side == 1) {
+            // A made the last move
+            winsA.increment();
+        } else {
+            winsB.increment();
+        }
+    }
+
+    /**
+     * Plays random opening moves, never ending the game.  An opening that
+     * runs out of such moves is started over, a bounded number of times.
+     * @param pBoard empty board.
+     * @param pRandom source of the opening moves.
+     * @throws IllegalArgumentException if no opening of the length is found.
+     */
+    private void playOpening(Connect4Bitboard pBoard, Random pRandom) {
+        int[] candidates = new int[COL];
+        for (int tries = 0; tries < OPENING_TRIES; tries++) {
+            pBoard.reset();
+            while (pBoard.getMoves() < openingPlies) {
+                int count = 0;
+                for (int col = 0; col < COL; col++) {
+                    if (pBoard.canPlay(col) && !pBoard.isWinningMove(col)) {
+                        candidates[count++] = col;
+                    }
+                }
+                if (count == 0) {
+                    break;
+                }
+                pBoard.play(candidates[pRandom.nextInt(count)]);
+            }
+            if (pBoard.getMoves() == openingPlies) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("No opening of " + openingPlies
+                + " plies found in " + OPENING_TRIES + " tries");
+    }
+
+    /**
+     * Builds the report of the games played so far.
+     * @param pElapsedNanos time the games took.
+     * @return String multi-line report.
+     */
+    public String report(long pElapsedNanos) {
+        long w = winsA.sum();
+        long l = winsB.sum();
+        long d = draws.sum();
+        long n = w + l + d;
+        double seconds = Math.max(pElapsedNanos, 1) / 1e9;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("A: ").append(configA).append('\n');
+        sb.append("B: ").append(configB).append('\n');
+        sb.append(String.format(Locale.ROOT, "%d games in %.2f s, %.1f games/s%n", n, seconds, n / seconds));
+        sb.append(String.format(Locale.ROOT, "A wins  %s%n", rate(w, n)));
+        sb.append(String.format(Locale.ROOT, "A draws %s%n", rate(d, n)));
+        sb.append(String.format(Locale.ROOT, "A loses %s%n", rate(l, n)));
+
+        if (n > 0) {
+            double score = (w + 0.5 * d) / n;
+            // variance of a single game result scored 1, 1/2 or 0
+            double variance = (w + 0.25 * d) / n - score * score;
+            double half = Z95 * Math.sqrt(variance / n);
+            sb.append(String.format(Locale.ROOT, "A score %.3f +/- %.3f%n", score, half));
+        }
+        sb.append(String.format(Locale.ROOT, "Average move time: A %.3f ms, B %.3f ms%n",
+                averageMillis(0), averageMillis(1)));
+        return sb.toString();
+    }
+
+    /**
+     * Formats a proportion with its Wilson 95% confidence interval.
+     * @param pCount number of games with the outcome.
+     * @param pTotal number of games.
+     * @return String formatted rate.
+     */
+    private static String rate(long pCount, long pTotal) {
+        if (pTotal == 0) {
+            return "0";
+        }
+        double p = (double) pCount / pTotal;
+        double z2 = Z95 * Z95;
+        double denominator = 1 + z2 / pTotal;
+        double center = (p + z2 / (2 * pTotal)) / denominator;
+        double half = Z95 * Math.sqrt(p * (1 - p) / pTotal + z2 / (4.0 * pTotal * pTotal))
+                / denominator;
+        return String.format(Locale.ROOT, "%6d  %5.1f%%  [%5.1f%%, %5.1f%%]", pCount, 100 * p,
+                100 * Math.max(0, center - half), 100 * Math.min(1, center + half));
+    }
+
+    /**
+     * Average search time per move of one configuration.
+     * @param pSide 0 for A, 1 for B.
+     * @return double milliseconds per move.
+     */
+    private double averageMillis(int pSide) {
+        long count = moves[pSide].sum();
+        return count == 0 ? 0 : moveNanos[pSide].sum() / 1e6 / count;
+    }
+
+    /**
+     * Main method to run a self-play match from the command line.
+     * @param args settings as key=value pairs, see the class description.
+     * @throws InterruptedException if interrupted while waiting for games.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int games = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int openings = 4;
+        long seed = 1;
+        Connect4EngineConfig a = Connect4EngineConfig.parse("A", "depth=8,time=0,hash=20");
+        Connect4EngineConfig b = Connect4EngineConfig.parse("B", "depth=6,time=0,hash=20");
+
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            String value = pair.length > 1 ? pair[1] : "";
+            switch (pair[0]) {
+                case "games":
+                    games = Integer.parseInt(value);
+                    break;
+                case "threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "openings":
+                    openings = Integer.parseInt(value);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "a":
+                    a = Connect4EngineConfig.parse("A", value);
+                    break;
+                case "b":
+                    b = Connect4EngineConfig.parse("B", value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        Connect4SelfPlay match = new Connect4SelfPlay(a, b);
+        match.setOpeningPlies(openings);
+        match.setSeed(seed);
+        long elapsed = match.run(games, threads);
+        System.out.print(match.report(elapsed));
+    }
+}
@@ -1,10 +1,16 @@
 package core;
 
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.net.*;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
 
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -26,15 +32,78 @@ import javafx.stage.Stage;
  * <li>Connect4Constants.java
  * </ul>
  * <p>
+ * The players' port is read from the system property
+ * <code>connect4.port</code> (default 8000); the metrics, computer and
+ * spectator ports default to the three ports after it, so several servers
+ * can run side by side as the shards of a Connect4Router.
+ * <p>
+ * Closing the window or stopping the process (SIGTERM) drains the server:
+ * it stops accepting players at once, lets the games in progress finish
+ * for up to <code>connect4.drain</code> seconds (default 30), then ends the
+ * rest and appends them to the journal named by <code>connect4.journal</code>
+ * (default connect4.journal) before stopping its threads.
+ * <p>
  * @author Joshua Stamps
  * @version v1.0
  */
 public class Connect4Server extends Application implements Connect4Constants {
 
+    /**
+     * Time the sessions still running get to finish after the sessions
+     * checkpointed at the drain deadline, in milliseconds.
+     */
+    private static final long CHECKPOINT_GRACE_MILLIS = 1000;
+
     /**
      * Number of server sessions.
      */
     private int sessionNo = 1;
+    /**
+     * Server log, set when the window opens.
+     */
+    private TextArea log;
+    /**
+     * Sockets accepting players and spectators, closed by drain().
+     */
+    private final CopyOnWriteArrayList<ServerSocket> serverSockets = new CopyOnWriteArrayList<>();
+    /**
+     * Sessions in progress and their threads.
+     */
+    private final Map<Session, Thread> sessions = new ConcurrentHashMap<>();
+    /**
+     * Set once drain() starts; no session starts afterwards.
+     */
+    private volatile boolean draining;
+    /**
+     * Time the drain took in milliseconds, -1 until drained.
+     */
+    private long drainMillis = -1;
+    /**
+     * Port of the players; the other ports default to the ones after it.
+     */
+    private final int port = Integer.getInteger("connect4.port", 8000);
+    /**
+     * Metrics shared by all sessions.
+     */
+    private final Connect4ServerMetrics metrics = new Connect4ServerMetrics();
+    /**
+     * Engines playing the computer sessions, created when the server starts.
+     */
+    private Connect4EnginePool enginePool;
+    /**
+     * Timer of every session's timeouts.
+     */
+    private final Connect4TimerWheel timer = new Connect4TimerWheel();
+    /**
+     * Spectators of the sessions, null until started or if disabled.
+     */
+    private Connect4SpectatorHub spectators;
+    /**
+     * Idle limit and game clock of the sessions, read from the system
+     * property <code>connect4.session</code>.
+     */
+    private final Connect4SessionConfig sessionConfig =
+            Connect4SessionConfig.parse(System.getProperty("connect4.session", ""));
 
     /**
      * Method to launch server.
@@ -43,6 +112,7 @@ public class Connect4Server extends Application implements Connect4Constants {
     @Override
     public void start(Stage primaryStage) {
         TextArea taLog = new TextArea();
+        log = taLog;
 
         // Creates scene, places it within stage
         Scene scene = new Scene(new ScrollPane(taLog), 450, 200);
@@ -50,13 +120,19 @@ public class Connect4Server extends Application implements Connect4Constants {
         primaryStage.setScene(scene);
         primaryStage.show();
 
+        startMetrics(taLog);
+        startSpectators(taLog);
+        startComputerSessions(taLog);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "Connect4-drain"));
+
         new Thread(() ->
         {
+            Socket player1 = null;
             try {
                 // Create a server socket
-                ServerSocket serverSocket = new ServerSocket(8000);
+                ServerSocket serverSocket = listen(port);
                 Platform.runLater(() -> taLog.appendText(new Date()
-                        + ": Server started at socket 8000\n"));
+                        + ": Server started at socket " + port + " (" + sessionConfig + ")\n"));
 
                 // Ready to create a session for every two players
                 while (true) {
@@ -64,14 +140,15 @@ public class Connect4Server extends Application implements Connect4Constants {
                             + ": Wait for players to join session " + sessionNo + '\n'));
 
                     // Connect to player 1
-                    Socket player1 = serverSocket.accept();
+                    player1 = serverSocket.accept();
+                    Socket first = player1;
 
                     Platform.runLater(() ->
                     {
                         taLog.appendText(new Date() + ": Player 1 joined session "
                                 + sessionNo + '\n');
                         taLog.appendText("Player 1's IP address"
-                                + player1.getInetAddress().getHostAddress() + '\n');
+                                + first.getInetAddress().getHostAddress() + '\n');
                     });
 
                     // Notify that the player is Player 1
@@ -93,24 +170,323 @@ public class Connect4Server extends Application implements Connect4Constants {
                     new DataOutputStream(
                             player2.getOutputStream()).writeInt(PLAYER2);
 
+                    HandleASession session = new HandleASession(player1, player2, metrics, timer,
+                            sessionConfig, spectators);
+
                     // Display this session and increment session number
                     Platform.runLater(()
                             -> taLog.appendText(new Date()
-                            + ": Start a thread for session " + sessionNo++ + '\n'));
+                            + ": Start a thread for session " + sessionNo++
+                            + " (game " + session.getSessionId() + ")\n"));
 
                     // Launch a new thread for this session of two players
-                    new Thread(new HandleASession(player1, player2)).start();
+                    startSession(session);
+                    player1 = null;
                 }
+            } catch (IOException ex) {
+                if (!draining) {
+                    ex.printStackTrace();
+                }
+            } finally {
+                // player 1 of a session that never started
+                if (player1 != null) {
+                    Connect4Connection.closeQuietly(player1);
+                }
+            }
+        }, "Connect4-accept").start();
+    }
+
+    /**
+     * Opens a server socket that drain() will close.
+     * @param pPort port to listen on.
+     * @return ServerSocket socket.
+     * @throws IOException if the port cannot be bound, or the server is
+     * draining.
+     */
+    private ServerSocket listen(int pPort) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(pPort);
+        serverSockets.add(serverSocket);
+        if (draining) {
+            serverSocket.close();
+        }
+        return serverSocket;
+    }
+
+    /**
+     * Runs a session on a thread of its own, unless the server is draining.
+     * @param pSession session to run.
+     */
+    private void startSession(Session pSession) {
+        Thread thread = new Thread(() -> {
+            try {
+                pSession.run();
+            } finally {
+                sessions.remove(pSession);
+            }
+        });
+        if (draining) {
+            pSession.checkpoint(null);
+            return;
+        }
+        sessions.put(pSession, thread);
+        thread.start();
+    }
+
+    /**
+     * Called by JavaFX when the window is closed: drains the server.
+     */
+    @Override
+    public void stop() {
+        drain();
+    }
+
+    /**
+     * Shuts the server down without killing games.  The server sockets are
+     * closed at once so no new game starts, the games in progress get until
+     * the deadline to finish, and those still running are then ended and
+     * saved to the journal.  Finally the timer, engines, spectator threads
+     * and metrics endpoint are stopped.  Only the first call drains; later
+     * calls wait for it and return.
+     * @return long milliseconds the drain took.
+     */
+    public synchronized long drain() {
+        if (drainMillis >= 0) {
+            return drainMillis;
+        }
+        long start = System.nanoTime();
+        draining = true;
+        for (ServerSocket serverSocket : serverSockets) {
+            try {
+                serverSocket.close();
             } catch (IOException ex) {
                 ex.printStackTrace();
             }
-        }).start();
+        }
+
+        long deadline = start + TimeUnit.SECONDS.toNanos(Long.getLong("connect4.drain", 30));
+        int running = sessions.size();
+        awaitSessions(deadline);
+        Connect4GameJournal journal = new Connect4GameJournal(
+                new File(System.getProperty("connect4.journal", "connect4.journal")));
+        int checkpointed = 0;
+        for (Session session : sessions.keySet()) {
+            session.checkpoint(journal);
+            checkpointed++;
+        }
+        awaitSessions(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CHECKPOINT_GRACE_MILLIS));
+
+        timer.stop();
+        if (enginePool != null) {
+            enginePool.shutdown();
+        }
+        if (spectators != null) {
+            spectators.shutdown();
+        }
+        metrics.stopHttp();
+        try {
+            metrics.unregisterMBean();
+        } catch (JMException ex) {
+            ex.printStackTrace();
+        }
+
+        drainMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        String report = new Date() + ": Drained in " + drainMillis + " ms: "
+                + (running - checkpointed) + " games finished, " + checkpointed
+                + " saved to " + journal.getFile() + ", " + sessions.size() + " still running\n";
+        System.out.print(report);
+        if (log != null) {
+            Platform.runLater(() -> log.appendText(report));
+        }
+        return drainMillis;
+    }
+
+    /**
+     * Waits for the sessions to end.
+     * @param pDeadline System.nanoTime() to stop waiting at.
+     */
+    private void awaitSessions(long pDeadline) {
+        for (Thread thread : sessions.values()) {
+            long left = pDeadline - System.nanoTime();
+            if (left <= 0) {
+                return;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedJoin(thread, left);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Publishes the metrics through JMX and the text endpoint, whose port is
+     * read from the system property <code>connect4.metrics.port</code>
+     * (default the players' port + 1, negative to disable).
+     * @param pLog server log.
+     */
+    private void startMetrics(TextArea pLog) {
+        try {
+            metrics.registerMBean();
+        } catch (JMException ex) {
+            pLog.appendText(new Date() + ": Metrics not registered with JMX: " + ex + '\n');
+        }
+        int port = Integer.getInteger("connect4.metrics.port", this.port + 1);
+        if (port >= 0) {
+            try {
+                port = metrics.startHttp(port);
+                pLog.appendText(new Date() + ": Metrics at http://localhost:" + port + "/metrics\n");
+            } catch (IOException ex) {
+                pLog.appendText(new Date() + ": Metrics endpoint not started: " + ex + '\n');
+            }
+        }
+    }
+
+    /**
+     * Starts accepting spectators on the port read from the system property
+     * <code>connect4.spectator.port</code> (default the players' port + 3,
+     * negative to disable).  The number of moves queued per spectator before
+     * a slow one is dropped is read from <code>connect4.spectator.queue</code>.
+     * @param pLog server log.
+     */
+    private void startSpectators(TextArea pLog) {
+        int port = Integer.getInteger("connect4.spectator.port", this.port + 3);
+        if (port < 0) {
+            return;
+        }
+        // a spectator joining late is sent the whole game at once
+        int queueSize = Math.max(sessionConfig.getRules().maxPlies() + 3,
+                Integer.getInteger("connect4.spectator.queue", Connect4SpectatorHub.DEFAULT_QUEUE_SIZE));
+        spectators = new Connect4SpectatorHub(timer, metrics, Connect4SpectatorHub.DEFAULT_WRITERS, queueSize,
+                Connect4SpectatorHub.DEFAULT_WRITE_TIMEOUT_MILLIS);
+
+        new Thread(() ->
+        {
+            try {
+                ServerSocket serverSocket = listen(port);
+                Platform.runLater(() -> pLog.appendText(new Date()
+                        + ": Spectators at socket " + port + '\n'));
+                while (true) {
+                    spectators.accept(serverSocket.accept());
+                }
+            } catch (IOException ex) {
+                if (!draining) {
+                    ex.printStackTrace();
+                }
+            }
+        }, "Connect4-spectator-accept").start();
+    }
+
+    /**
+     * Starts accepting players who want to play the computer, on the port
+     * read from the system property <code>connect4.computer.port</code>
+     * (default the players' port + 2, negative to disable).  The engines are
+     * set up from the system property <code>connect4.engine</code>, read by
+     * Connect4EngineConfig.parse() and limited to the alphabeta engine, and
+     * share the opening book named by <code>connect4.book</code>, which is
+     * loaded at start and saved on exit.
+     * Their transposition table is likewise loaded from and saved to the
+     * snapshot named by <code>connect4.table</code>, so a restarted server
+     * answers at once the positions the last run searched.
+     * @param pLog server log.
+     */
+    private void startComputerSessions(TextArea pLog) {
+        int port = Integer.getInteger("connect4.computer.port", this.port + 2);
+        if (port < 0) {
+            return;
+        }
+        Connect4EngineConfig config = Connect4EngineConfig.parse("server",
+                System.getProperty("connect4.engine", "time=500,hash=24"));
+        Connect4OpeningBook book = new Connect4OpeningBook();
+        String bookName = System.getProperty("connect4.book");
+        if (bookName != null) {
+            File bookFile = new File(bookName);
+            try {
+                if (bookFile.isFile()) {
+                    book.load(bookFile);
+                }
+            } catch (IOException ex) {
+                pLog.appendText(new Date() + ": Opening book not loaded: " + ex + '\n');
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    book.save(bookFile);
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }));
+        }
+        enginePool = new Connect4EnginePool(config, book);
+        String tableName = System.getProperty("connect4.table");
+        if (tableName != null) {
+            File tableFile = new File(tableName);
+            Connect4TranspositionTable table = enginePool.getTable();
+            try {
+                if (tableFile.isFile()) {
+                    long start = System.nanoTime();
+                    table.load(tableFile);
+                    pLog.appendText(new Date() + ": Table snapshot loaded, " + table.used() + " positions in "
+                            + (System.nanoTime() - start) / 1_000_000 + " ms\n");
+                }
+            } catch (IOException ex) {
+                pLog.appendText(new Date() + ": Table snapshot not loaded: " + ex + '\n');
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    table.save(tableFile);
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }));
+        }
+
+        new Thread(() ->
+        {
+            try {
+                ServerSocket serverSocket = listen(port);
+                Platform.runLater(() -> pLog.appendText(new Date()
+                        + ": Computer opponents at socket " + port + " (" + config
+                        + ", " + book.size() + " book positions)\n"));
+
+                // Every player gets a session of their own
+                while (true) {
+                    Socket player = serverSocket.accept();
+                    new DataOutputStream(player.getOutputStream()).writeInt(PLAYER1);
+                    startSession(new HandleAComputerSession(player, enginePool, config.getMoveTimeMillis(),
+                            metrics, timer, sessionConfig, spectators));
+                }
+            } catch (IOException ex) {
+                if (!draining) {
+                    ex.printStackTrace();
+                }
+            }
+        }, "Connect4-computer-accept").start();
+    }
+
+    /**
+     * A game the server runs on a thread of its own.
+     */
+    interface Session extends Runnable {
+
+        /**
+         * Ends the game before it is over so the server can shut down.  The
+         * players are disconnected, and the session thread appends the game
+         * to the journal as it ends.
+         *
+         * @param pJournal journal to save the game in, null to drop it.
+         */
+        void checkpoint(Connect4GameJournal pJournal);
     }
 
     /**
      * Define the thread class for handling a new session for two players.
      */
-    static class HandleASession implements Runnable, Connect4Constants {
+    static class HandleASession implements Session, Connect4Constants {
+
+        /**
+         * Value returned by readValidMove() when the player forfeits.
+         */
+        private static final int FORFEIT = -1;
 
         /**
          * Socket for player 1.
@@ -120,6 +496,10 @@ public class Connect4Server extends Application implements Connect4Constants {
          * Socket for player 2.
          */
         private Socket player2;
+        /**
+         * Metrics to record the session in.
+         */
+        private final Connect4ServerMetrics metrics;
         /**
          * Variable to track number of turns taken.
          */
@@ -128,11 +508,67 @@ public class Connect4Server extends Application implements Connect4Constants {
          * Holds row selection by player.
          */
         private int rowSelect;
+        /**
+         * Id of the session in flight recorder events.
+         */
+        private final long sessionId = Connect4SessionIds.next();
+        /**
+         * Time the last move was read.
+         */
+        private long moveReceived;
+        /**
+         * Last status sent to the players.
+         */
+        private int lastStatus;
+        /**
+         * Timer of the read timeouts, null for none.
+         */
+        private final Connect4TimerWheel timer;
+        /**
+         * Idle limit and game clock settings.
+         */
+        private final Connect4SessionConfig config;
+        /**
+         * Game clocks, null if the game is not timed.
+         */
+        private final Connect4GameClock clock;
+        /**
+         * Time the player to move started their turn.
+         */
+        private long turnStart;
+        /**
+         * Invalid moves sent by each player.
+         */
+        private final int[] invalidMoves = new int[2];
+        /**
+         * Spectator hub, null if games cannot be watched.
+         */
+        private final Connect4SpectatorHub spectators;
+        /**
+         * Moves of this game sent to spectators, null if not watched.
+         */
+        private Connect4SpectatorHub.Game broadcast;
+        /**
+         * Columns played, as digits, for the journal.
+         */
+        private final StringBuilder moves;
+        /**
+         * Set when the server ends the game to shut down.
+         */
+        private volatile boolean stopped;
+        /**
+         * Journal to save the game in when stopped, null to drop it.
+         */
+        private volatile Connect4GameJournal journal;
 
         /**
-         * Create and initialize gameCells.
+         * Rule set of the game, from the session config.
+         */
+        private final Connect4Rules rules;
+        /**
+         * Board of the game, of the variant set in the session config.
          */
-        private String[][] gameCell = new String[ROW][COL];
+        private final Connect4NBoard board;
 
         /**
          * Constructor to make a thread.
@@ -141,123 +577,291 @@ public class Connect4Server extends Application implements Connect4Constants {
          * @param player2 Socket
          */
         HandleASession(Socket player1, Socket player2) {
+            this(player1, player2, new Connect4ServerMetrics(), null, Connect4SessionConfig.parse("idle=0"), null);
+        }
+
+        /**
+         * Constructor to make a thread that records its metrics and bounds
+         * the time players take.
+         *
+         * @param player1 Socket
+         * @param player2 Socket
+         * @param pMetrics metrics shared by the server's sessions.
+         * @param pTimer timer of the read timeouts, null for none.
+         * @param pConfig limits of the session.
+         * @param pSpectators spectator hub, null if games cannot be watched.
+         */
+        HandleASession(Socket player1, Socket player2, Connect4ServerMetrics pMetrics,
+                       Connect4TimerWheel pTimer, Connect4SessionConfig pConfig,
+                       Connect4SpectatorHub pSpectators) {
             this.player1 = player1;
             this.player2 = player2;
-
-            // Initialize cells
-            for (int i = 0; i < ROW; i++) {
-                for (int j = 0; j < COL; j++) {
-                    gameCell[i][j] = " ";
-                }
-            }
+            this.metrics = pMetrics;
+            this.timer = pTimer;
+            this.config = pConfig;
+            this.spectators = pSpectators;
+            this.clock = pConfig.newClock();
+            this.rules = pConfig.getRules();
+            this.board = rules.getVariant().newBoard();
+            this.moves = new StringBuilder(rules.maxPlies());
         }
 
         /**
          * Implement the run() method for the thread.
          */
         public void run() {
+            metrics.sessionStarted();
+            Connect4Events.sessionStart(sessionId, address(player1), address(player2));
+            if (spectators != null) {
+                broadcast = spectators.open(sessionId);
+            }
+            long start = System.nanoTime();
+            boolean disconnected = false;
+            Connect4Connection connection1 = null;
+            Connect4Connection connection2 = null;
             try {
                 // Create data input and output streams
-                /**
-                 * Input stream for player 1.
-                 */
-                DataInputStream fromPlayer1 = new DataInputStream(player1.getInputStream());
+                connection1 = new Connect4Connection(player1, timer, config, metrics);
+                connection2 = new Connect4Connection(player2, timer, config, metrics);
                 /**
                  * Output stream for player 1.
                  */
-                DataOutputStream toPlayer1 = new DataOutputStream(player1.getOutputStream());
-                /**
-                 * Input stream for player 2.
-                 */
-                DataInputStream fromPlayer2 = new DataInputStream(player2.getInputStream());
+                DataOutputStream toPlayer1 = connection1.getOutput();
                 /**
                  * Output stream for player 2.
                  */
-                DataOutputStream toPlayer2 = new DataOutputStream(player2.getOutputStream());
+                DataOutputStream toPlayer2 = connection2.getOutput();
 
                 // Write anything to notify player 1 to start
                 // This is just to let player 1 know to start
                 toPlayer1.writeInt(1);
+                turnStart = System.nanoTime();
 
                 // Continuously serve the players and determine and report
                 // the game status to the players
                 while (true) {
                     // Receive a move from player 1
                     //      int tempRow = fromPlayer1.readInt();
-                    int column = fromPlayer1.readInt();
-                    boolean valid = validate(column);
-
-                    while (!valid) {
-                        column = fromPlayer1.readInt();
-                        valid = validate(column);
+                    int column = readValidMove(connection1, PLAYER1);
+                    if (column == FORFEIT) {
+                        forfeit(connection1, toPlayer2, P2_WIN);
+                        break;
                     }
                     addRed(column);
                     turnCount++;
 
                     //gameCell[rowSelect][column] = RED;
 
-                    // Check if Player 1 wins
-                    if (isWon(RED)) {
-                        toPlayer1.writeInt(P1_WIN);
-                        toPlayer2.writeInt(P1_WIN);
-                        sendMove(toPlayer2, rowSelect, column);
+                    // Check if the game is won or drawn
+                    int status = status(column);
+                    if (status != PROCEED) {
+                        toPlayer1.writeInt(status);
+                        sendMove(toPlayer2, status, rowSelect, column);
+                        resultSent(PLAYER1, status, column);
                         break; // Break the loop
-                    } else if (isFull()) { // Check if all gameCells are filled
-                        toPlayer1.writeInt(DRAW);
-                        toPlayer2.writeInt(DRAW);
-                        sendMove(toPlayer2, rowSelect, column);
-                        break;
                     } else {
-                        // Notify player 2 to take the turn
-                        toPlayer2.writeInt(PROCEED);
-
-                        // Send player 1's selected row and column to player 2
-                        sendMove(toPlayer2, rowSelect, column);
+                        // Notify player 2 to take the turn and send player 1's
+                        // selected row and column
+                        sendMove(toPlayer2, PROCEED, rowSelect, column);
+                        resultSent(PLAYER1, PROCEED, column);
                     }
 
                     // Receive a move from Player 2
                     //      tempRow = fromPlayer2.readInt();
-                    column = fromPlayer2.readInt();
-                    valid = validate(column);
-                    while (!valid) {
-                        column = fromPlayer1.readInt();
-                        valid = validate(column);
+                    column = readValidMove(connection2, PLAYER2);
+                    if (column == FORFEIT) {
+                        forfeit(connection2, toPlayer1, P1_WIN);
+                        break;
                     }
                     addYellow(column);
                     turnCount++;
 
                     //gameCell[rowSelect][column] = YELLOW;
 
-                    // Check if Player 2 wins
-                    if (isWon(YELLOW)) {
-                        toPlayer1.writeInt(P2_WIN);
-                        toPlayer2.writeInt(P2_WIN);
-                        sendMove(toPlayer1, rowSelect, column);
+                    // Check if the game is won or drawn
+                    status = status(column);
+                    if (status != PROCEED) {
+                        toPlayer2.writeInt(status);
+                        sendMove(toPlayer1, status, rowSelect, column);
+                        resultSent(PLAYER2, status, column);
                         break;
                     } else {
-                        // Notify player 1 to take the turn
-                        toPlayer1.writeInt(PROCEED);
-
-                        // Send player 2's selected row and column to player 1
-                        sendMove(toPlayer1, rowSelect, column);
+                        // Notify player 1 to take the turn and send player 2's
+                        // selected row and column
+                        sendMove(toPlayer1, PROCEED, rowSelect, column);
+                        resultSent(PLAYER2, PROCEED, column);
                     }
                 }
+            } catch (IOException ex) {
+                if (stopped) {
+                    save();
+                } else {
+                    disconnected = true;
+                    ex.printStackTrace();
+                }
+            } finally {
+                metrics.sessionEnded(disconnected);
+                Connect4Events.sessionEnd(sessionId, turnCount - 1, lastStatus, disconnected,
+                        System.nanoTime() - start);
+                Connect4Connection.closeQuietly(player1);
+                Connect4Connection.closeQuietly(player2);
+                if (broadcast != null) {
+                    broadcast.close();
+                }
+            }
+        }
+
+        /**
+         * Accessor returns the id of the session, by which spectators ask
+         * for it.
+         *
+         * @return long session id.
+         */
+        long getSessionId() {
+            return sessionId;
+        }
+
+        @Override
+        public void checkpoint(Connect4GameJournal pJournal) {
+            journal = pJournal;
+            stopped = true;
+            Connect4Connection.closeQuietly(player1);
+            Connect4Connection.closeQuietly(player2);
+        }
+
+        /**
+         * Appends the game to the journal, with the time on the clocks at
+         * the start of the current turn.
+         */
+        private void save() {
+            if (journal == null) {
+                return;
+            }
+            try {
+                journal.append(new Connect4GameJournal.Checkpoint(sessionId, "players", moves,
+                        clock == null ? -1 : clock.getRemainingMillis(PLAYER1),
+                        clock == null ? -1 : clock.getRemainingMillis(PLAYER2)));
             } catch (IOException ex) {
                 ex.printStackTrace();
             }
         }
 
         /**
-         * Send the move to other player.
+         * Reads moves from a player until one is valid.  Each invalid move is
+         * answered with INVALID so the player can try again, as long as the
+         * player has retries left.
+         *
+         * @param pConnection connection of the player.
+         * @param pPlayer player expected to move.
+         * @return int valid column, or FORFEIT if the player's clock ran out
+         * or they sent more invalid moves than allowed.
+         * @throws IOException if the connection is lost or idle too long.
+         */
+        private int readValidMove(Connect4Connection pConnection, int pPlayer) throws IOException {
+            while (true) {
+                int column = readMove(pConnection, pPlayer);
+                if (column == Connect4Connection.TIME_OUT) {
+                    return FORFEIT;
+                } else if (validate(column)) {
+                    return column;
+                }
+                metrics.invalidMove();
+                if (++invalidMoves[pPlayer - 1] > config.getRetries()) {
+                    return FORFEIT;
+                }
+                pConnection.getOutput().writeInt(INVALID);
+            }
+        }
+
+        /**
+         * Reads a column from a player and records the time it arrived.  The
+         * time since the turn started is charged to the player's clock once
+         * a valid move arrives.
+         *
+         * @param pConnection connection of the player.
+         * @param pPlayer player expected to move.
+         * @return int column received, or Connect4Connection.TIME_OUT if the
+         * player's clock ran out.
+         * @throws IOException if the connection is lost or idle too long.
+         */
+        private int readMove(Connect4Connection pConnection, int pPlayer) throws IOException {
+            long waitStart = System.nanoTime();
+            long clockLeft = clock == null ? -1
+                    : Math.max(0, clock.getRemainingMillis(pPlayer) - (waitStart - turnStart) / 1_000_000L);
+            int column = pConnection.readMove(clockLeft);
+            moveReceived = System.nanoTime();
+            if (column == Connect4Connection.TIME_OUT) {
+                return column;
+            }
+            boolean valid = validate(column);
+            Connect4Events.moveReceived(sessionId, pPlayer, column, valid, moveReceived - waitStart);
+            if (valid && clock != null && !clock.charge(pPlayer, moveReceived - turnStart)) {
+                return Connect4Connection.TIME_OUT;
+            }
+            return column;
+        }
+
+        /**
+         * Ends the game for a player who ran out of time or retries: their
+         * connection is closed and their opponent is told they won.
+         *
+         * @param pLoser connection of the player forfeiting.
+         * @param pToWinner output stream of the other player.
+         * @param pStatus P1_WIN or P2_WIN, the status the winner receives.
+         * @throws IOException if the winner cannot be told.
+         */
+        private void forfeit(Connect4Connection pLoser, DataOutputStream pToWinner, int pStatus)
+                throws IOException {
+            pLoser.close();
+            lastStatus = pStatus;
+            pToWinner.writeInt(pStatus);
+            if (broadcast != null) {
+                broadcast.publish(Connect4Connection.encodeMove(pStatus, -1, -1));
+            }
+        }
+
+        /**
+         * Records a move whose status and position were sent; the next
+         * player's turn starts now.
+         *
+         * @param pPlayer player who moved.
+         * @param pStatus status sent.
+         * @param pColumn column of the move.
+         */
+        private void resultSent(int pPlayer, int pStatus, int pColumn) {
+            turnStart = System.nanoTime();
+            long nanos = turnStart - moveReceived;
+            lastStatus = pStatus;
+            metrics.moveProcessed(nanos);
+            Connect4Events.resultSent(sessionId, pPlayer, pStatus, rowSelect, pColumn, nanos);
+        }
+
+        /**
+         * Address of a player for the session events.
+         *
+         * @param pSocket connection of the player.
+         * @return String host address.
+         */
+        private static String address(Socket pSocket) {
+            return pSocket.getInetAddress().getHostAddress();
+        }
+
+        /**
+         * Send the status and the move to the other player, and to the
+         * spectators.  The move is encoded once and sent in one write.
          *
          * @param out    Server output stream to players.
+         * @param status of the game after the move.
          * @param row    of board move.
          * @param column of board move.
          */
-        private void sendMove(DataOutputStream out, int row, int column)
+        private void sendMove(DataOutputStream out, int status, int row, int column)
                 throws IOException {
-            out.writeInt(row); // Send row index
-            out.writeInt(column); // Send column index
+            byte[] message = Connect4Connection.encodeMove(status, row, column);
+            out.write(message);
+            if (broadcast != null) {
+                broadcast.publish(message);
+            }
         }
 
         /**
@@ -268,13 +872,7 @@ public class Connect4Server extends Application implements Connect4Constants {
          * <code>false</code> otherwise.
          */
         private boolean validate(int pCol) {
-            if (turnCount <= 42) {
-                if (pCol > gameCell[0].length - 1 || pCol < 0) {
-                    return false;
-                }
-                return gameCell[0][pCol].equals(" ");
-            }
-            return true;
+            return rules.isLegal(board, pCol);
         }
 
         /**
@@ -283,14 +881,7 @@ public class Connect4Server extends Application implements Connect4Constants {
          * @param pMove is player's selected column.
          */
         private void addRed(int pMove) {
-            //add token to board in bottom-most slot available
-            for (int row = gameCell.length - 1; row >= 0; row--) {
-                if (gameCell[row][pMove].equals(" ")) {
-                    rowSelect = row;
-                    gameCell[row][pMove] = RED;
-                    break;
-                }
-            }
+            add(pMove);
         }
 
         /**
@@ -299,87 +890,296 @@ public class Connect4Server extends Application implements Connect4Constants {
          * @param pMove is player's selected column.
          */
         private void addYellow(int pMove) {
-            //add token to board in bottom-most slot available
-            for (int row = gameCell.length - 1; row >= 0; row--) {
-                if (gameCell[row][pMove].equals(" ")) {
-                    rowSelect = row;
-                    gameCell[row][pMove] = YELLOW;
-                    break;
-                }
-            }
+            add(pMove);
         }
 
         /**
-         * Boolean to check if the game board is full.
+         * Plays the move of the player to move and sets rowSelect, counted
+         * from the top as the clients expect; a pop sets the bottom row.
          *
-         * @return <code>true</code> if board is full;
-         * <code>false</code> otherwise.
+         * @param pMove is player's selected column.
          */
-        private boolean isFull() {
-            for (int i = 0; i < ROW; i++) {
-                for (int j = 0; j < COL; j++) {
-                    if (gameCell[i][j].equals(" ")) {
-                        return false;
-                    }
-                }
-            }
-            return true;
+        private void add(int pMove) {
+            moves.append((char) ('0' + pMove));
+            rowSelect = board.getVariant().getRows() - 1 - rules.play(board, pMove);
+        }
 
+        /**
+         * Status of the game after a move, by the session's rules.  A move
+         * may lose the game for the player making it, e.g. a pop in PopOut
+         * that completes only the opponent's line.
+         *
+         * @param pMove move just played.
+         * @return int P1_WIN, P2_WIN, DRAW or PROCEED.
+         */
+        private int status(int pMove) {
+            int result = rules.result(board, pMove);
+            return result == 0 ? PROCEED : result;
         }
+    }
+
+    /**
+     * Define the thread class for a session of a player against the computer.
+     * The player plays first as player 1 and sees exactly what a human
+     * opponent would send; the computer's moves come from the shared engine
+     * pool.
+     */
+    static class HandleAComputerSession implements Session, Connect4Constants {
 
         /**
-         * Method to check for winner.
+         * Socket for the player.
+         */
+        private final Socket player;
+        /**
+         * Engines choosing the computer's moves.
+         */
+        private final Connect4EnginePool pool;
+        /**
+         * Time budget of a computer move, in milliseconds.
+         */
+        private final long budgetMillis;
+        /**
+         * Metrics to record the session in.
+         */
+        private final Connect4ServerMetrics metrics;
+        /**
+         * Game being played.
+         */
+        private final Connect4Bitboard board = new Connect4Bitboard();
+        /**
+         * Id of the session in flight recorder events.
+         */
+        private final long sessionId = Connect4SessionIds.next();
+        /**
+         * Last status sent to the player.
+         */
+        private int lastStatus;
+        /**
+         * Timer of the read timeouts, null for none.
+         */
+        private final Connect4TimerWheel timer;
+        /**
+         * Idle limit and game clock settings.
+         */
+        private final Connect4SessionConfig config;
+        /**
+         * Game clocks, of which only the player's runs; null if not timed.
+         */
+        private final Connect4GameClock clock;
+        /**
+         * Invalid moves sent by the player.
+         */
+        private int invalidMoves;
+        /**
+         * Spectator hub, null if games cannot be watched.
+         */
+        private final Connect4SpectatorHub spectators;
+        /**
+         * Moves of this game sent to spectators, null if not watched.
+         */
+        private Connect4SpectatorHub.Game broadcast;
+        /**
+         * Columns played, as digits, for the journal.
+         */
+        private final StringBuilder moves = new StringBuilder(ROW * COL);
+        /**
+         * Set when the server ends the game to shut down.
+         */
+        private volatile boolean stopped;
+        /**
+         * Journal to save the game in when stopped, null to drop it.
+         */
+        private volatile Connect4GameJournal journal;
+
+        /**
+         * Constructor to make a thread.
          *
-         * @param pPlayerToken takes in current player token to check against.
-         * @return <code> true </code> if winner found;
-         * <code> false</code> otherwise.
-         */
-        private boolean isWon(String pPlayerToken) {
-            //horizontal check
-            for (String[] strings : gameCell) {
-                for (int col = 0; col < gameCell[0].length - 3; col++) {
-                    if (strings[col].equals(pPlayerToken)
-                            && strings[col + 1].equals(pPlayerToken)
-                            && strings[col + 2].equals(pPlayerToken)
-                            && strings[col + 3].equals(pPlayerToken)) {
-                        return true;
-                    }
-                }
+         * @param pPlayer socket of the player.
+         * @param pPool engines choosing the computer's moves.
+         * @param pBudgetMillis time budget of a computer move.
+         * @param pMetrics metrics shared by the server's sessions.
+         * @param pTimer timer of the read timeouts, null for none.
+         * @param pConfig limits of the session.
+         * @param pSpectators spectator hub, null if games cannot be watched.
+         */
+        HandleAComputerSession(Socket pPlayer, Connect4EnginePool pPool, long pBudgetMillis,
+                               Connect4ServerMetrics pMetrics, Connect4TimerWheel pTimer,
+                               Connect4SessionConfig pConfig, Connect4SpectatorHub pSpectators) {
+            this.player = pPlayer;
+            this.pool = pPool;
+            this.budgetMillis = pBudgetMillis;
+            this.metrics = pMetrics;
+            this.timer = pTimer;
+            this.config = pConfig;
+            this.clock = pConfig.newClock();
+            this.spectators = pSpectators;
+        }
+
+        /**
+         * Implement the run() method for the thread.
+         */
+        public void run() {
+            metrics.sessionStarted();
+            Connect4Events.sessionStart(sessionId, player.getInetAddress().getHostAddress(), "computer");
+            if (spectators != null) {
+                broadcast = spectators.open(sessionId);
             }
-            //vertical check
-            for (int row = 0; row < gameCell.length - 3; row++) {
-                for (int col = 0; col < gameCell[0].length; col++) {
-                    if (gameCell[row][col].equals(pPlayerToken)
-                            && gameCell[row + 1][col].equals(pPlayerToken)
-                            && gameCell[row + 2][col].equals(pPlayerToken)
-                            && gameCell[row + 3][col].equals(pPlayerToken)) {
-                        return true;
+            long start = System.nanoTime();
+            boolean disconnected = false;
+            try {
+                Connect4Connection connection = new Connect4Connection(player, timer, config, metrics);
+                DataOutputStream toPlayer = connection.getOutput();
+
+                // Let the player know to start
+                toPlayer.writeInt(1);
+                long turnStart = System.nanoTime();
+
+                while (true) {
+                    long waitStart = System.nanoTime();
+                    long clockLeft = clock == null ? -1 : Math.max(0,
+                            clock.getRemainingMillis(PLAYER1) - (waitStart - turnStart) / 1_000_000L);
+                    int column = connection.readMove(clockLeft);
+                    long received = System.nanoTime();
+                    if (column == Connect4Connection.TIME_OUT) {
+                        lastStatus = P2_WIN;
+                        publish(P2_WIN, -1, -1);
+                        break;
                     }
-                }
-            }
-            //diagonal-up right check
-            for (int row = 3; row < gameCell.length; row++) {
-                for (int col = 0; col < gameCell[0].length - 3; col++) {
-                    if (gameCell[row][col].equals(pPlayerToken)
-                            && gameCell[row - 1][col + 1].equals(pPlayerToken)
-                            && gameCell[row - 2][col + 2].equals(pPlayerToken)
-                            && gameCell[row - 3][col + 3].equals(pPlayerToken)) {
-                        return true;
+                    boolean valid = validate(column);
+                    Connect4Events.moveReceived(sessionId, PLAYER1, column, valid, received - waitStart);
+                    if (!valid) {
+                        metrics.invalidMove();
+                        if (++invalidMoves > config.getRetries()) {
+                            toPlayer.writeInt(P2_WIN);
+                            lastStatus = P2_WIN;
+                            publish(P2_WIN, -1, -1);
+                            break;
+                        }
+                        toPlayer.writeInt(INVALID);
+                        continue;
                     }
-                }
-            }
-            //diagonal-down right check
-            for (int row = 0; row < gameCell.length - 3; row++) {
-                for (int col = 0; col < gameCell[0].length - 3; col++) {
-                    if (gameCell[row][col].equals(pPlayerToken)
-                            && gameCell[row + 1][col + 1].equals(pPlayerToken)
-                            && gameCell[row + 2][col + 2].equals(pPlayerToken)
-                            && gameCell[row + 3][col + 3].equals(pPlayerToken)) {
-                        return true;
+                    if (clock != null && !clock.charge(PLAYER1, received - turnStart)) {
+                        lastStatus = P2_WIN;
+                        publish(P2_WIN, -1, -1);
+                        break;
+                    }
+                    int row = rowOf(column);
+                    board.play(column);
+                    moves.append((char) ('0' + column));
+                    if (board.lastMoveWon()) {
+                        toPlayer.writeInt(P1_WIN);
+                        publish(P1_WIN, row, column);
+                        resultSent(PLAYER1, P1_WIN, row, column, received);
+                        break;
+                    }
+                    publish(PROCEED, row, column);
+
+                    // The computer answers; the reply covers the search
+                    column = pool.submit(board, budgetMillis).join();
+                    row = rowOf(column);
+                    board.play(column);
+                    moves.append((char) ('0' + column));
+                    int status = board.lastMoveWon() ? P2_WIN : board.isFull() ? DRAW : PROCEED;
+                    byte[] message = Connect4Connection.encodeMove(status, row, column);
+                    toPlayer.write(message);
+                    if (broadcast != null) {
+                        broadcast.publish(message);
+                    }
+                    resultSent(PLAYER2, status, row, column, received);
+                    turnStart = System.nanoTime();
+                    if (status != PROCEED) {
+                        break;
                     }
                 }
+            } catch (IOException ex) {
+                if (stopped) {
+                    save();
+                } else {
+                    disconnected = true;
+                    ex.printStackTrace();
+                }
+            } finally {
+                metrics.sessionEnded(disconnected);
+                Connect4Events.sessionEnd(sessionId, board.getMoves(), lastStatus, disconnected,
+                        System.nanoTime() - start);
+                Connect4Connection.closeQuietly(player);
+                if (broadcast != null) {
+                    broadcast.close();
+                }
+            }
+        }
+
+        @Override
+        public void checkpoint(Connect4GameJournal pJournal) {
+            journal = pJournal;
+            stopped = true;
+            Connect4Connection.closeQuietly(player);
+        }
+
+        /**
+         * Appends the game to the journal, with the time on the player's
+         * clock at the start of the current turn.
+         */
+        private void save() {
+            if (journal == null) {
+                return;
+            }
+            try {
+                journal.append(new Connect4GameJournal.Checkpoint(sessionId, "computer", moves,
+                        clock == null ? -1 : clock.getRemainingMillis(PLAYER1), -1));
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        /**
+         * Sends a move to the spectators, if any.
+         *
+         * @param pStatus status after the move.
+         * @param pRow row of the move, -1 if forfeited.
+         * @param pColumn column of the move, -1 if forfeited.
+         */
+        private void publish(int pStatus, int pRow, int pColumn) {
+            if (broadcast != null) {
+                broadcast.publish(Connect4Connection.encodeMove(pStatus, pRow, pColumn));
             }
-            return false;
+        }
+
+        /**
+         * Records a move whose status was sent.
+         *
+         * @param pPlayer player who moved.
+         * @param pStatus status sent.
+         * @param pRow row of the move.
+         * @param pColumn column of the move.
+         * @param pReceived time the player's move was read.
+         */
+        private void resultSent(int pPlayer, int pStatus, int pRow, int pColumn, long pReceived) {
+            long nanos = System.nanoTime() - pReceived;
+            lastStatus = pStatus;
+            metrics.moveProcessed(nanos);
+            Connect4Events.resultSent(sessionId, pPlayer, pStatus, pRow, pColumn, nanos);
+        }
+
+        /**
+         * Boolean flag to ensure board move is a valid move.
+         *
+         * @param pCol takes player's column selection for validation.
+         * @return <code>true</code> if move is valid;
+         * <code>false</code> otherwise.
+         */
+        private boolean validate(int pCol) {
+            return pCol >= 0 && pCol < COL && board.canPlay(pCol);
+        }
+
+        /**
+         * Row a token dropped in a column lands on, counted from the top.
+         *
+         * @param pCol open column.
+         * @return int row index.
+         */
+        private int rowOf(int pCol) {
+            return ROW - 1 - Long.bitCount(board.getMask() & Connect4Bitboard.columnMask(pCol));
         }
     }
 
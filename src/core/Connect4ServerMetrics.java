@@ -0,0 +1,409 @@
+package core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class collects the metrics of Connect4Server.
+ * <p>
+ * Session threads update striped LongAdder counters and a
+ * Connect4Histogram of the server move time, so recording never takes a lock
+ * and costs a few nanoseconds.  The move time is measured from the moment a
+ * column is read to the moment the reply is written.
+ * <p>
+ * Reading the rates or percentiles samples the counters at most once per
+ * second: the rates and percentiles reported are those of the last completed
+ * interval, so JMX consoles and scrapers polling at any frequency see the
+ * same numbers.  The metrics are published as an MBean named
+ * {@value #OBJECT_NAME} and, optionally, as plain text in the Prometheus
+ * exposition format on <code>http://localhost:PORT/metrics</code>.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4ServerMetrics implements Connect4ServerMetricsMBean {
+
+    /**
+     * Name the metrics are registered under in the platform MBean server.
+     */
+    public static final String OBJECT_NAME = "core:type=Connect4Server,name=Metrics";
+    /**
+     * Shortest time between two samples, in nanoseconds.
+     */
+    private static final long SAMPLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Sessions started.
+     */
+    private final LongAdder sessionsStarted = new LongAdder();
+    /**
+     * Sessions ended, for any reason.
+     */
+    private final LongAdder sessionsEnded = new LongAdder();
+    /**
+     * Moves played.
+     */
+    private final LongAdder moves = new LongAdder();
+    /**
+     * Total server move time, in nanoseconds.
+     */
+    private final LongAdder moveNanos = new LongAdder();
+    /**
+     * Invalid moves received.
+     */
+    private final LongAdder invalidMoves = new LongAdder();
+    /**
+     * Sessions ended by a lost connection.
+     */
+    private final LongAdder disconnects = new LongAdder();
+    /**
+     * Reads delayed by input rate limiting.
+     */
+    private final LongAdder throttledReads = new LongAdder();
+    /**
+     * Spectators who joined a game.
+     */
+    private final LongAdder spectatorsJoined = new LongAdder();
+    /**
+     * Spectators who left, for any reason.
+     */
+    private final LongAdder spectatorsLeft = new LongAdder();
+    /**
+     * Spectators dropped for being too slow or lost.
+     */
+    private final LongAdder spectatorsDropped = new LongAdder();
+    /**
+     * Server move time of the current interval, in nanoseconds.
+     */
+    private final Connect4Histogram moveTime = new Connect4Histogram();
+
+    /**
+     * Time of the last sample.
+     */
+    private long sampleTime = System.nanoTime();
+    /**
+     * Sessions started at the last sample.
+     */
+    private long sampledSessions;
+    /**
+     * Moves played at the last sample.
+     */
+    private long sampledMoves;
+    /**
+     * Session rate of the last interval.
+     */
+    private double sessionsPerSecond;
+    /**
+     * Move rate of the last interval.
+     */
+    private double movesPerSecond;
+    /**
+     * Move time counts of the last interval.
+     */
+    private long[] sampledMoveTime = moveTime.snapshot();
+
+    /**
+     * Text endpoint, null until started.
+     */
+    private HttpServer http;
+
+    /**
+     * Records the start of a session.
+     */
+    public void sessionStarted() {
+        sessionsStarted.increment();
+    }
+
+    /**
+     * Records the end of a session.
+     * @param pDisconnected <code>true</code> if a player's connection was lost;
+     *                      <code>false</code> if the game ended normally.
+     */
+    public void sessionEnded(boolean pDisconnected) {
+        sessionsEnded.increment();
+        if (pDisconnected) {
+            disconnects.increment();
+        }
+    }
+
+    /**
+     * Records a move handled by the server.
+     * @param pNanos time from reading the move to writing the reply.
+     */
+    public void moveProcessed(long pNanos) {
+        moves.increment();
+        moveNanos.add(pNanos);
+        moveTime.record(pNanos);
+    }
+
+    /**
+     * Records an invalid move.
+     */
+    public void invalidMove() {
+        invalidMoves.increment();
+    }
+
+    /**
+     * Records a read delayed because the client sent too fast.
+     */
+    public void inputThrottled() {
+        throttledReads.increment();
+    }
+
+    /**
+     * Records a spectator starting to watch a game.
+     */
+    public void spectatorJoined() {
+        spectatorsJoined.increment();
+    }
+
+    /**
+     * Records a spectator leaving.
+     * @param pDropped <code>true</code> if the spectator was too slow or lost;
+     *                 <code>false</code> if the game ended.
+     */
+    public void spectatorLeft(boolean pDropped) {
+        spectatorsLeft.increment();
+        if (pDropped) {
+            spectatorsDropped.increment();
+        }
+    }
+
+    /**
+     * Closes the current interval if it is at least a second old.
+     */
+    private synchronized void sample() {
+        long now = System.nanoTime();
+        long elapsed = now - sampleTime;
+        if (elapsed < SAMPLE_NANOS) {
+            return;
+        }
+        long started = sessionsStarted.sum();
+        long played = moves.sum();
+        double seconds = elapsed / 1e9;
+        sessionsPerSecond = (started - sampledSessions) / seconds;
+        movesPerSecond = (played - sampledMoves) / seconds;
+        sampledMoveTime = moveTime.snapshotAndReset();
+        sampledSessions = started;
+        sampledMoves = played;
+        sampleTime = now;
+    }
+
+    /**
+     * Move time counts of the last interval.
+     * @return long[] histogram snapshot.
+     */
+    private synchronized long[] moveTimeSample() {
+        sample();
+        return sampledMoveTime;
+    }
+
+    @Override
+    public long getActiveSessions() {
+        // read ended first so a session ending meanwhile is not counted twice
+        long ended = sessionsEnded.sum();
+        return Math.max(0, sessionsStarted.sum() - ended);
+    }
+
+    @Override
+    public long getSessionsStarted() {
+        return sessionsStarted.sum();
+    }
+
+    @Override
+    public synchronized double getSessionsPerSecond() {
+        sample();
+        return sessionsPerSecond;
+    }
+
+    @Override
+    public long getMoves() {
+        return moves.sum();
+    }
+
+    @Override
+    public synchronized double getMovesPerSecond() {
+        sample();
+        return movesPerSecond;
+    }
+
+    @Override
+    public long getInvalidMoves() {
+        return invalidMoves.sum();
+    }
+
+    @Override
+    public long getDisconnects() {
+        return disconnects.sum();
+    }
+
+    @Override
+    public long getThrottledReads() {
+        return throttledReads.sum();
+    }
+
+    @Override
+    public long getSpectators() {
+        long left = spectatorsLeft.sum();
+        return Math.max(0, spectatorsJoined.sum() - left);
+    }
+
+    @Override
+    public long getDroppedSpectators() {
+        return spectatorsDropped.sum();
+    }
+
+    @Override
+    public double getMoveTimeP50Micros() {
+        return Connect4Histogram.valueAtPercentile(moveTimeSample(), 50) / 1e3;
+    }
+
+    @Override
+    public double getMoveTimeP99Micros() {
+        return Connect4Histogram.valueAtPercentile(moveTimeSample(), 99) / 1e3;
+    }
+
+    @Override
+    public double getMoveTimeP999Micros() {
+        return Connect4Histogram.valueAtPercentile(moveTimeSample(), 99.9) / 1e3;
+    }
+
+    @Override
+    public double getMoveTimeMaxMicros() {
+        return Connect4Histogram.max(moveTimeSample()) / 1e3;
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server.
+     * @throws JMException if the name is already registered.
+     */
+    public void registerMBean() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if registered.
+     * @throws JMException if the server refuses.
+     */
+    public void unregisterMBean() throws JMException {
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+
+    /**
+     * Starts the text endpoint on the loopback interface.
+     * @param pPort port to listen on, 0 for any free port.
+     * @return int port the endpoint listens on.
+     * @throws IOException if the port cannot be bound.
+     */
+    public synchronized int startHttp(int pPort) throws IOException {
+        if (http == null) {
+            http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), pPort), 0);
+            http.createContext("/metrics", this::scrape);
+            http.start();
+        }
+        return http.getAddress().getPort();
+    }
+
+    /**
+     * Stops the text endpoint, if started.
+     */
+    public synchronized void stopHttp() {
+        if (http != null) {
+            http.stop(0);
+            http = null;
+        }
+    }
+
+    /**
+     * Answers one scrape of the text endpoint.
+     * @param pExchange request and response.
+     * @throws IOException if the response cannot be written.
+     */
+    private void scrape(HttpExchange pExchange) throws IOException {
+        byte[] body = toText().getBytes(StandardCharsets.UTF_8);
+        pExchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        pExchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = pExchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Formats every metric in the Prometheus text exposition format.
+     * @return String metrics, one per line.
+     */
+    public String toText() {
+        StringBuilder sb = new StringBuilder(1024);
+        metric(sb, "connect4_active_sessions", "gauge", "Sessions in progress.", getActiveSessions());
+        metric(sb, "connect4_sessions_total", "counter", "Sessions started.", getSessionsStarted());
+        metric(sb, "connect4_sessions_per_second", "gauge", "Sessions started per second.",
+                getSessionsPerSecond());
+        metric(sb, "connect4_moves_total", "counter", "Moves played.", getMoves());
+        metric(sb, "connect4_moves_per_second", "gauge", "Moves played per second.", getMovesPerSecond());
+        metric(sb, "connect4_invalid_moves_total", "counter", "Invalid moves received.", getInvalidMoves());
+        metric(sb, "connect4_disconnects_total", "counter", "Sessions ended by a lost connection.",
+                getDisconnects());
+        metric(sb, "connect4_throttled_reads_total", "counter", "Reads delayed by input rate limiting.",
+                getThrottledReads());
+        metric(sb, "connect4_spectators", "gauge", "Spectators watching.", getSpectators());
+        metric(sb, "connect4_spectators_dropped_total", "counter", "Spectators dropped for falling behind.",
+                getDroppedSpectators());
+
+        long[] counts = moveTimeSample();
+        String name = "connect4_move_time_seconds";
+        sb.append("# HELP ").append(name).append(" Time from reading a move to writing the reply.\n");
+        sb.append("# TYPE ").append(name).append(" summary\n");
+        double[] quantiles = {0.5, 0.99, 0.999, 1};
+        for (double q : quantiles) {
+            long nanos = q == 1 ? Connect4Histogram.max(counts)
+                    : Connect4Histogram.valueAtPercentile(counts, q * 100);
+            sb.append(name).append("{quantile=\"").append(q).append("\"} ")
+                    .append(format(nanos / 1e9)).append('\n');
+        }
+        sb.append(name).append("_sum ").append(format(moveNanos.sum() / 1e9)).append('\n');
+        sb.append(name).append("_count ").append(getMoves()).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Appends one metric with its help and type lines.
+     * @param pSb destination.
+     * @param pName metric name.
+     * @param pType counter or gauge.
+     * @param pHelp description.
+     * @param pValue value.
+     */
+    private static void metric(StringBuilder pSb, String pName, String pType, String pHelp, double pValue) {
+        pSb.append("# HELP ").append(pName).append(' ').append(pHelp).append('\n');
+        pSb.append("# TYPE ").append(pName).append(' ').append(pType).append('\n');
+        pSb.append(pName).append(' ').append(format(pValue)).append('\n');
+    }
+
+    /**
+     * Formats a value without exponent for integers.
+     * @param pValue value.
+     * @return String text.
+     */
+    private static String format(double pValue) {
+        if (pValue == Math.rint(pValue) && Math.abs(pValue) < 1e15) {
+            return Long.toString((long) pValue);
+        }
+        return String.format(Locale.ROOT, "%.6g", pValue);
+    }
+}
@@ -0,0 +1,97 @@
+package core;
+
+/**
+ * This is the JMX management interface of Connect4ServerMetrics.
+ * <p>
+ * Counters are totals since the server started.  Rates and move time
+ * percentiles cover the last sampling interval of about one second.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public interface Connect4ServerMetricsMBean {
+
+    /**
+     * Accessor returns the number of sessions in progress.
+     * @return long active sessions.
+     */
+    long getActiveSessions();
+
+    /**
+     * Accessor returns the number of sessions started.
+     * @return long sessions started.
+     */
+    long getSessionsStarted();
+
+    /**
+     * Accessor returns the recent rate of new sessions.
+     * @return double sessions per second.
+     */
+    double getSessionsPerSecond();
+
+    /**
+     * Accessor returns the number of moves played.
+     * @return long moves.
+     */
+    long getMoves();
+
+    /**
+     * Accessor returns the recent rate of moves.
+     * @return double moves per second.
+     */
+    double getMovesPerSecond();
+
+    /**
+     * Accessor returns the number of invalid moves received.
+     * @return long invalid moves.
+     */
+    long getInvalidMoves();
+
+    /**
+     * Accessor returns the number of sessions ended by a lost connection.
+     * @return long disconnects.
+     */
+    long getDisconnects();
+
+    /**
+     * Accessor returns the number of reads delayed by input rate limiting.
+     * @return long throttled reads.
+     */
+    long getThrottledReads();
+
+    /**
+     * Accessor returns the number of spectators watching.
+     * @return long spectators.
+     */
+    long getSpectators();
+
+    /**
+     * Accessor returns the number of spectators dropped for falling behind.
+     * @return long dropped spectators.
+     */
+    long getDroppedSpectators();
+
+    /**
+     * Accessor returns the recent median server move time.
+     * @return double microseconds.
+     */
+    double getMoveTimeP50Micros();
+
+    /**
+     * Accessor returns the recent 99th percentile server move time.
+     * @return double microseconds.
+     */
+    double getMoveTimeP99Micros();
+
+    /**
+     * Accessor returns the recent 99.9th percentile server move time.
+     * @return double microseconds.
+     */
+    double getMoveTimeP999Micros();
+
+    /**
+     * Accessor returns the recent maximum server move time.
+     * @return double microseconds.
+     */
+    double getMoveTimeMaxMicros();
+}
@@ -0,0 +1,243 @@
+package core;
+
+/**
+ * This class holds the limits the server applies to game sessions.
+ * <p>
+ * Like Connect4EngineConfig, the settings can be written as a comma
+ * separated list, for example <code>idle=60,clock=300+5</code>; the server
+ * reads them from the system property <code>connect4.session</code>.
+ * <ul>
+ * <li>idle - seconds a player may send nothing at all, heartbeats included,
+ *     before the session is closed; 0 for no limit
+ * <li>clock - Fischer game clock as "base+increment" in seconds, each player
+ *     starting with base and gaining increment after every move; "off" for
+ *     no clock
+ * <li>retries - invalid moves a player may send in a game; one more forfeits
+ * <li>rate - messages per second a connection may send on average, moves
+ *     and heartbeats alike; faster input is read late, 0 for no limit
+ * <li>burst - messages a connection may send at once above the rate
+ * <li>variant - board and tokens in a row of games between players, as
+ *     read by Connect4Variant.parse(), e.g. 6x7x5 for Connect-5; the
+ *     players' clients must draw the same board (default 6x7x4).  Games
+ *     against the computer are always standard
+ * <li>rules - rule set of games between players, as read by
+ *     Connect4Rules.parse(): classic, five or popout (default classic).
+ *     The rules are played on the variant; "five" also sets the variant to
+ *     6x9x5 unless a variant is set after it.  In popout a player pops a
+ *     token by sending columns + column
+ * </ul>
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4SessionConfig {
+
+    /**
+     * Default idle limit in seconds.
+     */
+    public static final long DEFAULT_IDLE_SECONDS = 120;
+    /**
+     * Default number of invalid moves allowed per player and game.
+     */
+    public static final int DEFAULT_RETRIES = 3;
+    /**
+     * Default average input rate per connection, in messages per second.
+     */
+    public static final double DEFAULT_RATE = 20;
+    /**
+     * Default number of messages a connection may send at once.
+     */
+    public static final int DEFAULT_BURST = 40;
+
+    /**
+     * Idle limit in milliseconds, 0 for none.
+     */
+    private long idleMillis = DEFAULT_IDLE_SECONDS * 1000;
+    /**
+     * Starting time on each clock in milliseconds, 0 for no clock.
+     */
+    private long clockBaseMillis;
+    /**
+     * Time added to a clock after each move in milliseconds.
+     */
+    private long clockIncrementMillis;
+    /**
+     * Invalid moves allowed per player and game.
+     */
+    private int retries = DEFAULT_RETRIES;
+    /**
+     * Average input rate per connection in messages per second, 0 for none.
+     */
+    private double rate = DEFAULT_RATE;
+    /**
+     * Messages a connection may send at once.
+     */
+    private int burst = DEFAULT_BURST;
+    /**
+     * Board and tokens in a row of games between players.
+     */
+    private Connect4Variant variant = Connect4Variant.STANDARD;
+    /**
+     * Name of the rule set of games between players.
+     */
+    private String rules = "classic";
+
+    /**
+     * Builds a configuration from a comma separated list of settings.
+     * @param pSpec settings such as "idle=60,clock=300+5"; may be empty.
+     * @return Connect4SessionConfig parsed configuration.
+     * @throws IllegalArgumentException if a setting is unknown or malformed.
+     */
+    public static Connect4SessionConfig parse(String pSpec) {
+        Connect4SessionConfig config = new Connect4SessionConfig();
+        for (String setting : pSpec.split(",")) {
+            if (setting.trim().isEmpty()) {
+                continue;
+            }
+            String[] pair = setting.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected key=value: " + setting);
+            }
+            config.set(pair[0].trim(), pair[1].trim());
+        }
+        return config;
+    }
+
+    /**
+     * Changes one setting by name.
+     * @param pKey setting name.
+     * @param pValue setting value.
+     * @throws IllegalArgumentException if the setting is unknown or malformed.
+     */
+    public void set(String pKey, String pValue) {
+        try {
+            switch (pKey) {
+                case "idle":
+                    idleMillis = Math.max(0, (long) (Double.parseDouble(pValue) * 1000));
+                    break;
+                case "clock":
+                    if (pValue.equals("off")) {
+                        clockBaseMillis = 0;
+                        clockIncrementMillis = 0;
+                    } else {
+                        String[] parts = pValue.split("\\+", 2);
+                        clockBaseMillis = (long) (Double.parseDouble(parts[0]) * 1000);
+                        clockIncrementMillis = parts.length > 1
+                                ? (long) (Double.parseDouble(parts[1]) * 1000) : 0;
+                        if (clockBaseMillis <= 0 || clockIncrementMillis < 0) {
+                            throw new IllegalArgumentException("Bad value for clock: " + pValue);
+                        }
+                    }
+                    break;
+                case "retries":
+                    retries = Math.max(0, Integer.parseInt(pValue));
+                    break;
+                case "rate":
+                    rate = Math.max(0, Double.parseDouble(pValue));
+                    break;
+                case "burst":
+                    burst = Math.max(1, Integer.parseInt(pValue));
+                    break;
+                case "variant":
+                    variant = Connect4Variant.parse(pValue);
+                    break;
+                case "rules":
+                    Connect4Rules parsed = Connect4Rules.parse(pValue);
+                    rules = parsed.getName();
+                    if (pValue.indexOf(':') >= 0 || rules.equals("five")) {
+                        variant = parsed.getVariant();
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown session setting: " + pKey);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad value for " + pKey + ": " + pValue, e);
+        }
+    }
+
+    /**
+     * Makes the game clock of a new session.
+     * @return Connect4GameClock clock, or null if games are not timed.
+     */
+    public Connect4GameClock newClock() {
+        return clockBaseMillis > 0 ? new Connect4GameClock(clockBaseMillis, clockIncrementMillis) : null;
+    }
+
+    /**
+     * Accessor returns the idle limit.
+     * @return long milliseconds, 0 for none.
+     */
+    public long getIdleMillis() {
+        return idleMillis;
+    }
+
+    /**
+     * Accessor returns the starting time of the clocks.
+     * @return long milliseconds, 0 for no clock.
+     */
+    public long getClockBaseMillis() {
+        return clockBaseMillis;
+    }
+
+    /**
+     * Accessor returns the clock increment.
+     * @return long milliseconds.
+     */
+    public long getClockIncrementMillis() {
+        return clockIncrementMillis;
+    }
+
+    /**
+     * Accessor returns the invalid moves allowed per player and game.
+     * @return int retries.
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Accessor returns the average input rate allowed per connection.
+     * @return double messages per second, 0 for no limit.
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Accessor returns the messages a connection may send at once.
+     * @return int burst.
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Accessor returns the board and tokens in a row of games between players.
+     * @return Connect4Variant variant.
+     */
+    public Connect4Variant getVariant() {
+        return variant;
+    }
+
+    /**
+     * Accessor returns the rule set of games between players, played on
+     * the variant.
+     * @return Connect4Rules rules.
+     */
+    public Connect4Rules getRules() {
+        return Connect4Rules.parse(rules + ":" + variant);
+    }
+
+    /**
+     * Describes the configuration.
+     * @return String settings.
+     */
+    @Override
+    public String toString() {
+        return "idle=" + idleMillis / 1000.0 + ",clock="
+                + (clockBaseMillis > 0 ? clockBaseMillis / 1000.0 + "+" + clockIncrementMillis / 1000.0 : "off")
+                + ",retries=" + retries + ",rate=" + rate + ",burst=" + burst + ",rules=" + rules
+                + ",variant=" + variant;
+    }
+}
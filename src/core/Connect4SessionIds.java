@@ -0,0 +1,50 @@
+package core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class hands out the session ids of a server.
+ * <p>
+ * A session id ties the events, the journal and the spectators of one game
+ * together.  The ids of a server started with the system property
+ * <code>connect4.shard</code> set to n start at n &lt;&lt; SHARD_SHIFT, so
+ * Connect4Router can tell which shard owns a session from its id alone.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public final class Connect4SessionIds {
+
+    /**
+     * Bits below the shard number in a session id.
+     */
+    public static final int SHARD_SHIFT = 40;
+    /**
+     * Last session id handed out.
+     */
+    private static final AtomicLong SESSION_IDS =
+            new AtomicLong(Long.getLong("connect4.shard", 0) << SHARD_SHIFT);
+
+    /**
+     * Not instantiated; the methods are static.
+     */
+    private Connect4SessionIds() {
+    }
+
+    /**
+     * Hands out a new session id.
+     * @return long new id.
+     */
+    public static long next() {
+        return SESSION_IDS.incrementAndGet();
+    }
+
+    /**
+     * Tells which shard handed out a session id.
+     * @param pSession session id.
+     * @return int shard number, 0 for an unsharded server.
+     */
+    public static int shardOf(long pSession) {
+        return (int) (pSession >>> SHARD_SHIFT);
+    }
+}
@@ -0,0 +1,434 @@
+package core;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class lets spectators watch the games hosted by Connect4Server.
+ * <p>
+ * A spectator connects, sends the id of a game as a <code>long</code> (0 for
+ * the game started last) and receives the id back, or 0 if there is no such
+ * game, followed by every move already played and then each move as it is
+ * played.  A move is three ints, the same message the opponent receives:
+ * status, row and column.  The status is PROCEED while the game goes on and
+ * P1_WIN, P2_WIN or DRAW for the last move; row and column are -1 when a
+ * player forfeits.  Red moves first and the players alternate.  The
+ * connection is closed after the last move.
+ * <p>
+ * A move is encoded once by the session and shared, read only, by every
+ * spectator.  The session thread only hands it to the fan-out thread, which
+ * appends it to the bounded queue of each spectator, so the players never
+ * wait for a spectator however many there are.  A small pool of writer
+ * threads drains the queues, sending everything queued for a spectator in a
+ * single write.  A spectator whose queue is full, or whose write blocks for
+ * longer than the write timeout, is dropped rather than slowing anyone else.
+ * The game id of a new spectator is read on a thread of its own, so clients
+ * that connect and stay silent never hold up the writers.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4SpectatorHub implements Connect4Constants {
+
+    /**
+     * Default number of messages queued per spectator.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 64;
+    /**
+     * Default number of writer threads.
+     */
+    public static final int DEFAULT_WRITERS = 4;
+    /**
+     * Default time a write to a spectator may block, in milliseconds.
+     */
+    public static final long DEFAULT_WRITE_TIMEOUT_MILLIS = 2000;
+    /**
+     * Time a spectator has to send the game id, in milliseconds.
+     */
+    private static final int HELLO_TIMEOUT_MILLIS = 5000;
+    /**
+     * Marker queued after the last move of a game.
+     */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /**
+     * The moves of one game, as seen by its spectators.
+     */
+    public final class Game {
+        /** Id of the game. */
+        private final long id;
+        /** Moves played so far, replayed to spectators joining late. */
+        private final List<ByteBuffer> history = new ArrayList<>(ROW * COL + 1);
+        /** Spectators watching. */
+        private final List<Spectator> spectators = new ArrayList<>();
+        /** Whether the last move was delivered. */
+        private boolean over;
+
+        /**
+         * Constructor for a game.
+         * @param pId id of the game.
+         */
+        private Game(long pId) {
+            this.id = pId;
+        }
+
+        /**
+         * Sends a move to the spectators.  The message is shared, so the
+         * caller must not change it afterwards.  Does nothing once the hub
+         * is shut down.
+         * @param pMessage status, row and column of the move, encoded.
+         */
+        public void publish(byte[] pMessage) {
+            ByteBuffer message = ByteBuffer.wrap(pMessage).asReadOnlyBuffer();
+            fanOut(() -> deliver(message));
+        }
+
+        /**
+         * Ends the game: spectators are disconnected once they have been
+         * sent every move.  Does nothing but forget the game once the hub
+         * is shut down.
+         */
+        public void close() {
+            games.remove(id, this);
+            fanOut(() -> deliver(END));
+        }
+
+        /**
+         * Fan-out thread: queues a message for every spectator, dropping
+         * those that cannot keep up.
+         * @param pMessage message, or END.
+         */
+        private synchronized void deliver(ByteBuffer pMessage) {
+            if (pMessage == END) {
+                over = true;
+            } else {
+                history.add(pMessage);
+            }
+            for (Iterator<Spectator> it = spectators.iterator(); it.hasNext();) {
+                if (!it.next().offer(pMessage)) {
+                    it.remove();
+                }
+            }
+            if (over) {
+                spectators.clear();
+            }
+        }
+
+        /**
+         * Adds a spectator, who is first sent the moves already played.
+         * @param pSpectator spectator joining.
+         */
+        private synchronized void watch(Spectator pSpectator) {
+            metrics.spectatorJoined();
+            if (!pSpectator.offer(header(id))) {
+                return;
+            }
+            for (ByteBuffer message : history) {
+                if (!pSpectator.offer(message)) {
+                    return;
+                }
+            }
+            if (over) {
+                pSpectator.offer(END);
+            } else {
+                spectators.add(pSpectator);
+            }
+        }
+    }
+
+    /**
+     * One spectator's connection and outbound queue.
+     */
+    private final class Spectator implements Runnable {
+        /** Socket of the spectator. */
+        private final Socket socket;
+        /** Output stream of the spectator. */
+        private final OutputStream out;
+        /** Messages waiting to be written. */
+        private final ArrayBlockingQueue<ByteBuffer> queue;
+        /** Bytes of the messages written together. */
+        private final byte[] batch;
+        /** Whether a writer is draining the queue or about to. */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        /** Whether the connection was closed. */
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        /**
+         * Constructor for a spectator.
+         * @param pSocket socket of the spectator.
+         * @throws IOException if the output stream cannot be opened.
+         */
+        private Spectator(Socket pSocket) throws IOException {
+            this.socket = pSocket;
+            this.out = pSocket.getOutputStream();
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            this.batch = new byte[queueSize * Connect4Connection.MOVE_BYTES];
+        }
+
+        /**
+         * Queues a message without ever blocking.
+         * @param pMessage message, or END.
+         * @return <code>true</code> if the message was queued;
+         * <code>false</code> if the spectator is gone or was dropped.
+         */
+        private boolean offer(ByteBuffer pMessage) {
+            if (closed.get()) {
+                return false;
+            }
+            if (!queue.offer(pMessage)) {
+                close(true);
+                return false;
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                writers.execute(this);
+            }
+            return true;
+        }
+
+        /**
+         * Writer thread: sends everything queued in one write.
+         */
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    int length = 0;
+                    boolean end = false;
+                    ByteBuffer message;
+                    while (!end && (message = queue.poll()) != null) {
+                        if (message == END) {
+                            end = true;
+                        } else {
+                            int size = message.remaining();
+                            message.duplicate().get(batch, length, size);
+                            length += size;
+                        }
+                    }
+                    if (length > 0) {
+                        write(length);
+                    }
+                    if (end) {
+                        close(false);
+                        return;
+                    }
+                    scheduled.set(false);
+                    // a message queued after the last poll may have found the flag still set
+                    if (queue.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                close(true);
+            }
+        }
+
+        /**
+         * Writes the batch, closing the socket if the write blocks too long.
+         * @param pLength bytes to write.
+         * @throws IOException if the spectator is gone or too slow.
+         */
+        private void write(int pLength) throws IOException {
+            Connect4TimerWheel.Timeout timeout = timer.schedule(() -> close(true), writeTimeoutMillis);
+            try {
+                out.write(batch, 0, pLength);
+            } finally {
+                timeout.cancel();
+            }
+        }
+
+        /**
+         * Closes the connection once.
+         * @param pDropped <code>true</code> if the spectator could not keep up
+         *                 or was lost; <code>false</code> if the game ended.
+         */
+        private void close(boolean pDropped) {
+            if (closed.compareAndSet(false, true)) {
+                queue.clear();
+                Connect4Connection.closeQuietly(socket);
+                metrics.spectatorLeft(pDropped);
+            }
+        }
+    }
+
+    /**
+     * Games being played, by id.
+     */
+    private final ConcurrentHashMap<Long, Game> games = new ConcurrentHashMap<>();
+    /**
+     * Game started last.
+     */
+    private volatile Game latest;
+    /**
+     * Thread queueing the moves for the spectators, in order.
+     */
+    private final ExecutorService fanOut;
+    /**
+     * Threads writing to the spectators.
+     */
+    private final ExecutorService writers;
+    /**
+     * Threads reading the game id of new spectators, one per connection
+     * waiting for its id.
+     */
+    private final ExecutorService greeters;
+    /**
+     * Timer of the write timeouts.
+     */
+    private final Connect4TimerWheel timer;
+    /**
+     * Metrics to count the spectators in.
+     */
+    private final Connect4ServerMetrics metrics;
+    /**
+     * Messages queued per spectator.
+     */
+    private final int queueSize;
+    /**
+     * Time a write may block, in milliseconds.
+     */
+    private final long writeTimeoutMillis;
+
+    /**
+     * Constructor for a hub with the default queues and writers.
+     * @param pTimer timer of the write timeouts.
+     * @param pMetrics metrics to count the spectators in.
+     */
+    public Connect4SpectatorHub(Connect4TimerWheel pTimer, Connect4ServerMetrics pMetrics) {
+        this(pTimer, pMetrics, DEFAULT_WRITERS, DEFAULT_QUEUE_SIZE, DEFAULT_WRITE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructor for a hub.
+     * @param pTimer timer of the write timeouts.
+     * @param pMetrics metrics to count the spectators in.
+     * @param pWriters number of writer threads.
+     * @param pQueueSize messages queued per spectator before it is dropped.
+     * @param pWriteTimeoutMillis time a write may block before the spectator is dropped.
+     */
+    public Connect4SpectatorHub(Connect4TimerWheel pTimer, Connect4ServerMetrics pMetrics, int pWriters,
+                                int pQueueSize, long pWriteTimeoutMillis) {
+        if (pWriters <= 0 || pQueueSize <= ROW * COL + 2) {
+            throw new IllegalArgumentException("Writers must be positive and a queue must hold a game");
+        }
+        this.timer = pTimer;
+        this.metrics = pMetrics;
+        this.queueSize = pQueueSize;
+        this.writeTimeoutMillis = pWriteTimeoutMillis;
+        this.fanOut = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "Connect4-fanout");
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger threadNo = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(pWriters, r -> {
+            Thread t = new Thread(r, "Connect4-spectator-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.greeters = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "Connect4-spectator-hello");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Opens a game to spectators.
+     * @param pId id of the game.
+     * @return Game to publish the moves to.
+     */
+    public Game open(long pId) {
+        Game game = new Game(pId);
+        games.put(pId, game);
+        latest = game;
+        return game;
+    }
+
+    /**
+     * Takes a spectator's new connection; the game id is read on a thread
+     * of its own so a silent client holds up neither the caller nor the
+     * writers.
+     * @param pSocket connection of the spectator.
+     */
+    public void accept(Socket pSocket) {
+        greeters.execute(() -> join(pSocket));
+    }
+
+    /**
+     * Reads the game a spectator asks for and starts sending it.
+     * @param pSocket connection of the spectator.
+     */
+    private void join(Socket pSocket) {
+        try {
+            pSocket.setSoTimeout(HELLO_TIMEOUT_MILLIS);
+            long id = new DataInputStream(pSocket.getInputStream()).readLong();
+            pSocket.setSoTimeout(0);
+            pSocket.setTcpNoDelay(true);
+            Game game = id == 0 ? latest : games.get(id);
+            if (game == null) {
+                pSocket.getOutputStream().write(header(0).array());
+                Connect4Connection.closeQuietly(pSocket);
+                return;
+            }
+            game.watch(new Spectator(pSocket));
+        } catch (IOException e) {
+            Connect4Connection.closeQuietly(pSocket);
+        }
+    }
+
+    /**
+     * Hands a task to the fan-out thread, dropping it once the hub is shut
+     * down so a session that outlives the server's drain still ends
+     * cleanly.
+     * @param pTask task to run.
+     */
+    private void fanOut(Runnable pTask) {
+        try {
+            fanOut.execute(pTask);
+        } catch (RejectedExecutionException e) {
+            // shut down: nobody is left to send to
+        }
+    }
+
+    /**
+     * Encodes the game id sent first to a spectator.
+     * @param pId game id, 0 for none.
+     * @return ByteBuffer message.
+     */
+    private static ByteBuffer header(long pId) {
+        ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+        header.putLong(0, pId);
+        return header;
+    }
+
+    /**
+     * Accessor returns the number of games open to spectators.
+     * @return int games.
+     */
+    public int getGames() {
+        return games.size();
+    }
+
+    /**
+     * Stops the fan-out, writer and greeting threads; spectators are not
+     * told.
+     */
+    public void shutdown() {
+        fanOut.shutdownNow();
+        writers.shutdownNow();
+        greeters.shutdownNow();
+    }
+}
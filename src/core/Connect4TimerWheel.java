@@ -0,0 +1,308 @@
+package core;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * This is a hashed timer wheel that runs the timeouts of every server
+ * session on one thread.
+ * <p>
+ * The wheel is an array of buckets turning one bucket per tick.  A timeout is
+ * linked into the bucket its deadline falls in, with the number of full turns
+ * left before it is due, so scheduling and cancelling cost O(1) whatever the
+ * number of timeouts and an idle session costs one small object.  Deadlines
+ * are rounded up to the next tick.
+ * <p>
+ * Other threads never touch the buckets: new and cancelled timeouts are
+ * handed to the wheel thread through lock-free queues and applied at the next
+ * tick, and cancelled timeouts are unlinked at once so they do not linger
+ * until their deadline.  Tasks run on the wheel thread and must be short,
+ * such as closing a socket.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4TimerWheel {
+
+    /**
+     * Default tick length in milliseconds.
+     */
+    public static final long DEFAULT_TICK_MILLIS = 100;
+    /**
+     * Default number of buckets.
+     */
+    public static final int DEFAULT_BUCKETS = 512;
+
+    /**
+     * A scheduled task that can be cancelled.
+     */
+    public static final class Timeout {
+        /** State of a timeout waiting for its deadline. */
+        private static final int PENDING = 0;
+        /** State of a cancelled timeout. */
+        private static final int CANCELLED = 1;
+        /** State of a timeout whose task ran. */
+        private static final int EXPIRED = 2;
+        /** Updater of the state field. */
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        /** Wheel running the timeout. */
+        private final Connect4TimerWheel wheel;
+        /** Task to run. */
+        private final Runnable task;
+        /** Deadline as a System.nanoTime() value. */
+        private final long deadline;
+        /** PENDING, CANCELLED or EXPIRED. */
+        private volatile int state;
+        /** Full turns of the wheel left, used by the wheel thread only. */
+        private long rounds;
+        /** Bucket holding the timeout, -1 while not linked. */
+        private int bucket = -1;
+        /** Previous timeout of the bucket. */
+        private Timeout prev;
+        /** Next timeout of the bucket. */
+        private Timeout next;
+
+        /**
+         * Constructor for a timeout.
+         * @param pWheel wheel running the timeout.
+         * @param pTask task to run.
+         * @param pDeadline System.nanoTime() deadline.
+         */
+        private Timeout(Connect4TimerWheel pWheel, Runnable pTask, long pDeadline) {
+            this.wheel = pWheel;
+            this.task = pTask;
+            this.deadline = pDeadline;
+        }
+
+        /**
+         * Cancels the timeout.
+         * @return <code>true</code> if the task will not run;
+         * <code>false</code> if it already ran or is running.
+         */
+        public boolean cancel() {
+            int s = state;
+            if (s == CANCELLED) {
+                return true;
+            }
+            if (s != PENDING || !STATE.compareAndSet(this, PENDING, CANCELLED)) {
+                return state == CANCELLED;
+            }
+            wheel.pending.decrementAndGet();
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        /**
+         * Tells whether the task ran.
+         * @return <code>true</code> if the deadline passed and the task ran;
+         * <code>false</code> otherwise.
+         */
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+    }
+
+    /**
+     * Tick length in nanoseconds.
+     */
+    private final long tickNanos;
+    /**
+     * First timeout of each bucket.
+     */
+    private final Timeout[] buckets;
+    /**
+     * Mask selecting a bucket from a tick number.
+     */
+    private final int mask;
+    /**
+     * Timeouts scheduled since the last tick.
+     */
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+    /**
+     * Timeouts cancelled since the last tick.
+     */
+    private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    /**
+     * Number of timeouts neither cancelled nor expired.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+    /**
+     * Time of tick 0.
+     */
+    private final long startTime = System.nanoTime();
+    /**
+     * Thread turning the wheel.
+     */
+    private final Thread worker;
+    /**
+     * Flag telling the wheel thread to stop.
+     */
+    private volatile boolean running = true;
+    /**
+     * Next tick to process, used by the wheel thread only.
+     */
+    private long tick;
+
+    /**
+     * Constructor for a wheel with the default tick and size.
+     */
+    public Connect4TimerWheel() {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_BUCKETS);
+    }
+
+    /**
+     * Constructor for a wheel; its thread starts at once.
+     * @param pTickMillis tick length, the precision of the timeouts.
+     * @param pBuckets number of buckets, rounded up to a power of two.
+     */
+    public Connect4TimerWheel(long pTickMillis, int pBuckets) {
+        if (pTickMillis <= 0 || pBuckets <= 0) {
+            throw new IllegalArgumentException("Tick and bucket count must be positive");
+        }
+        int n = 1;
+        while (n < pBuckets) {
+            n <<= 1;
+        }
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(pTickMillis);
+        buckets = new Timeout[n];
+        mask = n - 1;
+        worker = new Thread(this::turn, "Connect4-timer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Schedules a task.
+     * @param pTask task to run on the wheel thread.
+     * @param pDelayMillis delay, rounded up to a whole tick.
+     * @return Timeout handle to cancel the task.
+     */
+    public Timeout schedule(Runnable pTask, long pDelayMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, pDelayMillis));
+        Timeout timeout = new Timeout(this, pTask, deadline);
+        pending.incrementAndGet();
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Accessor returns the number of timeouts waiting to run.
+     * @return int pending timeouts.
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the wheel thread; pending tasks never run.
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * Wheel thread body: waits for each tick and runs the bucket due.
+     */
+    private void turn() {
+        while (running) {
+            long wait = startTime + (tick + 1) * tickNanos - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            unlinkCancelled();
+            linkAdded();
+            expire((int) (tick & mask));
+            tick++;
+        }
+    }
+
+    /**
+     * Links the timeouts scheduled since the last tick into their buckets.
+     */
+    private void linkAdded() {
+        Timeout t;
+        while ((t = added.poll()) != null) {
+            if (t.state != Timeout.PENDING) {
+                continue;
+            }
+            // ticks are processed after they end, so round the deadline up
+            long due = Math.max(tick, (t.deadline - startTime + tickNanos - 1) / tickNanos - 1);
+            t.rounds = (due - tick) / buckets.length;
+            int index = (int) (due & mask);
+            t.bucket = index;
+            t.next = buckets[index];
+            if (t.next != null) {
+                t.next.prev = t;
+            }
+            buckets[index] = t;
+        }
+    }
+
+    /**
+     * Removes the cancelled timeouts from their buckets.
+     */
+    private void unlinkCancelled() {
+        Timeout t;
+        while ((t = cancelled.poll()) != null) {
+            unlink(t);
+        }
+    }
+
+    /**
+     * Runs the due timeouts of a bucket.
+     * @param pIndex bucket index.
+     */
+    private void expire(int pIndex) {
+        Timeout t = buckets[pIndex];
+        while (t != null) {
+            Timeout next = t.next;
+            if (t.rounds > 0) {
+                t.rounds--;
+            } else {
+                unlink(t);
+                if (Timeout.STATE.compareAndSet(t, Timeout.PENDING, Timeout.EXPIRED)) {
+                    pending.decrementAndGet();
+                    try {
+                        t.task.run();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            t = next;
+        }
+    }
+
+    /**
+     * Removes a timeout from its bucket, if linked.
+     * @param pTimeout timeout to remove.
+     */
+    private void unlink(Timeout pTimeout) {
+        if (pTimeout.bucket < 0) {
+            return;
+        }
+        if (pTimeout.prev != null) {
+            pTimeout.prev.next = pTimeout.next;
+        } else {
+            buckets[pTimeout.bucket] = pTimeout.next;
+        }
+        if (pTimeout.next != null) {
+            pTimeout.next.prev = pTimeout.prev;
+        }
+        pTimeout.prev = null;
+        pTimeout.next = null;
+        pTimeout.bucket = -1;
+    }
+}
@@ -0,0 +1,307 @@
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * This is the transposition table used by the computer player's search to
+ * remember positions it has already evaluated.
+ * <p>
+ * Every entry is packed into a single <code>long</code>: the upper 32 bits
+ * hold a check value taken from the mixed position key, the lower 32 bits
+ * hold the score, search depth, bound type and best column.  The table size is
+ * a power of two and entries are always replaced.
+ * <p>
+ * A table can be saved to a snapshot file and loaded back, so a restarted
+ * server or console starts with what the last run learned.  The file is a
+ * 64-byte header (magic, version, base 2 logarithm of the size, CRC-32 of
+ * the entries) followed by the entries exactly as they are in memory, in
+ * little-endian order.  Loading maps the file and copies the entries into
+ * the table in bulk, with no per-entry decoding, so it runs at the speed
+ * of the page cache.  A snapshot only loads into a table of its own size.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4TranspositionTable {
+
+    /**
+     * Bound type for a score that is exact.
+     */
+    static final int EXACT = 0;
+    /**
+     * Bound type for a score that is a lower bound (fail high).
+     */
+    static final int LOWER = 1;
+    /**
+     * Bound type for a score that is an upper bound (fail low).
+     */
+    static final int UPPER = 2;
+    /**
+     * Column value stored when an entry has no best move.
+     */
+    static final int NO_MOVE = 15;
+    /**
+     * Value returned by probe() when the position is not in the table.
+     */
+    static final int MISS = 0;
+    /**
+     * Default table size: 2^22 entries, 32 MB.
+     */
+    public static final int DEFAULT_LOG2_SIZE = 22;
+
+    /**
+     * Version of the snapshot file layout.
+     */
+    public static final int SNAPSHOT_VERSION = 1;
+
+    /**
+     * Bit marking an entry as used, so an empty slot never reads as a hit.
+     */
+    private static final int VALID = 1 << 31;
+    /**
+     * First word of a snapshot file, "C4TT".
+     */
+    private static final int MAGIC = 0x43345454;
+    /**
+     * Size of the snapshot header in bytes.
+     */
+    private static final int HEADER_BYTES = 64;
+    /**
+     * Entries mapped at a time, keeping every mapping under 2 GB.
+     */
+    private static final int CHUNK_ENTRIES = 1 << 26;
+
+    /**
+     * Packed table entries.
+     */
+    private final long[] entries;
+    /**
+     * Shift turning a mixed key into a table index.
+     */
+    private final int shift;
+
+    /**
+     * Constructor for a table with the default size.
+     */
+    public Connect4TranspositionTable() {
+        this(DEFAULT_LOG2_SIZE);
+    }
+
+    /**
+     * Constructor for a table holding 2^pLog2Size entries.
+     * @param pLog2Size base 2 logarithm of the number of entries.
+     */
+    public Connect4TranspositionTable(int pLog2Size) {
+        if (pLog2Size < 1 || pLog2Size > 30) {
+            throw new IllegalArgumentException("Table size out of range: 2^" + pLog2Size);
+        }
+        entries = new long[1 << pLog2Size];
+        shift = 64 - pLog2Size;
+    }
+
+    /**
+     * Accessor returns the number of entries in the table.
+     * @return int capacity.
+     */
+    public int capacity() {
+        return entries.length;
+    }
+
+    /**
+     * Empties the table.
+     */
+    public void clear() {
+        Arrays.fill(entries, 0L);
+    }
+
+    /**
+     * Writes the table to a snapshot file.  The snapshot is written next to
+     * the file and renamed over it, so a crash never leaves half a snapshot.
+     * Searches may keep running; each entry is copied whole, and the
+     * checksum is taken from the copy.
+     * @param pFile destination file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save(File pFile) throws IOException {
+        Path target = pFile.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (int first = 0; first < entries.length; first += CHUNK_ENTRIES) {
+                int count = Math.min(CHUNK_ENTRIES, entries.length - first);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE,
+                        HEADER_BYTES + 8L * first, 8L * count);
+                chunk.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().put(entries, first, count);
+                crc.update(chunk);
+                chunk.force();
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(SNAPSHOT_VERSION).putInt(64 - shift).putInt((int) crc.getValue());
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replaces the entries of the table with those of a snapshot file.
+     * Nothing may search the table while it loads.  If the checksum does
+     * not match, the table is left empty.
+     * @param pFile snapshot file written by save().
+     * @throws IOException if the file cannot be read, is not a snapshot of
+     * this version and size, or is corrupt.
+     */
+    public void load(File pFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(pFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    break;
+                }
+            }
+            header.flip();
+            if (header.limit() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException("Not a table snapshot: " + pFile);
+            }
+            int version = header.getInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + pFile);
+            }
+            int log2Size = header.getInt();
+            if (log2Size != 64 - shift) {
+                throw new IOException("Snapshot holds 2^" + log2Size + " entries, table 2^" + (64 - shift)
+                        + ": " + pFile);
+            }
+            int checksum = header.getInt();
+            if (channel.size() != HEADER_BYTES + 8L * entries.length) {
+                throw new IOException("Truncated table snapshot: " + pFile);
+            }
+            // the copy brings every page in, so the checksum reads them from memory
+            CRC32 crc = new CRC32();
+            for (int first = 0; first < entries.length; first += CHUNK_ENTRIES) {
+                int count = Math.min(CHUNK_ENTRIES, entries.length - first);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_BYTES + 8L * first, 8L * count);
+                chunk.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(entries, first, count);
+                crc.update(chunk);
+            }
+            if ((int) crc.getValue() != checksum) {
+                clear();
+                throw new IOException("Table snapshot checksum mismatch: " + pFile);
+            }
+        }
+    }
+
+    /**
+     * Counts the entries in use, e.g. to report how much a snapshot holds.
+     * @return int used entries.
+     */
+    public int used() {
+        int used = 0;
+        for (long entry : entries) {
+            if (entry != 0) {
+                used++;
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Looks up a position.
+     * @param pKey position key.
+     * @return int packed data, or MISS if the position is not stored.
+     */
+    int probe(long pKey) {
+        long h = mix(pKey);
+        long entry = entries[(int) (h >>> shift)];
+        if ((int) (entry >>> 32) != (int) h) {
+            return MISS;
+        }
+        return (int) entry;
+    }
+
+    /**
+     * Stores a position, replacing whatever was in its slot.
+     * @param pKey position key.
+     * @param pScore score of the position.
+     * @param pDepth depth the score was searched to.
+     * @param pFlag EXACT, LOWER or UPPER.
+     * @param pMove best column, or NO_MOVE.
+     */
+    void store(long pKey, int pScore, int pDepth, int pFlag, int pMove) {
+        long h = mix(pKey);
+        int data = VALID
+                | (pMove & 0xF) << 25
+                | (pFlag & 0x3) << 23
+                | Math.min(pDepth, 0x7F) << 16
+                | (pScore & 0xFFFF);
+        entries[(int) (h >>> shift)] = (h << 32) | (data & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Unpacks the score of an entry.
+     * @param pData packed data returned by probe().
+     * @return int score.
+     */
+    static int score(int pData) {
+        return (short) pData;
+    }
+
+    /**
+     * Unpacks the search depth of an entry.
+     * @param pData packed data returned by probe().
+     * @return int depth.
+     */
+    static int depth(int pData) {
+        return (pData >>> 16) & 0x7F;
+    }
+
+    /**
+     * Unpacks the bound type of an entry.
+     * @param pData packed data returned by probe().
+     * @return int EXACT, LOWER or UPPER.
+     */
+    static int flag(int pData) {
+        return (pData >>> 23) & 0x3;
+    }
+
+    /**
+     * Unpacks the best column of an entry.
+     * @param pData packed data returned by probe().
+     * @return int column, or NO_MOVE.
+     */
+    static int move(int pData) {
+        return (pData >>> 25) & 0xF;
+    }
+
+    /**
+     * Mixes the bits of a key so that both the index and the check value
+     * depend on the whole position.
+     * @param pKey position key.
+     * @return long mixed key.
+     */
+    private static long mix(long pKey) {
+        long h = pKey;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
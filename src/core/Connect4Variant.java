@@ -0,0 +1,355 @@
+package core;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * This class describes a board size and the number of tokens in a row
+ * needed to win, from standard Connect Four (6 rows, 7 columns, 4 in a row)
+ * to larger boards and Connect-5, and makes the boards to play them on.
+ * <p>
+ * Boards are bitboards laid out like Connect4Bitboard: each column takes
+ * rows + 1 bits, the playable cells from the bottom up and an empty
+ * sentinel bit on top.  When (rows + 1) x columns fits in 64 bits the board
+ * is a single <code>long</code> and every check is done with shifts, as on
+ * the standard board.  Larger boards pack as many whole columns as fit
+ * into each word of a <code>long[]</code>, so a move touches one word, and
+ * check wins with line masks precomputed here: every line of N cells, and
+ * for each cell the lines through it.
+ * <p>
+ * A variant is written "ROWSxCOLS" or "ROWSxCOLSxN", e.g. "6x7x4" for the
+ * standard game or "6x7x5" for Connect-5; N defaults to 4.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public final class Connect4Variant implements Connect4Constants {
+
+    /**
+     * Standard Connect Four.
+     */
+    public static final Connect4Variant STANDARD = new Connect4Variant(ROW, COL, 4);
+    /**
+     * Largest number of rows or columns.
+     */
+    public static final int MAX_SIZE = 32;
+
+    /**
+     * Number of rows.
+     */
+    private final int rows;
+    /**
+     * Number of columns.
+     */
+    private final int cols;
+    /**
+     * Tokens in a row needed to win.
+     */
+    private final int connect;
+    /**
+     * Bits per column: the rows plus a sentinel.
+     */
+    private final int height;
+    /**
+     * Whole columns per word.
+     */
+    private final int colsPerWord;
+    /**
+     * Words per bitboard.
+     */
+    private final int words;
+    /**
+     * Cells of every line of N, <code>words</code> longs per line.
+     */
+    private final long[] lineMasks;
+    /**
+     * First word of each line's mask that has cells of the line.
+     */
+    private final int[] lineFirstWord;
+    /**
+     * Last word of each line's mask that has cells of the line.
+     */
+    private final int[] lineLastWord;
+    /**
+     * Start in cellLines of the lines through each cell, indexed by
+     * col * rows + row, with one more entry at the end.
+     */
+    private final int[] cellLineStart;
+    /**
+     * Lines through each cell, as indexes of lines in lineMasks.
+     */
+    private final int[] cellLines;
+
+    /**
+     * Constructor for a variant.
+     * @param pRows number of rows.
+     * @param pCols number of columns.
+     * @param pConnect tokens in a row needed to win.
+     * @throws IllegalArgumentException if the board is too small or too
+     * large, or N does not fit on it.
+     */
+    public Connect4Variant(int pRows, int pCols, int pConnect) {
+        if (pRows < 1 || pCols < 1 || pRows > MAX_SIZE || pCols > MAX_SIZE) {
+            throw new IllegalArgumentException("Rows and columns must be from 1 to " + MAX_SIZE);
+        }
+        if (pConnect < 2 || pConnect > Math.max(pRows, pCols)) {
+            throw new IllegalArgumentException("Cannot connect " + pConnect + " on " + pRows + "x" + pCols);
+        }
+        this.rows = pRows;
+        this.cols = pCols;
+        this.connect = pConnect;
+        this.height = pRows + 1;
+        this.colsPerWord = 64 / height;
+        this.words = (pCols + colsPerWord - 1) / colsPerWord;
+
+        // every line of N: vertical, horizontal and both diagonals
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+        int lineCount = 0;
+        int[] linesPerCell = new int[rows * cols];
+        long[] masks = new long[4 * rows * cols * words];
+        for (int[] d : directions) {
+            for (int col = 0; col < cols; col++) {
+                for (int row = 0; row < rows; row++) {
+                    int endCol = col + d[0] * (connect - 1);
+                    int endRow = row + d[1] * (connect - 1);
+                    if (endCol >= cols || endRow < 0 || endRow >= rows) {
+                        continue;
+                    }
+                    for (int k = 0; k < connect; k++) {
+                        int c = col + d[0] * k;
+                        int r = row + d[1] * k;
+                        masks[lineCount * words + word(c)] |= bit(c, r);
+                        linesPerCell[c * rows + r]++;
+                    }
+                    lineCount++;
+                }
+            }
+        }
+        this.lineMasks = Arrays.copyOf(masks, lineCount * words);
+        this.lineFirstWord = new int[lineCount];
+        this.lineLastWord = new int[lineCount];
+        for (int line = 0; line < lineCount; line++) {
+            int first = words;
+            for (int w = words - 1; w >= 0; w--) {
+                if (lineMasks[line * words + w] != 0) {
+                    first = w;
+                    lineLastWord[line] = Math.max(lineLastWord[line], w);
+                }
+            }
+            lineFirstWord[line] = first;
+        }
+        this.cellLineStart = new int[rows * cols + 1];
+        for (int cell = 0; cell < rows * cols; cell++) {
+            cellLineStart[cell + 1] = cellLineStart[cell] + linesPerCell[cell];
+        }
+        this.cellLines = new int[cellLineStart[rows * cols]];
+        int[] filled = new int[rows * cols];
+        for (int line = 0; line < lineCount; line++) {
+            for (int col = 0; col < cols; col++) {
+                for (int row = 0; row < rows; row++) {
+                    if ((lineMasks[line * words + word(col)] & bit(col, row)) != 0) {
+                        int cell = col * rows + row;
+                        cellLines[cellLineStart[cell] + filled[cell]++] = line;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a variant written "ROWSxCOLS" or "ROWSxCOLSxN".
+     * @param pSpec variant, e.g. "6x7x4".
+     * @return Connect4Variant variant; STANDARD for "6x7x4".
+     * @throws IllegalArgumentException if the variant is malformed or
+     * unplayable.
+     */
+    public static Connect4Variant parse(String pSpec) {
+        String[] parts = pSpec.trim().toLowerCase(Locale.ROOT).split("x");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("Expected ROWSxCOLS or ROWSxCOLSxN: " + pSpec);
+        }
+        try {
+            int rows = Integer.parseInt(parts[0]);
+            int cols = Integer.parseInt(parts[1]);
+            int connect = parts.length > 2 ? Integer.parseInt(parts[2]) : 4;
+            if (rows == ROW && cols == COL && connect == 4) {
+                return STANDARD;
+            }
+            return new Connect4Variant(rows, cols, connect);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad variant: " + pSpec, e);
+        }
+    }
+
+    /**
+     * Makes an empty board of this variant.
+     * @return Connect4NBoard single-word board if the board fits in 64
+     * bits; multi-word board otherwise.
+     */
+    public Connect4NBoard newBoard() {
+        return words == 1 ? new Connect4NBoard.Single(this) : new Connect4NBoard.Multi(this);
+    }
+
+    /**
+     * Accessor returns the number of rows.
+     * @return int rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Accessor returns the number of columns.
+     * @return int columns.
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Accessor returns the tokens in a row needed to win.
+     * @return int N.
+     */
+    public int getConnect() {
+        return connect;
+    }
+
+    /**
+     * Accessor returns the number of cells.
+     * @return int rows x columns.
+     */
+    public int getCells() {
+        return rows * cols;
+    }
+
+    /**
+     * Accessor returns the bits per column, the rows plus a sentinel.
+     * @return int bits.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Accessor returns the number of words of a bitboard.
+     * @return int words, 1 if the board fits in a <code>long</code>.
+     */
+    public int getWords() {
+        return words;
+    }
+
+    /**
+     * Word of a bitboard holding a column.
+     * @param pCol column.
+     * @return int word.
+     */
+    public int word(int pCol) {
+        return pCol / colsPerWord;
+    }
+
+    /**
+     * Bit of a cell within its column's word.
+     * @param pCol column.
+     * @param pRow row, 0 at the bottom.
+     * @return long bit.
+     */
+    public long bit(int pCol, int pRow) {
+        return 1L << ((pCol % colsPerWord) * height + pRow);
+    }
+
+    /**
+     * Accessor returns the number of lines of N on the board.
+     * @return int lines.
+     */
+    public int getLineCount() {
+        return lineMasks.length / words;
+    }
+
+    /**
+     * Word of a line's mask.
+     * @param pLine line, from 0 to getLineCount() - 1.
+     * @param pWord word of the bitboard.
+     * @return long cells of the line in that word.
+     */
+    public long lineMask(int pLine, int pWord) {
+        return lineMasks[pLine * words + pWord];
+    }
+
+    /**
+     * Accessor returns the line masks, <code>getWords()</code> longs per
+     * line.  The array is shared and must not be changed.
+     * @return long[] line masks.
+     */
+    long[] lineMasks() {
+        return lineMasks;
+    }
+
+    /**
+     * Accessor returns the first word holding cells of each line.  Shared,
+     * not to be changed.
+     * @return int[] words.
+     */
+    int[] lineFirstWord() {
+        return lineFirstWord;
+    }
+
+    /**
+     * Accessor returns the last word holding cells of each line.  Shared,
+     * not to be changed.
+     * @return int[] words.
+     */
+    int[] lineLastWord() {
+        return lineLastWord;
+    }
+
+    /**
+     * Accessor returns where the lines through each cell start in
+     * cellLines(), indexed by col * rows + row.  Shared, not to be changed.
+     * @return int[] starts, one more than the cells.
+     */
+    int[] cellLineStart() {
+        return cellLineStart;
+    }
+
+    /**
+     * Accessor returns the lines through each cell.  Shared, not to be
+     * changed.
+     * @return int[] line indexes.
+     */
+    int[] cellLines() {
+        return cellLines;
+    }
+
+    /**
+     * Boolean to check if two variants are the same game.
+     * @param pOther object to compare with.
+     * @return <code>true</code> if rows, columns and N are equal;
+     * <code>false</code> otherwise.
+     */
+    @Override
+    public boolean equals(Object pOther) {
+        if (!(pOther instanceof Connect4Variant)) {
+            return false;
+        }
+        Connect4Variant other = (Connect4Variant) pOther;
+        return rows == other.rows && cols == other.cols && connect == other.connect;
+    }
+
+    /**
+     * Hash code of the variant.
+     * @return int hash.
+     */
+    @Override
+    public int hashCode() {
+        return (rows * 64 + cols) * 64 + connect;
+    }
+
+    /**
+     * Writes the variant as "ROWSxCOLSxN".
+     * @return String variant.
+     */
+    @Override
+    public String toString() {
+        return rows + "x" + cols + "x" + connect;
+    }
+}
@@ -0,0 +1,1035 @@
+package test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import core.Connect4;
+import core.Connect4Bitboard;
+import core.Connect4Constants;
+import core.Connect4Difficulty;
+import core.Connect4Evaluator;
+import core.Connect4MonteCarlo;
+import core.Connect4NBoard;
+import core.Connect4Rules;
+import core.Connect4RulesSearch;
+import core.Connect4Search;
+import core.Connect4TranspositionTable;
+import core.Connect4Variant;
+
+/**
+ * Microbenchmarks for the hot paths of the game: move handling and win checks
+ * in Connect4, the server's HandleASession and the GUI, and the computer
+ * player's search.
+ * <p>
+ * The harness follows JMH conventions without needing the JMH jars: every
+ * benchmark runs in its own forked JVM, with warmup iterations followed by
+ * timed measurement iterations, and reports throughput with a 99.9%
+ * confidence interval.  Inputs come from fixed seeds so runs are reproducible,
+ * and results can be exported as JSON in JMH's layout so each commit's numbers
+ * can be compared with the last.
+ * <p>
+ * Private methods of the server and GUI are reached through method handles
+ * resolved once per benchmark.  GUI benchmarks are skipped when JavaFX is not
+ * on the class path.
+ * <p>
+ * Usage: <code>Connect4Benchmark [-wi N] [-i N] [-t MS] [-f N] [-rf FILE]
+ * [-label TEXT] [REGEX]</code>
+ * <ul>
+ * <li>-wi warmup iterations (default 5)
+ * <li>-i measurement iterations (default 5)
+ * <li>-t time per iteration in milliseconds (default 1000)
+ * <li>-f forked JVMs per benchmark, 0 to run in this JVM (default 1)
+ * <li>-rf JSON result file
+ * <li>-label text stored in the JSON, e.g. a commit id
+ * <li>REGEX only runs benchmarks whose name matches
+ * </ul>
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4Benchmark implements Connect4Constants {
+
+    /**
+     * Seed of every generated input.
+     */
+    static final long SEED = 20191119L;
+    /**
+     * Search depth of the engine benchmark.
+     */
+    static final int SEARCH_DEPTH = 10;
+    /**
+     * Random games played by each playout benchmark.
+     */
+    static final int PLAYOUT_GAMES = 64;
+    /**
+     * Variants compared by the playout benchmarks: the standard board, then
+     * Connect-5 on it, then the multi-word 8x8 and 9x7 boards.
+     */
+    static final String[] PLAYOUT_VARIANTS = {"6x7x4", "6x7x5", "8x8x4", "7x9x4"};
+    /**
+     * Rule sets compared by the rule playout and search benchmarks.
+     */
+    static final String[] PLAYOUT_RULES = {"classic", "five", "popout"};
+    /**
+     * Search depth of the rule set search benchmarks.
+     */
+    static final int RULES_SEARCH_DEPTH = 8;
+    /**
+     * Playouts of one Monte Carlo search benchmark call.
+     */
+    static final int MCTS_PLAYOUTS = 20000;
+    /**
+     * Base 2 logarithm of the entries of the table snapshot benchmark, 64 MB.
+     */
+    static final int SNAPSHOT_LOG2_SIZE = 23;
+    /**
+     * Positions scored by one call of the evaluation benchmark.
+     */
+    static final int EVAL_POSITIONS = 256;
+    /**
+     * Prefix of the line a forked JVM prints its scores on.
+     */
+    private static final String RESULT_PREFIX = "#result ";
+
+    /**
+     * One benchmarked operation.  A call performs a batch of operations and
+     * returns a value that must be consumed so the JIT cannot drop the work.
+     */
+    interface Op {
+        /**
+         * Runs a batch of operations.
+         * @return long value to consume.
+         */
+        long run() throws Throwable;
+    }
+
+    /**
+     * A named benchmark: how to build its operation and how many operations
+     * one call of it performs.
+     */
+    static final class Bench {
+        /** Benchmark name. */
+        final String name;
+        /** Operations performed by one call. */
+        final int batch;
+        /** Builds the operation; may throw if a dependency is missing. */
+        final OpFactory factory;
+
+        /**
+         * Constructor for a benchmark.
+         * @param pName benchmark name.
+         * @param pBatch operations per call.
+         * @param pFactory builder of the operation.
+         */
+        Bench(String pName, int pBatch, OpFactory pFactory) {
+            this.name = pName;
+            this.batch = pBatch;
+            this.factory = pFactory;
+        }
+    }
+
+    /**
+     * Builds an operation and its inputs.
+     */
+    interface OpFactory {
+        /**
+         * Builds the operation.
+         * @param pSecondary map the operation may fill with extra metrics.
+         * @return Op operation.
+         */
+        Op create(Map<String, double[]> pSecondary) throws Exception;
+    }
+
+    /**
+     * Consumed values, published so the JIT keeps the benchmarked work.
+     */
+    static volatile long sink;
+
+    /**
+     * Warmup iterations.
+     */
+    private int warmups = 5;
+    /**
+     * Measurement iterations.
+     */
+    private int iterations = 5;
+    /**
+     * Time per iteration in milliseconds.
+     */
+    private long iterationMillis = 1000;
+    /**
+     * Forked JVMs per benchmark.
+     */
+    private int forks = 1;
+
+    /**
+     * Lists every benchmark.
+     * @return List of benchmarks.
+     */
+    static List<Bench> benchmarks() {
+        List<Bench> list = new ArrayList<>();
+        list.add(new Bench("Connect4.dropToken", ROW * COL, s -> dropToken()));
+        list.add(new Bench("Connect4.validateMove", COL, s -> validateMove()));
+        list.add(new Bench("Connect4.checkWinner", 1, s -> checkWinner()));
+        list.add(new Bench("HandleASession.status", 1, s -> sessionStatus()));
+        list.add(new Bench("Connect4_GUI.gameWinner", 1, s -> guiWinner()));
+        list.add(new Bench("Connect4Search.bestMove", 1, Connect4Benchmark::search));
+        for (Connect4Difficulty level : Connect4Difficulty.values()) {
+            // expert has no node budget and is only limited by the clock
+            if (level.getMaxNodes() > 0) {
+                list.add(new Bench("Connect4Search.bestMove." + level, 1, s -> levelSearch(level, s)));
+            }
+        }
+        list.add(new Bench("Connect4TranspositionTable.load", 1, Connect4Benchmark::tableLoad));
+        list.add(new Bench("Connect4Evaluator.evaluate", EVAL_POSITIONS, s -> evaluate()));
+        int[][] standard = randomGames(Connect4Variant.STANDARD);
+        list.add(new Bench("Connect4Bitboard.playout", moveCount(standard), s -> bitboardPlayout(standard)));
+        for (String spec : PLAYOUT_VARIANTS) {
+            Connect4Variant variant = Connect4Variant.parse(spec);
+            int[][] games = randomGames(variant);
+            list.add(new Bench("Connect4NBoard.playout." + spec, moveCount(games),
+                    s -> variantPlayout(variant, games)));
+        }
+        for (String spec : PLAYOUT_RULES) {
+            Connect4Rules rules = Connect4Rules.parse(spec);
+            int[][] games = randomGames(rules);
+            list.add(new Bench("Connect4Rules.playout." + spec, moveCount(games),
+                    s -> rulesPlayout(rules, games)));
+        }
+        for (String spec : PLAYOUT_RULES) {
+            list.add(new Bench("Connect4RulesSearch.bestMove." + spec, 1,
+                    s -> rulesSearch(Connect4Rules.parse(spec), s)));
+        }
+        for (String spec : PLAYOUT_RULES) {
+            list.add(new Bench("Connect4MonteCarlo.bestMove." + spec, 1,
+                    s -> monteCarlo(Connect4Rules.parse(spec), s)));
+        }
+        return list;
+    }
+
+    /**
+     * Fills a board column by column with dropToken.
+     * @return Op one call fills a new board.
+     */
+    static Op dropToken() {
+        return () -> {
+            Connect4 game = new Connect4();
+            for (int col = 0; col < COL; col++) {
+                for (int row = 0; row < ROW; row++) {
+                    game.dropToken(game.getPlayerToken(), col);
+                }
+            }
+            return game.getTurnCount();
+        };
+    }
+
+    /**
+     * Validates every column of a mid-game board; no column is full, so
+     * nothing is printed.
+     * @return Op one call validates all columns.
+     */
+    static Op validateMove() {
+        Connect4 game = midGame();
+        return () -> {
+            long valid = 0;
+            for (int col = 0; col < COL; col++) {
+                if (game.validateMove(col)) {
+                    valid++;
+                }
+            }
+            return valid;
+        };
+    }
+
+    /**
+     * Checks a mid-game board without a winner, the slowest case.
+     * @return Op one call checks one player.
+     */
+    static Op checkWinner() {
+        Connect4 game = midGame();
+        String token = game.getPlayerToken();
+        return () -> {
+            game.checkWinner(token);
+            return game.getWinner() ? 1 : 0;
+        };
+    }
+
+    /**
+     * Calls the private status check of a server session holding the
+     * mid-game position, which the session runs after every move.
+     * @return Op one call checks the last move.
+     * @throws Exception if the session cannot be built.
+     */
+    static Op sessionStatus() throws Exception {
+        Class<?> type = Class.forName("core.Connect4Server$HandleASession");
+        Constructor<?> constructor = type.getDeclaredConstructor(
+                java.net.Socket.class, java.net.Socket.class);
+        constructor.setAccessible(true);
+        Object session = constructor.newInstance(null, null);
+
+        Method addRed = type.getDeclaredMethod("addRed", int.class);
+        Method addYellow = type.getDeclaredMethod("addYellow", int.class);
+        addRed.setAccessible(true);
+        addYellow.setAccessible(true);
+        int[] moves = midGameMoves();
+        for (int i = 0; i < moves.length; i++) {
+            (i % 2 == 0 ? addRed : addYellow).invoke(session, moves[i]);
+        }
+
+        Method m = type.getDeclaredMethod("status", int.class);
+        m.setAccessible(true);
+        MethodHandle status = MethodHandles.lookup().unreflect(m).bindTo(session);
+        final int last = moves[moves.length - 1];
+        return () -> (int) status.invoke(last);
+    }
+
+    /**
+     * Calls the GUI's private gameWinner on the mid-game position.
+     * @return Op one call checks around the last token.
+     * @throws Exception if JavaFX is missing or the GUI cannot be built.
+     */
+    static Op guiWinner() throws Exception {
+        Class<?> type = Class.forName("UI.Connect4_GUI");
+        Object gui = type.getDeclaredConstructor().newInstance();
+        Class<?> tokenType = Class.forName("UI.Connect4_GUI$Token");
+        Constructor<?> token = tokenType.getDeclaredConstructor(boolean.class);
+        token.setAccessible(true);
+
+        Field gridField = type.getDeclaredField("gridBoard");
+        gridField.setAccessible(true);
+        Object[][] grid = (Object[][]) gridField.get(gui);
+        int[] moves = midGameMoves();
+        int[] height = new int[COL];
+        int lastCol = 0;
+        int lastRow = 0;
+        for (int i = 0; i < moves.length; i++) {
+            lastCol = moves[i];
+            lastRow = ROW - 1 - height[lastCol]++;
+            grid[lastCol][lastRow] = token.newInstance(i % 2 == 1);
+        }
+
+        Method m = type.getDeclaredMethod("gameWinner", int.class, int.class);
+        m.setAccessible(true);
+        MethodHandle gameWinner = MethodHandles.lookup().unreflect(m).bindTo(gui);
+        final int col = lastCol;
+        final int row = lastRow;
+        return () -> ((boolean) gameWinner.invoke(col, row)) ? 1 : 0;
+    }
+
+    /**
+     * Searches a fixed set of positions to a fixed depth with a cleared
+     * table, and records nodes per second and nodes per move, which shows
+     * how well the moves are ordered.
+     * @param pSecondary map receiving the nodes/s and nodes/move metrics.
+     * @return Op one call searches one position.
+     */
+    static Op search(Map<String, double[]> pSecondary) {
+        final Connect4Bitboard[] positions = positionSet(8, 8, 16);
+        final Connect4Search search = new Connect4Search(new Connect4TranspositionTable(20));
+        search.setMaxDepth(SEARCH_DEPTH);
+        // nodes and nanoseconds, summed over the iteration
+        final double[] counters = new double[2];
+        pSecondary.put("nodes/s", counters);
+        final double[] perMove = new double[2];
+        pSecondary.put("nodes/move", perMove);
+        final int[] next = {0};
+        return () -> {
+            Connect4Bitboard position = positions[next[0]++ % positions.length];
+            search.getTable().clear();
+            long start = System.nanoTime();
+            int move = search.bestMove(position);
+            counters[1] += System.nanoTime() - start;
+            counters[0] += search.getNodes();
+            perMove[0] += search.getNodes();
+            perMove[1] += 1e9;
+            return move;
+        };
+    }
+
+    /**
+     * Searches the positions of the search benchmark at a level of play, with
+     * a cleared table, and records the nodes searched per move.  The table
+     * holds about twice the node budget, so clearing it costs no more than
+     * the search.
+     * @param pLevel depth, node budget and noise of the search.
+     * @param pSecondary map receiving the nodes/move metric.
+     * @return Op one call searches one position; an operation is one move.
+     */
+    static Op levelSearch(Connect4Difficulty pLevel, Map<String, double[]> pSecondary) {
+        final Connect4Bitboard[] positions = positionSet(8, 8, 16);
+        int log2Size = 65 - Long.numberOfLeadingZeros(pLevel.getMaxNodes());
+        final Connect4Search search = new Connect4Search(new Connect4TranspositionTable(log2Size));
+        pLevel.apply(search);
+        search.setSeed(SEED);
+        // metrics are a sum over a sum of nanoseconds; a second per move makes it a sum per move
+        final double[] counters = new double[2];
+        pSecondary.put("nodes/move", counters);
+        final int[] next = {0};
+        return () -> {
+            Connect4Bitboard position = positions[next[0]++ % positions.length];
+            search.getTable().clear();
+            int move = search.bestMove(position);
+            counters[0] += search.getNodes();
+            counters[1] += 1e9;
+            return move;
+        };
+    }
+
+    /**
+     * Loads a snapshot of a table filled by the search benchmark, and
+     * records the megabytes loaded per second.
+     * @param pSecondary map receiving the MB/s metric.
+     * @return Op one call loads the snapshot.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    static Op tableLoad(Map<String, double[]> pSecondary) throws IOException {
+        final Connect4TranspositionTable table = new Connect4TranspositionTable(SNAPSHOT_LOG2_SIZE);
+        Connect4Search search = new Connect4Search(table);
+        search.setMaxDepth(SEARCH_DEPTH);
+        for (Connect4Bitboard position : positionSet(8, 8, 16)) {
+            search.bestMove(position);
+        }
+        final File file = File.createTempFile("connect4-table", ".snapshot");
+        file.deleteOnExit();
+        table.save(file);
+        final double[] counters = new double[2];
+        pSecondary.put("MB/s", counters);
+        return () -> {
+            long start = System.nanoTime();
+            table.load(file);
+            counters[1] += System.nanoTime() - start;
+            counters[0] += file.length() / 1e6;
+            return table.capacity();
+        };
+    }
+
+    /**
+     * Scores a fixed set of undecided positions with the static evaluation.
+     * @return Op one call scores every position; an operation is one
+     *         evaluation.
+     */
+    static Op evaluate() {
+        Connect4Bitboard[] positions = positionSet(EVAL_POSITIONS, 4, 30);
+        long[] current = new long[positions.length];
+        long[] mask = new long[positions.length];
+        int[] moves = new int[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            current[i] = positions[i].getCurrent();
+            mask[i] = positions[i].getMask();
+            moves[i] = positions[i].getMoves();
+        }
+        return () -> {
+            long sum = 0;
+            for (int i = 0; i < current.length; i++) {
+                sum += Connect4Evaluator.evaluate(current[i], mask[i], moves[i]);
+            }
+            return sum;
+        };
+    }
+
+    /**
+     * Plays the random games on a Connect4Bitboard, checking for a win
+     * after every move, and takes every move back.
+     * @param pGames games of the standard variant.
+     * @return Op one call plays every game; an operation is one move.
+     */
+    static Op bitboardPlayout(int[][] pGames) {
+        Connect4Bitboard board = new Connect4Bitboard();
+        return () -> {
+            long wins = 0;
+            for (int[] game : pGames) {
+                for (int col : game) {
+                    board.play(col);
+                    if (board.lastMoveWon()) {
+                        wins++;
+                    }
+                }
+                for (int i = game.length - 1; i >= 0; i--) {
+                    board.undo(game[i]);
+                }
+            }
+            return wins;
+        };
+    }
+
+    /**
+     * Plays the random games on a board of a variant, as bitboardPlayout()
+     * does on the standard board.
+     * @param pVariant variant played.
+     * @param pGames games of the variant.
+     * @return Op one call plays every game; an operation is one move.
+     */
+    static Op variantPlayout(Connect4Variant pVariant, int[][] pGames) {
+        Connect4NBoard board = pVariant.newBoard();
+        return () -> {
+            long wins = 0;
+            for (int[] game : pGames) {
+                for (int col : game) {
+                    board.play(col);
+                    if (board.lastMoveWon()) {
+                        wins++;
+                    }
+                }
+                for (int i = game.length - 1; i >= 0; i--) {
+                    board.undo(game[i]);
+                }
+            }
+            return wins;
+        };
+    }
+
+    /**
+     * Plays random games of a rule set the way a search or a playout does:
+     * lists the legal moves, plays one and checks the result, then takes
+     * every move back.
+     * @param pRules rule set played.
+     * @param pGames games of the rule set.
+     * @return Op one call plays every game; an operation is one move.
+     */
+    static Op rulesPlayout(Connect4Rules pRules, int[][] pGames) {
+        Connect4NBoard board = pRules.getVariant().newBoard();
+        int[] legal = new int[pRules.maxMoves()];
+        return () -> {
+            long sum = 0;
+            for (int[] game : pGames) {
+                for (int move : game) {
+                    sum += pRules.moves(board, legal);
+                    pRules.play(board, move);
+                    sum += pRules.result(board, move);
+                }
+                for (int i = game.length - 1; i >= 0; i--) {
+                    pRules.undo(board, game[i]);
+                }
+            }
+            return sum;
+        };
+    }
+
+    /**
+     * Searches a fixed set of positions of a rule set to a fixed depth with
+     * a cleared table, and records nodes per second.
+     * @param pRules rule set searched.
+     * @param pSecondary map receiving the nodes/s metric.
+     * @return Op one call searches one position.
+     */
+    static Op rulesSearch(Connect4Rules pRules, Map<String, double[]> pSecondary) {
+        int[][] games = randomGames(pRules);
+        final Connect4NBoard[] positions = new Connect4NBoard[8];
+        for (int i = 0; i < positions.length; i++) {
+            int[] game = games[i];
+            positions[i] = pRules.getVariant().newBoard();
+            // stop short of the end so the position is undecided
+            for (int k = 0; k < game.length / 2; k++) {
+                pRules.play(positions[i], game[k]);
+            }
+        }
+        final Connect4RulesSearch search = new Connect4RulesSearch(pRules, new Connect4TranspositionTable(20));
+        search.setMaxDepth(RULES_SEARCH_DEPTH);
+        final double[] counters = new double[2];
+        pSecondary.put("nodes/s", counters);
+        final int[] next = {0};
+        return () -> {
+            Connect4NBoard position = positions[next[0]++ % positions.length];
+            search.getTable().clear();
+            long start = System.nanoTime();
+            int move = search.bestMove(position);
+            counters[1] += System.nanoTime() - start;
+            counters[0] += search.getNodes();
+            return move;
+        };
+    }
+
+    /**
+     * Searches the empty board of a rule set for a fixed number of playouts
+     * with one worker per processor, and records playouts per second.
+     * @param pRules rule set searched.
+     * @param pSecondary map receiving the playouts/s metric.
+     * @return Op one call runs one search.
+     */
+    static Op monteCarlo(Connect4Rules pRules, Map<String, double[]> pSecondary) {
+        final Connect4NBoard position = pRules.getVariant().newBoard();
+        final Connect4MonteCarlo search = new Connect4MonteCarlo(pRules,
+                Runtime.getRuntime().availableProcessors());
+        search.setMoveTimeMillis(0);
+        search.setMaxPlayouts(MCTS_PLAYOUTS);
+        final double[] counters = new double[2];
+        pSecondary.put("playouts/s", counters);
+        return () -> {
+            long start = System.nanoTime();
+            int move = search.bestMove(position);
+            counters[1] += System.nanoTime() - start;
+            counters[0] += search.getPlayouts();
+            return move;
+        };
+    }
+
+    /**
+     * Reproducible random games of a rule set, each played to its end.
+     * @param pRules rule set played.
+     * @return int[][] moves of each game.
+     */
+    static int[][] randomGames(Connect4Rules pRules) {
+        Random random = new Random(SEED);
+        int[][] games = new int[PLAYOUT_GAMES][];
+        Connect4NBoard board = pRules.getVariant().newBoard();
+        int[] legal = new int[pRules.maxMoves()];
+        for (int g = 0; g < games.length; g++) {
+            board.reset();
+            int[] moves = new int[pRules.maxPlies()];
+            int n = 0;
+            int count = pRules.moves(board, legal);
+            while (count > 0) {
+                int move = legal[random.nextInt(count)];
+                moves[n++] = move;
+                pRules.play(board, move);
+                count = pRules.result(board, move) != 0 ? 0 : pRules.moves(board, legal);
+            }
+            games[g] = Arrays.copyOf(moves, n);
+        }
+        return games;
+    }
+
+    /**
+     * Reproducible random games of a variant, each played until a win or a
+     * full board.
+     * @param pVariant variant played.
+     * @return int[][] columns of each game.
+     */
+    static int[][] randomGames(Connect4Variant pVariant) {
+        Random random = new Random(SEED);
+        int[][] games = new int[PLAYOUT_GAMES][];
+        Connect4NBoard board = pVariant.newBoard();
+        for (int g = 0; g < games.length; g++) {
+            board.reset();
+            int[] moves = new int[pVariant.getCells()];
+            while (!board.isFull()) {
+                int col = random.nextInt(pVariant.getCols());
+                if (board.canPlay(col)) {
+                    moves[board.getMoves()] = col;
+                    board.play(col);
+                    if (board.lastMoveWon()) {
+                        break;
+                    }
+                }
+            }
+            games[g] = Arrays.copyOf(moves, board.getMoves());
+        }
+        return games;
+    }
+
+    /**
+     * Counts the moves of a set of games.
+     * @param pGames games.
+     * @return int moves.
+     */
+    static int moveCount(int[][] pGames) {
+        int moves = 0;
+        for (int[] game : pGames) {
+            moves += game.length;
+        }
+        return moves;
+    }
+
+    /**
+     * Moves of the reproducible mid-game position: 16 random moves without a
+     * winner and without a full column.
+     * @return int[] columns, red first.
+     */
+    static int[] midGameMoves() {
+        Random random = new Random(SEED);
+        while (true) {
+            Connect4Bitboard board = new Connect4Bitboard();
+            int[] moves = new int[16];
+            int[] height = new int[COL];
+            boolean ok = true;
+            for (int i = 0; i < moves.length && ok; i++) {
+                int col = random.nextInt(COL);
+                if (height[col] >= ROW - 1 || board.isWinningMove(col)) {
+                    ok = false;
+                } else {
+                    height[col]++;
+                    board.play(col);
+                    moves[i] = col;
+                }
+            }
+            if (ok) {
+                return moves;
+            }
+        }
+    }
+
+    /**
+     * Plays the mid-game moves on a Connect4 game.
+     * @return Connect4 game in the mid-game position.
+     */
+    static Connect4 midGame() {
+        Connect4 game = new Connect4();
+        for (int move : midGameMoves()) {
+            game.dropToken(game.getPlayerToken(), move);
+            game.playerTurn(game.getPlayerToken());
+        }
+        return game;
+    }
+
+    /**
+     * Builds a reproducible set of undecided positions.
+     * @param pCount number of positions.
+     * @param pMinMoves fewest moves played in a position.
+     * @param pMaxMoves most moves played in a position.
+     * @return Connect4Bitboard[] positions.
+     */
+    static Connect4Bitboard[] positionSet(int pCount, int pMinMoves, int pMaxMoves) {
+        Random random = new Random(SEED);
+        Connect4Bitboard[] set = new Connect4Bitboard[pCount];
+        int n = 0;
+        while (n < pCount) {
+            Connect4Bitboard board = new Connect4Bitboard();
+            int target = pMinMoves + random.nextInt(pMaxMoves - pMinMoves + 1);
+            while (board.getMoves() < target) {
+                int col = random.nextInt(COL);
+                if (board.canPlay(col) && !board.isWinningMove(col)) {
+                    board.play(col);
+                }
+            }
+            if (!board.canWinNext()) {
+                set[n++] = board;
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Runs one benchmark in this JVM.
+     * @param pBench benchmark to run.
+     * @return double[][] operations per second of every measurement
+     *         iteration, followed by the secondary metrics per iteration.
+     * @throws Throwable if the benchmark fails.
+     */
+    double[][] runHere(Bench pBench) throws Throwable {
+        Map<String, double[]> secondary = new LinkedHashMap<>();
+        Op op = pBench.factory.create(secondary);
+        double[] scores = new double[iterations];
+        List<double[]> extra = new ArrayList<>();
+        for (int i = 0; i < secondary.size(); i++) {
+            extra.add(new double[iterations]);
+        }
+
+        for (int i = 0; i < warmups + iterations; i++) {
+            for (double[] counters : secondary.values()) {
+                counters[0] = 0;
+                counters[1] = 0;
+            }
+            double score = iteration(op, pBench.batch);
+            if (i >= warmups) {
+                scores[i - warmups] = score;
+                int k = 0;
+                for (double[] counters : secondary.values()) {
+                    extra.get(k++)[i - warmups] = counters[0] / (counters[1] / 1e9);
+                }
+            }
+        }
+
+        double[][] result = new double[1 + extra.size()][];
+        result[0] = scores;
+        for (int k = 0; k < extra.size(); k++) {
+            result[k + 1] = extra.get(k);
+        }
+        return result;
+    }
+
+    /**
+     * Calls an operation for one iteration.
+     * @param pOp operation.
+     * @param pBatch operations per call.
+     * @return double operations per second.
+     * @throws Throwable if the operation fails.
+     */
+    private double iteration(Op pOp, int pBatch) throws Throwable {
+        long deadline = iterationMillis * 1_000_000L;
+        long calls = 0;
+        long consumed = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            // read the clock every 64 calls to keep its cost out of the score
+            for (int i = 0; i < 64; i++) {
+                consumed += pOp.run();
+            }
+            calls += 64;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < deadline);
+        sink = consumed;
+        return calls * pBatch / (elapsed / 1e9);
+    }
+
+    /**
+     * Runs one benchmark in forked JVMs and gathers their iterations.
+     * @param pBench benchmark to run.
+     * @return double[][] scores as in runHere(), over all forks.
+     * @throws Exception if a fork fails.
+     */
+    double[][] runForked(Bench pBench) throws Exception {
+        List<List<Double>> gathered = new ArrayList<>();
+        for (int f = 0; f < forks; f++) {
+            String java = System.getProperty("java.home") + File.separator + "bin"
+                    + File.separator + "java";
+            ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+                    System.getProperty("java.class.path"), Connect4Benchmark.class.getName(),
+                    "-wi", String.valueOf(warmups), "-i", String.valueOf(iterations),
+                    "-t", String.valueOf(iterationMillis), "-child", pBench.name);
+            builder.redirectErrorStream(true);
+            Process process = builder.start();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.startsWith(RESULT_PREFIX)) {
+                        continue;
+                    }
+                    String[] metrics = line.substring(RESULT_PREFIX.length()).split(";");
+                    for (int k = 0; k < metrics.length; k++) {
+                        if (gathered.size() <= k) {
+                            gathered.add(new ArrayList<>());
+                        }
+                        for (String value : metrics[k].trim().split(" ")) {
+                            gathered.get(k).add(Double.parseDouble(value));
+                        }
+                    }
+                }
+            }
+            if (process.waitFor() != 0) {
+                throw new IllegalStateException("Fork failed for " + pBench.name);
+            }
+        }
+        double[][] result = new double[gathered.size()][];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = gathered.get(k).stream().mapToDouble(Double::doubleValue).toArray();
+        }
+        return result;
+    }
+
+    /**
+     * Mean of a set of scores.
+     * @param pValues scores.
+     * @return double mean.
+     */
+    static double mean(double[] pValues) {
+        double sum = 0;
+        for (double v : pValues) {
+            sum += v;
+        }
+        return sum / pValues.length;
+    }
+
+    /**
+     * Half width of the 99.9% confidence interval of the mean, as JMH reports.
+     * @param pValues scores.
+     * @return double error, NaN with fewer than two scores.
+     */
+    static double error(double[] pValues) {
+        int n = pValues.length;
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double m = mean(pValues);
+        double sq = 0;
+        for (double v : pValues) {
+            sq += (v - m) * (v - m);
+        }
+        double sd = Math.sqrt(sq / (n - 1));
+        return studentT999(n - 1) * sd / Math.sqrt(n);
+    }
+
+    /**
+     * Two-sided 99.9% quantile of Student's t distribution, from the normal
+     * quantile with the Cornish-Fisher expansion.
+     * @param pDf degrees of freedom.
+     * @return double quantile.
+     */
+    static double studentT999(int pDf) {
+        // small samples, where the expansion is least accurate
+        double[] table = {636.62, 31.599, 12.924, 8.610, 6.869};
+        if (pDf <= table.length) {
+            return table[pDf - 1];
+        }
+        double z = 3.2905;
+        double v = pDf;
+        double z3 = z * z * z;
+        double z5 = z3 * z * z;
+        double z7 = z5 * z * z;
+        return z + (z3 + z) / (4 * v)
+                + (5 * z5 + 16 * z3 + 3 * z) / (96 * v * v)
+                + (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * v * v * v);
+    }
+
+    /**
+     * Formats a number for JSON.
+     * @param pValue number.
+     * @return String JSON number, or "NaN" as JMH writes it.
+     */
+    private static String json(double pValue) {
+        return Double.isNaN(pValue) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", pValue);
+    }
+
+    /**
+     * Writes results in JMH's JSON layout.
+     * @param pFile destination file.
+     * @param pLabel free text stored with each result, e.g. a commit id.
+     * @param pResults scores by benchmark name, as returned by runHere().
+     * @param pNames secondary metric names by benchmark name.
+     * @throws IOException if the file cannot be written.
+     */
+    void writeJson(String pFile, String pLabel, Map<String, double[][]> pResults,
+                   Map<String, List<String>> pNames) throws IOException {
+        try (PrintWriter out = new PrintWriter(pFile, "UTF-8")) {
+            out.println("[");
+            int i = 0;
+            for (Map.Entry<String, double[][]> e : pResults.entrySet()) {
+                double[][] scores = e.getValue();
+                out.println("    {");
+                out.println("        \"benchmark\" : \"" + e.getKey() + "\",");
+                out.println("        \"mode\" : \"thrpt\",");
+                out.println("        \"label\" : \"" + pLabel.replace("\"", "'") + "\",");
+                out.println("        \"jvm\" : \"" + System.getProperty("java.vm.name")
+                        + " " + System.getProperty("java.version") + "\",");
+                out.println("        \"forks\" : " + forks + ",");
+                out.println("        \"warmupIterations\" : " + warmups + ",");
+                out.println("        \"measurementIterations\" : " + iterations + ",");
+                out.println("        \"measurementTime\" : \"" + iterationMillis + " ms\",");
+                out.println("        \"primaryMetric\" : " + metric(scores[0], "ops/s") + ",");
+                out.print("        \"secondaryMetrics\" : {");
+                List<String> names = pNames.get(e.getKey());
+                for (int k = 1; k < scores.length; k++) {
+                    out.print((k > 1 ? "," : "") + "\n            \"" + names.get(k - 1)
+                            + "\" : " + metric(scores[k], names.get(k - 1)));
+                }
+                out.println(scores.length > 1 ? "\n        }" : "}");
+                out.println(++i < pResults.size() ? "    }," : "    }");
+            }
+            out.println("]");
+        }
+    }
+
+    /**
+     * Formats one metric as a JMH JSON object.
+     * @param pScores iteration scores.
+     * @param pUnit unit of the scores.
+     * @return String JSON object.
+     */
+    private static String metric(double[] pScores, String pUnit) {
+        StringBuilder raw = new StringBuilder();
+        for (int i = 0; i < pScores.length; i++) {
+            raw.append(i > 0 ? ", " : "").append(json(pScores[i]));
+        }
+        return "{ \"score\" : " + json(mean(pScores)) + ", \"scoreError\" : "
+                + json(error(pScores)) + ", \"scoreUnit\" : \"" + pUnit
+                + "\", \"rawData\" : [ [ " + raw + " ] ] }";
+    }
+
+    /**
+     * Main method to run the benchmarks.
+     * @param args options, see the class description.
+     * @throws Throwable if a benchmark fails.
+     */
+    public static void main(String[] args) throws Throwable {
+        Connect4Benchmark harness = new Connect4Benchmark();
+        String resultFile = null;
+        String label = "";
+        String child = null;
+        Pattern filter = Pattern.compile(".*");
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-wi":
+                    harness.warmups = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    harness.iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-t":
+                    harness.iterationMillis = Long.parseLong(args[++i]);
+                    break;
+                case "-f":
+                    harness.forks = Integer.parseInt(args[++i]);
+                    break;
+                case "-rf":
+                    resultFile = args[++i];
+                    break;
+                case "-label":
+                    label = args[++i];
+                    break;
+                case "-child":
+                    child = args[++i];
+                    break;
+                default:
+                    filter = Pattern.compile(args[i]);
+            }
+        }
+
+        if (child != null) {
+            // forked JVM: run one benchmark and print its scores for the parent
+            for (Bench bench : benchmarks()) {
+                if (bench.name.equals(child)) {
+                    StringBuilder line = new StringBuilder(RESULT_PREFIX);
+                    double[][] scores = harness.runHere(bench);
+                    for (int k = 0; k < scores.length; k++) {
+                        line.append(k > 0 ? ";" : "");
+                        for (int j = 0; j < scores[k].length; j++) {
+                            line.append(j > 0 ? " " : "").append(scores[k][j]);
+                        }
+                    }
+                    System.out.println(line);
+                }
+            }
+            return;
+        }
+
+        Map<String, double[][]> results = new LinkedHashMap<>();
+        Map<String, List<String>> names = new LinkedHashMap<>();
+        System.out.printf("%-28s %16s %14s  %s%n", "Benchmark", "Score", "Error", "Units");
+        for (Bench bench : benchmarks()) {
+            if (!filter.matcher(bench.name).find()) {
+                continue;
+            }
+            Map<String, double[]> secondary = new LinkedHashMap<>();
+            try {
+                // build once here to learn the metric names and skip missing dependencies
+                bench.factory.create(secondary);
+            } catch (Exception | LinkageError e) {
+                System.out.printf("%-28s skipped: %s%n", bench.name, e);
+                continue;
+            }
+            double[][] scores = harness.forks > 0 ? harness.runForked(bench) : harness.runHere(bench);
+            results.put(bench.name, scores);
+            names.put(bench.name, new ArrayList<>(secondary.keySet()));
+
+            System.out.printf(Locale.ROOT, "%-28s %16.3f %14.3f  ops/s%n",
+                    bench.name, mean(scores[0]), error(scores[0]));
+            int k = 1;
+            for (String metric : secondary.keySet()) {
+                System.out.printf(Locale.ROOT, "%-28s %16.3f %14.3f  %s%n",
+                        "  " + metric, mean(scores[k]), error(scores[k]), metric);
+                k++;
+            }
+        }
+        if (resultFile != null) {
+            harness.writeJson(resultFile, label, results, names);
+        }
+    }
+}
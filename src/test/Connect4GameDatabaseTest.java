@@ -0,0 +1,198 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import core.Connect4Bitboard;
+import core.Connect4Constants;
+import core.Connect4GameDatabase;
+
+class Connect4GameDatabaseTest implements Connect4Constants {
+
+	private File file;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		file = File.createTempFile("connect4", ".db");
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		file.delete();
+	}
+
+	/**
+	 * Plays random moves until the game ends, or stops early now and then
+	 * to leave it unfinished.
+	 */
+	private static String randomGame(Random random) {
+		Connect4Bitboard board = new Connect4Bitboard();
+		StringBuilder moves = new StringBuilder();
+		while (!board.isFull() && random.nextInt(60) != 0) {
+			int col = random.nextInt(COL);
+			if (!board.canPlay(col)) {
+				continue;
+			}
+			moves.append((char) ('1' + col));
+			if (board.isWinningMove(col)) {
+				break;
+			}
+			board.play(col);
+		}
+		return moves.toString();
+	}
+
+	private Connect4GameDatabase build(List<String> games, int blockSize, int plies) throws IOException {
+		Connect4GameDatabase.Builder builder = new Connect4GameDatabase.Builder();
+		for (String game : games) {
+			builder.add(game);
+		}
+		builder.write(file, blockSize, plies);
+		return new Connect4GameDatabase(file);
+	}
+
+	private static int expectedResult(String game) {
+		Connect4Bitboard board = new Connect4Bitboard();
+		for (int i = 0; i < game.length(); i++) {
+			int col = game.charAt(i) - '1';
+			if (board.isWinningMove(col)) {
+				return i % 2 == 0 ? P1_WIN : P2_WIN;
+			}
+			board.play(col);
+		}
+		return board.isFull() ? DRAW : Connect4GameDatabase.UNFINISHED;
+	}
+
+	private static void assertGames(List<String> games, Connect4GameDatabase db) {
+		assertEquals(games.size(), db.getGameCount());
+		for (int g = 0; g < games.size(); g++) {
+			String game = games.get(g);
+			assertEquals(game.length(), db.getLength(g), "length of game " + g);
+			assertEquals(game, db.getMoves(g), "moves of game " + g);
+			assertEquals(expectedResult(game), db.getResult(g), "result of game " + g);
+		}
+	}
+
+	@Test
+	void testRoundTrip() throws IOException {
+		Random random = new Random(1);
+		List<String> games = new ArrayList<>();
+		for (int i = 0; i < 3000; i++) {
+			games.add(randomGame(random));
+		}
+		try (Connect4GameDatabase db = build(games, 64, 12)) {
+			assertGames(games, db);
+		}
+	}
+
+	@Test
+	void testMovesAcrossWordBoundary() throws IOException {
+		// one game per block: moves start at bit 0, so ply 21 covers bits 63 to 65
+		Random random = new Random(2);
+		List<String> games = new ArrayList<>();
+		while (games.size() < 50) {
+			String game = randomGame(random);
+			if (game.length() > 21) {
+				games.add(game);
+			}
+		}
+		try (Connect4GameDatabase db = build(games, 1, 4)) {
+			assertGames(games, db);
+			for (int g = 0; g < games.size(); g++) {
+				assertEquals(games.get(g).charAt(21) - '1', db.getMove(g, 21));
+			}
+		}
+	}
+
+	@Test
+	void testPartialLastBlock() throws IOException {
+		Random random = new Random(3);
+		List<String> games = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			games.add(randomGame(random));
+		}
+		try (Connect4GameDatabase db = build(games, 4, 6)) {
+			assertGames(games, db);
+			assertThrows(IndexOutOfBoundsException.class, () -> db.getResult(10));
+		}
+	}
+
+	@Test
+	void testEmptyDatabase() throws IOException {
+		try (Connect4GameDatabase db = build(new ArrayList<>(), 16, 12)) {
+			assertEquals(0, db.getGameCount());
+			assertEquals(0, db.getPositionCount());
+			Connect4Bitboard position = new Connect4Bitboard();
+			position.play(3);
+			assertEquals(0, db.gamesThrough(position).length);
+			assertArrayEquals(new int[DRAW + 1], db.resultsThrough(position));
+			assertThrows(IndexOutOfBoundsException.class, () -> db.getResult(0));
+		}
+	}
+
+	@Test
+	void testIndexMatchesScan() throws IOException {
+		Random random = new Random(4);
+		List<String> games = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			games.add(randomGame(random));
+		}
+		int plies = 8;
+		try (Connect4GameDatabase db = build(games, 100, plies)) {
+			for (int q = 0; q < 300; q++) {
+				String from = games.get(random.nextInt(games.size()));
+				if (from.isEmpty()) {
+					continue;
+				}
+				int depth = 1 + random.nextInt(Math.min(from.length(), plies));
+				Connect4Bitboard position = new Connect4Bitboard();
+				for (int i = 0; i < depth; i++) {
+					position.play(from.charAt(i) - '1');
+				}
+
+				List<Integer> expected = new ArrayList<>();
+				int[] results = new int[DRAW + 1];
+				for (int g = 0; g < games.size(); g++) {
+					String game = games.get(g);
+					if (game.length() < depth) {
+						continue;
+					}
+					Connect4Bitboard board = new Connect4Bitboard();
+					for (int i = 0; i < depth; i++) {
+						board.play(game.charAt(i) - '1');
+					}
+					if (board.canonicalKey() == position.canonicalKey()) {
+						expected.add(g);
+						results[expectedResult(game)]++;
+					}
+				}
+				int[] found = db.gamesThrough(position);
+				assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), found,
+						"games through " + from.substring(0, depth));
+				assertArrayEquals(results, db.resultsThrough(position));
+			}
+		}
+	}
+
+	@Test
+	void testDeepPositionRejected() throws IOException {
+		List<String> games = new ArrayList<>();
+		games.add("4444333");
+		try (Connect4GameDatabase db = build(games, 16, 2)) {
+			Connect4Bitboard position = new Connect4Bitboard();
+			position.play(3);
+			position.play(3);
+			position.play(3);
+			assertThrows(IllegalArgumentException.class, () -> db.gamesThrough(position));
+		}
+	}
+}
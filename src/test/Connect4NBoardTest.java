@@ -0,0 +1,172 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import core.Connect4Constants;
+import core.Connect4NBoard;
+import core.Connect4Variant;
+
+class Connect4NBoardTest implements Connect4Constants {
+
+	/** Single-word boards first, then multi-word boards. */
+	private static final String[] VARIANTS = {"6x7x4", "6x9x5", "8x8x4", "7x9x4"};
+
+	/**
+	 * Naive board: a grid of owners, checked for lines cell by cell.
+	 */
+	private static final class Grid {
+		private final int rows;
+		private final int cols;
+		private final int connect;
+		private final int[][] cells;
+		private final int[] heights;
+
+		Grid(Connect4Variant variant) {
+			rows = variant.getRows();
+			cols = variant.getCols();
+			connect = variant.getConnect();
+			cells = new int[cols][rows];
+			heights = new int[cols];
+		}
+
+		void play(int col, int player) {
+			cells[col][heights[col]++] = player;
+		}
+
+		void undo(int col) {
+			cells[col][--heights[col]] = 0;
+		}
+
+		boolean hasLine(int player) {
+			int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+			for (int[] d : directions) {
+				for (int col = 0; col < cols; col++) {
+					for (int row = 0; row < rows; row++) {
+						int k = 0;
+						while (k < connect && owner(col + d[0] * k, row + d[1] * k) == player) {
+							k++;
+						}
+						if (k == connect) {
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+		int owner(int col, int row) {
+			return col < 0 || col >= cols || row < 0 || row >= rows ? 0 : cells[col][row];
+		}
+	}
+
+	private static void assertMatches(Grid grid, Connect4NBoard board, int moves, String where) {
+		assertEquals(moves % 2 == 0 ? PLAYER1 : PLAYER2, board.getPlayerToMove(), where);
+		assertEquals(grid.hasLine(PLAYER1), board.hasLine(PLAYER1), where);
+		assertEquals(grid.hasLine(PLAYER2), board.hasLine(PLAYER2), where);
+		for (int col = 0; col < grid.cols; col++) {
+			assertEquals(grid.heights[col], board.height(col), where);
+			for (int row = 0; row < grid.rows; row++) {
+				assertEquals(grid.cells[col][row], board.get(col, row), where);
+			}
+		}
+	}
+
+	private static int randomColumn(Random random, Connect4NBoard board) {
+		int col;
+		do {
+			col = random.nextInt(board.getVariant().getCols());
+		} while (!board.canPlay(col));
+		return col;
+	}
+
+	@Test
+	void testBoardKinds() {
+		assertTrue(Connect4Variant.parse(VARIANTS[0]).newBoard() instanceof Connect4NBoard.Single);
+		assertTrue(Connect4Variant.parse(VARIANTS[1]).newBoard() instanceof Connect4NBoard.Single);
+		assertTrue(Connect4Variant.parse(VARIANTS[2]).newBoard() instanceof Connect4NBoard.Multi);
+		assertTrue(Connect4Variant.parse(VARIANTS[3]).newBoard() instanceof Connect4NBoard.Multi);
+	}
+
+	@Test
+	void testAlternatingMovesWithUndo() {
+		Random random = new Random(1);
+		for (String spec : VARIANTS) {
+			Connect4Variant variant = Connect4Variant.parse(spec);
+			for (int game = 0; game < 300; game++) {
+				Connect4NBoard board = variant.newBoard();
+				Grid grid = new Grid(variant);
+				Deque<Integer> played = new ArrayDeque<>();
+				while (!board.isFull()) {
+					String where = spec + " game " + game + " after " + played;
+					if (!played.isEmpty() && random.nextInt(5) == 0) {
+						int col = played.pop();
+						board.undo(col);
+						grid.undo(col);
+						assertFalse(board.lastMoveWon(), where);
+						assertMatches(grid, board, played.size(), where);
+						continue;
+					}
+					int col = randomColumn(random, board);
+					int player = board.getPlayerToMove();
+					// both ways of playing in turn must agree
+					if (random.nextBoolean()) {
+						board.play(col);
+					} else {
+						board.play(col, player);
+					}
+					grid.play(col, player);
+					played.push(col);
+					assertMatches(grid, board, played.size(), where);
+					assertEquals(grid.hasLine(player), board.lastMoveWon(), where);
+					if (board.lastMoveWon()) {
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void testPlayForEitherPlayer() {
+		Random random = new Random(2);
+		for (String spec : VARIANTS) {
+			Connect4Variant variant = Connect4Variant.parse(spec);
+			for (int game = 0; game < 300; game++) {
+				Connect4NBoard board = variant.newBoard();
+				Grid grid = new Grid(variant);
+				int moves = 0;
+				while (!board.isFull() && !grid.hasLine(PLAYER1) && !grid.hasLine(PLAYER2)) {
+					int col = randomColumn(random, board);
+					// the same player often moves several times running
+					int player = random.nextBoolean() ? PLAYER1 : PLAYER2;
+					assertEquals(board.height(col), board.play(col, player));
+					grid.play(col, player);
+					moves++;
+					assertMatches(grid, board, moves, spec + " game " + game + " move " + moves);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testSameLineForTheOtherPlayer() {
+		// four tokens of player 2 in a column while player 1 never moves
+		for (String spec : VARIANTS) {
+			Connect4NBoard board = Connect4Variant.parse(spec).newBoard();
+			int connect = board.getVariant().getConnect();
+			for (int i = 0; i < connect; i++) {
+				assertFalse(board.hasLine(PLAYER2), spec);
+				board.play(0, PLAYER2);
+			}
+			assertTrue(board.hasLine(PLAYER2), spec);
+			assertFalse(board.hasLine(PLAYER1), spec);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import core.Connect4Constants;
+import core.Connect4NBoard;
+import core.Connect4Rules;
+import core.Connect4Variant;
+
+class Connect4RulesTest implements Connect4Constants {
+
+	/**
+	 * Plays moves in turn, checking that none of them ends the game.
+	 */
+	private static Connect4NBoard play(Connect4Rules rules, int... moves) {
+		Connect4NBoard board = rules.getVariant().newBoard();
+		for (int move : moves) {
+			assertTrue(rules.isLegal(board, move), "move " + move);
+			rules.play(board, move);
+			assertEquals(0, rules.result(board, move), "move " + move);
+		}
+		return board;
+	}
+
+	private static int pop(Connect4Rules rules, int col) {
+		return rules.getVariant().getCols() + col;
+	}
+
+	@Test
+	void testPopCompletesOpponentLine() {
+		Connect4Rules rules = Connect4Rules.POPOUT;
+		// red under yellow in column 0, yellow on the bottom row in columns 1 to 3
+		Connect4NBoard board = play(rules, 0, 0, 6, 1, 6, 2, 5, 3);
+		int move = pop(rules, 0);
+		assertTrue(rules.isLegal(board, move));
+		rules.play(board, move);
+		assertEquals(PLAYER2, board.get(0, 0));
+		assertTrue(board.hasLine(PLAYER2));
+		assertFalse(board.hasLine(PLAYER1));
+		assertEquals(P2_WIN, rules.result(board, move));
+	}
+
+	@Test
+	void testPopCompletesBothLines() {
+		Connect4Rules rules = Connect4Rules.POPOUT;
+		// column 0 holds red, yellow, red; yellow fills row 0 and red row 1 in columns 1 to 3
+		Connect4NBoard board = play(rules, 0, 0, 0, 1, 1, 2, 2, 3, 3, 6);
+		int move = pop(rules, 0);
+		rules.play(board, move);
+		assertTrue(board.hasLine(PLAYER1));
+		assertTrue(board.hasLine(PLAYER2));
+		assertEquals(P1_WIN, rules.result(board, move));
+	}
+
+	@Test
+	void testPopOnlyOwnToken() {
+		Connect4Rules rules = Connect4Rules.POPOUT;
+		Connect4NBoard board = play(rules, 0);
+		assertFalse(rules.isLegal(board, pop(rules, 0)));
+		assertFalse(rules.isLegal(board, pop(rules, 1)));
+		rules.play(board, 1);
+		assertTrue(rules.isLegal(board, pop(rules, 0)));
+		assertFalse(rules.isLegal(board, pop(rules, 1)));
+	}
+
+	@Test
+	void testPopUnpopRestoresBoard() {
+		Random random = new Random(1);
+		Connect4Rules[] all = {Connect4Rules.POPOUT, Connect4Rules.parse("popout:8x8x4")};
+		for (Connect4Rules rules : all) {
+			Connect4Variant variant = rules.getVariant();
+			int[] moves = new int[rules.maxMoves()];
+			for (int game = 0; game < 100; game++) {
+				Connect4NBoard board = variant.newBoard();
+				int result = 0;
+				while (result == 0) {
+					int count = rules.moves(board, moves);
+					for (int i = 0; i < count; i++) {
+						if (moves[i] < variant.getCols()) {
+							continue;
+						}
+						long hash = board.hash();
+						int[][] cells = cells(board);
+						int toMove = board.getPlayerToMove();
+						rules.play(board, moves[i]);
+						assertNotEquals(hash, board.hash(), rules + " game " + game);
+						rules.undo(board, moves[i]);
+						assertEquals(hash, board.hash(), rules + " game " + game);
+						assertArrayEquals(cells, cells(board), rules + " game " + game);
+						assertEquals(toMove, board.getPlayerToMove());
+					}
+					int move = moves[random.nextInt(count)];
+					rules.play(board, move);
+					result = rules.result(board, move);
+				}
+			}
+		}
+	}
+
+	private static int[][] cells(Connect4NBoard board) {
+		Connect4Variant variant = board.getVariant();
+		int[][] cells = new int[variant.getCols()][variant.getRows()];
+		for (int col = 0; col < cells.length; col++) {
+			for (int row = 0; row < cells[col].length; row++) {
+				cells[col][row] = board.get(col, row);
+			}
+		}
+		return cells;
+	}
+
+	@Test
+	void testDrawAtMaxPlies() {
+		Connect4Rules rules = new Connect4Rules.PopOut(Connect4Variant.STANDARD, 8);
+		// drops and pops with no line in sight
+		Connect4NBoard board = play(rules, 0, 6, 1, 5, pop(rules, 0), pop(rules, 6), 2);
+		int move = 4;
+		rules.play(board, move);
+		assertEquals(8, board.getMoves());
+		assertEquals(DRAW, rules.result(board, move));
+	}
+}
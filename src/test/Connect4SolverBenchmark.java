@@ -0,0 +1,299 @@
+package test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import core.Connect4Bitboard;
+import core.Connect4Constants;
+import core.Connect4Search;
+import core.Connect4TranspositionTable;
+
+/**
+ * Benchmark and correctness suite for the computer player's solver.
+ * <p>
+ * Position sets are generated by the engine itself, stratified by game phase,
+ * and stored with their exact values.  Running the suite solves every
+ * position again and reports, per set, the mean time, mean nodes, nodes per
+ * second and the number of wrong answers, so that an engine change which
+ * trades correctness for speed shows up at once.
+ * <p>
+ * Each line of a set file is a position written as the columns played (1-7,
+ * first player first) followed by its exact value for the player to move, as
+ * returned by Connect4Search.solve().
+ * <p>
+ * Usage:
+ * <ul>
+ * <li><code>Connect4SolverBenchmark generate [DIR] [COUNT] [SEED]</code>
+ *     writes COUNT positions per phase (default 50) into DIR
+ * <li><code>Connect4SolverBenchmark run [DIR] [-hash N] [-driver D] [SET...]</code>
+ *     solves the sets in DIR (default: every phase) with the root driver D:
+ *     full (default), bisection, mtdf, or all to compare every driver on
+ *     each set
+ * </ul>
+ * DIR defaults to src/test/positions.
+ * <p>
+ * @author Joshua Stamps
+ * @version v1.0
+ */
+public class Connect4SolverBenchmark implements Connect4Constants {
+
+    /**
+     * Phase names, used as set file names.
+     */
+    static final String[] PHASES = {"early", "middle", "late"};
+    /**
+     * Fewest moves played in a position of each phase.
+     */
+    static final int[] PHASE_MIN = {10, 16, 25};
+    /**
+     * Most moves played in a position of each phase.
+     */
+    static final int[] PHASE_MAX = {15, 24, 34};
+    /**
+     * Default directory of the set files.
+     */
+    static final String DEFAULT_DIR = "src" + File.separator + "test"
+            + File.separator + "positions";
+
+    /**
+     * Chance that a generating move is random instead of the engine's choice.
+     */
+    private static final double RANDOM_MOVE_RATE = 0.35;
+    /**
+     * Search depth of the engine moves used to generate positions.
+     */
+    private static final int GENERATOR_DEPTH = 6;
+
+    /**
+     * A position of a set with its stored value.
+     */
+    static final class Entry {
+        /** Columns played, 1-7. */
+        final String moves;
+        /** Exact value for the player to move. */
+        final int value;
+
+        /**
+         * Constructor for a set entry.
+         * @param pMoves columns played.
+         * @param pValue exact value.
+         */
+        Entry(String pMoves, int pValue) {
+            this.moves = pMoves;
+            this.value = pValue;
+        }
+    }
+
+    /**
+     * Plays a position string on a new board.
+     * @param pMoves columns played, 1-7.
+     * @return Connect4Bitboard position.
+     * @throws IllegalArgumentException if a move is illegal.
+     */
+    static Connect4Bitboard position(String pMoves) {
+        Connect4Bitboard board = new Connect4Bitboard();
+        for (int i = 0; i < pMoves.length(); i++) {
+            int col = pMoves.charAt(i) - '1';
+            if (col < 0 || col >= COL || !board.canPlay(col) || board.lastMoveWon()) {
+                throw new IllegalArgumentException("Illegal move " + (i + 1) + " in " + pMoves);
+            }
+            board.play(col);
+        }
+        return board;
+    }
+
+    /**
+     * Generates one phase set: games mixing engine and random moves are
+     * stopped at a random length within the phase, and undecided, distinct
+     * positions are solved exactly.
+     * @param pPhase index into PHASES.
+     * @param pCount number of positions.
+     * @param pRandom source of randomness.
+     * @return List of entries.
+     */
+    static List<Entry> generate(int pPhase, int pCount, Random pRandom) {
+        Connect4Search player = new Connect4Search(new Connect4TranspositionTable(20));
+        player.setMaxDepth(GENERATOR_DEPTH);
+        Connect4Search solver = new Connect4Search(new Connect4TranspositionTable(24));
+
+        List<Entry> set = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        StringBuilder moves = new StringBuilder();
+        while (set.size() < pCount) {
+            Connect4Bitboard board = new Connect4Bitboard();
+            moves.setLength(0);
+            int target = PHASE_MIN[pPhase]
+                    + pRandom.nextInt(PHASE_MAX[pPhase] - PHASE_MIN[pPhase] + 1);
+
+            while (board.getMoves() < target && !board.lastMoveWon()) {
+                int col;
+                if (pRandom.nextDouble() < RANDOM_MOVE_RATE) {
+                    col = pRandom.nextInt(COL);
+                    if (!board.canPlay(col)) {
+                        continue;
+                    }
+                } else {
+                    col = player.bestMove(board);
+                }
+                board.play(col);
+                moves.append((char) ('1' + col));
+            }
+            if (board.lastMoveWon() || board.canWinNext() || !seen.add(board.key())) {
+                continue;
+            }
+            set.add(new Entry(moves.toString(), solver.solve(board)));
+        }
+        return set;
+    }
+
+    /**
+     * Reads a set file.
+     * @param pFile set file.
+     * @return List of entries.
+     * @throws IOException if the file cannot be read.
+     */
+    static List<Entry> read(File pFile) throws IOException {
+        List<Entry> set = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(pFile))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                set.add(new Entry(fields[0], Integer.parseInt(fields[1])));
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Writes a set file.
+     * @param pFile destination file.
+     * @param pSet entries to write.
+     * @throws IOException if the file cannot be written.
+     */
+    static void write(File pFile, List<Entry> pSet) throws IOException {
+        try (PrintWriter out = new PrintWriter(pFile, "UTF-8")) {
+            for (Entry e : pSet) {
+                out.println(e.moves + " " + e.value);
+            }
+        }
+    }
+
+    /**
+     * Solves every position of a set with a cleared table and prints the
+     * timing and the wrong answers.
+     * @param pName set name.
+     * @param pSet entries to solve.
+     * @param pSolver search used to solve.
+     * @return int number of wrong answers.
+     */
+    static int run(String pName, List<Entry> pSet, Connect4Search pSolver) {
+        long totalNanos = 0;
+        long totalNodes = 0;
+        int wrong = 0;
+        for (Entry e : pSet) {
+            Connect4Bitboard board = position(e.moves);
+            pSolver.getTable().clear();
+            long start = System.nanoTime();
+            int value = pSolver.solve(board);
+            totalNanos += System.nanoTime() - start;
+            totalNodes += pSolver.getNodes();
+            if (value != e.value) {
+                wrong++;
+                System.out.printf("  WRONG %s: expected %d, got %d%n", e.moves, e.value, value);
+            }
+        }
+        int n = Math.max(pSet.size(), 1);
+        System.out.printf(Locale.ROOT, "%-16s %6d %12.3f %14.1f %14.0f %6d%n", pName,
+                pSet.size(), totalNanos / 1e6 / n, (double) totalNodes / n,
+                totalNodes / Math.max(totalNanos / 1e9, 1e-9), wrong);
+        return wrong;
+    }
+
+    /**
+     * Main method to generate or run the position sets.
+     * @param args command and options, see the class description.
+     * @throws IOException if a set file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || !(args[0].equals("generate") || args[0].equals("run"))) {
+            System.out.println("Usage: Connect4SolverBenchmark generate [DIR] [COUNT] [SEED]");
+            System.out.println("       Connect4SolverBenchmark run [DIR] [-hash N] [-driver D] [SET...]");
+            return;
+        }
+
+        if (args[0].equals("generate")) {
+            File dir = new File(args.length > 1 ? args[1] : DEFAULT_DIR);
+            int count = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+            Random random = new Random(args.length > 3 ? Long.parseLong(args[3]) : 1);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                File file = new File(dir, PHASES[phase] + ".txt");
+                write(file, generate(phase, count, random));
+                System.out.println("Wrote " + file);
+            }
+            return;
+        }
+
+        File dir = new File(DEFAULT_DIR);
+        int hash = 24;
+        List<Connect4Search.Driver> drivers = new ArrayList<>();
+        List<String> sets = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-hash")) {
+                hash = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-driver")) {
+                String driver = args[++i].toUpperCase(Locale.ROOT);
+                if (driver.equals("ALL")) {
+                    drivers.addAll(Arrays.asList(Connect4Search.Driver.values()));
+                } else {
+                    drivers.add(Connect4Search.Driver.valueOf(driver));
+                }
+            } else if (new File(args[i]).isDirectory()) {
+                dir = new File(args[i]);
+            } else {
+                sets.add(args[i]);
+            }
+        }
+        if (sets.isEmpty()) {
+            for (String phase : PHASES) {
+                sets.add(phase);
+            }
+        }
+        if (drivers.isEmpty()) {
+            drivers.add(Connect4Search.Driver.FULL);
+        }
+
+        Connect4Search solver = new Connect4Search(new Connect4TranspositionTable(hash));
+        System.out.printf("%-16s %6s %12s %14s %14s %6s%n",
+                "Set", "Count", "Mean ms", "Mean nodes", "Nodes/s", "Wrong");
+        int wrong = 0;
+        for (String name : sets) {
+            List<Entry> set = read(new File(dir, name + ".txt"));
+            for (Connect4Search.Driver driver : drivers) {
+                solver.setDriver(driver);
+                String label = drivers.size() > 1 ? name + "/" + driver.name().toLowerCase(Locale.ROOT) : name;
+                wrong += run(label, set, solver);
+            }
+        }
+        if (wrong > 0) {
+            System.out.println(wrong + " wrong answers");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import core.Connect4Bitboard;
+import core.Connect4Search;
+import core.Connect4TranspositionTable;
+
+class Connect4TranspositionTableTest {
+
+	private static final int LOG2_SIZE = 16;
+
+	/** A middle game position from the solver test set. */
+	private static final String POSITION = "44436732377633346";
+
+	private File file;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		file = File.createTempFile("connect4", ".snap");
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		file.delete();
+	}
+
+	private static Connect4Bitboard position() {
+		Connect4Bitboard board = new Connect4Bitboard();
+		for (int i = 0; i < POSITION.length(); i++) {
+			board.play(POSITION.charAt(i) - '1');
+		}
+		return board;
+	}
+
+	/**
+	 * Fills a table by solving the test position.
+	 */
+	private static Connect4Search solved() {
+		Connect4Search search = new Connect4Search(new Connect4TranspositionTable(LOG2_SIZE));
+		search.solve(position());
+		return search;
+	}
+
+	@Test
+	void testRoundTrip() throws IOException {
+		Connect4Search first = solved();
+		Connect4TranspositionTable table = first.getTable();
+		assertTrue(table.used() > 0);
+		table.save(file);
+
+		Connect4TranspositionTable loaded = new Connect4TranspositionTable(LOG2_SIZE);
+		loaded.load(file);
+		assertEquals(table.used(), loaded.used());
+
+		// every entry is the same: saving the loaded table gives the same file
+		File again = File.createTempFile("connect4", ".snap");
+		try {
+			loaded.save(again);
+			assertArrayEquals(Files.readAllBytes(file.toPath()), Files.readAllBytes(again.toPath()));
+		} finally {
+			again.delete();
+		}
+
+		// and the search finds them: same score, from far fewer nodes
+		Connect4Search second = new Connect4Search(loaded);
+		assertEquals(first.solve(position()), second.solve(position()));
+		Connect4Search cold = new Connect4Search(new Connect4TranspositionTable(LOG2_SIZE));
+		cold.solve(position());
+		assertTrue(second.getTableHits() > 0);
+		assertTrue(second.getNodes() < cold.getNodes() / 2,
+				second.getNodes() + " nodes from the snapshot, " + cold.getNodes() + " cold");
+	}
+
+	@Test
+	void testCorruptPayloadLeavesTableEmpty() throws IOException {
+		solved().getTable().save(file);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			long offset = 64 + raf.length() / 2 / 8 * 8;
+			raf.seek(offset);
+			int b = raf.read();
+			raf.seek(offset);
+			raf.write(b ^ 0x10);
+		}
+		Connect4TranspositionTable table = solved().getTable();
+		assertTrue(table.used() > 0);
+		assertThrows(IOException.class, () -> table.load(file));
+		assertEquals(0, table.used());
+	}
+
+	@Test
+	void testWrongSizeRejected() throws IOException {
+		solved().getTable().save(file);
+		Connect4TranspositionTable smaller = new Connect4TranspositionTable(LOG2_SIZE - 1);
+		assertThrows(IOException.class, () -> smaller.load(file));
+		Connect4TranspositionTable larger = new Connect4TranspositionTable(LOG2_SIZE + 1);
+		assertThrows(IOException.class, () -> larger.load(file));
+	}
+
+	@Test
+	void testWrongVersionRejected() throws IOException {
+		solved().getTable().save(file);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			// the version is the second little-endian int of the header
+			raf.seek(4);
+			raf.write(Connect4TranspositionTable.SNAPSHOT_VERSION + 1);
+		}
+		Connect4TranspositionTable table = new Connect4TranspositionTable(LOG2_SIZE);
+		IOException e = assertThrows(IOException.class, () -> table.load(file));
+		assertTrue(e.getMessage().contains("version"), e.getMessage());
+	}
+
+	@Test
+	void testTruncatedFileRejected() throws IOException {
+		solved().getTable().save(file);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 8);
+		}
+		Connect4TranspositionTable table = new Connect4TranspositionTable(LOG2_SIZE);
+		IOException e = assertThrows(IOException.class, () -> table.load(file));
+		assertTrue(e.getMessage().contains("Truncated"), e.getMessage());
+
+		// a file shorter than the header is not a snapshot at all
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(10);
+		}
+		assertThrows(IOException.class, () -> table.load(file));
+	}
+}